@@ -34,13 +34,16 @@ package org.apache.ws.security;
 
 import org.apache.ws.security.components.crypto.Crypto;
 import org.apache.ws.security.message.CallbackLookup;
+import org.apache.ws.security.saml.ext.AssertionWrapper;
 import org.apache.ws.security.util.WSSecurityUtil;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.xml.crypto.dom.DOMCryptoContext;
 
@@ -50,6 +53,7 @@ public class WSDocInfo {
     private List<Element> tokenList = null;
     private List<WSSecurityEngineResult> resultsList = null;
     private CallbackLookup callbackLookup = null;
+    private Map<String, AssertionWrapper> assertionMap = null;
 
     public WSDocInfo(Document doc) {
         //
@@ -76,8 +80,13 @@ public class WSDocInfo {
             resultsList.clear();
         }
         
+        if (assertionMap != null) {
+            assertionMap.clear();
+        }
+        
         tokenList = null;
         resultsList = null;
+        assertionMap = null;
     }
     
     /**
@@ -167,6 +176,58 @@ public class WSDocInfo {
         return null;
     }
 
+    /**
+     * Store a parsed (and verified) SAML Assertion for later retrieval, so that each
+     * Assertion is only unmarshalled once per message. The Assertion is stored under
+     * its (SAML) Id.
+     * @param assertion is the parsed SAML Assertion to store
+     */
+    public void addAssertion(AssertionWrapper assertion) {
+        if (assertion == null || assertion.getElement() == null) {
+            return;
+        }
+        if (assertionMap == null) {
+            assertionMap = new HashMap<String, AssertionWrapper>();
+        }
+        assertionMap.put(assertion.getId(), assertion);
+    }
+    
+    /**
+     * Get a parsed SAML Assertion for the given Id.
+     * @param uri is the (relative) uri of the SAML AssertionID/ID
+     * @return the parsed SAML Assertion or null if nothing found
+     */
+    public AssertionWrapper getAssertion(String uri) {
+        String id = uri;
+        if (id == null || id.length() == 0 || assertionMap == null) {
+            return null;
+        } else if (id.charAt(0) == '#') {
+            id = id.substring(1);
+        }
+        return assertionMap.get(id);
+    }
+    
+    /**
+     * Get the parsed SAML Assertion for the given Assertion element. A stored Assertion is
+     * only returned if it was parsed from the very same element.
+     * @param element is the SAML Assertion element
+     * @return the parsed SAML Assertion or null if nothing found
+     */
+    public AssertionWrapper getAssertion(Element element) {
+        if (element == null || assertionMap == null) {
+            return null;
+        }
+        String id = element.getAttributeNS(null, "ID");
+        if (id.length() == 0) {
+            id = element.getAttributeNS(null, "AssertionID");
+        }
+        AssertionWrapper assertion = getAssertion(id);
+        if (assertion != null && assertion.getElement() == element) {
+            return assertion;
+        }
+        return null;
+    }
+
     /**
      * Set all stored tokens on the DOMCryptoContext argument
      * @param context
@@ -31,9 +31,17 @@ import java.util.Map;
 import javax.xml.namespace.QName;
 
 import org.apache.ws.security.action.Action;
+import org.apache.ws.security.conversation.SecurityContextStore;
 import org.apache.ws.security.processor.Processor;
+import org.apache.ws.security.saml.SAMLAssertionCache;
+import org.apache.ws.security.saml.SAMLKeyInfoCache;
+import org.apache.ws.security.saml.SAMLSignatureCache;
+import org.apache.ws.security.util.DerivedKeyCache;
+import org.apache.ws.security.util.EncryptedKeyCache;
 import org.apache.ws.security.util.Loader;
+import org.apache.ws.security.util.PasswordCallbackCache;
 import org.apache.ws.security.util.UUIDGenerator;
+import org.apache.ws.security.util.UsernameTokenKeyCache;
 import org.apache.ws.security.validate.Validator;
 import org.apache.xml.security.utils.XMLUtils;
 import org.jcp.xml.dsig.internal.dom.XMLDSigRI;
@@ -281,6 +289,57 @@ public class WSSConfig {
      */
     protected boolean passwordsAreEncoded = false;
     
+    /**
+     * The (optional) cache of SAML Assertions with a verified signature. This is null
+     * by default, which means that the signature of every Assertion is verified.
+     */
+    protected SAMLSignatureCache samlSignatureCache = null;
+    
+    /**
+     * The (optional) cache of the data of received SAML Assertions. This is null by
+     * default, which means that every Assertion is unmarshalled and processed.
+     */
+    protected SAMLAssertionCache samlAssertionCache = null;
+    
+    /**
+     * The (optional) cache of the key information of the Subject of received (signed)
+     * holder-of-key SAML Assertions. This is null by default, which means that the Subject
+     * KeyInfo of every Assertion is parsed.
+     */
+    protected SAMLKeyInfoCache samlKeyInfoCache = null;
+    
+    /**
+     * The (optional) cache of symmetric keys unwrapped from received EncryptedKey elements.
+     * This is null by default, which means that every EncryptedKey is unwrapped.
+     */
+    protected EncryptedKeyCache encryptedKeyCache = null;
+    
+    /**
+     * The (optional) cache of keys derived via received DerivedKeyToken elements, across
+     * messages. This is null by default, which means that keys are only reused within a
+     * message.
+     */
+    protected DerivedKeyCache derivedKeyCache = null;
+    
+    /**
+     * The (optional) store of established security contexts. This is null by default,
+     * which means that the secret of every SecurityContextToken is obtained from the
+     * CallbackHandler.
+     */
+    protected SecurityContextStore securityContextStore = null;
+    
+    /**
+     * The (optional) cache of keys derived from the passwords of received UsernameTokens.
+     * This is null by default, which means that every such key is derived again.
+     */
+    protected UsernameTokenKeyCache usernameTokenKeyCache = null;
+    
+    /**
+     * The (optional) cache of the results of password callbacks. This is null by default,
+     * which means that the CallbackHandler is invoked for every password callback.
+     */
+    protected PasswordCallbackCache passwordCallbackCache = null;
+    
     /**
      * The default wsu:Id allocator is a simple "start at 1 and increment up"
      * thing that is very fast.
@@ -607,6 +666,138 @@ public class WSSConfig {
         return passwordsAreEncoded;
     }
     
+    /**
+     * Set the cache of SAML Assertions with a verified signature. The cache can be
+     * shared between WSSConfig instances.
+     * @param samlSignatureCache the cache, or null to verify every signature
+     */
+    public void setSamlSignatureCache(SAMLSignatureCache samlSignatureCache) {
+        this.samlSignatureCache = samlSignatureCache;
+    }
+    
+    /**
+     * @return the cache of SAML Assertions with a verified signature, or null
+     */
+    public SAMLSignatureCache getSamlSignatureCache() {
+        return samlSignatureCache;
+    }
+    
+    /**
+     * Set the cache of the data of received SAML Assertions. The cache can be shared
+     * between WSSConfig instances.
+     * @param samlAssertionCache the cache, or null to unmarshal and process every Assertion
+     */
+    public void setSamlAssertionCache(SAMLAssertionCache samlAssertionCache) {
+        this.samlAssertionCache = samlAssertionCache;
+    }
+    
+    /**
+     * @return the cache of the data of received SAML Assertions, or null
+     */
+    public SAMLAssertionCache getSamlAssertionCache() {
+        return samlAssertionCache;
+    }
+    
+    /**
+     * Set the cache of the key information of the Subject of received holder-of-key SAML
+     * Assertions. The cache can be shared between WSSConfig instances.
+     * @param samlKeyInfoCache the cache, or null to parse every Subject KeyInfo
+     */
+    public void setSamlKeyInfoCache(SAMLKeyInfoCache samlKeyInfoCache) {
+        this.samlKeyInfoCache = samlKeyInfoCache;
+    }
+    
+    /**
+     * @return the cache of the key information of the Subject of received holder-of-key
+     * SAML Assertions, or null
+     */
+    public SAMLKeyInfoCache getSamlKeyInfoCache() {
+        return samlKeyInfoCache;
+    }
+    
+    /**
+     * Set the cache of symmetric keys unwrapped from received EncryptedKey elements. 
+     * The cache can be shared between WSSConfig instances.
+     * @param encryptedKeyCache the cache, or null to unwrap every EncryptedKey
+     */
+    public void setEncryptedKeyCache(EncryptedKeyCache encryptedKeyCache) {
+        this.encryptedKeyCache = encryptedKeyCache;
+    }
+    
+    /**
+     * @return the cache of unwrapped symmetric keys, or null
+     */
+    public EncryptedKeyCache getEncryptedKeyCache() {
+        return encryptedKeyCache;
+    }
+    
+    /**
+     * Set the cache of keys derived via received DerivedKeyToken elements. The cache can
+     * be shared between WSSConfig instances.
+     * @param derivedKeyCache the cache, or null to only reuse derived keys within a message
+     */
+    public void setDerivedKeyCache(DerivedKeyCache derivedKeyCache) {
+        this.derivedKeyCache = derivedKeyCache;
+    }
+    
+    /**
+     * @return the cache of derived keys, or null
+     */
+    public DerivedKeyCache getDerivedKeyCache() {
+        return derivedKeyCache;
+    }
+    
+    /**
+     * Set the store of established security contexts, which is consulted before the
+     * CallbackHandler for the secret of a SecurityContextToken. The store can be shared
+     * between WSSConfig instances.
+     * @param securityContextStore the store, or null to always use the CallbackHandler
+     */
+    public void setSecurityContextStore(SecurityContextStore securityContextStore) {
+        this.securityContextStore = securityContextStore;
+    }
+    
+    /**
+     * @return the store of established security contexts, or null
+     */
+    public SecurityContextStore getSecurityContextStore() {
+        return securityContextStore;
+    }
+    
+    /**
+     * Set the cache of keys derived from the passwords of received UsernameTokens (with a
+     * Salt and an Iteration element). The cache can be shared between WSSConfig instances.
+     * @param usernameTokenKeyCache the cache, or null to derive every key again
+     */
+    public void setUsernameTokenKeyCache(UsernameTokenKeyCache usernameTokenKeyCache) {
+        this.usernameTokenKeyCache = usernameTokenKeyCache;
+    }
+    
+    /**
+     * @return the cache of keys derived from UsernameToken passwords, or null
+     */
+    public UsernameTokenKeyCache getUsernameTokenKeyCache() {
+        return usernameTokenKeyCache;
+    }
+    
+    /**
+     * Set the cache of the results of password callbacks. If it is set, the CallbackHandler
+     * of a RequestData with this WSSConfig is wrapped in a CachingCallbackHandler. The cache
+     * can be shared between WSSConfig instances.
+     * @param passwordCallbackCache the cache, or null to invoke the CallbackHandler for
+     * every password callback
+     */
+    public void setPasswordCallbackCache(PasswordCallbackCache passwordCallbackCache) {
+        this.passwordCallbackCache = passwordCallbackCache;
+    }
+    
+    /**
+     * @return the cache of the results of password callbacks, or null
+     */
+    public PasswordCallbackCache getPasswordCallbackCache() {
+        return passwordCallbackCache;
+    }
+    
     /**
      * @return Returns the WsuIdAllocator used to generate wsu:Id attributes
      */
@@ -28,6 +28,7 @@ import org.apache.ws.security.handler.RequestData;
 import org.apache.ws.security.handler.WSHandler;
 import org.apache.ws.security.handler.WSHandlerConstants;
 import org.apache.ws.security.message.WSSecEncrypt;
+import org.apache.ws.security.util.WrappedKeyCache;
 import org.w3c.dom.Document;
 
 public class EncryptionAction implements Action {
@@ -62,6 +63,11 @@ public class EncryptionAction implements Action {
         }
         wsEncrypt.setUserInfo(reqData.getEncUser());
         wsEncrypt.setUseThisCert(reqData.getEncCert());
+        Object wrappedKeyCache = 
+            handler.getProperty(reqData.getMsgContext(), WSHandlerConstants.WRAPPED_KEY_CACHE_REF);
+        if (wrappedKeyCache instanceof WrappedKeyCache) {
+            wsEncrypt.setWrappedKeyCache((WrappedKeyCache)wrappedKeyCache);
+        }
         if (reqData.getEncryptParts().size() > 0) {
             wsEncrypt.setParts(reqData.getEncryptParts());
         }
@@ -27,8 +27,10 @@ import org.apache.ws.security.components.crypto.Crypto;
 import org.apache.ws.security.handler.RequestData;
 import org.apache.ws.security.handler.WSHandler;
 import org.apache.ws.security.handler.WSHandlerConstants;
+import org.apache.ws.security.saml.IssuedAssertionCache;
 import org.apache.ws.security.saml.SAMLIssuer;
 import org.apache.ws.security.saml.SAMLIssuerFactory;
+import org.apache.ws.security.saml.SAMLIssuerImpl;
 import org.apache.ws.security.saml.WSSecSignatureSAML;
 import org.apache.ws.security.saml.ext.AssertionWrapper;
 
@@ -122,6 +124,14 @@ public class SAMLTokenSignedAction implements Action {
         if (callbackHandler != null) {
             samlIssuer.setCallbackHandler(callbackHandler);
         }
+        Object assertionCache = 
+            handler.getProperty(
+                reqData.getMsgContext(), WSHandlerConstants.SAML_ISSUED_ASSERTION_CACHE_REF
+            );
+        if (assertionCache instanceof IssuedAssertionCache
+            && samlIssuer instanceof SAMLIssuerImpl) {
+            ((SAMLIssuerImpl)samlIssuer).setAssertionCache((IssuedAssertionCache)assertionCache);
+        }
         return samlIssuer;
     }
 
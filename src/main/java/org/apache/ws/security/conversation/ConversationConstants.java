@@ -69,6 +69,11 @@ public class ConversationConstants {
      */
     public static final String IDENTIFIER_LN = "Identifier";
 
+    /**
+     * Field INSTANCE_LN
+     */
+    public static final String INSTANCE_LN = "Instance";
+
     /**
      * Field EXPIRES_LN
      */
@@ -169,6 +174,12 @@ public class ConversationConstants {
         
         public static final String P_SHA_1_2005_12 = 
             "http://docs.oasis-open.org/ws-sx/ws-secureconversation/200512/dk/p_sha1";
+        
+        /**
+         * P_SHA256 is not defined by WS-SecureConversation. This is a WSS4J specific
+         * identifier, and so it must be agreed on by both parties.
+         */
+        public static final String P_SHA_256 = "http://ws.apache.org/wss4j/dk/p_sha256";
     }
     
     public static String getWSCNs(int version) throws ConversationException {
@@ -0,0 +1,264 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ws.security.conversation;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.security.MessageDigest;
+import java.util.Date;
+import java.util.Properties;
+
+import org.apache.ws.security.WSSecurityException;
+import org.apache.ws.security.util.Base64;
+
+/**
+ * A {@link SecurityContextPersistence} implementation that stores every security context
+ * in a properties file in a local directory. The name of a file is a digest of the
+ * identifier and instance of the context. The files contain the (Base64 encoded) secrets
+ * of the contexts. Therefore the directory is restricted to the owner when this object is
+ * created, and a file is restricted to the owner before the secret is written to it. The
+ * permissions can only be set on a Java 6 (or later) runtime, and as far as the platform
+ * supports this, so the directory must be protected accordingly otherwise.
+ */
+public class FileSecurityContextPersistence implements SecurityContextPersistence {
+
+    private static final org.apache.commons.logging.Log log = 
+        org.apache.commons.logging.LogFactory.getLog(FileSecurityContextPersistence.class);
+
+    private static final String SUFFIX = ".sct";
+    private static final String IDENTIFIER = "identifier";
+    private static final String INSTANCE = "instance";
+    private static final String SECRET = "secret";
+    private static final String CREATED = "created";
+    private static final String EXPIRES = "expires";
+
+    private final File directory;
+
+    /**
+     * @param directory the directory to store the security contexts in. It is created if
+     * it does not exist, and its access is restricted to the owner.
+     * @throws WSSecurityException if the directory can not be created
+     */
+    public FileSecurityContextPersistence(File directory) throws WSSecurityException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new WSSecurityException(
+                "Unable to create the security context directory " + directory
+            );
+        }
+        if (!restrictAccess(directory, true)) {
+            log.warn(
+                "Unable to restrict the access to the security context directory " + directory
+            );
+        }
+        this.directory = directory;
+    }
+
+    /**
+     * @return the directory the security contexts are stored in
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    public synchronized void store(SecurityContext context) throws WSSecurityException {
+        Properties properties = new Properties();
+        properties.setProperty(IDENTIFIER, context.getIdentifier());
+        if (context.getInstance() != null) {
+            properties.setProperty(INSTANCE, context.getInstance());
+        }
+        properties.setProperty(SECRET, Base64.encode(context.getSecret()));
+        properties.setProperty(CREATED, Long.toString(context.getCreated().getTime()));
+        if (context.getExpires() != null) {
+            properties.setProperty(EXPIRES, Long.toString(context.getExpires().getTime()));
+        }
+
+        File file = getFile(context.getIdentifier(), context.getInstance());
+        File tempFile = new File(directory, file.getName() + ".tmp");
+        OutputStream out = null;
+        try {
+            // Restrict the access to the file before the secret is written to it
+            if (!tempFile.createNewFile() && !(tempFile.delete() && tempFile.createNewFile())) {
+                throw new IOException("Unable to create " + tempFile);
+            }
+            if (!restrictAccess(tempFile, false)) {
+                log.debug("Unable to restrict the access to " + tempFile);
+            }
+            out = new FileOutputStream(tempFile);
+            properties.store(out, null);
+            out.close();
+            out = null;
+            if (!tempFile.renameTo(file) && !(file.delete() && tempFile.renameTo(file))) {
+                throw new IOException("Unable to rename " + tempFile + " to " + file);
+            }
+        } catch (IOException ex) {
+            if (!tempFile.delete()) {
+                log.debug("Unable to delete " + tempFile);
+            }
+            throw new WSSecurityException("Unable to store the security context", ex);
+        } finally {
+            close(out);
+        }
+    }
+
+    public synchronized SecurityContext load(
+        String identifier, String instance
+    ) throws WSSecurityException {
+        File file = getFile(identifier, instance);
+        if (!file.isFile()) {
+            return null;
+        }
+        Properties properties = null;
+        try {
+            properties = loadProperties(file);
+        } catch (IOException ex) {
+            throw new WSSecurityException("Unable to load the security context", ex);
+        }
+        if (!identifier.equals(properties.getProperty(IDENTIFIER))
+            || !(instance == null 
+                ? properties.getProperty(INSTANCE) == null 
+                : instance.equals(properties.getProperty(INSTANCE)))) {
+            return null;
+        }
+        try {
+            String expires = properties.getProperty(EXPIRES);
+            return new SecurityContext(
+                identifier, 
+                instance, 
+                Base64.decode(properties.getProperty(SECRET)),
+                new Date(Long.parseLong(properties.getProperty(CREATED))),
+                expires == null ? null : new Date(Long.parseLong(expires))
+            );
+        } catch (RuntimeException ex) {
+            throw new WSSecurityException("Unable to load the security context", ex);
+        }
+    }
+
+    public synchronized void remove(String identifier, String instance) {
+        File file = getFile(identifier, instance);
+        if (file.exists() && !file.delete()) {
+            log.warn("Unable to delete " + file);
+        }
+    }
+
+    public synchronized void removeExpired(long now) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (!file.getName().endsWith(SUFFIX) || !file.isFile()) {
+                continue;
+            }
+            try {
+                String expires = loadProperties(file).getProperty(EXPIRES);
+                if (expires != null && Long.parseLong(expires) <= now && !file.delete()) {
+                    log.warn("Unable to delete " + file);
+                }
+            } catch (IOException ex) {
+                log.debug("Unable to load " + file, ex);
+            } catch (NumberFormatException ex) {
+                log.debug("Unable to load " + file, ex);
+            }
+        }
+    }
+
+    private static Properties loadProperties(File file) throws IOException {
+        Properties properties = new Properties();
+        InputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            properties.load(in);
+        } finally {
+            close(in);
+        }
+        return properties;
+    }
+
+    private File getFile(String identifier, String instance) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(identifier.getBytes("UTF-8"));
+            if (instance != null) {
+                digest.update((byte)0);
+                digest.update(instance.getBytes("UTF-8"));
+            }
+            byte[] hash = digest.digest();
+            StringBuilder name = new StringBuilder(hash.length * 2 + SUFFIX.length());
+            for (byte b : hash) {
+                name.append(Character.forDigit((b >> 4) & 0xf, 16));
+                name.append(Character.forDigit(b & 0xf, 16));
+            }
+            return new File(directory, name.append(SUFFIX).toString());
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Restrict the access to the given file or directory to the owner. The File methods to
+     * do so are only available as of Java 6, and so they are called reflectively.
+     * @return whether the access was restricted
+     */
+    private static boolean restrictAccess(File file, boolean executable) {
+        try {
+            boolean restricted = 
+                setPermission(file, "setReadable", false, false)
+                && setPermission(file, "setReadable", true, true)
+                && setPermission(file, "setWritable", false, false)
+                && setPermission(file, "setWritable", true, true);
+            if (executable) {
+                restricted = 
+                    restricted
+                    && setPermission(file, "setExecutable", false, false)
+                    && setPermission(file, "setExecutable", true, true);
+            }
+            return restricted;
+        } catch (NoSuchMethodException ex) {
+            log.debug("File permissions can not be set on this Java runtime");
+            return false;
+        } catch (Exception ex) {
+            log.debug(ex.getMessage(), ex);
+            return false;
+        }
+    }
+    
+    private static boolean setPermission(
+        File file, String methodName, boolean enable, boolean ownerOnly
+    ) throws Exception {
+        Method method = File.class.getMethod(methodName, Boolean.TYPE, Boolean.TYPE);
+        return ((Boolean)method.invoke(file, enable, ownerOnly)).booleanValue();
+    }
+
+    private static void close(java.io.Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ex) {
+                log.debug(ex.getMessage(), ex);
+            }
+        }
+    }
+
+}
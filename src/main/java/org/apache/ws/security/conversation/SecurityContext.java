@@ -0,0 +1,101 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ws.security.conversation;
+
+import java.util.Date;
+
+/**
+ * An established security context, i.e. the secret that is associated with the
+ * wsc:Identifier (and optional wsc:Instance) of a SecurityContextToken, together with
+ * the time the context was created and the time it expires.
+ */
+public class SecurityContext {
+
+    private final String identifier;
+    private final String instance;
+    private final byte[] secret;
+    private final Date created;
+    private final Date expires;
+
+    /**
+     * @param identifier the wsc:Identifier of the context
+     * @param instance the wsc:Instance of the context, or null
+     * @param secret the secret of the context
+     * @param created the time the context was created, or null for the current time
+     * @param expires the time the context expires, or null if the context expires after
+     * the default lifetime of the {@link SecurityContextStore} it is added to
+     */
+    public SecurityContext(
+        String identifier, String instance, byte[] secret, Date created, Date expires
+    ) {
+        if (identifier == null || secret == null) {
+            throw new IllegalArgumentException("A security context needs an identifier and a secret");
+        }
+        this.identifier = identifier;
+        this.instance = instance;
+        this.secret = secret.clone();
+        this.created = created == null ? new Date() : new Date(created.getTime());
+        this.expires = expires == null ? null : new Date(expires.getTime());
+    }
+
+    /**
+     * @return the wsc:Identifier of the context
+     */
+    public String getIdentifier() {
+        return identifier;
+    }
+
+    /**
+     * @return the wsc:Instance of the context, or null
+     */
+    public String getInstance() {
+        return instance;
+    }
+
+    /**
+     * @return a copy of the secret of the context
+     */
+    public byte[] getSecret() {
+        return secret.clone();
+    }
+
+    /**
+     * @return the time the context was created
+     */
+    public Date getCreated() {
+        return new Date(created.getTime());
+    }
+
+    /**
+     * @return the time the context expires, or null
+     */
+    public Date getExpires() {
+        return expires == null ? null : new Date(expires.getTime());
+    }
+
+    /**
+     * @param now the current time in milliseconds since the epoch
+     * @return whether the context has expired at the given time
+     */
+    public boolean isExpired(long now) {
+        return expires != null && now >= expires.getTime();
+    }
+
+}
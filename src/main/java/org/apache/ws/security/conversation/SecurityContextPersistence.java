@@ -0,0 +1,64 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ws.security.conversation;
+
+import org.apache.ws.security.WSSecurityException;
+
+/**
+ * The persistence SPI of a {@link SecurityContextStore}. It allows established security
+ * contexts to survive a restart, or to be shared between the nodes of a cluster. A
+ * SecurityContextPersistence implementation must be thread-safe.
+ *
+ * @see FileSecurityContextPersistence
+ */
+public interface SecurityContextPersistence {
+
+    /**
+     * Store a security context, replacing any context with the same identifier and instance
+     * @param context the security context
+     * @throws WSSecurityException if the context can not be stored
+     */
+    void store(SecurityContext context) throws WSSecurityException;
+
+    /**
+     * Load a security context. Expired contexts may be returned.
+     * @param identifier the wsc:Identifier of the context
+     * @param instance the wsc:Instance of the context, or null
+     * @return the security context, or null if there is no such context
+     * @throws WSSecurityException if the context can not be loaded
+     */
+    SecurityContext load(String identifier, String instance) throws WSSecurityException;
+
+    /**
+     * Remove a security context
+     * @param identifier the wsc:Identifier of the context
+     * @param instance the wsc:Instance of the context, or null
+     * @throws WSSecurityException if the context can not be removed
+     */
+    void remove(String identifier, String instance) throws WSSecurityException;
+
+    /**
+     * Remove all security contexts that expired before the given time
+     * @param now the current time in milliseconds since the epoch
+     * @throws WSSecurityException if the contexts can not be removed
+     */
+    void removeExpired(long now) throws WSSecurityException;
+
+}
@@ -0,0 +1,278 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ws.security.conversation;
+
+import java.util.Date;
+
+import org.apache.ws.security.WSSecurityException;
+import org.apache.ws.security.util.DerivedKeyCache;
+import org.apache.ws.security.util.ExpiringCache;
+
+/**
+ * A store of established security contexts, i.e. of the secrets of SecurityContextTokens.
+ * The SecurityContextTokenProcessor and the DerivedKeyTokenSTRParser look up the secret of
+ * a SecurityContextToken in the store (if one is configured) before they ask the
+ * CallbackHandler, and the secrets returned by the CallbackHandler are added to the store.
+ *
+ * The contexts are held in memory (bounded, with the least recently used context being
+ * evicted first), and they are removed when they expire. A context without an expiry time
+ * expires after the default lifetime of the store. Optionally, the contexts are also
+ * written to a {@link SecurityContextPersistence}, from which a context is loaded if it is
+ * not found in memory. A context is removed from the persistence when it is cancelled, and
+ * when it is found to be expired, i.e. when an expired context is evicted from memory or
+ * loaded. In addition, all expired contexts are removed from the persistence when the
+ * store is created, and then at most every PURGE_INTERVAL seconds when a context is added.
+ *
+ * When a context is cancelled, expires or is evicted, the keys that were derived from its
+ * secret are removed from the DerivedKeyCache of the store (if any). Note that this only
+ * applies to the keys that were derived via a DerivedKeyToken which refers to the context
+ * by its wsc:Identifier.
+ *
+ * A SecurityContextStore can be shared between threads. It is not used by default, see
+ * {@link org.apache.ws.security.WSSConfig#setSecurityContextStore(SecurityContextStore)}.
+ */
+public class SecurityContextStore {
+
+    private static final org.apache.commons.logging.Log log = 
+        org.apache.commons.logging.LogFactory.getLog(SecurityContextStore.class);
+
+    /**
+     * The default maximum number of contexts held in memory
+     */
+    public static final int DEFAULT_MAX_SIZE = 1000;
+
+    /**
+     * The default lifetime in seconds of a context without an expiry time (1 hour)
+     */
+    public static final long DEFAULT_LIFETIME = 3600L;
+    
+    /**
+     * The minimum time in seconds between two purges of expired contexts from the
+     * persistence (5 minutes)
+     */
+    public static final long PURGE_INTERVAL = 300L;
+
+    private final ExpiringCache<String, SecurityContext> cache;
+    private final long defaultLifetime;
+    private final SecurityContextPersistence persistence;
+    private volatile DerivedKeyCache derivedKeyCache;
+    private volatile long nextPurge;
+
+    /**
+     * Create an in-memory store with the default maximum size and lifetime.
+     */
+    public SecurityContextStore() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_LIFETIME, null);
+    }
+
+    /**
+     * @param maxSize the maximum number of contexts held in memory
+     * @param defaultLifetime the lifetime in seconds of a context without an expiry time
+     * @param persistence the persistence of the contexts, or null to only hold them in memory
+     */
+    public SecurityContextStore(
+        int maxSize, long defaultLifetime, SecurityContextPersistence persistence
+    ) {
+        if (defaultLifetime <= 0) {
+            throw new IllegalArgumentException("defaultLifetime must be positive");
+        }
+        this.defaultLifetime = defaultLifetime;
+        this.persistence = persistence;
+        cache = new ExpiringCache<String, SecurityContext>(maxSize, 0L) {
+            protected void onEviction(String key, SecurityContext value) {
+                DerivedKeyCache keyCache = derivedKeyCache;
+                if (keyCache != null) {
+                    keyCache.invalidate(value.getIdentifier());
+                }
+                if (value.isExpired(System.currentTimeMillis())) {
+                    removePersisted(value);
+                }
+            }
+        };
+        removeExpired();
+    }
+
+    /**
+     * Set the cache of derived keys that is cleaned up when a context is removed
+     * @param derivedKeyCache the cache of derived keys, or null
+     */
+    public void setDerivedKeyCache(DerivedKeyCache derivedKeyCache) {
+        this.derivedKeyCache = derivedKeyCache;
+    }
+
+    /**
+     * @return the cache of derived keys that is cleaned up when a context is removed, or null
+     */
+    public DerivedKeyCache getDerivedKeyCache() {
+        return derivedKeyCache;
+    }
+
+    /**
+     * @return the persistence of the contexts, or null
+     */
+    public SecurityContextPersistence getPersistence() {
+        return persistence;
+    }
+
+    /**
+     * Add a security context, replacing any context with the same identifier and instance.
+     * @param context the security context
+     * @throws WSSecurityException if the context can not be persisted
+     */
+    public void add(SecurityContext context) throws WSSecurityException {
+        if (context.getExpires() == null) {
+            long expires = context.getCreated().getTime() + defaultLifetime * 1000L;
+            context = 
+                new SecurityContext(
+                    context.getIdentifier(), context.getInstance(), context.getSecret(),
+                    context.getCreated(), new Date(expires)
+                );
+        }
+        long now = System.currentTimeMillis();
+        if (context.isExpired(now)) {
+            return;
+        }
+        // The context is stored after the context it replaces (if any) has been evicted
+        String key = getKey(context.getIdentifier(), context.getInstance());
+        cache.put(key, context, context.getExpires().getTime());
+        if (persistence != null) {
+            try {
+                persistence.store(context);
+            } catch (WSSecurityException ex) {
+                cache.remove(key, context);
+                throw ex;
+            }
+            if (now >= nextPurge) {
+                removeExpired();
+            }
+        }
+    }
+
+    /**
+     * Get an (unexpired) security context
+     * @param identifier the wsc:Identifier of the context
+     * @return the security context, or null if there is no such context
+     */
+    public SecurityContext get(String identifier) {
+        return get(identifier, null);
+    }
+
+    /**
+     * Get an (unexpired) security context
+     * @param identifier the wsc:Identifier of the context
+     * @param instance the wsc:Instance of the context, or null
+     * @return the security context, or null if there is no such context
+     */
+    public SecurityContext get(String identifier, String instance) {
+        if (identifier == null) {
+            return null;
+        }
+        String key = getKey(identifier, instance);
+        SecurityContext context = cache.get(key);
+        if (context != null || persistence == null) {
+            return context;
+        }
+        try {
+            context = persistence.load(identifier, instance);
+            if (context == null) {
+                return null;
+            }
+            if (context.getExpires() == null 
+                || context.isExpired(System.currentTimeMillis())) {
+                persistence.remove(identifier, instance);
+                return null;
+            }
+        } catch (WSSecurityException ex) {
+            log.warn("Unable to load the security context " + identifier, ex);
+            return null;
+        }
+        cache.put(key, context, context.getExpires().getTime());
+        return context;
+    }
+
+    /**
+     * Cancel a security context, i.e. remove it from memory and from the persistence
+     * @param identifier the wsc:Identifier of the context
+     * @param instance the wsc:Instance of the context, or null
+     * @throws WSSecurityException if the context can not be removed from the persistence
+     */
+    public void cancel(String identifier, String instance) throws WSSecurityException {
+        SecurityContext context = cache.remove(getKey(identifier, instance));
+        if (context == null) {
+            DerivedKeyCache keyCache = derivedKeyCache;
+            if (keyCache != null) {
+                keyCache.invalidate(identifier);
+            }
+        }
+        if (persistence != null) {
+            persistence.remove(identifier, instance);
+        }
+    }
+
+    /**
+     * Remove all expired contexts from the persistence (if any)
+     */
+    public void removeExpired() {
+        if (persistence == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        nextPurge = now + PURGE_INTERVAL * 1000L;
+        try {
+            persistence.removeExpired(now);
+        } catch (WSSecurityException ex) {
+            log.warn("Unable to remove the expired security contexts", ex);
+        }
+    }
+
+    /**
+     * Remove all contexts from memory. Only expired contexts are removed from the
+     * persistence.
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * @return the number of contexts held in memory
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    private void removePersisted(SecurityContext context) {
+        if (persistence == null) {
+            return;
+        }
+        try {
+            persistence.remove(context.getIdentifier(), context.getInstance());
+        } catch (WSSecurityException ex) {
+            log.warn("Unable to remove the security context " + context.getIdentifier(), ex);
+        }
+    }
+
+    private static String getKey(String identifier, String instance) {
+        if (instance == null) {
+            return identifier;
+        }
+        return identifier + '\n' + instance;
+    }
+
+}
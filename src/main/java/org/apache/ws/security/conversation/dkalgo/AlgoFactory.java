@@ -41,6 +41,8 @@ public class AlgoFactory {
         if ((ConversationConstants.DerivationAlgorithm.P_SHA_1_2005_12).equals(algorithm)
             || (ConversationConstants.DerivationAlgorithm.P_SHA_1).equals(algorithm)) {
             return new P_SHA1();
+        } else if ((ConversationConstants.DerivationAlgorithm.P_SHA_256).equals(algorithm)) {
+            return new P_SHA256();
         } else {
             throw new ConversationException("No such algorithm");
         }
@@ -0,0 +1,169 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ws.security.conversation.dkalgo;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.ws.security.conversation.ConversationException;
+
+/**
+ * The P_hash function as defined in RFC 2246 (Section 5), for a given HMAC algorithm:
+ <pre>
+ P_hash(secret, seed) = HMAC_hash(secret, A(1) + seed) +
+                        HMAC_hash(secret, A(2) + seed) + ...
+ A(0) = seed
+ A(i) = HMAC_hash(secret, A(i-1))
+ </pre>
+ *
+ * The Mac instances are confined to the thread that uses them, and are reused for all
+ * derivations of that thread, together with the buffers that hold A(i) and the current
+ * output block. The key is derived directly into the buffer of the caller, and the output
+ * blocks that precede the requested offset are not computed at all.
+ */
+public abstract class PHash implements DerivationAlgorithm {
+
+    private static final ThreadLocal<Map<String, Engine>> ENGINES =
+        new ThreadLocal<Map<String, Engine>>() {
+            protected Map<String, Engine> initialValue() {
+                return new HashMap<String, Engine>();
+            }
+        };
+
+    private final String macAlgorithm;
+
+    /**
+     * @param macAlgorithm the JCE name of the HMAC algorithm, e.g. "HmacSHA1"
+     */
+    protected PHash(String macAlgorithm) {
+        this.macAlgorithm = macAlgorithm;
+    }
+
+    /**
+     * @return the JCE name of the HMAC algorithm
+     */
+    public String getMacAlgorithm() {
+        return macAlgorithm;
+    }
+
+    public byte[] createKey(
+        byte[] secret, byte[] seed, int offset, long length
+    ) throws ConversationException {
+        if (length < 0 || length > Integer.MAX_VALUE) {
+            throw new ConversationException("errorInKeyDerivation");
+        }
+        byte[] key = new byte[(int)length];
+        createKey(secret, seed, offset, key, 0, key.length);
+        return key;
+    }
+
+    /**
+     * Derive a key into the given buffer.
+     *
+     * @param secret the secret (HMAC key)
+     * @param seed the seed
+     * @param offset the number of leading octets of the P_hash output to skip
+     * @param key the buffer to write the derived key to
+     * @param keyOffset the offset in the buffer at which the derived key starts
+     * @param length the number of octets to derive
+     * @throws ConversationException if the key can not be derived
+     */
+    public void createKey(
+        byte[] secret, byte[] seed, int offset, byte[] key, int keyOffset, int length
+    ) throws ConversationException {
+        if (offset < 0 || length < 0 || keyOffset < 0 || keyOffset + length > key.length) {
+            throw new ConversationException("errorInKeyDerivation");
+        }
+        try {
+            Map<String, Engine> engines = ENGINES.get();
+            Engine engine = engines.get(macAlgorithm);
+            if (engine == null) {
+                engine = new Engine(Mac.getInstance(macAlgorithm));
+                engines.put(macAlgorithm, engine);
+            }
+            engine.derive(
+                new SecretKeySpec(secret, macAlgorithm), seed, offset, key, keyOffset, length
+            );
+        } catch (Exception ex) {
+            throw new ConversationException("errorInKeyDerivation", null, ex);
+        }
+    }
+
+    /**
+     * A Mac instance, and the buffers for A(i) and an output block.
+     */
+    private static final class Engine {
+        private final Mac mac;
+        private final byte[] a;
+        private final byte[] block;
+
+        Engine(Mac mac) {
+            this.mac = mac;
+            a = new byte[mac.getMacLength()];
+            block = new byte[a.length];
+        }
+
+        void derive(
+            SecretKeySpec secret, byte[] seed, int offset, byte[] out, int outOffset, int length
+        ) throws Exception {
+            mac.init(secret);
+            int blockLength = a.length;
+            int skip = offset;
+            int pos = outOffset;
+            int remaining = length;
+            boolean first = true;
+            try {
+                while (remaining > 0) {
+                    // A(i) = HMAC_hash(secret, A(i-1)), A(0) = seed
+                    mac.update(first ? seed : a);
+                    mac.doFinal(a, 0);
+                    first = false;
+                    if (skip >= blockLength) {
+                        skip -= blockLength;
+                        continue;
+                    }
+                    mac.update(a);
+                    mac.update(seed);
+                    if (skip == 0 && remaining >= blockLength) {
+                        mac.doFinal(out, pos);
+                        pos += blockLength;
+                        remaining -= blockLength;
+                    } else {
+                        mac.doFinal(block, 0);
+                        int count = Math.min(blockLength - skip, remaining);
+                        System.arraycopy(block, skip, out, pos, count);
+                        skip = 0;
+                        pos += count;
+                        remaining -= count;
+                    }
+                }
+            } finally {
+                mac.reset();
+                Arrays.fill(a, (byte)0);
+                Arrays.fill(block, (byte)0);
+            }
+        }
+    }
+
+}
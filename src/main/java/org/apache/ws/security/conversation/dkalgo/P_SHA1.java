@@ -41,69 +41,10 @@ package org.apache.ws.security.conversation.dkalgo;
  * @author Ruchith Fernando
  */
 
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
+public class P_SHA1 extends PHash {
 
-import org.apache.ws.security.conversation.ConversationException;
-
-public class P_SHA1
-        implements DerivationAlgorithm {
-
-    public byte[] createKey(byte[] secret, byte[] seed, int offset,
-            long length) throws ConversationException {
-        try {
-            Mac mac = Mac.getInstance("HmacSHA1");
-
-            byte[] tempBytes = P_hash(secret, seed, mac,
-                    (offset + (int) length));
-
-            byte[] key = new byte[(int) length];
-
-            for (int i = 0; i < key.length; i++)
-                key[i] = tempBytes[i + offset];
-
-            return key;
-        } catch (Exception ex) {
-            throw new ConversationException("errorInKeyDerivation", null, ex);
-        }
-    }
-    
-    /**
-     * From WSUsernameToken  :-)
-     *
-     * @param secret
-     * @param seed
-     * @param mac
-     * @param required
-     * @return
-     * @throws java.lang.Exception
-     */
-    private static byte[] P_hash(byte[] secret, byte[] seed, Mac mac,
-                                 int required) throws Exception {
-        byte[] out = new byte[required];
-        int offset = 0, tocpy;
-        byte[] A, tmp;
-        A = seed;
-        while (required > 0) {
-            SecretKeySpec key = new SecretKeySpec(secret, "HMACSHA1");
-            mac.init(key);
-            mac.update(A);
-            A = mac.doFinal();
-            mac.reset();
-            mac.init(key);
-            mac.update(A);
-            mac.update(seed);
-            tmp = mac.doFinal();
-            tocpy = min(required, tmp.length);
-            System.arraycopy(tmp, 0, out, offset, tocpy);
-            offset += tocpy;
-            required -= tocpy;
-        }
-        return out;
-    }
-
-    private static int min(int a, int b) {
-        return (a > b) ? b : a;
+    public P_SHA1() {
+        super("HmacSHA1");
     }
 
 }
@@ -27,6 +27,8 @@ import org.apache.ws.security.WSSecurityException;
 import org.apache.ws.security.components.crypto.Crypto;
 import org.apache.ws.security.message.WSSecHeader;
 import org.apache.ws.security.message.token.UsernameToken;
+import org.apache.ws.security.util.CachingCallbackHandler;
+import org.apache.ws.security.util.PasswordCallbackCache;
 import org.apache.ws.security.validate.Validator;
 
 import java.util.ArrayList;
@@ -74,6 +76,7 @@ public class RequestData {
     private boolean useDerivedKeyForMAC = true;
     private boolean useSingleCert = true;
     private CallbackHandler callback = null;
+    private CachingCallbackHandler cachingCallback = null;
     private boolean enableRevocation = false;
 
     public void clear() {
@@ -95,6 +98,7 @@ public class RequestData {
         useDerivedKeyForMAC = true;
         useSingleCert = true;
         callback = null;
+        cachingCallback = null;
         enableRevocation = false;
     }
 
@@ -408,11 +412,26 @@ public class RequestData {
     }
     
     /**
-     * Returns the CallbackHandler used for this request.
+     * Returns the CallbackHandler used for this request. If a PasswordCallbackCache is
+     * configured (see WSSConfig), then the CallbackHandler that was set is returned wrapped
+     * in a CachingCallbackHandler for the current cache. The wrapper is created once, and
+     * only replaced if the CallbackHandler or the cache changes. The CallbackHandler that
+     * was set is not replaced by the wrapper.
      * @return the CallbackHandler used for this request.
      */
     public CallbackHandler getCallbackHandler() {
-        return callback;
+        PasswordCallbackCache cache = 
+            wssConfig == null ? null : wssConfig.getPasswordCallbackCache();
+        if (cachingCallback == null || cachingCallback.getDelegate() != callback
+            || cachingCallback.getCache() != cache) {
+            CallbackHandler wrapped = CachingCallbackHandler.wrap(callback, cache);
+            if (wrapped == callback) {
+                cachingCallback = null;
+                return callback;
+            }
+            cachingCallback = (CachingCallbackHandler)wrapped;
+        }
+        return cachingCallback;
     }
 
     /**
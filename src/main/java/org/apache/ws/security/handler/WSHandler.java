@@ -29,10 +29,19 @@ import org.apache.ws.security.WSSecurityException;
 import org.apache.ws.security.action.Action;
 import org.apache.ws.security.components.crypto.Crypto;
 import org.apache.ws.security.components.crypto.CryptoFactory;
+import org.apache.ws.security.conversation.SecurityContextStore;
 import org.apache.ws.security.message.WSSecHeader;
 import org.apache.ws.security.message.token.SignatureConfirmation;
+import org.apache.ws.security.saml.SAMLAssertionCache;
+import org.apache.ws.security.saml.SAMLKeyInfoCache;
+import org.apache.ws.security.saml.SAMLSignatureCache;
+import org.apache.ws.security.util.DerivedKeyCache;
+import org.apache.ws.security.util.EncryptedKeyCache;
+import org.apache.ws.security.util.CachingCallbackHandler;
 import org.apache.ws.security.util.Loader;
+import org.apache.ws.security.util.PasswordCallbackCache;
 import org.apache.ws.security.util.StringUtil;
+import org.apache.ws.security.util.UsernameTokenKeyCache;
 import org.apache.ws.security.util.WSSecurityUtil;
 import org.w3c.dom.Document;
 
@@ -266,6 +275,46 @@ public abstract class WSHandler {
         );
         wssConfig.setSecretKeyLength(reqData.getSecretKeyLength());
         wssConfig.setWsiBSPCompliant(decodeBSPCompliance(reqData));
+        Object samlSignatureCache = 
+            getProperty(reqData.getMsgContext(), WSHandlerConstants.SAML_SIGNATURE_CACHE_REF);
+        if (samlSignatureCache instanceof SAMLSignatureCache) {
+            wssConfig.setSamlSignatureCache((SAMLSignatureCache)samlSignatureCache);
+        }
+        Object samlAssertionCache = 
+            getProperty(reqData.getMsgContext(), WSHandlerConstants.SAML_ASSERTION_CACHE_REF);
+        if (samlAssertionCache instanceof SAMLAssertionCache) {
+            wssConfig.setSamlAssertionCache((SAMLAssertionCache)samlAssertionCache);
+        }
+        Object samlKeyInfoCache = 
+            getProperty(reqData.getMsgContext(), WSHandlerConstants.SAML_KEYINFO_CACHE_REF);
+        if (samlKeyInfoCache instanceof SAMLKeyInfoCache) {
+            wssConfig.setSamlKeyInfoCache((SAMLKeyInfoCache)samlKeyInfoCache);
+        }
+        Object encryptedKeyCache = 
+            getProperty(reqData.getMsgContext(), WSHandlerConstants.ENCRYPTED_KEY_CACHE_REF);
+        if (encryptedKeyCache instanceof EncryptedKeyCache) {
+            wssConfig.setEncryptedKeyCache((EncryptedKeyCache)encryptedKeyCache);
+        }
+        Object derivedKeyCache = 
+            getProperty(reqData.getMsgContext(), WSHandlerConstants.DERIVED_KEY_CACHE_REF);
+        if (derivedKeyCache instanceof DerivedKeyCache) {
+            wssConfig.setDerivedKeyCache((DerivedKeyCache)derivedKeyCache);
+        }
+        Object securityContextStore = 
+            getProperty(reqData.getMsgContext(), WSHandlerConstants.SECURITY_CONTEXT_STORE_REF);
+        if (securityContextStore instanceof SecurityContextStore) {
+            wssConfig.setSecurityContextStore((SecurityContextStore)securityContextStore);
+        }
+        Object usernameTokenKeyCache = 
+            getProperty(reqData.getMsgContext(), WSHandlerConstants.USERNAME_TOKEN_KEY_CACHE_REF);
+        if (usernameTokenKeyCache instanceof UsernameTokenKeyCache) {
+            wssConfig.setUsernameTokenKeyCache((UsernameTokenKeyCache)usernameTokenKeyCache);
+        }
+        Object passwordCallbackCache = 
+            getProperty(reqData.getMsgContext(), WSHandlerConstants.PW_CALLBACK_CACHE_REF);
+        if (passwordCallbackCache instanceof PasswordCallbackCache) {
+            wssConfig.setPasswordCallbackCache((PasswordCallbackCache)passwordCallbackCache);
+        }
         reqData.setWssConfig(wssConfig);
 
         if ((doAction & WSConstants.SIGN) == WSConstants.SIGN) {
@@ -858,19 +907,32 @@ public abstract class WSHandler {
     }
     
     /**
-     * Get a CallbackHandler instance to obtain passwords.
+     * Get a CallbackHandler instance to obtain passwords. If a PasswordCallbackCache is
+     * configured via the passwordCallbackCacheRef property (or the WSSConfig of the
+     * RequestData), then the CallbackHandler is wrapped in a CachingCallbackHandler.
      * @param reqData The RequestData which supplies the message context
      * @return the CallbackHandler instance to obtain passwords.
      * @throws WSSecurityException
      */
     public CallbackHandler getPasswordCallbackHandler(RequestData reqData) 
         throws WSSecurityException {
-        return 
+        CallbackHandler cbHandler = 
             getCallbackHandler(
                 WSHandlerConstants.PW_CALLBACK_CLASS,
                 WSHandlerConstants.PW_CALLBACK_REF,
                 reqData
             );
+        Object cache = 
+            getProperty(reqData.getMsgContext(), WSHandlerConstants.PW_CALLBACK_CACHE_REF);
+        if (cache instanceof PasswordCallbackCache) {
+            return CachingCallbackHandler.wrap(cbHandler, (PasswordCallbackCache)cache);
+        } else if (reqData.getWssConfig() != null) {
+            return 
+                CachingCallbackHandler.wrap(
+                    cbHandler, reqData.getWssConfig().getPasswordCallbackCache()
+                );
+        }
+        return cbHandler;
     }
     
     /**
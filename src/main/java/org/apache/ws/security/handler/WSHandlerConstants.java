@@ -221,6 +221,88 @@ public class WSHandlerConstants {
      * {@link javax.security.auth.callback.CallbackHandler} instance.
      */
     public static final String SAML_CALLBACK_REF = "samlCallbackRef";
+    
+    /**
+     * This tag refers to the cache of signed SAML Assertions that have been verified
+     * before. The value of this tag must be a
+     * {@link org.apache.ws.security.saml.SAMLSignatureCache} instance. If it is not set,
+     * then the signature of every received SAML Assertion is verified.
+     */
+    public static final String SAML_SIGNATURE_CACHE_REF = "samlSignatureCacheRef";
+    
+    /**
+     * This tag refers to the cache of the data of received SAML Assertions. The value of
+     * this tag must be a {@link org.apache.ws.security.saml.SAMLAssertionCache} instance.
+     * If it is not set, then every received SAML Assertion is unmarshalled and processed.
+     */
+    public static final String SAML_ASSERTION_CACHE_REF = "samlAssertionCacheRef";
+    
+    /**
+     * This tag refers to the cache of the key information of the Subject of received
+     * holder-of-key SAML Assertions. The value of this tag must be a
+     * {@link org.apache.ws.security.saml.SAMLKeyInfoCache} instance. If it is not set,
+     * then the Subject KeyInfo of every received holder-of-key SAML Assertion is parsed.
+     */
+    public static final String SAML_KEYINFO_CACHE_REF = "samlKeyInfoCacheRef";
+    
+    /**
+     * This tag refers to the cache of SAML Assertions issued by the sender. The value of
+     * this tag must be a {@link org.apache.ws.security.saml.IssuedAssertionCache} instance,
+     * and it is only used with the default SAMLIssuer implementation. If it is not set,
+     * then a new SAML Assertion is created (and signed) for every request. The application
+     * that creates the cache must close it when it is not used any more, to stop its
+     * background thread.
+     */
+    public static final String SAML_ISSUED_ASSERTION_CACHE_REF = "samlIssuedAssertionCacheRef";
+    
+    /**
+     * This tag refers to the cache of symmetric keys that have been unwrapped from received
+     * EncryptedKey elements. The value of this tag must be a
+     * {@link org.apache.ws.security.util.EncryptedKeyCache} instance. If it is not set,
+     * then every received EncryptedKey is unwrapped with the private key.
+     */
+    public static final String ENCRYPTED_KEY_CACHE_REF = "encryptedKeyCacheRef";
+    
+    /**
+     * This tag refers to the cache of keys that have been derived via received
+     * DerivedKeyToken elements. The value of this tag must be a
+     * {@link org.apache.ws.security.util.DerivedKeyCache} instance. If it is not set,
+     * then derived keys are only reused within a message.
+     */
+    public static final String DERIVED_KEY_CACHE_REF = "derivedKeyCacheRef";
+    
+    /**
+     * This tag refers to the store of established security contexts. The value of this
+     * tag must be a {@link org.apache.ws.security.conversation.SecurityContextStore}
+     * instance. If it is not set, then the secret of every received SecurityContextToken
+     * is obtained from the CallbackHandler.
+     */
+    public static final String SECURITY_CONTEXT_STORE_REF = "securityContextStoreRef";
+    
+    /**
+     * This tag refers to the cache of keys that have been derived from the passwords of
+     * received UsernameTokens. The value of this tag must be a
+     * {@link org.apache.ws.security.util.UsernameTokenKeyCache} instance. If it is not set,
+     * then every such key is derived again.
+     */
+    public static final String USERNAME_TOKEN_KEY_CACHE_REF = "usernameTokenKeyCacheRef";
+    
+    /**
+     * This tag refers to the cache of the results of password callbacks. The value of this
+     * tag must be a {@link org.apache.ws.security.util.PasswordCallbackCache} instance. If
+     * it is set, then the password CallbackHandler is wrapped in a
+     * {@link org.apache.ws.security.util.CachingCallbackHandler}, otherwise it is invoked
+     * for every password callback.
+     */
+    public static final String PW_CALLBACK_CACHE_REF = "passwordCallbackCacheRef";
+    
+    /**
+     * This tag refers to the cache of generated session keys, that are reused (together
+     * with their wrapped form) for a number of messages to the same recipient. The value
+     * of this tag must be a {@link org.apache.ws.security.util.WrappedKeyCache} instance.
+     * If it is not set, then a new session key is generated and wrapped for every message.
+     */
+    public static final String WRAPPED_KEY_CACHE_REF = "wrappedKeyCacheRef";
 
     /**
      * This tag refers to the CallbackHandler implementation class used to get the key
@@ -28,12 +28,12 @@ import org.apache.ws.security.conversation.ConversationException;
 import org.apache.ws.security.message.token.Reference;
 import org.apache.ws.security.message.token.SecurityTokenReference;
 import org.apache.ws.security.transform.STRTransform;
+import org.apache.ws.security.util.SignatureFactoryCache;
 import org.apache.ws.security.util.WSSecurityUtil;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
-import java.security.NoSuchProviderException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -91,18 +91,8 @@ public class WSSecDKSign extends WSSecDerivedKeyBase {
     }
     
     private void init() {
-        // Try to install the Santuario Provider - fall back to the JDK provider if this does
-        // not work
-        try {
-            signatureFactory = XMLSignatureFactory.getInstance("DOM", "XMLDSig");
-        } catch (NoSuchProviderException ex) {
-            signatureFactory = XMLSignatureFactory.getInstance("DOM");
-        }
-        try {
-            keyInfoFactory = KeyInfoFactory.getInstance("DOM", "XMLDSig");
-        } catch (NoSuchProviderException ex) {
-            keyInfoFactory = KeyInfoFactory.getInstance("DOM");
-        }
+        signatureFactory = SignatureFactoryCache.getXMLSignatureFactory();
+        keyInfoFactory = SignatureFactoryCache.getKeyInfoFactory();
     }
     
     public Document build(Document doc, WSSecHeader secHeader)
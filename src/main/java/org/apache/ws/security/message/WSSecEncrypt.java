@@ -24,28 +24,42 @@ import org.apache.ws.security.WSEncryptionPart;
 import org.apache.ws.security.WSSConfig;
 import org.apache.ws.security.WSSecurityException;
 import org.apache.ws.security.components.crypto.Crypto;
-import org.apache.ws.security.components.crypto.CryptoType;
 import org.apache.ws.security.message.token.KerberosSecurity;
 import org.apache.ws.security.message.token.Reference;
 import org.apache.ws.security.message.token.SecurityTokenReference;
 import org.apache.ws.security.util.Base64;
+import org.apache.ws.security.util.Base64TextOutputStream;
 import org.apache.ws.security.util.WSSecurityUtil;
+import org.apache.xml.security.c14n.Canonicalizer;
+import org.apache.xml.security.encryption.CipherData;
 import org.apache.xml.security.encryption.EncryptedData;
 import org.apache.xml.security.encryption.XMLCipher;
 import org.apache.xml.security.encryption.XMLEncryptionException;
 import org.apache.xml.security.keys.KeyInfo;
+import org.apache.xml.security.utils.EncryptionConstants;
 import org.w3c.dom.Attr;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 
-import javax.crypto.KeyGenerator;
+import javax.crypto.Cipher;
+import javax.crypto.CipherOutputStream;
 import javax.crypto.SecretKey;
 
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 
 /**
  * Encrypts a parts of a message according to WS Specification, X509 profile,
@@ -84,6 +98,10 @@ public class WSSecEncrypt extends WSSecEncryptedKey {
     private boolean encKeyIdDirectId;
     
     private boolean embedEncryptedKey;
+    
+    private Executor encryptionExecutor;
+    
+    private boolean chunkedEncryption;
  
     public WSSecEncrypt() {
         super();
@@ -116,6 +134,56 @@ public class WSSecEncrypt extends WSSecEncryptedKey {
         keyEncAlgo = keyEnc;
     }
 
+    /**
+     * Set an Executor on which the parts to encrypt are serialized and encrypted in
+     * parallel. The default is null, which means that the parts are encrypted one after 
+     * another. All parts are encrypted with the same symmetric key, but each EncryptedData
+     * gets its own Cipher instance and IV. The EncryptedData elements are inserted into the
+     * message, and are given wsu:Ids, in the same order as when encrypting sequentially.
+     * 
+     * Parts are only encrypted in parallel if none of the elements to encrypt contains 
+     * another one. Note that the elements are serialized concurrently from the same DOM
+     * tree. The DOM implementation must support concurrent read access, once the nodes 
+     * have been fully expanded by the calling thread.
+     * 
+     * @param encryptionExecutor the Executor on which to encrypt the parts
+     */
+    public void setEncryptionExecutor(Executor encryptionExecutor) {
+        this.encryptionExecutor = encryptionExecutor;
+    }
+    
+    /**
+     * @return the Executor on which the parts are encrypted, or null if they are 
+     *         encrypted sequentially
+     */
+    public Executor getEncryptionExecutor() {
+        return encryptionExecutor;
+    }
+    
+    /**
+     * Set whether the parts are encrypted in chunks, which is meant for large payloads. 
+     * The default is false. In this mode an element is serialized straight into a 
+     * CipherOutputStream, instead of into a String. The Base64-encoded cipher text is
+     * written in chunks, as a sequence of Text nodes of the CipherValue element, instead 
+     * of as a single (huge) Text node. The encrypted message is the same as in the default
+     * mode, when it is serialized.
+     * 
+     * If chunked encryption is enabled, then the parts are encrypted sequentially, even if
+     * an encryption Executor is set.
+     * 
+     * @param chunkedEncryption whether the parts are encrypted in chunks
+     */
+    public void setChunkedEncryption(boolean chunkedEncryption) {
+        this.chunkedEncryption = chunkedEncryption;
+    }
+    
+    /**
+     * @return whether the parts are encrypted in chunks
+     */
+    public boolean isChunkedEncryption() {
+        return chunkedEncryption;
+    }
+    
     /**
      * Set the key name for EMBEDDED_KEYNAME
      * 
@@ -144,41 +212,22 @@ public class WSSecEncrypt extends WSSecEncryptedKey {
         document = doc;
 
         //
-        // If no external key (symmetricalKey) was set generate an encryption
-        // key (session key) for this Encrypt element. This key will be
-        // encrypted using the public key of the receiver
+        // Get the certificate that contains the public key for the public key
+        // algorithm that will encrypt the generated symmetric (session) key.
         //
-        if (ephemeralKey == null) {
-            if (symmetricKey == null) {
-                KeyGenerator keyGen = getKeyGenerator();
-                symmetricKey = keyGen.generateKey();
-            } 
-            ephemeralKey = symmetricKey.getEncoded();
-        }
-        
-        if (symmetricKey == null) {
-            symmetricKey = WSSecurityUtil.prepareSecretKey(symEncAlgo, ephemeralKey);
+        X509Certificate remoteCert = null;
+        if (encryptSymmKey) {
+            remoteCert = getRemoteCert(crypto);
         }
         
         //
-        // Get the certificate that contains the public key for the public key
-        // algorithm that will encrypt the generated symmetric (session) key.
+        // If no external key (symmetricalKey) was set generate an encryption
+        // key (session key) for this Encrypt element. This key will be
+        // encrypted using the public key of the receiver
         //
+        prepareEphemeralKey(remoteCert);
+        
         if (encryptSymmKey) {
-            X509Certificate remoteCert = useThisCert;
-            if (remoteCert == null) {
-                CryptoType cryptoType = new CryptoType(CryptoType.TYPE.ALIAS);
-                cryptoType.setAlias(user);
-                X509Certificate[] certs = crypto.getX509Certificates(cryptoType);
-                if (certs == null || certs.length <= 0) {
-                    throw new WSSecurityException(
-                        WSSecurityException.FAILURE,
-                        "noUserCertsFound", 
-                        new Object[] { user, "encryption" }
-                    );
-                }
-                remoteCert = certs[0];
-            }
             prepareInternal(symmetricKey, remoteCert, crypto);
         } else {
             encryptedEphemeralKey = ephemeralKey;
@@ -288,7 +337,8 @@ public class WSSecEncrypt extends WSSecEncryptedKey {
         KeyInfo keyInfo = createKeyInfo();
         List<String> encDataRefs = 
             doEncryption(
-                document, getWsConfig(), keyInfo, symmetricKey, symEncAlgo, references, callbackLookup
+                document, getWsConfig(), keyInfo, symmetricKey, symEncAlgo, references, 
+                callbackLookup, encryptionExecutor, chunkedEncryption
             );
         if (dataRef == null) {
             dataRef = 
@@ -372,6 +422,80 @@ public class WSSecEncrypt extends WSSecEncryptedKey {
         List<WSEncryptionPart> references,
         CallbackLookup callbackLookup
     ) throws WSSecurityException {
+        return 
+            doEncryption(
+                doc, config, keyInfo, secretKey, encryptionAlgorithm, references,
+                callbackLookup, null
+            );
+    }
+    
+    /**
+     * Perform encryption on the SOAP envelope.
+     * @param doc The document containing the SOAP envelope as document element
+     * @param config The WSSConfig from which to generate wsu:ID's
+     * @param keyInfo The KeyInfo object to set in EncryptedData
+     * @param secretKey The SecretKey object with which to encrypt data
+     * @param encryptionAlgorithm The encryption algorithm URI to use
+     * @param references The list of references to encrypt
+     * @param executor The Executor on which to encrypt the references in parallel, or null
+     * @return a List of references to EncryptedData elements
+     * @throws WSSecurityException
+     */
+    public static List<String> doEncryption(
+        Document doc,
+        WSSConfig config,
+        KeyInfo keyInfo,
+        SecretKey secretKey,
+        String encryptionAlgorithm,
+        List<WSEncryptionPart> references,
+        CallbackLookup callbackLookup,
+        Executor executor
+    ) throws WSSecurityException {
+        return 
+            doEncryption(
+                doc, config, keyInfo, secretKey, encryptionAlgorithm, references,
+                callbackLookup, executor, false
+            );
+    }
+    
+    /**
+     * Perform encryption on the SOAP envelope.
+     * @param doc The document containing the SOAP envelope as document element
+     * @param config The WSSConfig from which to generate wsu:ID's
+     * @param keyInfo The KeyInfo object to set in EncryptedData
+     * @param secretKey The SecretKey object with which to encrypt data
+     * @param encryptionAlgorithm The encryption algorithm URI to use
+     * @param references The list of references to encrypt
+     * @param executor The Executor on which to encrypt the references in parallel, or null
+     * @param chunked Whether to encrypt the references in chunks. If this is true, then
+     *                the references are encrypted sequentially.
+     * @return a List of references to EncryptedData elements
+     * @throws WSSecurityException
+     */
+    public static List<String> doEncryption(
+        Document doc,
+        WSSConfig config,
+        KeyInfo keyInfo,
+        SecretKey secretKey,
+        String encryptionAlgorithm,
+        List<WSEncryptionPart> references,
+        CallbackLookup callbackLookup,
+        Executor executor,
+        boolean chunked
+    ) throws WSSecurityException {
+        if (callbackLookup == null) {
+            callbackLookup = new DOMCallbackLookup(doc);
+        }
+        if (executor != null && !chunked) {
+            List<String> encDataRef = 
+                doParallelEncryption(
+                    doc, config, keyInfo, secretKey, encryptionAlgorithm, references,
+                    callbackLookup, executor
+                );
+            if (encDataRef != null) {
+                return encDataRef;
+            }
+        }
 
         XMLCipher xmlCipher = null;
         try {
@@ -405,7 +529,7 @@ public class WSSecEncrypt extends WSSecEncryptedKey {
             for (Element elementToEncrypt : elementsToEncrypt) {
                 String id = 
                     encryptElement(doc, elementToEncrypt, modifier, config, xmlCipher, 
-                                   secretKey, keyInfo);
+                                   secretKey, keyInfo, encryptionAlgorithm, chunked);
                 encPart.setEncId(id);
                 encDataRef.add("#" + id);
             }
@@ -423,6 +547,175 @@ public class WSSecEncrypt extends WSSecEncryptedKey {
         return encDataRef;
     }
     
+    /**
+     * Encrypt the references in parallel on the given Executor. The elements to encrypt
+     * are located, wsu:Ids are allocated and EncryptedHeader elements are created by the
+     * calling thread, in the same order as when encrypting sequentially. The elements are
+     * then serialized and encrypted concurrently, and finally replaced by the resulting
+     * EncryptedData elements in order.
+     * 
+     * @return a List of references to EncryptedData elements, or null if the references
+     *         can not be encrypted in parallel, as an element to encrypt contains another one
+     */
+    private static List<String> doParallelEncryption(
+        Document doc,
+        final WSSConfig config,
+        KeyInfo keyInfo,
+        final SecretKey secretKey,
+        final String encryptionAlgorithm,
+        List<WSEncryptionPart> references,
+        CallbackLookup callbackLookup,
+        Executor executor
+    ) throws WSSecurityException {
+        List<List<Element>> elementsPerPart = new ArrayList<List<Element>>(references.size());
+        Set<Element> allElements = new HashSet<Element>();
+        for (WSEncryptionPart encPart : references) {
+            List<Element> elementsToEncrypt = 
+                WSSecurityUtil.findElements(encPart, callbackLookup, doc);
+            if (elementsToEncrypt == null || elementsToEncrypt.size() == 0) {
+                throw new WSSecurityException(
+                    WSSecurityException.FAILURE,
+                    "noEncElement", 
+                    new Object[] {"{" + encPart.getNamespace() + "}" + encPart.getName()}
+                );
+            }
+            for (Element elementToEncrypt : elementsToEncrypt) {
+                if (!allElements.add(elementToEncrypt)) {
+                    return null;
+                }
+            }
+            elementsPerPart.add(elementsToEncrypt);
+        }
+        if (allElements.size() < 2) {
+            return null;
+        }
+        for (Element elementToEncrypt : allElements) {
+            Node parent = elementToEncrypt.getParentNode();
+            while (parent != null) {
+                if (allElements.contains(parent)) {
+                    return null;
+                }
+                parent = parent.getParentNode();
+            }
+        }
+        
+        //
+        // Allocate the wsu:Ids and create the EncryptedHeader elements in order
+        //
+        List<Element> elements = new ArrayList<Element>(allElements.size());
+        List<String> ids = new ArrayList<String>(allElements.size());
+        List<KeyInfo> keyInfos = new ArrayList<KeyInfo>(allElements.size());
+        List<Boolean> contents = new ArrayList<Boolean>(allElements.size());
+        for (int part = 0; part < references.size(); part++) {
+            WSEncryptionPart encPart = references.get(part);
+            String modifier = encPart.getEncModifier();
+            for (Element elementToEncrypt : elementsPerPart.get(part)) {
+                String id = config.getIdAllocator().createId("ED-", elementToEncrypt);
+                if ("Header".equals(modifier)) {
+                    createEncryptedHeader(doc, elementToEncrypt, config);
+                }
+                elements.add(elementToEncrypt);
+                ids.add(id);
+                keyInfos.add(keyInfo);
+                contents.add(Boolean.valueOf("Content".equals(modifier)));
+                encPart.setEncId(id);
+            }
+            if (part != (references.size() - 1)) {
+                try {
+                    keyInfo = new KeyInfo((Element) keyInfo.getElement().cloneNode(true), null);
+                } catch (Exception ex) {
+                    throw new WSSecurityException(
+                        WSSecurityException.FAILED_ENCRYPTION, null, null, ex
+                    );
+                }
+            }
+        }
+        
+        //
+        // Serialize and encrypt the elements concurrently. The DOM is not modified until
+        // all of the tasks have completed.
+        //
+        for (Element element : elements) {
+            WSSecSignatureBase.expandNodes(element);
+        }
+        final Document document = doc;
+        List<FutureTask<EncryptedData>> tasks = 
+            new ArrayList<FutureTask<EncryptedData>>(elements.size());
+        for (int i = 0; i < elements.size(); i++) {
+            final Element element = elements.get(i);
+            final boolean content = contents.get(i).booleanValue();
+            FutureTask<EncryptedData> task = 
+                new FutureTask<EncryptedData>(new Callable<EncryptedData>() {
+                    public EncryptedData call() throws Exception {
+                        XMLCipher xmlCipher = XMLCipher.getInstance(encryptionAlgorithm);
+                        xmlCipher.init(XMLCipher.ENCRYPT_MODE, secretKey);
+                        EncryptedData encData = xmlCipher.encryptData(document, element, content);
+                        return encData;
+                    }
+                });
+            tasks.add(task);
+            executor.execute(task);
+        }
+        List<EncryptedData> encryptedData = new ArrayList<EncryptedData>(tasks.size());
+        WSSecurityException failure = null;
+        for (FutureTask<EncryptedData> task : tasks) {
+            try {
+                encryptedData.add(task.get());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                if (failure == null) {
+                    failure = 
+                        new WSSecurityException(
+                            WSSecurityException.FAILED_ENCRYPTION, null, null, ex
+                        );
+                }
+            } catch (ExecutionException ex) {
+                log.error("", ex.getCause());
+                if (failure == null) {
+                    failure = 
+                        new WSSecurityException(
+                            WSSecurityException.FAILED_ENCRYPTION, null, null, ex.getCause()
+                        );
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        
+        //
+        // Replace the elements with the EncryptedData elements in order
+        //
+        List<String> encDataRef = new ArrayList<String>(elements.size());
+        XMLCipher xmlCipher = null;
+        try {
+            xmlCipher = XMLCipher.getInstance(encryptionAlgorithm);
+            for (int i = 0; i < elements.size(); i++) {
+                Element element = elements.get(i);
+                EncryptedData encData = encryptedData.get(i);
+                encData.setId(ids.get(i));
+                encData.setKeyInfo(keyInfos.get(i));
+                Element encDataElement = xmlCipher.martial(doc, encData);
+                if (contents.get(i).booleanValue()) {
+                    Node child = element.getFirstChild();
+                    while (child != null) {
+                        element.removeChild(child);
+                        child = element.getFirstChild();
+                    }
+                    element.appendChild(encDataElement);
+                } else {
+                    element.getParentNode().replaceChild(encDataElement, element);
+                }
+                encDataRef.add("#" + ids.get(i));
+            }
+        } catch (Exception ex) {
+            throw new WSSecurityException(
+                WSSecurityException.FAILED_ENCRYPTION, null, null, ex
+            );
+        }
+        return encDataRef;
+    }
+    
     /**
      * Encrypt an element.
      */
@@ -433,7 +726,9 @@ public class WSSecEncrypt extends WSSecEncryptedKey {
         WSSConfig config,
         XMLCipher xmlCipher,
         SecretKey secretKey,
-        KeyInfo keyInfo
+        KeyInfo keyInfo,
+        String encryptionAlgorithm,
+        boolean chunked
     ) throws WSSecurityException {
 
         boolean content = "Content".equals(modifier) ? true : false;
@@ -443,46 +738,17 @@ public class WSSecEncrypt extends WSSecEncryptedKey {
         String xencEncryptedDataId = 
             config.getIdAllocator().createId("ED-", elementToEncrypt);
         try {
-            String headerId = "";
             if ("Header".equals(modifier)) {
-                Element elem = 
-                    doc.createElementNS(
-                        WSConstants.WSSE11_NS, "wsse11:" + WSConstants.ENCRYPTED_HEADER
-                    );
-                WSSecurityUtil.setNamespace(elem, WSConstants.WSSE11_NS, WSConstants.WSSE11_PREFIX);
-                String wsuPrefix = 
-                    WSSecurityUtil.setNamespace(elem, WSConstants.WSU_NS, WSConstants.WSU_PREFIX);
-                headerId = config.getIdAllocator().createId("EH-", elementToEncrypt);
-                elem.setAttributeNS(
-                    WSConstants.WSU_NS, wsuPrefix + ":Id", headerId
-                );
-                //
-                // Add the EncryptedHeader node to the element to be encrypted's parent
-                // (i.e. the SOAP header). Add the element to be encrypted to the Encrypted
-                // Header node as well
-                //
-                Node parent = elementToEncrypt.getParentNode();
-                elementToEncrypt = (Element)parent.replaceChild(elem, elementToEncrypt);
-                elem.appendChild(elementToEncrypt);
-                
-                NamedNodeMap map = elementToEncrypt.getAttributes();
-                for (int i = 0; i < map.getLength(); i++) {
-                    Attr attr = (Attr)map.item(i);
-                    if (attr.getNamespaceURI().equals(WSConstants.URI_SOAP11_ENV)
-                        || attr.getNamespaceURI().equals(WSConstants.URI_SOAP12_ENV)) {                         
-                        String soapEnvPrefix = 
-                            WSSecurityUtil.setNamespace(
-                                elem, attr.getNamespaceURI(), WSConstants.DEFAULT_SOAP_PREFIX
-                            );
-                        elem.setAttributeNS(
-                            attr.getNamespaceURI(), 
-                            soapEnvPrefix + ":" + attr.getLocalName(), 
-                            attr.getValue()
-                        );
-                    }
-                }
+                createEncryptedHeader(doc, elementToEncrypt, config);
             }
             
+            if (chunked) {
+                encryptElementChunked(
+                    doc, elementToEncrypt, content, xmlCipher, secretKey, keyInfo,
+                    encryptionAlgorithm, xencEncryptedDataId
+                );
+                return xencEncryptedDataId;
+            }
             xmlCipher.init(XMLCipher.ENCRYPT_MODE, secretKey);
             EncryptedData encData = xmlCipher.getEncryptedData();
             encData.setId(xencEncryptedDataId);
@@ -496,6 +762,138 @@ public class WSSecEncrypt extends WSSecEncryptedKey {
         }
     }
     
+    /**
+     * Encrypt an element (or its content) in chunks. The element is serialized (in the same
+     * way as XMLCipher does) straight into a CipherOutputStream, and the Base64-encoded cipher
+     * text is appended in chunks to the CipherValue element. The element (or its content) is 
+     * then replaced by the EncryptedData element.
+     */
+    private static void encryptElementChunked(
+        Document doc,
+        Element elementToEncrypt,
+        boolean content,
+        XMLCipher xmlCipher,
+        SecretKey secretKey,
+        KeyInfo keyInfo,
+        String encryptionAlgorithm,
+        String xencEncryptedDataId
+    ) throws Exception {
+        xmlCipher.init(XMLCipher.ENCRYPT_MODE, secretKey);
+        EncryptedData encData = xmlCipher.createEncryptedData(CipherData.VALUE_TYPE, "");
+        encData.setId(xencEncryptedDataId);
+        encData.setType(
+            content ? EncryptionConstants.TYPE_CONTENT : EncryptionConstants.TYPE_ELEMENT
+        );
+        encData.setEncryptionMethod(xmlCipher.createEncryptionMethod(encryptionAlgorithm));
+        encData.setKeyInfo(keyInfo);
+        Element encDataElement = xmlCipher.martial(doc, encData);
+        Element cipherData = 
+            WSSecurityUtil.getDirectChildElement(
+                encDataElement, "CipherData", WSConstants.ENC_NS
+            );
+        Element cipherValue = 
+            WSSecurityUtil.getDirectChildElement(cipherData, "CipherValue", WSConstants.ENC_NS);
+        while (cipherValue.getFirstChild() != null) {
+            cipherValue.removeChild(cipherValue.getFirstChild());
+        }
+        
+        //
+        // The cipher text is the IV followed by the encrypted octets
+        //
+        Cipher cipher = WSSecurityUtil.getCipherInstance(encryptionAlgorithm);
+        cipher.init(Cipher.ENCRYPT_MODE, secretKey);
+        OutputStream base64Stream = new Base64TextOutputStream(cipherValue);
+        byte[] iv = cipher.getIV();
+        if (iv != null) {
+            base64Stream.write(iv);
+        }
+        final OutputStream out = 
+            new BufferedOutputStream(new CipherOutputStream(base64Stream, cipher));
+        Canonicalizer canon = Canonicalizer.getInstance(Canonicalizer.ALGO_ID_C14N_WITH_COMMENTS);
+        // The Canonicalizer closes the stream after each subtree
+        canon.setWriter(new FilterOutputStream(out) {
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+            
+            public void close() throws IOException {
+                out.flush();
+            }
+        });
+        canon.notReset();
+        if (content) {
+            Node child = elementToEncrypt.getFirstChild();
+            if (child == null) {
+                throw new XMLEncryptionException(
+                    "empty", new Object[] {"Element has no content."}
+                );
+            }
+            for (; child != null; child = child.getNextSibling()) {
+                canon.canonicalizeSubtree(child);
+            }
+        } else {
+            canon.canonicalizeSubtree(elementToEncrypt);
+        }
+        out.close();
+        
+        if (content) {
+            Node child = elementToEncrypt.getFirstChild();
+            while (child != null) {
+                elementToEncrypt.removeChild(child);
+                child = elementToEncrypt.getFirstChild();
+            }
+            elementToEncrypt.appendChild(encDataElement);
+        } else {
+            elementToEncrypt.getParentNode().replaceChild(encDataElement, elementToEncrypt);
+        }
+    }
+    
+    /**
+     * Wrap the given (SOAP header) element in a wsse11:EncryptedHeader element.
+     */
+    private static void createEncryptedHeader(
+        Document doc,
+        Element elementToEncrypt,
+        WSSConfig config
+    ) {
+        Element elem = 
+            doc.createElementNS(
+                WSConstants.WSSE11_NS, "wsse11:" + WSConstants.ENCRYPTED_HEADER
+            );
+        WSSecurityUtil.setNamespace(elem, WSConstants.WSSE11_NS, WSConstants.WSSE11_PREFIX);
+        String wsuPrefix = 
+            WSSecurityUtil.setNamespace(elem, WSConstants.WSU_NS, WSConstants.WSU_PREFIX);
+        String headerId = config.getIdAllocator().createId("EH-", elementToEncrypt);
+        elem.setAttributeNS(
+            WSConstants.WSU_NS, wsuPrefix + ":Id", headerId
+        );
+        //
+        // Add the EncryptedHeader node to the element to be encrypted's parent
+        // (i.e. the SOAP header). Add the element to be encrypted to the Encrypted
+        // Header node as well
+        //
+        Node parent = elementToEncrypt.getParentNode();
+        parent.replaceChild(elem, elementToEncrypt);
+        elem.appendChild(elementToEncrypt);
+        
+        NamedNodeMap map = elementToEncrypt.getAttributes();
+        for (int i = 0; i < map.getLength(); i++) {
+            Attr attr = (Attr)map.item(i);
+            if (attr.getNamespaceURI().equals(WSConstants.URI_SOAP11_ENV)
+                || attr.getNamespaceURI().equals(WSConstants.URI_SOAP12_ENV)) {                         
+                String soapEnvPrefix = 
+                    WSSecurityUtil.setNamespace(
+                        elem, attr.getNamespaceURI(), WSConstants.DEFAULT_SOAP_PREFIX
+                    );
+                elem.setAttributeNS(
+                    attr.getNamespaceURI(), 
+                    soapEnvPrefix + ":" + attr.getLocalName(), 
+                    attr.getValue()
+                );
+            }
+        }
+    }
+    
     /**
      * Create a KeyInfo object
      */
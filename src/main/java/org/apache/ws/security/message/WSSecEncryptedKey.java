@@ -40,6 +40,7 @@ import org.apache.ws.security.message.token.Reference;
 import org.apache.ws.security.message.token.SecurityTokenReference;
 import org.apache.ws.security.message.token.X509Security;
 import org.apache.ws.security.util.UUIDGenerator;
+import org.apache.ws.security.util.WrappedKeyCache;
 import org.apache.ws.security.util.WSSecurityUtil;
 import org.apache.xml.security.algorithms.JCEMapper;
 
@@ -127,6 +128,22 @@ public class WSSecEncryptedKey extends WSSecBase {
     
     protected X509Certificate useThisCert = null;
     
+    /**
+     * The (optional) cache of session keys that are reused for several messages to the
+     * same recipient
+     */
+    protected WrappedKeyCache wrappedKeyCache = null;
+    
+    /**
+     * The cached session key that is reused for this message, if any
+     */
+    private WrappedKeyCache.WrappedKey reusedKey = null;
+    
+    /**
+     * Whether the session key was generated for this message
+     */
+    private boolean generatedKey;
+    
     public WSSecEncryptedKey() {
         super();
     }
@@ -159,6 +176,26 @@ public class WSSecEncryptedKey extends WSSecBase {
         return encKeyId;
     }
 
+    /**
+     * Set the cache of session keys. If it is set, then a generated session key and
+     * its wrapped form are reused for a number of messages to the same recipient, which
+     * saves the public key operation to wrap the session key. A session key that was set
+     * explicitly (via setEphemeralKey or setSymmetricKey) is never cached.
+     * 
+     * @param wrappedKeyCache the cache of session keys, or null to generate and wrap a
+     *                        session key for every message (the default)
+     */
+    public void setWrappedKeyCache(WrappedKeyCache wrappedKeyCache) {
+        this.wrappedKeyCache = wrappedKeyCache;
+    }
+    
+    /**
+     * @return the cache of session keys, or null
+     */
+    public WrappedKeyCache getWrappedKeyCache() {
+        return wrappedKeyCache;
+    }
+
     /**
      * Prepare the ephemeralKey and the tokens required to be added to the
      * security header
@@ -171,13 +208,68 @@ public class WSSecEncryptedKey extends WSSecBase {
 
         document = doc;
 
+        //
+        // Get the certificate that contains the public key for the public key
+        // algorithm that will encrypt the generated symmetric (session) key.
+        //
+        X509Certificate remoteCert = getRemoteCert(crypto);
+        
         //
         // Set up the ephemeral key
         //
+        prepareEphemeralKey(remoteCert);
+        
+        prepareInternal(symmetricKey, remoteCert, crypto);
+    }
+    
+    /**
+     * Get the certificate of the recipient, i.e. the certificate that is set via 
+     * setUseThisCert, or the certificate of the user.
+     * 
+     * @param crypto An instance of the Crypto API to handle keystore and certificates
+     * @return the certificate of the recipient
+     * @throws WSSecurityException if no certificate is found
+     */
+    protected X509Certificate getRemoteCert(Crypto crypto) throws WSSecurityException {
+        if (useThisCert != null) {
+            return useThisCert;
+        }
+        CryptoType cryptoType = new CryptoType(CryptoType.TYPE.ALIAS);
+        cryptoType.setAlias(user);
+        X509Certificate[] certs = crypto.getX509Certificates(cryptoType);
+        if (certs == null || certs.length <= 0) {
+            throw new WSSecurityException(
+                WSSecurityException.FAILURE,
+                "noUserCertsFound", 
+                new Object[] {user, "encryption"}
+            );
+        }
+        return certs[0];
+    }
+    
+    /**
+     * Set up the ephemeral key, if it was not set explicitly. A cached session key for
+     * the recipient is reused if possible, otherwise a new key is generated.
+     * 
+     * @param remoteCert The certificate of the recipient, or null if the session key
+     *                   is not wrapped
+     * @throws WSSecurityException
+     */
+    protected void prepareEphemeralKey(X509Certificate remoteCert) throws WSSecurityException {
+        reusedKey = null;
+        generatedKey = false;
         if (ephemeralKey == null) {
             if (symmetricKey == null) {
-                KeyGenerator keyGen = getKeyGenerator();
-                symmetricKey = keyGen.generateKey();
+                if (wrappedKeyCache != null && remoteCert != null) {
+                    reusedKey = wrappedKeyCache.get(remoteCert, keyEncAlgo, symEncAlgo);
+                }
+                if (reusedKey != null) {
+                    symmetricKey = reusedKey.getSecretKey();
+                } else {
+                    KeyGenerator keyGen = getKeyGenerator();
+                    symmetricKey = keyGen.generateKey();
+                    generatedKey = true;
+                }
             } 
             ephemeralKey = symmetricKey.getEncoded();
         }
@@ -185,27 +277,6 @@ public class WSSecEncryptedKey extends WSSecBase {
         if (symmetricKey == null) {
             symmetricKey = WSSecurityUtil.prepareSecretKey(symEncAlgo, ephemeralKey);
         }
-
-        //
-        // Get the certificate that contains the public key for the public key
-        // algorithm that will encrypt the generated symmetric (session) key.
-        //
-        X509Certificate remoteCert = useThisCert;
-        if (remoteCert == null) {
-            CryptoType cryptoType = new CryptoType(CryptoType.TYPE.ALIAS);
-            cryptoType.setAlias(user);
-            X509Certificate[] certs = crypto.getX509Certificates(cryptoType);
-            if (certs == null || certs.length <= 0) {
-                throw new WSSecurityException(
-                    WSSecurityException.FAILURE,
-                    "noUserCertsFound", 
-                    new Object[] {user, "encryption"}
-                );
-            }
-            remoteCert = certs[0];
-        }
-        
-        prepareInternal(symmetricKey, remoteCert, crypto);
     }
 
     /**
@@ -225,35 +296,15 @@ public class WSSecEncryptedKey extends WSSecBase {
         X509Certificate remoteCert,
         Crypto crypto
     ) throws WSSecurityException {
-        Cipher cipher = WSSecurityUtil.getCipherInstance(keyEncAlgo);
-        try {
-            cipher.init(Cipher.WRAP_MODE, remoteCert);
-        } catch (InvalidKeyException e) {
-            throw new WSSecurityException(
-                WSSecurityException.FAILED_ENCRYPTION, null, null, e
-            );
-        }
-        int blockSize = cipher.getBlockSize();
-        if (doDebug) {
-            log.debug(
-                "cipher blksize: " + blockSize + ", symm key: " + secretKey.toString()
-            );
-        }
-        
-        try {
-            encryptedEphemeralKey = cipher.wrap(secretKey);
-        } catch (IllegalStateException ex) {
-            throw new WSSecurityException(
-                WSSecurityException.FAILED_ENCRYPTION, null, null, ex
-            );
-        } catch (IllegalBlockSizeException ex) {
-            throw new WSSecurityException(
-                WSSecurityException.FAILED_ENCRYPTION, null, null, ex
-            );
-        } catch (InvalidKeyException ex) {
-            throw new WSSecurityException(
-                WSSecurityException.FAILED_ENCRYPTION, null, null, ex
-            );
+        if (reusedKey != null && reusedKey.getSecretKey() == secretKey) {
+            encryptedEphemeralKey = reusedKey.getEncryptedKey();
+        } else {
+            encryptedEphemeralKey = wrapKey(secretKey, remoteCert);
+            if (generatedKey && wrappedKeyCache != null && secretKey == symmetricKey) {
+                wrappedKeyCache.put(
+                    remoteCert, keyEncAlgo, symEncAlgo, secretKey, encryptedEphemeralKey
+                );
+            }
         }
         Text keyText = 
             WSSecurityUtil.createBase64EncodedTextNode(document, encryptedEphemeralKey);
@@ -383,6 +434,44 @@ public class WSSecEncryptedKey extends WSSecBase {
         envelope = document.getDocumentElement();
     }
 
+    /**
+     * Wrap the symmetric key with the public key of the recipient
+     */
+    private byte[] wrapKey(
+        SecretKey secretKey, X509Certificate remoteCert
+    ) throws WSSecurityException {
+        Cipher cipher = WSSecurityUtil.getCipherInstance(keyEncAlgo);
+        try {
+            cipher.init(Cipher.WRAP_MODE, remoteCert);
+        } catch (InvalidKeyException e) {
+            throw new WSSecurityException(
+                WSSecurityException.FAILED_ENCRYPTION, null, null, e
+            );
+        }
+        int blockSize = cipher.getBlockSize();
+        if (doDebug) {
+            log.debug(
+                "cipher blksize: " + blockSize + ", symm key: " + secretKey.toString()
+            );
+        }
+        
+        try {
+            return cipher.wrap(secretKey);
+        } catch (IllegalStateException ex) {
+            throw new WSSecurityException(
+                WSSecurityException.FAILED_ENCRYPTION, null, null, ex
+            );
+        } catch (IllegalBlockSizeException ex) {
+            throw new WSSecurityException(
+                WSSecurityException.FAILED_ENCRYPTION, null, null, ex
+            );
+        } catch (InvalidKeyException ex) {
+            throw new WSSecurityException(
+                WSSecurityException.FAILED_ENCRYPTION, null, null, ex
+            );
+        }
+    }
+
     protected KeyGenerator getKeyGenerator() throws WSSecurityException {
         try {
             //
@@ -36,13 +36,13 @@ import org.apache.ws.security.message.token.SecurityTokenReference;
 import org.apache.ws.security.message.token.X509Security;
 import org.apache.ws.security.transform.STRTransform;
 import org.apache.ws.security.util.Base64;
+import org.apache.ws.security.util.SignatureFactoryCache;
 import org.apache.ws.security.util.WSSecurityUtil;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
-import java.security.NoSuchProviderException;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.List;
@@ -108,6 +108,7 @@ public class WSSecSignature extends WSSecSignatureBase {
     private X509Certificate useThisCert = null;
     private Element securityHeader = null;
     private boolean useCustomSecRef;
+    private WSSecSignatureTemplate signatureTemplate = null;
 
     public WSSecSignature() {
         super();
@@ -120,18 +121,8 @@ public class WSSecSignature extends WSSecSignatureBase {
     }
     
     private void init() {
-        // Try to install the Santuario Provider - fall back to the JDK provider if this does
-        // not work
-        try {
-            signatureFactory = XMLSignatureFactory.getInstance("DOM", "XMLDSig");
-        } catch (NoSuchProviderException ex) {
-            signatureFactory = XMLSignatureFactory.getInstance("DOM");
-        }
-        try {
-            keyInfoFactory = KeyInfoFactory.getInstance("DOM", "XMLDSig");
-        } catch (NoSuchProviderException ex) {
-            keyInfoFactory = KeyInfoFactory.getInstance("DOM");
-        }
+        signatureFactory = SignatureFactoryCache.getXMLSignatureFactory();
+        keyInfoFactory = SignatureFactoryCache.getKeyInfoFactory();
     }
    
     /**
@@ -157,6 +148,7 @@ public class WSSecSignature extends WSSecSignatureBase {
         // retrieval
         //
         crypto = cr;
+        signatureTemplate = null;
         document = doc;
         wsDocInfo = new WSDocInfo(doc);
         wsDocInfo.setCrypto(cr);
@@ -167,21 +159,7 @@ public class WSSecSignature extends WSSecSignatureBase {
         //
         X509Certificate[] certs = getSigningCerts();
 
-        try {
-            C14NMethodParameterSpec c14nSpec = null;
-            if (getWsConfig().isWsiBSPCompliant() && canonAlgo.equals(WSConstants.C14N_EXCL_OMIT_COMMENTS)) {
-                List<String> prefixes = 
-                    getInclusivePrefixes(secHeader.getSecurityHeader(), false);
-                c14nSpec = new ExcC14NParameterSpec(prefixes);
-            }
-            
-           c14nMethod = signatureFactory.newCanonicalizationMethod(canonAlgo, c14nSpec);
-        } catch (Exception ex) {
-            log.error("", ex);
-            throw new WSSecurityException(
-                WSSecurityException.FAILED_SIGNATURE, "noXMLSig", null, ex
-            );
-        }
+        createCanonicalizationMethod(secHeader);
 
         keyInfoUri = getWsConfig().getIdAllocator().createSecureId("KI-", keyInfo);
         if (!useCustomSecRef) {
@@ -336,6 +314,136 @@ public class WSSecSignature extends WSSecSignatureBase {
     }
     
     
+    /**
+     * Create a template that holds the message-independent parts of this Signature, i.e.
+     * the signing certificate(s) and private key, the signature algorithm and the encoded
+     * key identifier data. The user, password, key identifier type and algorithms must be
+     * set before calling this method. The template can then be passed to 
+     * <code>prepareFromTemplate()</code> or <code>buildFromTemplate()</code> for each message.
+     * 
+     * Only the X.509 key identifier types (BST_DIRECT_REFERENCE, ISSUER_SERIAL,
+     * X509_KEY_IDENTIFIER, SKI_KEY_IDENTIFIER, THUMBPRINT_IDENTIFIER and KEY_VALUE) are
+     * supported.
+     * 
+     * @param cr An instance of the Crypto API to handle keystore and certificates
+     * @return a new WSSecSignatureTemplate
+     * @throws WSSecurityException
+     */
+    public WSSecSignatureTemplate createTemplate(Crypto cr) throws WSSecurityException {
+        crypto = cr;
+        X509Certificate[] certs = getSigningCerts();
+        if (certs == null) {
+            throw new WSSecurityException(WSSecurityException.FAILURE, "unsupportedKeyId");
+        }
+        return 
+            new WSSecSignatureTemplate(
+                cr, user, password, keyIdentifierType, useSingleCert, 
+                sigAlgo, canonAlgo, digestAlgo, certs
+            );
+    }
+    
+    /**
+     * Initialize a WSSec Signature from a template created by <code>createTemplate()</code>.
+     * 
+     * This method behaves as <code>prepare(Document, Crypto, WSSecHeader)</code>, except that
+     * the certificates, private key and key identifier data are taken from the template,
+     * rather than being retrieved from the Crypto instance. The user, key identifier type
+     * and algorithms set on this object are replaced with those of the template.
+     * 
+     * @param doc The SOAP envelope as <code>Document</code>
+     * @param template The template holding the message-independent parts of the Signature
+     * @param secHeader The security header that will hold the Signature.
+     * @throws WSSecurityException
+     */
+    public void prepareFromTemplate(
+        Document doc, WSSecSignatureTemplate template, WSSecHeader secHeader
+    ) throws WSSecurityException {
+        signatureTemplate = template;
+        crypto = template.getCrypto();
+        user = template.getUser();
+        keyIdentifierType = template.getKeyIdentifierType();
+        useSingleCert = template.isUseSingleCertificate();
+        sigAlgo = template.getSignatureAlgorithm();
+        canonAlgo = template.getSigCanonicalization();
+        digestAlgo = template.getDigestAlgo();
+        useCustomSecRef = false;
+        
+        document = doc;
+        wsDocInfo = new WSDocInfo(doc);
+        wsDocInfo.setCrypto(crypto);
+        securityHeader = secHeader.getSecurityHeader();
+        
+        X509Certificate cert = template.getX509Certificate();
+        certUri = getWsConfig().getIdAllocator().createSecureId("X509-", cert);
+        
+        createCanonicalizationMethod(secHeader);
+
+        keyInfoUri = getWsConfig().getIdAllocator().createSecureId("KI-", keyInfo);
+        secRef = new SecurityTokenReference(doc);
+        strUri = getWsConfig().getIdAllocator().createSecureId("STR-", secRef);
+        secRef.setID(strUri);
+        
+        switch (keyIdentifierType) {
+        case WSConstants.BST_DIRECT_REFERENCE:
+            Reference ref = new Reference(document);
+            ref.setURI("#" + certUri);
+            if (!useSingleCert) {
+                bstToken = new PKIPathSecurity(document);
+                secRef.addTokenType(PKIPathSecurity.PKI_TYPE);
+            } else {
+                bstToken = new X509Security(document);
+            }
+            bstToken.setToken(template.getTokenData());
+            ref.setValueType(bstToken.getValueType());
+            secRef.setReference(ref);
+            bstToken.setID(certUri);
+            wsDocInfo.addTokenElement(bstToken.getElement(), false);
+            break;
+            
+        case WSConstants.ISSUER_SERIAL:
+            DOMX509IssuerSerial domIssuerSerial = 
+                new DOMX509IssuerSerial(doc, template.getIssuer(), template.getSerialNumber());
+            DOMX509Data domX509Data = new DOMX509Data(doc, domIssuerSerial);
+            secRef.setX509Data(domX509Data);
+            break;
+            
+        case WSConstants.X509_KEY_IDENTIFIER:
+        case WSConstants.SKI_KEY_IDENTIFIER:
+        case WSConstants.THUMBPRINT_IDENTIFIER:
+            secRef.setKeyIdentifier(
+                template.getKeyIdentifierValueType(), template.getKeyIdentifierValue(), true
+            );
+            break;
+            
+        case WSConstants.KEY_VALUE:
+            try {
+                KeyValue keyValue = keyInfoFactory.newKeyValue(cert.getPublicKey());
+                keyInfo = 
+                    keyInfoFactory.newKeyInfo(
+                        java.util.Collections.singletonList(keyValue), keyInfoUri
+                    );
+            } catch (java.security.KeyException ex) {
+                log.error("", ex);
+                throw new WSSecurityException(
+                    WSSecurityException.FAILED_SIGNATURE, "noXMLSig", null, ex
+                );
+            }
+            break;
+        default:
+            throw new WSSecurityException(WSSecurityException.FAILURE, "unsupportedKeyId");
+        }
+        
+        if (keyIdentifierType != WSConstants.KEY_VALUE) {
+            XMLStructure structure = new DOMStructure(secRef.getElement());
+            wsDocInfo.addTokenElement(secRef.getElement(), false);
+            keyInfo = 
+                keyInfoFactory.newKeyInfo(
+                    java.util.Collections.singletonList(structure), keyInfoUri
+                );
+        }
+    }
+    
+    
     /**
      * Builds a signed soap envelope.
      * 
@@ -360,6 +468,34 @@ public class WSSecSignature extends WSSecSignatureBase {
         }
 
         prepare(doc, cr, secHeader);
+        return buildPrepared(doc, secHeader);
+    }
+    
+    /**
+     * Builds a signed soap envelope using a template created by 
+     * <code>createTemplate()</code>. See <code>build(Document, Crypto, WSSecHeader)</code>.
+     * 
+     * @param doc The unsigned SOAP envelope as <code>Document</code>
+     * @param template The template holding the message-independent parts of the Signature
+     * @param secHeader the security header element to hold the encrypted key element.
+     * @return A signed SOAP envelope as <code>Document</code>
+     * @throws WSSecurityException
+     */
+    public Document buildFromTemplate(
+        Document doc, WSSecSignatureTemplate template, WSSecHeader secHeader
+    ) throws WSSecurityException {
+        doDebug = log.isDebugEnabled();
+
+        if (doDebug) {
+            log.debug("Beginning signing with a template...");
+        }
+
+        prepareFromTemplate(doc, template, secHeader);
+        return buildPrepared(doc, secHeader);
+    }
+    
+    private Document buildPrepared(Document doc, WSSecHeader secHeader) 
+        throws WSSecurityException {
         if (parts == null) {
             parts = new ArrayList<WSEncryptionPart>(1);
             String soapNamespace = WSSecurityUtil.getSOAPNamespace(doc.getDocumentElement());
@@ -497,7 +633,9 @@ public class WSSecSignature extends WSSecSignatureBase {
     ) throws WSSecurityException {
         try {
             java.security.Key key;
-            if (secretKey == null) {
+            if (signatureTemplate != null) {
+                key = signatureTemplate.getPrivateKey();
+            } else if (secretKey == null) {
                 key = crypto.getPrivateKey(user, password);
             } else {
                 key = WSSecurityUtil.prepareSecretKey(sigAlgo, secretKey);
@@ -770,6 +908,27 @@ public class WSSecSignature extends WSSecSignatureBase {
         this.secRef = secRef;
     }
 
+    /**
+     * Set up the CanonicalizationMethod of the SignedInfo.
+     */
+    private void createCanonicalizationMethod(WSSecHeader secHeader) throws WSSecurityException {
+        try {
+            C14NMethodParameterSpec c14nSpec = null;
+            if (getWsConfig().isWsiBSPCompliant() && canonAlgo.equals(WSConstants.C14N_EXCL_OMIT_COMMENTS)) {
+                List<String> prefixes = 
+                    getInclusivePrefixes(secHeader.getSecurityHeader(), false);
+                c14nSpec = new ExcC14NParameterSpec(prefixes);
+            }
+            
+           c14nMethod = signatureFactory.newCanonicalizationMethod(canonAlgo, c14nSpec);
+        } catch (Exception ex) {
+            log.error("", ex);
+            throw new WSSecurityException(
+                WSSecurityException.FAILED_SIGNATURE, "noXMLSig", null, ex
+            );
+        }
+    }
+
     /**
      * Set up the X509 Certificate(s) for signing.
      */
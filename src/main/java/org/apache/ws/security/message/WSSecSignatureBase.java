@@ -26,14 +26,21 @@ import org.apache.ws.security.WSSConfig;
 import org.apache.ws.security.WSSecurityException;
 import org.apache.ws.security.transform.STRTransform;
 import org.apache.ws.security.util.WSSecurityUtil;
+import org.apache.xml.security.algorithms.JCEMapper;
+import org.apache.xml.security.c14n.Canonicalizer;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 
 import javax.xml.crypto.XMLStructure;
 import javax.xml.crypto.dom.DOMStructure;
@@ -52,6 +59,8 @@ public class WSSecSignatureBase extends WSSecBase {
     private static org.apache.commons.logging.Log log = 
         org.apache.commons.logging.LogFactory.getLog(WSSecSignatureBase.class);
     
+    private Executor digestExecutor;
+    
     public WSSecSignatureBase() {
         super();
     }
@@ -59,6 +68,30 @@ public class WSSecSignatureBase extends WSSecBase {
         super(config);
     }
     
+    /**
+     * Set an Executor on which the references to sign are canonicalized and digested
+     * in parallel, before the signature value is computed. The default is null, which
+     * means that the references are digested one after another when the signature is
+     * computed. References that use the STR Transform are always digested sequentially.
+     * 
+     * Note that the references are canonicalized concurrently on the same DOM tree. The 
+     * DOM implementation must support concurrent read access, once the nodes have been 
+     * fully expanded by the calling thread.
+     * 
+     * @param digestExecutor the Executor on which to digest the references to sign
+     */
+    public void setDigestExecutor(Executor digestExecutor) {
+        this.digestExecutor = digestExecutor;
+    }
+    
+    /**
+     * @return the Executor on which the references to sign are digested, or null if they
+     *         are digested sequentially
+     */
+    public Executor getDigestExecutor() {
+        return digestExecutor;
+    }
+    
     /**
      * This method adds references to the Signature.
      * 
@@ -92,6 +125,8 @@ public class WSSecSignatureBase extends WSSecBase {
         
         List<javax.xml.crypto.dsig.Reference> referenceList = 
             new ArrayList<javax.xml.crypto.dsig.Reference>();
+        List<Element> elementsToDigest = new ArrayList<Element>();
+        List<List<String>> inclusivePrefixes = new ArrayList<List<String>>();
 
         for (WSEncryptionPart encPart : references) {
             String idToSign = encPart.getId();
@@ -105,6 +140,7 @@ public class WSSecSignatureBase extends WSSecBase {
             try {
                 if (idToSign != null) {
                     Transform transform = null;
+                    List<String> prefixes = null;
                     if ("STRTransform".equals(elemName)) {
                         Element ctx = createSTRParameter(doc);
                         
@@ -123,7 +159,7 @@ public class WSSecSignatureBase extends WSSecBase {
                             element = callbackLookup.getElement(idToSign, null, false);
                         }
                         if (wssConfig.isWsiBSPCompliant()) {
-                            List<String> prefixes = getInclusivePrefixes(element);
+                            prefixes = getInclusivePrefixes(element);
                             transformSpec = new ExcC14NParameterSpec(prefixes);
                         }
                         transform =
@@ -144,6 +180,12 @@ public class WSSecSignatureBase extends WSSecBase {
                             null
                         );
                     referenceList.add(reference);
+                    if ("STRTransform".equals(elemName)) {
+                        elementsToDigest.add(null);
+                    } else {
+                        elementsToDigest.add(element);
+                    }
+                    inclusivePrefixes.add(prefixes);
                 } else {
                     String nmSpace = encPart.getNamespace();
                     List<Element> elementsToSign = null;
@@ -165,8 +207,9 @@ public class WSSecSignatureBase extends WSSecBase {
                     }
                     for (Element elementToSign : elementsToSign) {
                         TransformParameterSpec transformSpec = null;
+                        List<String> prefixes = null;
                         if (wssConfig.isWsiBSPCompliant()) {
-                            List<String> prefixes = getInclusivePrefixes(elementToSign);
+                            prefixes = getInclusivePrefixes(elementToSign);
                             transformSpec = new ExcC14NParameterSpec(prefixes);
                         }
                         Transform transform =
@@ -183,6 +226,8 @@ public class WSSecSignatureBase extends WSSecBase {
                                 null
                             );
                         referenceList.add(reference);
+                        elementsToDigest.add(elementToSign);
+                        inclusivePrefixes.add(prefixes);
                         wsDocInfo.addTokenElement(elementToSign, false);
                     }
                 }
@@ -194,9 +239,147 @@ public class WSSecSignatureBase extends WSSecBase {
             }
         }
         
+        if (digestExecutor != null && referenceList.size() > 1) {
+            digestReferences(
+                referenceList, elementsToDigest, inclusivePrefixes, signatureFactory, digestMethod
+            );
+        }
+        
         return referenceList;
     }
     
+    /**
+     * Canonicalize and digest the given elements in parallel on the digest Executor, and 
+     * replace the corresponding references with references that contain the pre-calculated
+     * digest values. The canonical form is the same as that produced by the Exclusive C14N
+     * Transform of the (same-document) reference, and so the SignedInfo is identical to 
+     * the one produced when the references are digested during signature computation.
+     */
+    private void digestReferences(
+        List<javax.xml.crypto.dsig.Reference> referenceList,
+        List<Element> elementsToDigest,
+        List<List<String>> inclusivePrefixes,
+        XMLSignatureFactory signatureFactory,
+        DigestMethod digestMethod
+    ) throws WSSecurityException {
+        final String digestAlgo = 
+            JCEMapper.translateURItoJCEID(digestMethod.getAlgorithm());
+        List<FutureTask<byte[]>> tasks = new ArrayList<FutureTask<byte[]>>(referenceList.size());
+        for (int i = 0; i < referenceList.size(); i++) {
+            final Element element = elementsToDigest.get(i);
+            if (element == null) {
+                tasks.add(null);
+                continue;
+            }
+            final String prefixes = toPrefixString(inclusivePrefixes.get(i));
+            expandNodes(element);
+            FutureTask<byte[]> task = 
+                new FutureTask<byte[]>(new Callable<byte[]>() {
+                    public byte[] call() throws Exception {
+                        Canonicalizer canon = 
+                            Canonicalizer.getInstance(WSConstants.C14N_EXCL_OMIT_COMMENTS);
+                        byte[] canonBytes = null;
+                        if (prefixes == null) {
+                            canonBytes = canon.canonicalizeSubtree(element);
+                        } else {
+                            canonBytes = canon.canonicalizeSubtree(element, prefixes);
+                        }
+                        return MessageDigest.getInstance(digestAlgo).digest(canonBytes);
+                    }
+                });
+            tasks.add(task);
+            digestExecutor.execute(task);
+        }
+        
+        for (int i = 0; i < tasks.size(); i++) {
+            FutureTask<byte[]> task = tasks.get(i);
+            if (task == null) {
+                continue;
+            }
+            try {
+                byte[] digestValue = task.get();
+                javax.xml.crypto.dsig.Reference reference = referenceList.get(i);
+                referenceList.set(
+                    i, 
+                    signatureFactory.newReference(
+                        reference.getURI(), 
+                        digestMethod,
+                        reference.getTransforms(),
+                        null,
+                        null,
+                        digestValue
+                    )
+                );
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new WSSecurityException(
+                    WSSecurityException.FAILED_SIGNATURE, "noXMLSig", null, ex
+                );
+            } catch (ExecutionException ex) {
+                log.error("", ex.getCause());
+                throw new WSSecurityException(
+                    WSSecurityException.FAILED_SIGNATURE, "noXMLSig", null, ex.getCause()
+                );
+            }
+        }
+    }
+    
+    /**
+     * Convert a list of inclusive prefixes to the space-separated form used by the
+     * Exclusive C14N Transform
+     */
+    private static String toPrefixString(List<String> prefixes) {
+        if (prefixes == null || prefixes.isEmpty()) {
+            return null;
+        }
+        StringBuilder prefixString = new StringBuilder(prefixes.get(0));
+        for (int i = 1; i < prefixes.size(); i++) {
+            prefixString.append(' ').append(prefixes.get(i));
+        }
+        return prefixString.toString();
+    }
+    
+    /**
+     * Read all the nodes that are accessed when the given element is canonicalized, i.e. 
+     * the namespace declarations of its ancestors and all of its descendants, so that
+     * a DOM implementation that defers node expansion has fully expanded them before they
+     * are read concurrently.
+     */
+    static void expandNodes(Element element) {
+        Node parent = element.getParentNode();
+        while (parent != null && parent.getNodeType() == Node.ELEMENT_NODE) {
+            expandAttributes(parent);
+            parent = parent.getParentNode();
+        }
+        Node node = element;
+        while (node != null) {
+            node.getNamespaceURI();
+            node.getLocalName();
+            node.getNodeValue();
+            if (node.getNodeType() == Node.ELEMENT_NODE) {
+                expandAttributes(node);
+            }
+            Node next = node.getFirstChild();
+            while (next == null && node != element) {
+                next = node.getNextSibling();
+                if (next == null) {
+                    node = node.getParentNode();
+                }
+            }
+            node = next;
+        }
+    }
+    
+    private static void expandAttributes(Node node) {
+        NamedNodeMap attributes = node.getAttributes();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            Node attribute = attributes.item(i);
+            attribute.getNamespaceURI();
+            attribute.getLocalName();
+            attribute.getNodeValue();
+        }
+    }
+    
     /**
      * Get the List of inclusive prefixes from the DOM Element argument 
      */
@@ -0,0 +1,237 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ws.security.message;
+
+import java.math.BigInteger;
+import java.security.PrivateKey;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+
+import org.apache.ws.security.WSConstants;
+import org.apache.ws.security.WSSecurityException;
+import org.apache.ws.security.components.crypto.Crypto;
+import org.apache.ws.security.message.token.SecurityTokenReference;
+import org.apache.ws.security.message.token.X509Security;
+import org.apache.ws.security.util.Base64;
+import org.apache.ws.security.util.WSSecurityUtil;
+
+/**
+ * This class holds the message-independent parts of an X.509 Signature, i.e. the signing
+ * certificate(s) and private key retrieved from the Crypto instance, the (detected) signature
+ * algorithm, and the encoded key identifier data. It is created once per configuration via
+ * {@link WSSecSignature#createTemplate(Crypto)}, and can then be passed to
+ * {@link WSSecSignature#buildFromTemplate(org.w3c.dom.Document, WSSecSignatureTemplate,
+ * WSSecHeader)}
+ * for each message (on a new WSSecSignature instance), so that only the digests, the
+ * signature value and fresh wsu:Ids are computed per message.
+ *
+ * A WSSecSignatureTemplate is immutable, and so it can be shared between threads. Note
+ * however that it holds the private key of the signing user.
+ */
+public final class WSSecSignatureTemplate {
+
+    private final Crypto crypto;
+    private final String user;
+    private final int keyIdentifierType;
+    private final boolean useSingleCert;
+    private final String sigAlgo;
+    private final String canonAlgo;
+    private final String digestAlgo;
+    private final X509Certificate[] certs;
+    private final PrivateKey privateKey;
+    private final byte[] tokenData;
+    private final String keyIdentifierValueType;
+    private final String keyIdentifierValue;
+    private final String issuer;
+    private final BigInteger serialNumber;
+
+    WSSecSignatureTemplate(
+        Crypto crypto,
+        String user,
+        String password,
+        int keyIdentifierType,
+        boolean useSingleCert,
+        String sigAlgo,
+        String canonAlgo,
+        String digestAlgo,
+        X509Certificate[] certs
+    ) throws WSSecurityException {
+        this.crypto = crypto;
+        this.user = user;
+        this.keyIdentifierType = keyIdentifierType;
+        this.useSingleCert = useSingleCert;
+        this.sigAlgo = sigAlgo;
+        this.canonAlgo = canonAlgo;
+        this.digestAlgo = digestAlgo;
+        this.certs = certs;
+        privateKey = crypto.getPrivateKey(user, password);
+
+        byte[] data = null;
+        String valueType = null;
+        String value = null;
+        String issuerName = null;
+        BigInteger serial = null;
+        switch (keyIdentifierType) {
+        case WSConstants.BST_DIRECT_REFERENCE:
+            if (useSingleCert) {
+                data = getEncoded(certs[0]);
+            } else {
+                data = crypto.getBytesFromCertificates(certs);
+            }
+            break;
+
+        case WSConstants.ISSUER_SERIAL:
+            issuerName = certs[0].getIssuerX500Principal().getName();
+            serial = certs[0].getSerialNumber();
+            break;
+
+        case WSConstants.X509_KEY_IDENTIFIER:
+            valueType = X509Security.X509_V3_TYPE;
+            value = Base64.encode(getEncoded(certs[0]));
+            break;
+
+        case WSConstants.SKI_KEY_IDENTIFIER:
+            //
+            // As per the 1.1 specification, SKI can only be used for a V3 certificate
+            //
+            if (certs[0].getVersion() != 3) {
+                throw new WSSecurityException(
+                    WSSecurityException.UNSUPPORTED_SECURITY_TOKEN,
+                    "invalidCertForSKI",
+                    new Object[]{new Integer(certs[0].getVersion())}
+                );
+            }
+            valueType = SecurityTokenReference.SKI_URI;
+            value = Base64.encode(crypto.getSKIBytesFromCert(certs[0]));
+            break;
+
+        case WSConstants.THUMBPRINT_IDENTIFIER:
+            valueType = SecurityTokenReference.THUMB_URI;
+            value = Base64.encode(WSSecurityUtil.generateDigest(getEncoded(certs[0])));
+            break;
+
+        case WSConstants.KEY_VALUE:
+            break;
+
+        default:
+            throw new WSSecurityException(WSSecurityException.FAILURE, "unsupportedKeyId");
+        }
+        tokenData = data;
+        keyIdentifierValueType = valueType;
+        keyIdentifierValue = value;
+        issuer = issuerName;
+        serialNumber = serial;
+    }
+
+    private static byte[] getEncoded(X509Certificate cert) throws WSSecurityException {
+        try {
+            return cert.getEncoded();
+        } catch (CertificateEncodingException e) {
+            throw new WSSecurityException(
+                WSSecurityException.SECURITY_TOKEN_UNAVAILABLE, "encodeError", null, e
+            );
+        }
+    }
+
+    /**
+     * @return the Crypto instance this template was created with
+     */
+    public Crypto getCrypto() {
+        return crypto;
+    }
+
+    /**
+     * @return the alias of the signing user
+     */
+    public String getUser() {
+        return user;
+    }
+
+    /**
+     * @return the key identifier type
+     */
+    public int getKeyIdentifierType() {
+        return keyIdentifierType;
+    }
+
+    /**
+     * @return whether a single certificate or a PKIPath is used for a BST direct reference
+     */
+    public boolean isUseSingleCertificate() {
+        return useSingleCert;
+    }
+
+    /**
+     * @return the signature algorithm
+     */
+    public String getSignatureAlgorithm() {
+        return sigAlgo;
+    }
+
+    /**
+     * @return the canonicalization algorithm
+     */
+    public String getSigCanonicalization() {
+        return canonAlgo;
+    }
+
+    /**
+     * @return the digest algorithm
+     */
+    public String getDigestAlgo() {
+        return digestAlgo;
+    }
+
+    /**
+     * @return the signing certificate(s)
+     */
+    public X509Certificate[] getX509Certificates() {
+        return certs.clone();
+    }
+
+    X509Certificate getX509Certificate() {
+        return certs[0];
+    }
+
+    PrivateKey getPrivateKey() {
+        return privateKey;
+    }
+
+    byte[] getTokenData() {
+        return tokenData;
+    }
+
+    String getKeyIdentifierValueType() {
+        return keyIdentifierValueType;
+    }
+
+    String getKeyIdentifierValue() {
+        return keyIdentifierValue;
+    }
+
+    String getIssuer() {
+        return issuer;
+    }
+
+    BigInteger getSerialNumber() {
+        return serialNumber;
+    }
+
+}
@@ -195,17 +195,8 @@ public class BinarySecurity {
      * @return the byte array containing token information
      */
     public byte[] getToken() {
-        Node node = element.getFirstChild();
-        StringBuilder builder = new StringBuilder();
-        while (node != null) {
-            if (Node.TEXT_NODE == node.getNodeType()) {
-                builder.append(((Text)node).getData());
-            }
-            node = node.getNextSibling();
-        }
-                
         try {
-            return Base64.decode(builder.toString());
+            return Base64.decodeText(element);
         } catch (Exception ex) {
             if (LOG.isDebugEnabled()) {
                 LOG.debug(ex.getMessage(), ex);
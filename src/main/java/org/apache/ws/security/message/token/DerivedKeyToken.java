@@ -34,6 +34,7 @@ import org.apache.ws.security.conversation.dkalgo.AlgoFactory;
 import org.apache.ws.security.conversation.dkalgo.DerivationAlgorithm;
 import org.apache.ws.security.util.Base64;
 import org.apache.ws.security.util.DOM2Writer;
+import org.apache.ws.security.util.DerivedKeyCache;
 import org.apache.ws.security.util.WSSecurityUtil;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -74,6 +75,11 @@ public class DerivedKeyToken {
     private String ns;
     private boolean bspCompliant = true;
     
+    // The keys derived from this token (keyed by their derivation parameters), and the
+    // secret they were derived from
+    private byte[] derivedKeySecret;
+    private Map<String, byte[]> derivedKeys;
+    
     /**
      * This will create an empty DerivedKeyToken
      *
@@ -496,8 +502,23 @@ public class DerivedKeyToken {
         principal.setLength(getLength());
         principal.setOffset(getOffset());
         
+        principal.setBasetokenId(getBaseTokenId());
+        
+        return principal;
+    }
+    
+    /**
+     * Get the identifier of the base token, i.e. the URI (without a leading '#') or the
+     * KeyIdentifier value of the SecurityTokenReference of this DerivedKeyToken
+     * @return the identifier of the base token, or null if there is no SecurityTokenReference
+     * @throws WSSecurityException
+     */
+    public String getBaseTokenId() throws WSSecurityException {
         String basetokenId = null;
         SecurityTokenReference securityTokenReference = getSecurityTokenReference();
+        if (securityTokenReference == null) {
+            return null;
+        }
         if (securityTokenReference.containsReference()) {
             basetokenId = securityTokenReference.getReference().getURI();
             if (basetokenId.charAt(0) == '#') {
@@ -507,9 +528,7 @@ public class DerivedKeyToken {
             // KeyIdentifier
             basetokenId = securityTokenReference.getKeyIdentifierValue();
         }
-        principal.setBasetokenId(basetokenId);
-        
-        return principal;
+        return basetokenId;
     }
 
     /**
@@ -529,6 +548,61 @@ public class DerivedKeyToken {
      * @throws WSSecurityException
      */
     public byte[] deriveKey(int length, byte[] secret) throws WSSecurityException {
+        return deriveKey(length, secret, null);
+    }
+    
+    /**
+     * Derive a key from this DerivedKeyToken instance. A key that was derived from the
+     * same secret with the same parameters before is returned from this instance, or
+     * from the given cache, instead of being derived again.
+     * @param length the length of the key, or a value <= 0 for the length of this token
+     * @param secret the secret of the base token
+     * @param cache the cache of derived keys across messages, or null
+     * @throws WSSecurityException
+     */
+    public byte[] deriveKey(
+        int length, byte[] secret, DerivedKeyCache cache
+    ) throws WSSecurityException {
+        if (length <= 0) {
+            length = getLength();
+        }
+        String derivationKey = 
+            getAlgorithm() + ' ' + getNonce() + ' ' + getOffset() + ' ' + getGeneration()
+            + ' ' + length + ' ' + getLabel();
+        
+        synchronized (this) {
+            if (derivedKeys != null && derivedKeySecret == secret) {
+                byte[] key = derivedKeys.get(derivationKey);
+                if (key != null) {
+                    return key.clone();
+                }
+            }
+        }
+        
+        String baseTokenId = null;
+        byte[] key = null;
+        if (cache != null) {
+            baseTokenId = getBaseTokenId();
+            key = cache.get(baseTokenId, secret, derivationKey);
+        }
+        if (key == null) {
+            key = derive(length, secret);
+            if (cache != null) {
+                cache.put(baseTokenId, secret, derivationKey, key);
+            }
+        }
+        
+        synchronized (this) {
+            if (derivedKeys == null || derivedKeySecret != secret) {
+                derivedKeys = new HashMap<String, byte[]>();
+                derivedKeySecret = secret;
+            }
+            derivedKeys.put(derivationKey, key.clone());
+        }
+        return key;
+    }
+    
+    private byte[] derive(int length, byte[] secret) throws WSSecurityException {
         try {
             DerivationAlgorithm algo = AlgoFactory.getInstance(getAlgorithm());
             byte[] labelBytes = null;
@@ -546,9 +620,6 @@ public class DerivedKeyToken {
             System.arraycopy(labelBytes, 0, seed, 0, labelBytes.length);
             System.arraycopy(nonce, 0, seed, labelBytes.length, nonce.length);
             
-            if (length <= 0) {
-                length = getLength();
-            }
             return algo.createKey(secret, seed, getOffset(), length);
             
         } catch (Exception e) {
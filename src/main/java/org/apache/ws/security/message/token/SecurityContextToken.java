@@ -182,6 +182,23 @@ public class SecurityContextToken {
         return null;
     }
     
+    /**
+     * Get the instance.
+     *
+     * @return the data from the (optional) wsc:Instance element, or null
+     */
+    public String getInstance() {
+        Element elementInstance = 
+            WSSecurityUtil.getDirectChildElement(
+                element, ConversationConstants.INSTANCE_LN, element.getNamespaceURI()
+            );
+        if (elementInstance != null) {
+            Text node = getFirstNode(elementInstance);
+            return node == null ? null : node.getData();
+        }
+        return null;
+    }
+    
     /**
      * Get the WS-Trust tokenType String associated with this token
      */
@@ -23,19 +23,16 @@ import org.apache.ws.security.WSConstants;
 import org.apache.ws.security.WSSecurityException;
 import org.apache.ws.security.util.DOM2Writer;
 import org.apache.ws.security.util.WSSecurityUtil;
-import org.apache.ws.security.util.XmlSchemaDateFormat;
+import org.apache.ws.security.util.XmlSchemaDateTime;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.Text;
 
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.text.DateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
-import java.util.TimeZone;
 
 /**
  * Timestamp according to SOAP Message Security 1.0,
@@ -142,24 +139,21 @@ public class Timestamp {
         }
 
         // Parse the dates
-        DateFormat zulu = new XmlSchemaDateFormat();
-        if (bspCompliant) {
-            zulu.setLenient(false);
-        }
+        boolean lenient = !bspCompliant;
         try {
             if (LOG.isDebugEnabled()) {
-                LOG.debug("Current time: " + zulu.format(new Date()));
+                LOG.debug("Current time: " + XmlSchemaDateTime.format(new Date()));
             }
             if (strCreated != null) {
-                createdDate = zulu.parse(strCreated);
+                createdDate = XmlSchemaDateTime.parse(strCreated, lenient);
                 if (LOG.isDebugEnabled()) {
-                    LOG.debug("Timestamp created: " + zulu.format(createdDate));
+                    LOG.debug("Timestamp created: " + XmlSchemaDateTime.format(createdDate));
                 }
             }
             if (strExpires != null) {
-                expiresDate = zulu.parse(strExpires);
+                expiresDate = XmlSchemaDateTime.parse(strExpires, lenient);
                 if (LOG.isDebugEnabled()) {
-                    LOG.debug("Timestamp expires: " + zulu.format(expiresDate));
+                    LOG.debug("Timestamp expires: " + XmlSchemaDateTime.format(expiresDate));
                 }
             }
         } catch (ParseException e) {
@@ -185,19 +179,14 @@ public class Timestamp {
                 WSConstants.WSU_NS, WSConstants.WSU_PREFIX + ":" + WSConstants.TIMESTAMP_TOKEN_LN
             );
 
-        DateFormat zulu = null;
-        if (milliseconds) {
-            zulu = new XmlSchemaDateFormat();
-        } else {
-            zulu = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
-            zulu.setTimeZone(TimeZone.getTimeZone("UTC"));
-        }
         Element elementCreated =
             doc.createElementNS(
                 WSConstants.WSU_NS, WSConstants.WSU_PREFIX + ":" + WSConstants.CREATED_LN
             );
         createdDate = new Date();
-        elementCreated.appendChild(doc.createTextNode(zulu.format(createdDate)));
+        elementCreated.appendChild(
+            doc.createTextNode(XmlSchemaDateTime.format(createdDate.getTime(), milliseconds))
+        );
         element.appendChild(elementCreated);
         if (ttl != 0) {
             expiresDate = new Date();
@@ -207,7 +196,9 @@ public class Timestamp {
                 doc.createElementNS(
                     WSConstants.WSU_NS, WSConstants.WSU_PREFIX + ":" + WSConstants.EXPIRES_LN
                 );
-            elementExpires.appendChild(doc.createTextNode(zulu.format(expiresDate)));
+            elementExpires.appendChild(
+                doc.createTextNode(XmlSchemaDateTime.format(expiresDate.getTime(), milliseconds))
+            );
             element.appendChild(elementExpires);
         }
     }
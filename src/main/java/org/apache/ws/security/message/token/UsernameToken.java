@@ -23,32 +23,29 @@ import org.apache.ws.security.WSConstants;
 import org.apache.ws.security.WSPasswordCallback;
 import org.apache.ws.security.WSSecurityException;
 import org.apache.ws.security.WSUsernameTokenPrincipal;
+import org.apache.ws.security.conversation.dkalgo.P_SHA1;
 import org.apache.ws.security.handler.RequestData;
 import org.apache.ws.security.util.DOM2Writer;
+import org.apache.ws.security.util.UsernameTokenKeyCache;
 import org.apache.ws.security.util.WSSecurityUtil;
-import org.apache.ws.security.util.XmlSchemaDateFormat;
+import org.apache.ws.security.util.XmlSchemaDateTime;
 import org.apache.ws.security.util.Base64;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.Text;
 
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
 import javax.security.auth.callback.Callback;
 import javax.security.auth.callback.UnsupportedCallbackException;
 import javax.xml.namespace.QName;
 
 import java.io.IOException;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.Principal;
-import java.text.SimpleDateFormat;
 import java.util.Arrays;
-import java.util.Date;
 import java.util.List;
-import java.text.DateFormat;
-import java.util.TimeZone;
 
 /**
  * UsernameToken according to WS Security specifications, UsernameToken profile.
@@ -69,6 +66,13 @@ public class UsernameToken {
     private static final org.apache.commons.logging.Log LOG = 
         org.apache.commons.logging.LogFactory.getLog(UsernameToken.class);
     private static final boolean DO_DEBUG = LOG.isDebugEnabled();
+    
+    /**
+     * The SHA-1 MessageDigest used to derive keys, which is confined to the thread that
+     * uses it and reused for all of its key derivations
+     */
+    private static final ThreadLocal<MessageDigest> SHA1_DIGEST = 
+        new ThreadLocal<MessageDigest>();
 
     protected Element element = null;
     protected Element elementUsername = null;
@@ -291,19 +295,15 @@ public class UsernameToken {
         if (elementCreated != null) {
             return;
         }
-        DateFormat zulu = null;
-        if (milliseconds) {
-            zulu = new XmlSchemaDateFormat();
-        } else {
-            zulu = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
-            zulu.setTimeZone(TimeZone.getTimeZone("UTC"));
-        }
         elementCreated = 
             doc.createElementNS(
                 WSConstants.WSU_NS, WSConstants.WSU_PREFIX + ":" + WSConstants.CREATED_LN
             );
-        Date currentTime = new Date();
-        elementCreated.appendChild(doc.createTextNode(zulu.format(currentTime)));
+        elementCreated.appendChild(
+            doc.createTextNode(
+                XmlSchemaDateTime.format(System.currentTimeMillis(), milliseconds)
+            )
+        );
         element.appendChild(elementCreated);
     }
 
@@ -672,7 +672,6 @@ public class UsernameToken {
     public byte[] getSecretKey(int keylen, String labelString) {
         byte[] key = null;
         try {
-            Mac mac = Mac.getInstance("HMACSHA1");
             byte[] password;
             if (passwordsAreEncoded) {
                 password = Base64.decode(rawPassword);
@@ -693,7 +692,7 @@ public class UsernameToken {
 
             System.arraycopy(created, 0, seed, offset, created.length);
             
-            key = P_hash(password, seed, mac, keylen);
+            key = new P_SHA1().createKey(password, seed, 0, keylen);
 
             if (LOG.isDebugEnabled()) {
                 LOG.debug("label      :" + Base64.encode(label));
@@ -732,30 +731,41 @@ public class UsernameToken {
             iteration = DEFAULT_ITERATION;
         }
 
-        byte[] pwSalt = new byte[salt.length + password.length];
-        System.arraycopy(password, 0, pwSalt, 0, password.length);
-        System.arraycopy(salt, 0, pwSalt, password.length, salt.length);
-
-        MessageDigest sha = null;
-        try {
-            sha = MessageDigest.getInstance("SHA1");
-        } catch (NoSuchAlgorithmException e) {
-            if (DO_DEBUG) {
-                LOG.debug(e.getMessage(), e);
+        MessageDigest sha = SHA1_DIGEST.get();
+        if (sha == null) {
+            try {
+                sha = MessageDigest.getInstance("SHA1");
+            } catch (NoSuchAlgorithmException e) {
+                if (DO_DEBUG) {
+                    LOG.debug(e.getMessage(), e);
+                }
+                throw new WSSecurityException(
+                    WSSecurityException.FAILURE, "noSHA1availabe", null, e
+                );
             }
-            throw new WSSecurityException(
-                WSSecurityException.FAILURE, "noSHA1availabe", null, e
-            );
+            SHA1_DIGEST.set(sha);
+        } else {
+            sha.reset();
         }
         //
         // Make the first hash round with start value
         //
-        byte[] K = sha.digest(pwSalt);
+        sha.update(password);
+        sha.update(salt);
+        byte[] K = sha.digest();
         //
-        // Perform the 1st up to iteration-1 hash rounds
+        // Perform the 1st up to iteration-1 hash rounds, digesting in place
         //
-        for (int i = 1; i < iteration; i++) {
-            K = sha.digest(K);
+        try {
+            for (int i = 1; i < iteration; i++) {
+                sha.update(K);
+                sha.digest(K, 0, K.length);
+            }
+        } catch (DigestException e) {
+            sha.reset();
+            throw new WSSecurityException(
+                WSSecurityException.FAILURE, "digestError", null, e
+            );
         }
         return K;
     }
@@ -794,17 +804,48 @@ public class UsernameToken {
      * @throws WSSecurityException
      */
     public byte[] getDerivedKey() throws WSSecurityException {
+        return getDerivedKey(null);
+    }
+    
+    /**
+     * This method gets a derived key as defined in WSS Username Token Profile. A key that
+     * was derived from the same password, salt and iteration count before is taken from
+     * the given cache.
+     * 
+     * @param cache the cache of derived keys, or null
+     * @return Returns the derived key as a byte array
+     * @throws WSSecurityException
+     */
+    public byte[] getDerivedKey(UsernameTokenKeyCache cache) throws WSSecurityException {
         if (rawPassword == null || !bspCompliantDerivedKey) {
             LOG.debug("The raw password was null or the Username Token is not BSP compliant");
             throw new WSSecurityException(WSSecurityException.FAILED_AUTHENTICATION);
         }
         int iteration = getIteration();
+        if (iteration == 0) {
+            iteration = DEFAULT_ITERATION;
+        }
         byte[] salt = getSalt();
+        byte[] password = null;
         if (passwordsAreEncoded) {
-            return generateDerivedKey(Base64.decode(rawPassword), salt, iteration);
+            password = Base64.decode(rawPassword);
         } else {
-            return generateDerivedKey(rawPassword, salt, iteration);
+            try {
+                password = rawPassword.getBytes("UTF-8");
+            } catch (java.io.UnsupportedEncodingException e) {
+                throw new WSSecurityException("Unable to convert password to UTF-8", e);
+            }
+        }
+        if (cache == null) {
+            return generateDerivedKey(password, salt, iteration);
+        }
+        String cacheKey = cache.createKey(password, salt, iteration);
+        byte[] key = cache.get(cacheKey);
+        if (key == null) {
+            key = generateDerivedKey(password, salt, iteration);
+            cache.put(cacheKey, key);
         }
+        return key;
     }
     
     /**
@@ -941,56 +982,6 @@ public class UsernameToken {
         return true;
     }
     
-    /**
-     * P_hash as defined in RFC 2246 for TLS.
-     * 
-     * @param secret is the key for the HMAC
-     * @param seed the seed value to start the generation - A(0)
-     * @param mac the HMAC algorithm
-     * @param required number of bytes to generate
-     * @return a byte array that contains a secret key
-     * @throws Exception
-     */
-    private static byte[] P_hash(
-        byte[] secret, 
-        byte[] seed, 
-        Mac mac, 
-        int required
-    ) throws Exception {
-        byte[] out = new byte[required];
-        int offset = 0, tocpy;
-        byte[] A, tmp;
-        //
-        // A(0) is the seed
-        //
-        A = seed;
-        SecretKeySpec key = new SecretKeySpec(secret, "HMACSHA1");
-        mac.init(key);
-        while (required > 0) {
-            mac.update(A);
-            A = mac.doFinal();
-            mac.update(A);
-            mac.update(seed);
-            tmp = mac.doFinal();
-            tocpy = min(required, tmp.length);
-            System.arraycopy(tmp, 0, out, offset, tocpy);
-            offset += tocpy;
-            required -= tocpy;
-        }
-        return out;
-    }
-
-    /**
-     * helper method.
-     *
-     * @param a
-     * @param b
-     * @return
-     */
-    private static int min(int a, int b) {
-        return (a > b) ? b : a;
-    }
-    
     /**
      * A method to check that the UsernameToken is compliant with the BSP spec.
      * @throws WSSecurityException
@@ -63,7 +63,8 @@ public class DerivedKeyTokenProcessor implements Processor {
             throw new WSSecurityException("Missing wsc:Nonce value");
         }
         int length = dkt.getLength();
-        byte[] keyBytes = dkt.deriveKey(length, secret);
+        byte[] keyBytes = 
+            dkt.deriveKey(length, secret, data.getWssConfig().getDerivedKeyCache());
         WSSecurityEngineResult result =
             new WSSecurityEngineResult(WSConstants.DKT, null, keyBytes, null);
         wsDocInfo.addTokenElement(elem);
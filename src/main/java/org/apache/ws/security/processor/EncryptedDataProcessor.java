@@ -25,7 +25,9 @@ import org.apache.ws.security.WSSConfig;
 import org.apache.ws.security.WSSecurityEngineResult;
 import org.apache.ws.security.WSSecurityException;
 import org.apache.ws.security.handler.RequestData;
+import org.apache.ws.security.util.DecryptedDataParser;
 import org.apache.ws.security.util.WSSecurityUtil;
+import org.apache.ws.security.util.XMLCipherPool;
 import org.apache.xml.security.encryption.XMLCipher;
 import org.apache.xml.security.encryption.XMLEncryptionException;
 import org.w3c.dom.Element;
@@ -84,7 +86,7 @@ public class EncryptedDataProcessor implements Processor {
         // initialize Cipher ....
         XMLCipher xmlCipher = null;
         try {
-            xmlCipher = XMLCipher.getInstance(symEncAlgo);
+            xmlCipher = XMLCipherPool.getInstance(symEncAlgo);
             xmlCipher.init(XMLCipher.DECRYPT_MODE, key);
         } catch (XMLEncryptionException ex) {
             throw new WSSecurityException(
@@ -94,12 +96,13 @@ public class EncryptedDataProcessor implements Processor {
         Node previousSibling = elem.getPreviousSibling();
         Node parent = elem.getParentNode();
         try {
-            xmlCipher.doFinal(elem.getOwnerDocument(), elem, false);
+            DecryptedDataParser.decryptElement(xmlCipher, elem);
         } catch (Exception e) {
             throw new WSSecurityException(
                 WSSecurityException.FAILED_CHECK, null, null, e
             );
         }
+        XMLCipherPool.release(symEncAlgo, xmlCipher);
         
         wsDocInfo.addTokenElement(elem);
         WSSConfig wssConfig = request.getWssConfig();
@@ -31,12 +31,12 @@ import org.apache.ws.security.message.token.SecurityTokenReference;
 import org.apache.ws.security.str.EncryptedKeySTRParser;
 import org.apache.ws.security.str.STRParser;
 import org.apache.ws.security.util.Base64;
+import org.apache.ws.security.util.EncryptedKeyCache;
 import org.apache.ws.security.util.WSSecurityUtil;
 import org.apache.xml.security.algorithms.JCEMapper;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
-import org.w3c.dom.Text;
 
 import javax.crypto.Cipher;
 import javax.crypto.KeyGenerator;
@@ -99,24 +99,50 @@ public class EncryptedKeyProcessor implements Processor {
         X509Certificate[] certs = 
             getCertificatesFromEncryptedKey(elem, data, data.getDecCrypto(), wsDocInfo);
 
-        try {
-            PrivateKey privateKey = data.getDecCrypto().getPrivateKey(certs[0], data.getCallbackHandler());
-            cipher.init(Cipher.DECRYPT_MODE, privateKey);
-        } catch (Exception ex) {
-            throw new WSSecurityException(WSSecurityException.FAILED_CHECK, null, null, ex);
-        }
-        
         List<String> dataRefURIs = getDataRefURIs(elem);
         
+        //
+        // Check whether the same EncryptedKey has been unwrapped before
+        //
+        EncryptedKeyCache encryptedKeyCache = data.getWssConfig().getEncryptedKeyCache();
+        String cacheKey = null;
         byte[] encryptedEphemeralKey = null;
         byte[] decryptedBytes = null;
-        try {
-            encryptedEphemeralKey = getDecodedBase64EncodedData(xencCipherValue);
-            decryptedBytes = cipher.doFinal(encryptedEphemeralKey);
-        } catch (IllegalStateException ex) {
-            throw new WSSecurityException(WSSecurityException.FAILED_CHECK, null, null, ex);
-        } catch (Exception ex) {
-            decryptedBytes = getRandomKey(dataRefURIs, elem.getOwnerDocument(), wsDocInfo);
+        if (encryptedKeyCache != null) {
+            try {
+                encryptedEphemeralKey = getDecodedBase64EncodedData(xencCipherValue);
+                cacheKey = 
+                    encryptedKeyCache.createKey(
+                        encryptedEphemeralKey, encryptedKeyTransportMethod, certs[0]
+                    );
+                decryptedBytes = encryptedKeyCache.get(cacheKey);
+            } catch (WSSecurityException ex) {
+                log.debug("The EncryptedKey can not be looked up in the cache", ex);
+            }
+        }
+        
+        if (decryptedBytes == null) {
+            try {
+                PrivateKey privateKey = 
+                    data.getDecCrypto().getPrivateKey(certs[0], data.getCallbackHandler());
+                cipher.init(Cipher.DECRYPT_MODE, privateKey);
+            } catch (Exception ex) {
+                throw new WSSecurityException(WSSecurityException.FAILED_CHECK, null, null, ex);
+            }
+            
+            try {
+                if (encryptedEphemeralKey == null) {
+                    encryptedEphemeralKey = getDecodedBase64EncodedData(xencCipherValue);
+                }
+                decryptedBytes = cipher.doFinal(encryptedEphemeralKey);
+                if (encryptedKeyCache != null) {
+                    encryptedKeyCache.put(cacheKey, decryptedBytes);
+                }
+            } catch (IllegalStateException ex) {
+                throw new WSSecurityException(WSSecurityException.FAILED_CHECK, null, null, ex);
+            } catch (Exception ex) {
+                decryptedBytes = getRandomKey(dataRefURIs, elem.getOwnerDocument(), wsDocInfo);
+            }
         }
 
         List<WSDataRef> dataRefs = 
@@ -177,16 +203,7 @@ public class EncryptedKeyProcessor implements Processor {
      * @throws WSSecurityException
      */
     private static byte[] getDecodedBase64EncodedData(Element element) throws WSSecurityException {
-        StringBuilder sb = new StringBuilder();
-        Node node = element.getFirstChild();
-        while (node != null) {
-            if (Node.TEXT_NODE == node.getNodeType()) {
-                sb.append(((Text) node).getData());
-            }
-            node = node.getNextSibling();
-        }
-        String encodedData = sb.toString();
-        return Base64.decode(encodedData);
+        return Base64.decodeText(element);
     }
     
     /**
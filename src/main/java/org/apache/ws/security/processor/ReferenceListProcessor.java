@@ -37,7 +37,9 @@ import org.apache.ws.security.message.DOMCallbackLookup;
 import org.apache.ws.security.message.token.SecurityTokenReference;
 import org.apache.ws.security.str.STRParser;
 import org.apache.ws.security.str.SecurityTokenRefSTRParser;
+import org.apache.ws.security.util.DecryptedDataParser;
 import org.apache.ws.security.util.WSSecurityUtil;
+import org.apache.ws.security.util.XMLCipherPool;
 import org.apache.xml.security.encryption.XMLCipher;
 import org.apache.xml.security.encryption.XMLEncryptionException;
 import org.w3c.dom.Attr;
@@ -271,7 +273,7 @@ public class ReferenceListProcessor implements Processor {
     ) throws WSSecurityException {
         XMLCipher xmlCipher = null;
         try {
-            xmlCipher = XMLCipher.getInstance(symEncAlgo);
+            xmlCipher = XMLCipherPool.getInstance(symEncAlgo);
             xmlCipher.init(XMLCipher.DECRYPT_MODE, symmetricKey);
         } catch (XMLEncryptionException ex) {
             throw new WSSecurityException(
@@ -287,16 +289,18 @@ public class ReferenceListProcessor implements Processor {
         
         Node parent = encData.getParentNode();
         Node previousSibling = encData.getPreviousSibling();
+        Element encryptedData = encData;
         if (content) {
             encData = (Element) encData.getParentNode();
             parent = encData.getParentNode();
         }
         
         try {
-            xmlCipher.doFinal(doc, encData, content);
+            DecryptedDataParser.decryptElement(xmlCipher, encryptedData);
         } catch (Exception ex) {
             throw new WSSecurityException(WSSecurityException.FAILED_CHECK, null, null, ex);
         }
+        XMLCipherPool.release(symEncAlgo, xmlCipher);
         
         if (parent.getLocalName().equals(WSConstants.ENCRYPTED_HEADER)
             && parent.getNamespaceURI().equals(WSConstants.WSSE11_NS)) {
@@ -25,6 +25,7 @@ import org.apache.ws.security.WSDocInfo;
 import org.apache.ws.security.WSSecurityEngineResult;
 import org.apache.ws.security.WSSecurityException;
 import org.apache.ws.security.handler.RequestData;
+import org.apache.ws.security.saml.SAMLAssertionCache;
 import org.apache.ws.security.saml.ext.AssertionWrapper;
 import org.apache.ws.security.util.DOM2Writer;
 import org.apache.ws.security.validate.Credential;
@@ -48,6 +49,19 @@ public class SAMLTokenProcessor implements Processor {
             log.debug("Found SAML Assertion element");
         }
         
+        // See if the token has been previously processed
+        String id = elem.getAttributeNS(null, "ID");
+        if (id.length() == 0) {
+            id = elem.getAttributeNS(null, "AssertionID");
+        }
+        if (id.length() > 0) {
+            Element foundElement = wsDocInfo.getTokenElement(id);
+            if (elem.equals(foundElement)) {
+                WSSecurityEngineResult result = wsDocInfo.getResult(id);
+                return java.util.Collections.singletonList(result);
+            }
+        }
+        
         Validator validator = 
             data.getValidator(new QName(elem.getNamespaceURI(), elem.getLocalName()));
         Credential credential = handleSAMLToken(elem, data, validator, wsDocInfo);
@@ -57,19 +71,14 @@ public class SAMLTokenProcessor implements Processor {
             log.debug(DOM2Writer.nodeToString(elem));
         }
         
-        // See if the token has been previously processed
-        String id = assertion.getId();
-        Element foundElement = wsDocInfo.getTokenElement(id);
-        if (elem.equals(foundElement)) {
-            WSSecurityEngineResult result = wsDocInfo.getResult(id);
-            return java.util.Collections.singletonList(result);
-        } else if (foundElement != null) {
+        if (wsDocInfo.getTokenElement(assertion.getId()) != null) {
             throw new WSSecurityException(
                 WSSecurityException.INVALID_SECURITY_TOKEN, "duplicateError"
             );
         }
 
         wsDocInfo.addTokenElement(elem);
+        wsDocInfo.addAssertion(assertion);
         WSSecurityEngineResult result = null;
         if (assertion.isSigned()) {
             result = new WSSecurityEngineResult(WSConstants.ST_SIGNED, assertion);
@@ -104,20 +113,38 @@ public class SAMLTokenProcessor implements Processor {
         Validator validator,
         WSDocInfo docInfo
     ) throws WSSecurityException {
-        AssertionWrapper assertion = new AssertionWrapper(token);
-        if (assertion.isSigned()) {
-            assertion.verifySignature(data, docInfo);
-        }
-        // Parse the HOK subject if it exists
-        assertion.parseHOKSubject(data, docInfo);
-            
-        // Now delegate the rest of the verification to the Validator
-        Credential credential = new Credential();
-        credential.setAssertion(assertion);
-        if (validator != null) {
-            return validator.validate(credential, data);
+        try {
+            SAMLAssertionCache assertionCache = data.getWssConfig().getSamlAssertionCache();
+            AssertionWrapper assertion = new AssertionWrapper(token, assertionCache);
+            if (assertion.isSigned()) {
+                assertion.verifySignature(data, docInfo);
+            } else {
+                // An unsigned Assertion is not unmarshalled to verify a signature,
+                // but it must still be checked by OpenSAML before it is accepted
+                assertion.unmarshal();
+            }
+            // Parse the HOK subject if it exists
+            assertion.parseHOKSubject(data, docInfo);
+                
+            // Now delegate the rest of the verification to the Validator
+            Credential credential = new Credential();
+            credential.setAssertion(assertion);
+            if (validator != null) {
+                credential = validator.validate(credential, data);
+            }
+            assertion.cacheAssertionData();
+            return credential;
+        } catch (IllegalArgumentException ex) {
+            // e.g. a malformed date in an Assertion that is read from the DOM
+            throw new WSSecurityException(
+                WSSecurityException.FAILURE, "invalidSAMLsecurity", null, ex
+            );
+        } catch (IllegalStateException ex) {
+            // e.g. an Assertion that can not be unmarshalled when it is first needed
+            throw new WSSecurityException(
+                WSSecurityException.FAILURE, "invalidSAMLsecurity", null, ex
+            );
         }
-        return credential;
     }
 
 }
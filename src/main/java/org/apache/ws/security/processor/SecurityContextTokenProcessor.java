@@ -24,6 +24,8 @@ import org.apache.ws.security.WSDocInfo;
 import org.apache.ws.security.WSPasswordCallback;
 import org.apache.ws.security.WSSecurityEngineResult;
 import org.apache.ws.security.WSSecurityException;
+import org.apache.ws.security.conversation.SecurityContext;
+import org.apache.ws.security.conversation.SecurityContextStore;
 import org.apache.ws.security.handler.RequestData;
 import org.apache.ws.security.message.token.SecurityContextToken;
 import org.apache.ws.security.validate.Credential;
@@ -44,6 +46,8 @@ import java.io.IOException;
  * @author Ruchith Fernando (ruchith.fernando@gmail.com)
  */
 public class SecurityContextTokenProcessor implements Processor {
+    private static org.apache.commons.logging.Log log = 
+        org.apache.commons.logging.LogFactory.getLog(SecurityContextTokenProcessor.class);
     
     public List<WSSecurityEngineResult> handleToken(
         Element elem, 
@@ -72,13 +76,34 @@ public class SecurityContextTokenProcessor implements Processor {
                 id = id.substring(1);
             }
             byte[] secret = null;
-            try {
-                secret = getSecret(data.getCallbackHandler(), sct.getIdentifier());
-            } catch (WSSecurityException ex) {
-                secret = getSecret(data.getCallbackHandler(), id);
+            SecurityContextStore store = data.getWssConfig().getSecurityContextStore();
+            SecurityContext context = null;
+            if (store != null) {
+                context = store.get(sct.getIdentifier(), sct.getInstance());
             }
-            if (secret == null || secret.length == 0) {
-                secret = getSecret(data.getCallbackHandler(), id);
+            if (context != null) {
+                secret = context.getSecret();
+            } else {
+                try {
+                    secret = getSecret(data.getCallbackHandler(), sct.getIdentifier());
+                } catch (WSSecurityException ex) {
+                    secret = getSecret(data.getCallbackHandler(), id);
+                }
+                if (secret == null || secret.length == 0) {
+                    secret = getSecret(data.getCallbackHandler(), id);
+                }
+                if (store != null && secret != null && secret.length > 0
+                    && sct.getIdentifier() != null) {
+                    try {
+                        store.add(
+                            new SecurityContext(
+                                sct.getIdentifier(), sct.getInstance(), secret, null, null
+                            )
+                        );
+                    } catch (WSSecurityException ex) {
+                        log.warn("The security context can not be stored", ex);
+                    }
+                }
             }
             result.put(WSSecurityEngineResult.TAG_ID, sct.getID());
             result.put(WSSecurityEngineResult.TAG_SECRET, secret);
@@ -38,6 +38,7 @@ import org.apache.ws.security.str.STRParser;
 import org.apache.ws.security.str.SignatureSTRParser;
 import org.apache.ws.security.transform.STRTransform;
 import org.apache.ws.security.transform.STRTransformUtil;
+import org.apache.ws.security.util.SignatureFactoryCache;
 import org.apache.ws.security.util.WSSecurityUtil;
 import org.apache.ws.security.validate.Credential;
 import org.apache.ws.security.validate.Validator;
@@ -63,7 +64,6 @@ import javax.xml.crypto.dsig.keyinfo.KeyInfoFactory;
 import javax.xml.crypto.dsig.keyinfo.KeyValue;
 
 import java.security.Key;
-import java.security.NoSuchProviderException;
 import java.security.PublicKey;
 import java.security.Principal;
 import java.security.cert.X509Certificate;
@@ -80,18 +80,8 @@ public class SignatureProcessor implements Processor {
     private KeyInfoFactory keyInfoFactory;
     
     public SignatureProcessor() {
-        // Try to install the Santuario Provider - fall back to the JDK provider if this does
-        // not work
-        try {
-            signatureFactory = XMLSignatureFactory.getInstance("DOM", "XMLDSig");
-        } catch (NoSuchProviderException ex) {
-            signatureFactory = XMLSignatureFactory.getInstance("DOM");
-        }
-        try {
-            keyInfoFactory = KeyInfoFactory.getInstance("DOM", "XMLDSig");
-        } catch (NoSuchProviderException ex) {
-            keyInfoFactory = KeyInfoFactory.getInstance("DOM");
-        }
+        signatureFactory = SignatureFactoryCache.getXMLSignatureFactory();
+        keyInfoFactory = SignatureFactoryCache.getKeyInfoFactory();
     }
     
     public List<WSSecurityEngineResult> handleToken(
@@ -0,0 +1,440 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ws.security.saml;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ws.security.WSSecurityException;
+import org.apache.ws.security.saml.ext.AssertionWrapper;
+import org.apache.ws.security.saml.ext.SAMLCallback;
+import org.apache.ws.security.saml.ext.bean.ActionBean;
+import org.apache.ws.security.saml.ext.bean.AttributeBean;
+import org.apache.ws.security.saml.ext.bean.AttributeStatementBean;
+import org.apache.ws.security.saml.ext.bean.AuthDecisionStatementBean;
+import org.apache.ws.security.saml.ext.bean.AuthenticationStatementBean;
+import org.apache.ws.security.saml.ext.bean.ConditionsBean;
+import org.apache.ws.security.saml.ext.bean.SubjectBean;
+import org.w3c.dom.Element;
+
+/**
+ * This class caches the (marshalled, and optionally signed) SAML Assertions that are issued by
+ * a {@link SAMLIssuerImpl}. It is keyed by the data that the SAML CallbackHandler provides
+ * (subject, statements, conditions) together with the issuer configuration, so that the same
+ * Assertion is reused for requests with the same data, until shortly before it expires. The
+ * request path then only has to copy the cached DOM Element into the request.
+ *
+ * Cached Assertions that are in use are re-issued by a background thread ahead of their
+ * expiry (NotOnOrAfter). Assertions without a NotOnOrAfter time are not cached, nor are
+ * Assertions with a Subject KeyInfo (holder-of-key) or with data that cannot be compared
+ * (custom attribute values, evidence). Note that a cached Assertion (and its ID) is sent
+ * in several requests, so this is only suitable for sender-vouches and bearer flows where
+ * the recipients accept this. The SAML CallbackHandler must not modify the beans it has
+ * set on a SAMLCallback afterwards.
+ *
+ * An IssuedAssertionCache can be shared between threads. The background (daemon) thread is
+ * started when the first Assertion is cached, and runs until {@link #close()} is called. As
+ * the thread references the cache, and so the SAML CallbackHandler and the classes of the
+ * application that created it, close() must be called when the cache is not used any more
+ * (e.g. when the application is undeployed), or else the application classloader is leaked.
+ */
+public class IssuedAssertionCache {
+
+    private static final org.apache.commons.logging.Log log = 
+        org.apache.commons.logging.LogFactory.getLog(IssuedAssertionCache.class);
+
+    /**
+     * The default maximum number of cached Assertions
+     */
+    public static final int DEFAULT_MAX_SIZE = 100;
+
+    /**
+     * The default time in seconds before the expiry of an Assertion at which it is re-issued
+     */
+    public static final long DEFAULT_REFRESH_AHEAD = 60L;
+
+    /**
+     * Re-issues the Assertion of a cache entry.
+     */
+    public interface Builder {
+
+        /**
+         * @return the re-issued (marshalled) Assertion, or null if it can not be re-issued
+         * @throws WSSecurityException
+         */
+        AssertionWrapper build() throws WSSecurityException;
+
+    }
+
+    private final int maxSize;
+    private final long refreshAhead;
+    private final Map<String, Entry> entries;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Create a cache with the default maximum size and refresh time.
+     */
+    public IssuedAssertionCache() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_REFRESH_AHEAD);
+    }
+
+    /**
+     * @param maxSize the maximum number of cached Assertions
+     * @param refreshAhead the time in seconds before the expiry of an Assertion at which it is
+     * re-issued. A cached Assertion is not used any more once less than half of this time is
+     * left before its expiry.
+     */
+    public IssuedAssertionCache(int maxSize, long refreshAhead) {
+        this.maxSize = maxSize;
+        this.refreshAhead = refreshAhead * 1000L;
+        entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > IssuedAssertionCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Create the cache key for the data of a (handled) SAMLCallback.
+     * @param samlCallback the SAMLCallback that has been handled by the SAML CallbackHandler
+     * @param issuerConfig the (string form of the) configuration of the issuer, e.g. its name
+     * and signing key
+     * @return the cache key, or null if an Assertion with this data must not be cached
+     */
+    public static String createKey(SAMLCallback samlCallback, String issuerConfig) {
+        if (samlCallback.getAssertionElement() != null) {
+            return null;
+        }
+        KeyBuilder key = new KeyBuilder();
+        key.append(issuerConfig);
+        key.append(String.valueOf(samlCallback.getSamlVersion()));
+        key.append(samlCallback.getIssuer());
+        if (!key.append(samlCallback.getSubject())) {
+            return null;
+        }
+        ConditionsBean conditions = samlCallback.getConditions();
+        if (conditions != null) {
+            key.append(String.valueOf(conditions.getNotBefore()));
+            key.append(String.valueOf(conditions.getNotAfter()));
+            key.append(String.valueOf(conditions.getTokenPeriodMinutes()));
+            key.append(conditions.getAudienceURI());
+        }
+        
+        List<AuthenticationStatementBean> authnStatements = 
+            samlCallback.getAuthenticationStatementData();
+        key.append(authnStatements == null ? 0 : authnStatements.size());
+        if (authnStatements != null) {
+            for (AuthenticationStatementBean statement : authnStatements) {
+                if (!key.append(statement.getSubject())) {
+                    return null;
+                }
+                key.append(String.valueOf(statement.getAuthenticationInstant()));
+                key.append(statement.getAuthenticationMethod());
+                key.append(statement.getSessionIndex());
+                if (statement.getSubjectLocality() != null) {
+                    key.append(statement.getSubjectLocality().getIpAddress());
+                    key.append(statement.getSubjectLocality().getDnsAddress());
+                }
+            }
+        }
+        
+        List<AttributeStatementBean> attrStatements = samlCallback.getAttributeStatementData();
+        key.append(attrStatements == null ? 0 : attrStatements.size());
+        if (attrStatements != null) {
+            for (AttributeStatementBean statement : attrStatements) {
+                if (!key.append(statement.getSubject())) {
+                    return null;
+                }
+                List<AttributeBean> attributes = statement.getSamlAttributes();
+                key.append(attributes == null ? 0 : attributes.size());
+                if (attributes == null) {
+                    continue;
+                }
+                for (AttributeBean attribute : attributes) {
+                    if (attribute.getCustomAttributeValues() != null
+                        && !attribute.getCustomAttributeValues().isEmpty()) {
+                        return null;
+                    }
+                    key.append(attribute.getSimpleName());
+                    key.append(attribute.getQualifiedName());
+                    key.append(attribute.getNameFormat());
+                    List<String> values = attribute.getAttributeValues();
+                    key.append(values == null ? 0 : values.size());
+                    if (values != null) {
+                        for (String value : values) {
+                            key.append(value);
+                        }
+                    }
+                }
+            }
+        }
+        
+        List<AuthDecisionStatementBean> authzStatements = 
+            samlCallback.getAuthDecisionStatementData();
+        key.append(authzStatements == null ? 0 : authzStatements.size());
+        if (authzStatements != null) {
+            for (AuthDecisionStatementBean statement : authzStatements) {
+                if (!key.append(statement.getSubject()) || statement.getEvidence() != null) {
+                    return null;
+                }
+                key.append(String.valueOf(statement.getDecision()));
+                key.append(statement.getResource());
+                List<ActionBean> actions = statement.getActions();
+                key.append(actions == null ? 0 : actions.size());
+                if (actions != null) {
+                    for (ActionBean action : actions) {
+                        key.append(action.getActionNamespace());
+                        key.append(action.getContents());
+                    }
+                }
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Get a copy of the cached Assertion for the given key.
+     * @param key the cache key
+     * @return a copy of the cached Assertion, or null if no Assertion (with enough of its
+     * lifetime left) is cached for the key
+     * @throws WSSecurityException
+     */
+    public AssertionWrapper get(String key) throws WSSecurityException {
+        if (key == null) {
+            return null;
+        }
+        Entry entry = null;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        if (entry == null) {
+            return null;
+        }
+        return entry.newAssertion(System.currentTimeMillis() + refreshAhead / 2, true);
+    }
+
+    /**
+     * Cache an issued Assertion, and return a copy of it. The cached Assertion is only
+     * re-issued once it has been used (via {@link #get(String)}) after it was issued.
+     * @param key the cache key
+     * @param assertion the issued Assertion. It must not be used by the caller afterwards.
+     * @param builder re-issues the Assertion in the background
+     * @return a copy of the Assertion
+     * @throws WSSecurityException
+     */
+    public AssertionWrapper put(
+        String key, AssertionWrapper assertion, Builder builder
+    ) throws WSSecurityException {
+        Date notOnOrAfter = assertion.getNotOnOrAfter();
+        if (key == null || notOnOrAfter == null) {
+            return assertion;
+        }
+        Entry entry = new Entry(builder);
+        entry.update(assertion, notOnOrAfter);
+        synchronized (entries) {
+            entries.put(key, entry);
+            if (scheduler == null) {
+                startRefresh();
+            }
+        }
+        return entry.newAssertion(0L, false);
+    }
+
+    /**
+     * Remove all cached entries
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * @return the number of cached entries
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Stop the background thread and remove all cached entries. This must be called when the
+     * cache is not used any more. Assertions that are cached afterwards start the background
+     * thread again.
+     */
+    public void close() {
+        synchronized (entries) {
+            if (scheduler != null) {
+                scheduler.shutdownNow();
+                scheduler = null;
+            }
+            entries.clear();
+        }
+    }
+
+    /**
+     * Re-issue the cached Assertions that expire within the refresh time, and that have
+     * been used since they were last issued. Expired Assertions are removed.
+     */
+    void refresh() {
+        List<Map.Entry<String, Entry>> candidates = new ArrayList<Map.Entry<String, Entry>>();
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, Entry> mapEntry = iterator.next();
+                Entry entry = mapEntry.getValue();
+                if (entry.expires - refreshAhead > now) {
+                    continue;
+                }
+                if (entry.used) {
+                    candidates.add(mapEntry);
+                } else if (entry.expires <= now) {
+                    iterator.remove();
+                }
+            }
+        }
+        for (Map.Entry<String, Entry> mapEntry : candidates) {
+            Entry entry = mapEntry.getValue();
+            try {
+                AssertionWrapper assertion = entry.builder.build();
+                Date notOnOrAfter = assertion == null ? null : assertion.getNotOnOrAfter();
+                if (notOnOrAfter != null) {
+                    entry.update(assertion, notOnOrAfter);
+                    continue;
+                }
+            } catch (Exception ex) {
+                log.debug("Error re-issuing a cached SAML Assertion", ex);
+            }
+            synchronized (entries) {
+                entries.remove(mapEntry.getKey());
+            }
+        }
+    }
+
+    private void startRefresh() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "IssuedAssertionCache refresh");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        long interval = Math.max(refreshAhead / 4, 1000L);
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                refresh();
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * A cached Assertion. The DOM Element of the Assertion is never modified, and is only
+     * copied while holding the lock of the entry.
+     */
+    private static final class Entry {
+        private final Builder builder;
+        private Element element;
+        private volatile long expires;
+        private volatile boolean used;
+
+        Entry(Builder builder) {
+            this.builder = builder;
+        }
+
+        void update(AssertionWrapper assertion, Date notOnOrAfter) throws WSSecurityException {
+            Element newElement = assertion.toDOM(null);
+            synchronized (this) {
+                element = newElement;
+                expires = notOnOrAfter.getTime();
+                used = false;
+            }
+        }
+
+        AssertionWrapper newAssertion(
+            long validUntil, boolean markUsed
+        ) throws WSSecurityException {
+            Element copy = null;
+            synchronized (this) {
+                if (expires <= validUntil) {
+                    return null;
+                }
+                copy = (Element)element.cloneNode(true);
+                if (markUsed) {
+                    used = true;
+                }
+            }
+            return new AssertionWrapper(copy, null);
+        }
+    }
+
+    /**
+     * Builds an unambiguous String from a sequence of values.
+     */
+    private static final class KeyBuilder {
+        private final StringBuilder sb = new StringBuilder();
+
+        void append(String value) {
+            if (value == null) {
+                sb.append('-');
+            } else {
+                sb.append(value.length()).append(':').append(value);
+            }
+        }
+
+        void append(int value) {
+            sb.append('#').append(value);
+        }
+
+        /**
+         * @return false if the Subject has a KeyInfo
+         */
+        boolean append(SubjectBean subject) {
+            if (subject == null) {
+                append((String)null);
+                return true;
+            }
+            if (subject.getKeyInfo() != null) {
+                return false;
+            }
+            append(subject.getSubjectName());
+            append(subject.getSubjectNameQualifier());
+            append(subject.getSubjectNameIDFormat());
+            append(subject.getSubjectConfirmationMethod());
+            return true;
+        }
+
+        public String toString() {
+            return sb.toString();
+        }
+    }
+
+}
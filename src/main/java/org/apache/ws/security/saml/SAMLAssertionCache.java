@@ -0,0 +1,117 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ws.security.saml;
+
+import java.util.Date;
+
+import org.apache.ws.security.WSSecurityException;
+import org.apache.ws.security.util.Base64;
+import org.apache.ws.security.util.ExpiringCache;
+import org.w3c.dom.Element;
+
+/**
+ * This class caches the data of received SAML Assertions across messages (see
+ * {@link SAMLAssertionData}). It is keyed by a SHA-256 digest of the canonical form of the
+ * complete Assertion element (including the Signature). A cached entry is valid until the
+ * NotOnOrAfter time of the Conditions of the Assertion - Assertions without a NotOnOrAfter
+ * time are not cached.
+ *
+ * If an Assertion is presented again, it only has to be canonicalized and digested once,
+ * instead of unmarshalling it into OpenSAML objects, verifying its signature and parsing the
+ * KeyInfo of the Subject. The Validator is still invoked for every Assertion. As the cached
+ * key information was obtained with the Crypto configuration of the first request, a cache
+ * should only be shared between endpoints with the same configuration.
+ *
+ * A SAMLAssertionCache can be shared between threads. It is not used by default, see
+ * {@link org.apache.ws.security.WSSConfig#setSamlAssertionCache(SAMLAssertionCache)}.
+ */
+public class SAMLAssertionCache {
+
+    private final ExpiringCache<String, SAMLAssertionData> cache;
+
+    /**
+     * Create a cache with the default maximum size and time-to-live.
+     */
+    public SAMLAssertionCache() {
+        this(ExpiringCache.DEFAULT_MAX_SIZE, 0L);
+    }
+
+    /**
+     * @param maxSize the maximum number of Assertions to cache
+     * @param ttl the maximum time in seconds for which an Assertion is cached,
+     * or 0 to cache it until the NotOnOrAfter time of the Assertion
+     */
+    public SAMLAssertionCache(int maxSize, long ttl) {
+        cache = new ExpiringCache<String, SAMLAssertionData>(maxSize, ttl);
+    }
+
+    /**
+     * Create the cache key for an Assertion.
+     * @param assertion the (DOM) Assertion element
+     * @return the cache key, or null if no key can be created for the given argument
+     * @throws WSSecurityException
+     */
+    public String createKey(Element assertion) throws WSSecurityException {
+        if (assertion == null) {
+            return null;
+        }
+        return Base64.encode(SAMLSignatureCache.digestAssertion(assertion).digest());
+    }
+
+    /**
+     * @param key the cache key
+     * @return the cached data of the Assertion corresponding to the cache key, or null if
+     * it is not cached, or the Assertion has expired
+     */
+    public SAMLAssertionData get(String key) {
+        if (key == null) {
+            return null;
+        }
+        return cache.get(key);
+    }
+
+    /**
+     * Cache the data of the Assertion corresponding to the cache key. Nothing is cached if
+     * the data is not cacheable (see {@link SAMLAssertionData#isCacheable()}).
+     * @param key the cache key
+     * @param assertionData the data of the (processed) Assertion
+     */
+    public void put(String key, SAMLAssertionData assertionData) {
+        if (key != null && assertionData != null && assertionData.isCacheable()) {
+            Date notOnOrAfter = assertionData.getNotOnOrAfter();
+            cache.put(key, assertionData, notOnOrAfter.getTime());
+        }
+    }
+
+    /**
+     * Remove all cached entries
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * @return the number of cached entries
+     */
+    public int size() {
+        return cache.size();
+    }
+
+}
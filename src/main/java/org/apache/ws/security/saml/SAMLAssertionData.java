@@ -0,0 +1,147 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ws.security.saml;
+
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.ws.security.saml.ext.AssertionWrapper;
+import org.opensaml.common.SAMLVersion;
+
+/**
+ * This class holds the (immutable) data of a received SAML Assertion that is needed to
+ * process and validate it: the Id, version, issuer, subject name, confirmation methods,
+ * validity period, and the key information of the signature and of the Subject. It is
+ * stored in a {@link SAMLAssertionCache}, so that an Assertion that is presented again
+ * does not have to be unmarshalled into OpenSAML objects.
+ */
+public class SAMLAssertionData {
+
+    private final String id;
+    private final SAMLVersion samlVersion;
+    private final String issuer;
+    private final String subjectName;
+    private final List<String> confirmationMethods;
+    private final Date notBefore;
+    private final Date notOnOrAfter;
+    private final boolean signed;
+    private final SAMLKeyInfo signatureKeyInfo;
+    private final SAMLKeyInfo subjectKeyInfo;
+
+    /**
+     * Extract the data of a (processed) SAML Assertion.
+     * @param assertion the AssertionWrapper, after the signature has been verified and the
+     * Subject KeyInfo has been parsed
+     */
+    public SAMLAssertionData(AssertionWrapper assertion) {
+        id = assertion.getId();
+        samlVersion = assertion.getSamlVersion();
+        issuer = assertion.getIssuerString();
+        subjectName = assertion.getSubjectName();
+        confirmationMethods = 
+            Collections.unmodifiableList(
+                new ArrayList<String>(assertion.getConfirmationMethods())
+            );
+        notBefore = assertion.getNotBefore();
+        notOnOrAfter = assertion.getNotOnOrAfter();
+        signed = assertion.isSigned();
+        signatureKeyInfo = copy(assertion.getSignatureKeyInfo());
+        subjectKeyInfo = copy(assertion.getSubjectKeyInfo());
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public SAMLVersion getSamlVersion() {
+        return samlVersion;
+    }
+
+    public String getIssuer() {
+        return issuer;
+    }
+
+    public String getSubjectName() {
+        return subjectName;
+    }
+
+    public List<String> getConfirmationMethods() {
+        return confirmationMethods;
+    }
+
+    public Date getNotBefore() {
+        return notBefore == null ? null : new Date(notBefore.getTime());
+    }
+
+    public Date getNotOnOrAfter() {
+        return notOnOrAfter == null ? null : new Date(notOnOrAfter.getTime());
+    }
+
+    public boolean isSigned() {
+        return signed;
+    }
+
+    /**
+     * @return a copy of the SAMLKeyInfo associated with the signature of the assertion
+     */
+    public SAMLKeyInfo getSignatureKeyInfo() {
+        return copy(signatureKeyInfo);
+    }
+
+    /**
+     * @return a copy of the SAMLKeyInfo associated with the Subject KeyInfo
+     */
+    public SAMLKeyInfo getSubjectKeyInfo() {
+        return copy(subjectKeyInfo);
+    }
+
+    /**
+     * @return whether this data can be cached. This is not the case for an Assertion that
+     * has no NotOnOrAfter time, for a signed Assertion whose signature has not been verified,
+     * or if the Subject holds a secret key (which must be obtained again for every message).
+     */
+    public boolean isCacheable() {
+        if (id == null || notOnOrAfter == null || (signed && signatureKeyInfo == null)) {
+            return false;
+        }
+        return !hasSecret(signatureKeyInfo) && !hasSecret(subjectKeyInfo);
+    }
+
+    private static boolean hasSecret(SAMLKeyInfo keyInfo) {
+        return keyInfo != null && keyInfo.getSecret() != null;
+    }
+
+    static SAMLKeyInfo copy(SAMLKeyInfo keyInfo) {
+        if (keyInfo == null) {
+            return null;
+        }
+        X509Certificate[] certs = keyInfo.getCerts();
+        SAMLKeyInfo copy = new SAMLKeyInfo(certs == null ? null : certs.clone());
+        copy.setPublicKey(keyInfo.getPublicKey());
+        if (keyInfo.getSecret() != null) {
+            copy.setSecret(keyInfo.getSecret().clone());
+        }
+        return copy;
+    }
+
+}
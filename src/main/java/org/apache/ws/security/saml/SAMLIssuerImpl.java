@@ -24,12 +24,16 @@ import org.apache.ws.security.components.crypto.Crypto;
 import org.apache.ws.security.components.crypto.CryptoFactory;
 
 import org.apache.ws.security.saml.ext.AssertionWrapper;
+import org.apache.ws.security.saml.ext.SAMLCallback;
 import org.apache.ws.security.saml.ext.SAMLParms;
 import org.apache.ws.security.util.Loader;
 
+import java.io.IOException;
 import java.util.Properties;
 
+import javax.security.auth.callback.Callback;
 import javax.security.auth.callback.CallbackHandler;
+import javax.security.auth.callback.UnsupportedCallbackException;
 
 /**
  * Builds a WS SAML Assertion and inserts it into the SOAP Envelope. Refer to
@@ -61,6 +65,8 @@ public class SAMLIssuerImpl implements SAMLIssuer {
      * This boolean controls whether the assertion is to be signed or not
      */
     private boolean signAssertion = false;
+    
+    private IssuedAssertionCache assertionCache = null;
 
     /**
      * Constructor.
@@ -142,6 +148,9 @@ public class SAMLIssuerImpl implements SAMLIssuer {
         samlParms.setIssuer(issuer);
         samlParms.setCallbackHandler(callbackHandler);
 
+        if (assertionCache != null) {
+            return newCachedAssertion(samlParms);
+        }
         AssertionWrapper sa = new AssertionWrapper(samlParms);
         if (signAssertion) {
             sa.signAssertion(issuerKeyName, issuerKeyPassword, issuerCrypto, sendKeyValue);
@@ -150,6 +159,55 @@ public class SAMLIssuerImpl implements SAMLIssuer {
         return sa;
     }
     
+    /**
+     * Get the SAML source data from the CallbackHandler, and return the cached Assertion
+     * for this data if there is one, or else create (and cache) a new Assertion.
+     */
+    private AssertionWrapper newCachedAssertion(
+        final SAMLParms samlParms
+    ) throws WSSecurityException {
+        final SAMLCallback samlCallback = new SAMLCallback();
+        try {
+            callbackHandler.handle(new Callback[]{samlCallback});
+        } catch (IOException e) {
+            throw new IllegalStateException(
+                "IOException while creating SAML assertion wrapper", e
+            );
+        } catch (UnsupportedCallbackException e) {
+            throw new IllegalStateException(
+                "UnsupportedCallbackException while creating SAML assertion wrapper", e
+            );
+        }
+        
+        String issuerConfig = 
+            issuer + "|" + signAssertion + "|" + issuerKeyName + "|" + sendKeyValue;
+        String key = IssuedAssertionCache.createKey(samlCallback, issuerConfig);
+        AssertionWrapper sa = assertionCache.get(key);
+        if (sa != null) {
+            if (log.isDebugEnabled()) {
+                log.debug("Using cached SAML Assertion " + sa.getId());
+            }
+            return sa;
+        }
+        
+        IssuedAssertionCache.Builder builder = new IssuedAssertionCache.Builder() {
+            public AssertionWrapper build() throws WSSecurityException {
+                AssertionWrapper assertion = new AssertionWrapper(samlCallback, samlParms);
+                if (signAssertion) {
+                    assertion.signAssertion(
+                        issuerKeyName, issuerKeyPassword, issuerCrypto, sendKeyValue
+                    );
+                }
+                return assertion;
+            }
+        };
+        sa = builder.build();
+        if (key == null) {
+            return sa;
+        }
+        return assertionCache.put(key, sa, builder);
+    }
+    
     /**
      * Set whether to send the key value or whether to include the entire cert.
      * @param sendKeyValue whether to send the key value.
@@ -258,5 +316,22 @@ public class SAMLIssuerImpl implements SAMLIssuer {
     public String getIssuerKeyPassword() {
         return issuerKeyPassword;
     }
+    
+    /**
+     * Set the cache of issued Assertions. If a cache is set, then the same (signed) Assertion
+     * is returned for the same SAML source data until shortly before it expires. This is
+     * only suitable for sender-vouches and bearer Assertions, see IssuedAssertionCache.
+     * @param assertionCache the cache of issued Assertions
+     */
+    public void setAssertionCache(IssuedAssertionCache assertionCache) {
+        this.assertionCache = assertionCache;
+    }
+    
+    /**
+     * @return Returns the cache of issued Assertions.
+     */
+    public IssuedAssertionCache getAssertionCache() {
+        return assertionCache;
+    }
 
 }
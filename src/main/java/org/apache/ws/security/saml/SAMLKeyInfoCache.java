@@ -0,0 +1,160 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ws.security.saml;
+
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+
+import org.apache.ws.security.WSSecurityException;
+
+import org.apache.ws.security.saml.ext.AssertionWrapper;
+import org.apache.ws.security.saml.ext.SAMLDOMUtil;
+import org.apache.ws.security.util.Base64;
+import org.apache.ws.security.util.ExpiringCache;
+import org.apache.ws.security.util.WSSecurityUtil;
+
+/**
+ * This class caches the key information (certificates or public key) that has been 
+ * extracted from the Subject KeyInfo of received holder-of-key SAML Assertions, across
+ * messages. It is keyed by the issuer and ID of the Assertion, together with the value 
+ * of its signature and (a digest of) the certificate or public key that verified the 
+ * signature. Only the key information of signed Assertions, whose signature has been 
+ * verified, is cached, and it is only stored once the Assertion has been validated (see
+ * {@link AssertionWrapper#cacheAssertionData()}). A cached entry is valid until the 
+ * NotOnOrAfter time of the Conditions of the Assertion. Key information that contains a 
+ * secret key (e.g. from an EncryptedKey) is not cached.
+ *
+ * In contrast to the {@link SAMLAssertionCache}, the Assertion does not have to be 
+ * canonicalized to look up the cached key information. As the cached key information was
+ * obtained with the Crypto configuration of the first request, a cache should only be 
+ * shared between endpoints with the same configuration.
+ *
+ * A SAMLKeyInfoCache can be shared between threads. It is not used by default, see
+ * {@link org.apache.ws.security.WSSConfig#setSamlKeyInfoCache(SAMLKeyInfoCache)}.
+ */
+public class SAMLKeyInfoCache {
+
+    private final ExpiringCache<String, SAMLKeyInfo> cache;
+
+    /**
+     * Create a cache with the default maximum size and time-to-live.
+     */
+    public SAMLKeyInfoCache() {
+        this(ExpiringCache.DEFAULT_MAX_SIZE, 0L);
+    }
+
+    /**
+     * @param maxSize the maximum number of entries to cache
+     * @param ttl the maximum time in seconds for which an entry is cached,
+     * or 0 to cache it until the NotOnOrAfter time of the Assertion
+     */
+    public SAMLKeyInfoCache(int maxSize, long ttl) {
+        cache = new ExpiringCache<String, SAMLKeyInfo>(maxSize, ttl);
+    }
+
+    /**
+     * Create the cache key for an Assertion.
+     * @param assertion the (received) Assertion
+     * @return the cache key, or null if the Assertion is not signed, or its signature
+     * has not been verified
+     * @throws WSSecurityException
+     */
+    public String createKey(AssertionWrapper assertion) throws WSSecurityException {
+        if (assertion == null || assertion.getSignatureKeyInfo() == null 
+            || assertion.getElement() == null) {
+            return null;
+        }
+        String signatureValue = SAMLDOMUtil.getSignatureValue(assertion.getElement());
+        String signer = getSignerDigest(assertion.getSignatureKeyInfo());
+        String id = assertion.getId();
+        if (signatureValue == null || signer == null || id == null) {
+            return null;
+        }
+        String issuer = assertion.getIssuerString();
+        return (issuer == null ? "" : issuer) + "|" + id + "|" + signatureValue + "|" + signer;
+    }
+    
+    /**
+     * @return a digest of the certificate (or else the public key) that verified the 
+     * signature of the Assertion, or null if there is neither
+     */
+    private static String getSignerDigest(SAMLKeyInfo signatureKeyInfo) 
+        throws WSSecurityException {
+        byte[] encoded = null;
+        try {
+            X509Certificate[] certs = signatureKeyInfo.getCerts();
+            if (certs != null && certs.length > 0 && certs[0] != null) {
+                encoded = certs[0].getEncoded();
+            } else if (signatureKeyInfo.getPublicKey() != null) {
+                encoded = signatureKeyInfo.getPublicKey().getEncoded();
+            }
+        } catch (CertificateEncodingException ex) {
+            throw new WSSecurityException(
+                WSSecurityException.FAILURE, "invalidCert", null, ex
+            );
+        }
+        if (encoded == null) {
+            return null;
+        }
+        return Base64.encode(WSSecurityUtil.generateDigest(encoded));
+    }
+
+    /**
+     * @param key the cache key
+     * @return a copy of the cached key information corresponding to the cache key, or 
+     * null if it is not cached, or the Assertion has expired
+     */
+    public SAMLKeyInfo get(String key) {
+        if (key == null) {
+            return null;
+        }
+        return SAMLAssertionData.copy(cache.get(key));
+    }
+
+    /**
+     * Cache the key information of the Assertion corresponding to the cache key.
+     * @param key the cache key
+     * @param keyInfo the key information extracted from the Subject KeyInfo
+     * @param notOnOrAfter the NotOnOrAfter time of the Assertion. Nothing is cached if 
+     * this is null.
+     */
+    public void put(String key, SAMLKeyInfo keyInfo, Date notOnOrAfter) {
+        if (key != null && keyInfo != null && keyInfo.getSecret() == null
+            && notOnOrAfter != null) {
+            cache.put(key, SAMLAssertionData.copy(keyInfo), notOnOrAfter.getTime());
+        }
+    }
+
+    /**
+     * Remove all cached entries
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * @return the number of cached entries
+     */
+    public int size() {
+        return cache.size();
+    }
+
+}
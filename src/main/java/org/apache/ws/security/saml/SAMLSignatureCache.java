@@ -0,0 +1,168 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ws.security.saml;
+
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.util.Date;
+
+import org.apache.ws.security.WSSecurityException;
+import org.apache.ws.security.util.Base64;
+import org.apache.ws.security.util.ExpiringCache;
+import org.apache.xml.security.c14n.Canonicalizer;
+import org.w3c.dom.Element;
+
+/**
+ * This class caches the result of a successful signature verification of a (signed) SAML
+ * Assertion. It is keyed by a SHA-256 digest of the canonical form of the complete Assertion
+ * element (including the Signature), together with the encoded certificate or public key that
+ * was used to verify the signature. A cached entry is valid until the NotOnOrAfter time of the
+ * Conditions of the Assertion - Assertions without a NotOnOrAfter time are not cached.
+ *
+ * If an Assertion is presented again, it only has to be canonicalized and digested once,
+ * instead of validating the signature again (digesting the references, canonicalizing
+ * the SignedInfo and verifying the signature value). Note that this does not replace the trust
+ * verification of the signing certificate or key, which is still done by the Validator.
+ *
+ * A SAMLSignatureCache can be shared between threads. It is not used by default, see
+ * {@link org.apache.ws.security.WSSConfig#setSamlSignatureCache(SAMLSignatureCache)}.
+ */
+public class SAMLSignatureCache {
+
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private final ExpiringCache<String, Date> cache;
+
+    /**
+     * Create a cache with the default maximum size and time-to-live.
+     */
+    public SAMLSignatureCache() {
+        this(ExpiringCache.DEFAULT_MAX_SIZE, 0L);
+    }
+
+    /**
+     * @param maxSize the maximum number of verified Assertions to cache
+     * @param ttl the maximum time in seconds for which a verified Assertion is cached,
+     * or 0 to cache it until the NotOnOrAfter time of the Assertion
+     */
+    public SAMLSignatureCache(int maxSize, long ttl) {
+        cache = new ExpiringCache<String, Date>(maxSize, ttl);
+    }
+
+    /**
+     * Create the cache key for an Assertion and the key information that was used to
+     * verify its signature.
+     * @param assertion the (DOM) Assertion element
+     * @param keyInfo the SAMLKeyInfo object corresponding to the signing key
+     * @return the cache key, or null if no key can be created for the given arguments
+     * @throws WSSecurityException
+     */
+    public String createKey(Element assertion, SAMLKeyInfo keyInfo) throws WSSecurityException {
+        byte[] keyBytes = null;
+        try {
+            if (keyInfo.getCerts() != null && keyInfo.getCerts().length > 0) {
+                keyBytes = keyInfo.getCerts()[0].getEncoded();
+            } else if (keyInfo.getPublicKey() != null) {
+                keyBytes = keyInfo.getPublicKey().getEncoded();
+            }
+        } catch (CertificateEncodingException ex) {
+            throw new WSSecurityException(
+                WSSecurityException.SECURITY_TOKEN_UNAVAILABLE, "encodeError", null, ex
+            );
+        }
+        if (assertion == null || keyBytes == null) {
+            return null;
+        }
+
+        MessageDigest digest = digestAssertion(assertion);
+        digest.update(keyBytes);
+        return Base64.encode(digest.digest());
+    }
+
+    /**
+     * Digest the canonical form of the complete Assertion element.
+     * @param assertion the (DOM) Assertion element
+     * @return a MessageDigest instance that has been updated with the canonical form
+     * @throws WSSecurityException
+     */
+    static MessageDigest digestAssertion(Element assertion) throws WSSecurityException {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+            Canonicalizer canon = Canonicalizer.getInstance(Canonicalizer.ALGO_ID_C14N_OMIT_COMMENTS);
+            canon.setWriter(new OutputStream() {
+                public void write(int b) {
+                    digest.update((byte)b);
+                }
+
+                public void write(byte[] b, int off, int len) {
+                    digest.update(b, off, len);
+                }
+            });
+            canon.canonicalizeSubtree(assertion);
+            return digest;
+        } catch (NoSuchAlgorithmException ex) {
+            throw new WSSecurityException("Error in generating digest", ex);
+        } catch (Exception ex) {
+            throw new WSSecurityException(
+                WSSecurityException.FAILURE, "invalidSAMLsecurity",
+                new Object[]{"cannot canonicalize the Assertion"}, ex
+            );
+        }
+    }
+
+    /**
+     * @param key the cache key
+     * @return whether the signature of the Assertion corresponding to the cache key
+     * has been verified, and the Assertion has not expired yet
+     */
+    public boolean isVerified(String key) {
+        return key != null && cache.get(key) != null;
+    }
+
+    /**
+     * Record that the signature of the Assertion corresponding to the cache key has
+     * been verified.
+     * @param key the cache key
+     * @param notOnOrAfter the NotOnOrAfter time of the Assertion. If this is null then
+     * nothing is cached.
+     */
+    public void setVerified(String key, Date notOnOrAfter) {
+        if (key != null && notOnOrAfter != null) {
+            cache.put(key, notOnOrAfter, notOnOrAfter.getTime());
+        }
+    }
+
+    /**
+     * Remove all cached entries
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * @return the number of cached entries
+     */
+    public int size() {
+        return cache.size();
+    }
+
+}
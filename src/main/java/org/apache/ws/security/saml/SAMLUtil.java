@@ -31,7 +31,9 @@ import org.apache.ws.security.message.token.SecurityTokenReference;
 import org.apache.ws.security.processor.EncryptedKeyProcessor;
 import org.apache.ws.security.processor.Processor;
 import org.apache.ws.security.saml.ext.AssertionWrapper;
+import org.apache.ws.security.saml.ext.SAMLDOMUtil;
 import org.apache.ws.security.util.Base64;
+import org.apache.ws.security.util.SignatureFactoryCache;
 import org.apache.ws.security.util.WSSecurityUtil;
 
 import org.opensaml.saml2.core.SubjectConfirmationData;
@@ -49,9 +51,9 @@ import javax.xml.crypto.dsig.keyinfo.X509Data;
 import javax.xml.crypto.dsig.keyinfo.X509IssuerSerial;
 import javax.xml.namespace.QName;
 
-import java.security.NoSuchProviderException;
 import java.security.PublicKey;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -99,7 +101,11 @@ public class SAMLUtil {
                     keyIdentifierValue, type
                 );
             if (token != null) {
-                return new AssertionWrapper(token);
+                assertion = wsDocInfo.getAssertion(token);
+                if (assertion == null) {
+                    assertion = new AssertionWrapper(token);
+                }
+                return assertion;
             }
             token = 
                 secRef.findUnprocessedTokenElement(
@@ -271,6 +277,78 @@ public class SAMLUtil {
         return null;
     }
     
+    /**
+     * Get the SAMLKeyInfo object corresponding to the credential stored in the Subject of a 
+     * SAML 1.1 or SAML 2 assertion, by reading the assertion DOM Element directly
+     * @param assertion The SAML assertion as a DOM Element
+     * @param id The ID of the assertion
+     * @param data The RequestData instance used to obtain configuration
+     * @param docInfo A WSDocInfo instance
+     * @param bspCompliant Whether to process tokens in compliance with the BSP spec or not
+     * @return The SAMLKeyInfo object obtained from the Subject
+     * @throws WSSecurityException
+     */
+    public static SAMLKeyInfo getCredentialFromSubject(
+        Element assertion,
+        String id,
+        RequestData data,
+        WSDocInfo docInfo,
+        boolean bspCompliant
+    ) throws WSSecurityException {
+        // First try to get the credential from a CallbackHandler
+        byte[] key = getSecretKeyFromCallbackHandler(id, data.getCallbackHandler());
+        if (key != null && key.length > 0) {
+            return new SAMLKeyInfo(key);
+        }
+        
+        List<Element> confirmationDataList = new ArrayList<Element>();
+        if (WSConstants.SAML2_NS.equals(assertion.getNamespaceURI())) {
+            Element samlSubject = 
+                WSSecurityUtil.getDirectChildElement(assertion, "Subject", WSConstants.SAML2_NS);
+            if (samlSubject == null) {
+                throw new WSSecurityException(
+                    WSSecurityException.FAILURE, "invalidSAMLToken", 
+                    new Object[]{"for Signature (no Subject)"}
+                );
+            }
+            for (Element subjectConfirmation 
+                : WSSecurityUtil.getDirectChildElements(
+                    samlSubject, "SubjectConfirmation", WSConstants.SAML2_NS
+                )) {
+                confirmationDataList.add(
+                    WSSecurityUtil.getDirectChildElement(
+                        subjectConfirmation, "SubjectConfirmationData", WSConstants.SAML2_NS
+                    )
+                );
+            }
+        } else {
+            for (Element stmt : SAMLDOMUtil.getStatements(assertion)) {
+                Element samlSubject = 
+                    WSSecurityUtil.getDirectChildElement(stmt, "Subject", WSConstants.SAML_NS);
+                if (samlSubject == null) {
+                    throw new WSSecurityException(
+                        WSSecurityException.FAILURE, "invalidSAMLToken", 
+                        new Object[] {"for Signature (no Subject)"}
+                    );
+                }
+                confirmationDataList.add(
+                    WSSecurityUtil.getDirectChildElement(
+                        samlSubject, "SubjectConfirmation", WSConstants.SAML_NS
+                    )
+                );
+            }
+        }
+        
+        for (Element sub : confirmationDataList) {
+            Element keyInfoElement = 
+                WSSecurityUtil.getDirectChildElement(sub, "KeyInfo", WSConstants.SIG_NS);
+            if (keyInfoElement != null) {
+                return getCredentialFromKeyInfo(keyInfoElement, data, docInfo, bspCompliant);
+            }
+        }
+        return null;
+    }
+    
     /**
      * This method returns a SAMLKeyInfo corresponding to the credential found in the
      * KeyInfo (DOM Element) argument.
@@ -316,12 +394,7 @@ public class SAMLUtil {
         // (public key) credential
         //
         X509Certificate[] certs = null;
-        KeyInfoFactory keyInfoFactory = null;
-        try {
-            keyInfoFactory = KeyInfoFactory.getInstance("DOM", "XMLDSig");
-        } catch (NoSuchProviderException ex) {
-            keyInfoFactory = KeyInfoFactory.getInstance("DOM");
-        }
+        KeyInfoFactory keyInfoFactory = SignatureFactoryCache.getKeyInfoFactory();
         XMLStructure keyInfoStructure = new DOMStructure(keyInfoElement);
 
         try {
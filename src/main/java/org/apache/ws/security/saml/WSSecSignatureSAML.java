@@ -52,6 +52,7 @@ import org.apache.ws.security.saml.ext.AssertionWrapper;
 import org.apache.ws.security.saml.ext.OpenSAMLUtil;
 import org.apache.ws.security.transform.STRTransform;
 import org.apache.ws.security.util.WSSecurityUtil;
+import org.opensaml.common.SAMLVersion;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
@@ -207,6 +208,12 @@ public class WSSecSignatureSAML extends WSSecSignature {
         issuerKeyPW = iKeyPW;
         
         samlToken = (Element) assertion.toDOM(doc);
+        //
+        // The SAML version, the ID and the confirmation methods are read from the DOM
+        // Element, so that an Assertion that is not unmarshalled yet (e.g. one from an
+        // IssuedAssertionCache) is not unmarshalled here.
+        //
+        SAMLVersion samlVersion = assertion.getSamlVersion();
 
         //
         // Get some information about the SAML token content. This controls how
@@ -341,20 +348,20 @@ public class WSSecSignatureSAML extends WSSecSignature {
                 if (useDirectReferenceToAssertion) {
                     Reference ref = new Reference(doc);
                     ref.setURI("#" + assertion.getId());
-                    if (assertion.getSaml1() != null) {
+                    if (samlVersion == SAMLVersion.VERSION_11) {
                         ref.setValueType(WSConstants.WSS_SAML_KI_VALUE_TYPE);
                         secRefSaml.addTokenType(WSConstants.WSS_SAML_TOKEN_TYPE);
-                    } else if (assertion.getSaml2() != null) {
+                    } else if (samlVersion == SAMLVersion.VERSION_20) {
                         secRefSaml.addTokenType(WSConstants.WSS_SAML2_TOKEN_TYPE);
                     }
                     secRefSaml.setReference(ref);
                 } else {
                     Element keyId = doc.createElementNS(WSConstants.WSSE_NS, "wsse:KeyIdentifier");
                     String valueType = null;
-                    if (assertion.getSaml1() != null) {
+                    if (samlVersion == SAMLVersion.VERSION_11) {
                         valueType = WSConstants.WSS_SAML_KI_VALUE_TYPE;
                         secRefSaml.addTokenType(WSConstants.WSS_SAML_TOKEN_TYPE);
-                    } else if (assertion.getSaml2() != null) {
+                    } else if (samlVersion == SAMLVersion.VERSION_20) {
                         valueType = WSConstants.WSS_SAML2_KI_VALUE_TYPE;
                         secRefSaml.addTokenType(WSConstants.WSS_SAML2_TOKEN_TYPE);
                     }
@@ -415,20 +422,20 @@ public class WSSecSignatureSAML extends WSSecSignature {
         } else if (useDirectReferenceToAssertion) {
             Reference ref = new Reference(doc);
             ref.setURI("#" + assertion.getId());
-            if (assertion.getSaml1() != null) {
+            if (samlVersion == SAMLVersion.VERSION_11) {
                 ref.setValueType(WSConstants.WSS_SAML_KI_VALUE_TYPE);
                 secRef.addTokenType(WSConstants.WSS_SAML_TOKEN_TYPE);
-            } else if (assertion.getSaml2() != null) {
+            } else if (samlVersion == SAMLVersion.VERSION_20) {
                 secRef.addTokenType(WSConstants.WSS_SAML2_TOKEN_TYPE);
             }
             secRef.setReference(ref);
         } else {
             Element keyId = doc.createElementNS(WSConstants.WSSE_NS, "wsse:KeyIdentifier");
             String valueType = null;
-            if (assertion.getSaml1() != null) {
+            if (samlVersion == SAMLVersion.VERSION_11) {
                 valueType = WSConstants.WSS_SAML_KI_VALUE_TYPE;
                 secRef.addTokenType(WSConstants.WSS_SAML_TOKEN_TYPE);
-            } else if (assertion.getSaml2() != null) {
+            } else if (samlVersion == SAMLVersion.VERSION_20) {
                 valueType = WSConstants.WSS_SAML2_KI_VALUE_TYPE;
                 secRef.addTokenType(WSConstants.WSS_SAML2_TOKEN_TYPE);
             }
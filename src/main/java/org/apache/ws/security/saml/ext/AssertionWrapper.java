@@ -19,22 +19,29 @@
 
 package org.apache.ws.security.saml.ext;
 
+import org.apache.ws.security.WSConstants;
 import org.apache.ws.security.WSDocInfo;
 import org.apache.ws.security.WSSecurityException;
 import org.apache.ws.security.components.crypto.Crypto;
 import org.apache.ws.security.components.crypto.CryptoType;
 import org.apache.ws.security.handler.RequestData;
+import org.apache.ws.security.saml.SAMLAssertionCache;
+import org.apache.ws.security.saml.SAMLAssertionData;
 import org.apache.ws.security.saml.SAMLKeyInfo;
+import org.apache.ws.security.saml.SAMLKeyInfoCache;
+import org.apache.ws.security.saml.SAMLSignatureCache;
 import org.apache.ws.security.saml.SAMLUtil;
 import org.apache.ws.security.saml.ext.builder.SAML1ComponentBuilder;
 import org.apache.ws.security.saml.ext.builder.SAML2ComponentBuilder;
 
 import org.apache.ws.security.util.DOM2Writer;
 import org.apache.ws.security.util.UUIDGenerator;
+import org.apache.ws.security.util.WSSecurityUtil;
 import org.apache.xml.security.exceptions.XMLSecurityException;
 import org.apache.xml.security.signature.XMLSignature;
 import org.apache.xml.security.signature.XMLSignatureException;
 
+import org.joda.time.DateTime;
 import org.opensaml.common.SAMLVersion;
 import org.opensaml.common.SignableSAMLObject;
 import org.opensaml.saml1.core.AttributeStatement;
@@ -67,6 +74,7 @@ import java.io.IOException;
 import java.security.PrivateKey;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
 /**
@@ -124,6 +132,29 @@ public class AssertionWrapper {
      * The SAMLKeyInfo object associated with the Signature on the Assertion
      */
     private SAMLKeyInfo signatureKeyInfo;
+    
+    /**
+     * The cache of SAML Assertions this object was created with (if any)
+     */
+    private SAMLAssertionCache assertionCache;
+    
+    /**
+     * The key of the Assertion in the cache
+     */
+    private String cacheKey;
+    
+    /**
+     * The cached data of the Assertion. If this is not null, then the Assertion has not
+     * been unmarshalled (yet).
+     */
+    private SAMLAssertionData assertionData;
+    
+    /**
+     * The cache of Subject key information, and the key to store the Subject key
+     * information of this Assertion under once it has been validated
+     */
+    private SAMLKeyInfoCache keyInfoCache;
+    private String keyInfoCacheKey;
 
     /**
      * Default Canonicalization algorithm used for signing.
@@ -147,11 +178,44 @@ public class AssertionWrapper {
      * @throws UnmarshallingException when
      */
     public AssertionWrapper(Element element) throws WSSecurityException {
-        OpenSAMLUtil.initSamlEngine();
-        
         parseElement(element);
     }
 
+    /**
+     * Constructor AssertionWrapper creates a new AssertionWrapper instance, that reads the
+     * data needed to process the Assertion directly from the DOM Element (or from the given
+     * cache, if it holds the data of the Assertion). The Assertion is only unmarshalled into
+     * OpenSAML objects if they are requested via getSaml1()/getSaml2()/getXmlObject(), or if
+     * it is needed to verify the signature.
+     *
+     * @param element of type Element
+     * @param assertionCache the cache of SAML Assertions, or null
+     * @throws WSSecurityException
+     */
+    public AssertionWrapper(
+        Element element, SAMLAssertionCache assertionCache
+    ) throws WSSecurityException {
+        if (assertionCache != null) {
+            this.assertionCache = assertionCache;
+            cacheKey = assertionCache.createKey(element);
+            assertionData = assertionCache.get(cacheKey);
+        }
+        if (assertionData != null) {
+            if (log.isDebugEnabled()) {
+                log.debug("AssertionWrapper: using the cached data of " + assertionData.getId());
+            }
+            samlVersion = assertionData.getSamlVersion();
+            assertionElement = element;
+        } else {
+            samlVersion = SAMLDOMUtil.getSamlVersion(element);
+            if (samlVersion != null) {
+                assertionElement = element;
+            } else {
+                parseElement(element);
+            }
+        }
+    }
+
     /**
      * Constructor AssertionWrapper creates a new AssertionWrapper instance.
      *
@@ -179,8 +243,6 @@ public class AssertionWrapper {
      * @param xmlObject of type XMLObject
      */
     public AssertionWrapper(XMLObject xmlObject) {
-        OpenSAMLUtil.initSamlEngine();
-        
         this.xmlObject = xmlObject;
         if (xmlObject instanceof org.opensaml.saml1.core.Assertion) {
             this.saml1 = (org.opensaml.saml1.core.Assertion) xmlObject;
@@ -194,6 +256,7 @@ public class AssertionWrapper {
                 + (xmlObject != null ? xmlObject.getClass().getName() : xmlObject)
             );
         }
+        OpenSAMLUtil.initSamlEngine(samlVersion);
     }
 
     /**
@@ -204,8 +267,6 @@ public class AssertionWrapper {
      * @param parms of type SAMLParms
      */
     public AssertionWrapper(SAMLParms parms) throws WSSecurityException {
-        OpenSAMLUtil.initSamlEngine();
-        
         //
         // Create the SAML callback that the handler will use to get the required data from the 
         // client application.
@@ -230,13 +291,20 @@ public class AssertionWrapper {
             );
         }
         
-        // See if we already have a DOM element in SAMLCallback
-        if (samlCallbacks[0].getAssertionElement() != null) {
-            parseElement(samlCallbacks[0].getAssertionElement());
-        } else {
-            // If not then parse the SAMLCallback object
-            parseCallback(samlCallbacks[0], parms);
-        }
+        parseCallbackData(samlCallbacks[0], parms);
+    }
+
+    /**
+     * Constructor AssertionWrapper creates a new AssertionWrapper instance from a
+     * SAMLCallback object, that has already been handled by the SAML CallbackHandler.
+     *
+     * @param samlCallback the SAMLCallback object holding the SAML source data
+     * @param parms of type SAMLParms
+     */
+    public AssertionWrapper(
+        SAMLCallback samlCallback, SAMLParms parms
+    ) throws WSSecurityException {
+        parseCallbackData(samlCallback, parms);
     }
 
     /**
@@ -245,6 +313,7 @@ public class AssertionWrapper {
      * @return the saml1 (type Assertion) of this AssertionWrapper object.
      */
     public org.opensaml.saml1.core.Assertion getSaml1() {
+        unmarshalAssertion();
         return saml1;
     }
 
@@ -254,6 +323,7 @@ public class AssertionWrapper {
      * @return the saml2 (type Assertion) of this AssertionWrapper object.
      */
     public org.opensaml.saml2.core.Assertion getSaml2() {
+        unmarshalAssertion();
         return saml2;
     }
 
@@ -263,6 +333,7 @@ public class AssertionWrapper {
      * @return the xmlObject (type XMLObject) of this AssertionWrapper object.
      */
     public XMLObject getXmlObject() {
+        unmarshalAssertion();
         return xmlObject;
     }
 
@@ -272,9 +343,21 @@ public class AssertionWrapper {
      * @return the created (type boolean) of this AssertionWrapper object.
      */
     public boolean isCreated() {
+        unmarshalAssertion();
         return saml1 != null || saml2 != null;
     }
 
+    /**
+     * Method isUnmarshalled returns whether this AssertionWrapper object holds the OpenSAML
+     * objects of the Assertion. This is not the case if its data has only been read from the
+     * DOM Element (or the cache) so far.
+     *
+     * @return whether the Assertion has been unmarshalled into OpenSAML objects
+     */
+    public boolean isUnmarshalled() {
+        return xmlObject != null;
+    }
+
 
     /**
      * Create a DOM from the current XMLObject content. If the user-supplied doc is not null,
@@ -284,6 +367,19 @@ public class AssertionWrapper {
      * @return Element
      */
     public Element toDOM(Document doc) throws WSSecurityException {
+        if (doc != null && assertionData == null && isDomOnly()) {
+            // There is no need to unmarshal and marshal the Assertion again
+            if (assertionElement.getOwnerDocument() != doc) {
+                assertionElement = (Element)doc.importNode(assertionElement, true);
+                if (assertionElement.hasAttributeNS(null, "ID")) {
+                    assertionElement.setIdAttributeNS(null, "ID", true);
+                } else if (assertionElement.hasAttributeNS(null, "AssertionID")) {
+                    assertionElement.setIdAttributeNS(null, "AssertionID", true);
+                }
+            }
+            return assertionElement;
+        }
+        unmarshalAssertion();
         assertionElement = OpenSAMLUtil.toDom(xmlObject, doc);
         return assertionElement;
     }
@@ -304,6 +400,15 @@ public class AssertionWrapper {
      * @return the id (type String) of this AssertionWrapper object.
      */
     public String getId() {
+        if (assertionData != null) {
+            return assertionData.getId();
+        } else if (isDomOnly()) {
+            String id = SAMLDOMUtil.getId(assertionElement);
+            if (id != null && id.length() > 0) {
+                return id;
+            }
+            unmarshalAssertion();
+        }
         String id = null;
         if (saml2 != null) {
             id = saml2.getID();
@@ -330,6 +435,11 @@ public class AssertionWrapper {
      * @return the issuerString (type String) of this AssertionWrapper object.
      */
     public String getIssuerString() {
+        if (assertionData != null) {
+            return assertionData.getIssuer();
+        } else if (isDomOnly()) {
+            return SAMLDOMUtil.getIssuer(assertionElement);
+        }
         if (saml2 != null && saml2.getIssuer() != null) {
             return saml2.getIssuer().getValue();
         } else if (saml1 != null) {
@@ -349,6 +459,11 @@ public class AssertionWrapper {
      * @return the confirmationMethods of this AssertionWrapper object.
      */
     public List<String> getConfirmationMethods() {
+        if (assertionData != null) {
+            return new ArrayList<String>(assertionData.getConfirmationMethods());
+        } else if (isDomOnly()) {
+            return SAMLDOMUtil.getConfirmationMethods(assertionElement);
+        }
         List<String> methods = new ArrayList<String>();
         if (saml2 != null) {
             org.opensaml.saml2.core.Subject subject = saml2.getSubject();
@@ -391,6 +506,11 @@ public class AssertionWrapper {
      * @return the signed (type boolean) of this AssertionWrapper object.
      */
     public boolean isSigned() {
+        if (assertionData != null) {
+            return assertionData.isSigned();
+        } else if (isDomOnly()) {
+            return SAMLDOMUtil.getSignature(assertionElement) != null;
+        }
         if (saml2 != null) {
             return saml2.isSigned() || saml2.getSignature() != null;
         } else if (saml1 != null) {
@@ -405,6 +525,7 @@ public class AssertionWrapper {
      * @param signature the signature of this AssertionWrapper object.
      */
     public void setSignature(Signature signature) {
+        unmarshalAssertion();
         if (xmlObject instanceof SignableSAMLObject) {
             SignableSAMLObject signableObject = (SignableSAMLObject) xmlObject;
             signableObject.setSignature(signature);
@@ -515,24 +636,78 @@ public class AssertionWrapper {
     public void verifySignature(
         RequestData data, WSDocInfo docInfo
     ) throws WSSecurityException {
+        if (assertionData != null) {
+            // The signature was verified when the data of the Assertion was cached
+            signatureKeyInfo = assertionData.getSignatureKeyInfo();
+            return;
+        }
         Signature sig = null;
-        if (saml2 != null && saml2.getSignature() != null) {
-            sig = saml2.getSignature();
-        } else if (saml1 != null && saml1.getSignature() != null) {
-            sig = saml1.getSignature();
+        Element keyInfoElement = null;
+        boolean signed = false;
+        if (isDomOnly()) {
+            Element signatureElement = SAMLDOMUtil.getSignature(assertionElement);
+            if (signatureElement != null) {
+                signed = true;
+                keyInfoElement = 
+                    WSSecurityUtil.getDirectChildElement(
+                        signatureElement, "KeyInfo", WSConstants.SIG_NS
+                    );
+            }
+        } else {
+            if (saml2 != null && saml2.getSignature() != null) {
+                sig = saml2.getSignature();
+            } else if (saml1 != null && saml1.getSignature() != null) {
+                sig = saml1.getSignature();
+            }
+            if (sig != null) {
+                signed = true;
+                KeyInfo keyInfo = sig.getKeyInfo();
+                keyInfoElement = keyInfo != null ? keyInfo.getDOM() : null;
+            }
         }
-        if (sig != null) {
-            KeyInfo keyInfo = sig.getKeyInfo();
-            SAMLKeyInfo samlKeyInfo = 
-                SAMLUtil.getCredentialFromKeyInfo(
-                    keyInfo.getDOM(), data, docInfo, data.getWssConfig().isWsiBSPCompliant()
-                );
+        if (signed) {
+            SAMLKeyInfo samlKeyInfo = null;
+            if (keyInfoElement != null) {
+                samlKeyInfo = 
+                    SAMLUtil.getCredentialFromKeyInfo(
+                        keyInfoElement, data, docInfo, data.getWssConfig().isWsiBSPCompliant()
+                    );
+            }
             if (samlKeyInfo == null) {
                 throw new WSSecurityException(
                     WSSecurityException.FAILURE, "invalidSAMLsecurity",
                     new Object[]{"cannot get certificate or key"}
                 );
             }
+            
+            //
+            // If the same Assertion has been verified before with the same key, then
+            // there is no need to validate the signature again
+            //
+            SAMLSignatureCache signatureCache = data.getWssConfig().getSamlSignatureCache();
+            String cacheKey = null;
+            if (signatureCache != null) {
+                cacheKey = signatureCache.createKey(assertionElement, samlKeyInfo);
+                if (signatureCache.isVerified(cacheKey)) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("AssertionWrapper: signature of " + getId() + " already verified");
+                    }
+                    signatureKeyInfo = samlKeyInfo;
+                    return;
+                }
+            }
+            
+            // The signature has to be validated via the OpenSAML objects
+            if (sig == null) {
+                unmarshalAssertion();
+                sig = saml2 != null ? saml2.getSignature() : saml1.getSignature();
+                if (sig == null) {
+                    throw new WSSecurityException(
+                        WSSecurityException.FAILURE, "invalidSAMLsecurity",
+                        new Object[]{"cannot unmarshal the Signature"}
+                    );
+                }
+            }
             SAMLSignatureProfileValidator validator = new SAMLSignatureProfileValidator();
             try {
                 validator.validate(sig);
@@ -558,11 +733,109 @@ public class AssertionWrapper {
                 throw new WSSecurityException("SAML signature validation failed", ex);
             }
             signatureKeyInfo = samlKeyInfo;
+            if (cacheKey != null) {
+                signatureCache.setVerified(cacheKey, getNotOnOrAfter());
+            }
         } else {
             log.debug("AssertionWrapper: no signature to validate");
         }
     }
     
+    /**
+     * Get the NotOnOrAfter time of the Conditions of the Assertion
+     * @return the NotOnOrAfter time of the Conditions of the Assertion, or null if the
+     * Assertion has no such Conditions
+     */
+    public Date getNotOnOrAfter() {
+        if (assertionData != null) {
+            return assertionData.getNotOnOrAfter();
+        } else if (isDomOnly()) {
+            return SAMLDOMUtil.getNotOnOrAfter(assertionElement);
+        }
+        DateTime notOnOrAfter = null;
+        if (saml2 != null && saml2.getConditions() != null) {
+            notOnOrAfter = saml2.getConditions().getNotOnOrAfter();
+        } else if (saml1 != null && saml1.getConditions() != null) {
+            notOnOrAfter = saml1.getConditions().getNotOnOrAfter();
+        }
+        if (notOnOrAfter == null) {
+            return null;
+        }
+        return notOnOrAfter.toDate();
+    }
+    
+    /**
+     * Get the NotBefore time of the Conditions of the Assertion
+     * @return the NotBefore time of the Conditions of the Assertion, or null if the
+     * Assertion has no such Conditions
+     */
+    public Date getNotBefore() {
+        if (assertionData != null) {
+            return assertionData.getNotBefore();
+        } else if (isDomOnly()) {
+            return SAMLDOMUtil.getNotBefore(assertionElement);
+        }
+        DateTime notBefore = null;
+        if (saml2 != null && saml2.getConditions() != null) {
+            notBefore = saml2.getConditions().getNotBefore();
+        } else if (saml1 != null && saml1.getConditions() != null) {
+            notBefore = saml1.getConditions().getNotBefore();
+        }
+        if (notBefore == null) {
+            return null;
+        }
+        return notBefore.toDate();
+    }
+    
+    /**
+     * Get the name (NameID/NameIdentifier value) of the Subject of the Assertion. For a
+     * SAML 1.1 Assertion, the Subject of the first statement that has one is used.
+     * @return the name of the Subject of the Assertion, or null if there is none
+     */
+    public String getSubjectName() {
+        if (assertionData != null) {
+            return assertionData.getSubjectName();
+        } else if (isDomOnly()) {
+            return SAMLDOMUtil.getSubjectName(assertionElement);
+        }
+        if (saml2 != null) {
+            org.opensaml.saml2.core.Subject subject = saml2.getSubject();
+            if (subject != null && subject.getNameID() != null) {
+                return subject.getNameID().getValue();
+            }
+        } else if (saml1 != null) {
+            Subject samlSubject = null;
+            for (org.opensaml.saml1.core.Statement stmt : saml1.getStatements()) {
+                if (stmt instanceof SubjectStatement) {
+                    samlSubject = ((SubjectStatement)stmt).getSubject();
+                }
+                if (samlSubject != null) {
+                    break;
+                }
+            }
+            if (samlSubject != null && samlSubject.getNameIdentifier() != null) {
+                return samlSubject.getNameIdentifier().getNameIdentifier();
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Store the data of this Assertion in the SAMLAssertionCache it was created with (if
+     * any), and its Subject key information in the SAMLKeyInfoCache (if any). This must only
+     * be called once the Assertion has been processed and validated, i.e. its signature has
+     * been verified, the Subject KeyInfo has been parsed and the signing key is trusted.
+     */
+    public void cacheAssertionData() {
+        if (assertionCache != null && cacheKey != null && assertionData == null) {
+            assertionCache.put(cacheKey, new SAMLAssertionData(this));
+        }
+        if (keyInfoCache != null && keyInfoCacheKey != null) {
+            keyInfoCache.put(keyInfoCacheKey, subjectKeyInfo, getNotOnOrAfter());
+            keyInfoCacheKey = null;
+        }
+    }
+    
     /**
      * This method parses the KeyInfo of the Subject for the holder-of-key confirmation
      * method, as required by the SAML Token spec. It then stores the SAMLKeyInfo object that
@@ -572,13 +845,30 @@ public class AssertionWrapper {
     public void parseHOKSubject(
         RequestData data, WSDocInfo docInfo
     ) throws WSSecurityException {
+        if (assertionData != null) {
+            subjectKeyInfo = assertionData.getSubjectKeyInfo();
+            return;
+        }
         String confirmMethod = null;
         List<String> methods = getConfirmationMethods();
         if (methods != null && methods.size() > 0) {
             confirmMethod = methods.get(0);
         }
         if (OpenSAMLUtil.isMethodHolderOfKey(confirmMethod)) {
-            if (saml1 != null) {
+            keyInfoCache = data.getWssConfig().getSamlKeyInfoCache();
+            if (keyInfoCache != null) {
+                keyInfoCacheKey = keyInfoCache.createKey(this);
+                subjectKeyInfo = keyInfoCache.get(keyInfoCacheKey);
+                if (subjectKeyInfo != null) {
+                    keyInfoCacheKey = null;
+                    return;
+                }
+            }
+            if (isDomOnly()) {
+                subjectKeyInfo = 
+                    SAMLUtil.getCredentialFromSubject(assertionElement, getId(), data, docInfo,
+                                                      data.getWssConfig().isWsiBSPCompliant());
+            } else if (saml1 != null) {
                 subjectKeyInfo = 
                     SAMLUtil.getCredentialFromSubject(saml1, data, docInfo, 
                                                       data.getWssConfig().isWsiBSPCompliant());
@@ -649,6 +939,7 @@ public class AssertionWrapper {
      * @throws WSSecurityException
      */
     public byte[] getSignatureValue() throws WSSecurityException {
+        unmarshalAssertion();
         Signature sig = null;
         if (saml2 != null && saml2.getSignature() != null) {
             sig = saml2.getSignature();
@@ -671,6 +962,44 @@ public class AssertionWrapper {
         return null;
     }
     
+    /**
+     * Unmarshal the Assertion into OpenSAML objects, if its data is read from the DOM
+     * Element. Nothing is done if the data of the Assertion was read from the cache, as
+     * only Assertions that have been unmarshalled and validated before are cached.
+     * @throws WSSecurityException if the Assertion can not be unmarshalled
+     */
+    public void unmarshal() throws WSSecurityException {
+        if (assertionData == null && isDomOnly()) {
+            parseElement(assertionElement);
+        }
+    }
+    
+    /**
+     * @return whether the Assertion has not been unmarshalled into OpenSAML objects (yet),
+     * i.e. its data is read from the DOM Element
+     */
+    private boolean isDomOnly() {
+        return xmlObject == null && assertionElement != null;
+    }
+    
+    /**
+     * Unmarshal the Assertion element, if this object was created from cached data or
+     * reads its data from the DOM Element. The cached data is not used afterwards, as the
+     * OpenSAML objects might be modified.
+     */
+    private void unmarshalAssertion() {
+        if (isDomOnly()) {
+            try {
+                parseElement(assertionElement);
+            } catch (WSSecurityException ex) {
+                throw new IllegalStateException(
+                    "Error unmarshalling the SAML Assertion", ex
+                );
+            }
+            assertionData = null;
+        }
+    }
+    
     /**
      * Parse the DOM Element into Opensaml objects.
      */
@@ -692,6 +1021,20 @@ public class AssertionWrapper {
         assertionElement = element;
     }
     
+    /**
+     * Create the SAML Assertion from the DOM element of the SAMLCallback object if it
+     * has one, or else from the data of the SAMLCallback object.
+     */
+    private void parseCallbackData(
+        SAMLCallback samlCallback, SAMLParms parms
+    ) throws WSSecurityException {
+        if (samlCallback.getAssertionElement() != null) {
+            parseElement(samlCallback.getAssertionElement());
+        } else {
+            parseCallback(samlCallback, parms);
+        }
+    }
+    
     /**
      * Parse a SAMLCallback object to create a SAML Assertion
      */
@@ -702,6 +1045,7 @@ public class AssertionWrapper {
         if (samlVersion == null) {
             samlVersion = parms.getSAMLVersion();
         }
+        OpenSAMLUtil.initSamlEngine(samlVersion);
         String issuer = samlCallback.getIssuer();
         if (issuer == null && parms.getIssuer() != null) {
             issuer = parms.getIssuer();
@@ -20,37 +20,57 @@
 package org.apache.ws.security.saml.ext;
 
 import org.opensaml.DefaultBootstrap;
+import org.opensaml.common.SAMLVersion;
 import org.opensaml.xml.ConfigurationException;
 
 /**
  * This class intializes the Opensaml library. It is necessary to override DefaultBootstrap
  * to avoid instantiating Velocity, which we do not need in WSS4J.
+ * 
+ * WSS4J only needs the XMLTooling configurations of the SAML 1.1 and SAML 2.0 Assertions
+ * (and of XML Signature/Encryption), and so {@link #bootstrap(SAMLVersion)} only loads
+ * these configurations for the given SAML version. {@link #bootstrap()} loads all of the
+ * configurations (protocols, metadata, XACML, etc.), and initializes the artifact builders
+ * and the parser pool, for applications that use these parts of Opensaml as well.
  */
 public class OpenSAMLBootstrap extends DefaultBootstrap {
     
-    /** List of default XMLTooling configuration files. */
-    private static String[] xmlToolingConfigs = { 
+    /** List of the XMLTooling configuration files that are needed for any SAML version. */
+    private static String[] coreConfigs = { 
         "/default-config.xml", 
         "/schema-config.xml", 
         "/signature-config.xml",
         "/signature-validation-config.xml", 
         "/encryption-config.xml", 
         "/encryption-validation-config.xml",
-        "/soap11-config.xml", 
-        "/wsfed11-protocol-config.xml",
+        "/wssecurity-config.xml",
+    };
+    
+    /** List of the XMLTooling configuration files for SAML 1.1 Assertions. */
+    private static String[] saml1Configs = { 
         "/saml1-assertion-config.xml", 
-        "/saml1-protocol-config.xml",
         "/saml1-core-validation-config.xml", 
+    };
+    
+    /** List of the XMLTooling configuration files for SAML 2.0 Assertions. */
+    private static String[] saml2Configs = { 
         "/saml2-assertion-config.xml", 
-        "/saml2-protocol-config.xml",
         "/saml2-core-validation-config.xml", 
+        "/saml2-assertion-delegation-restriction-config.xml",    
+    };
+    
+    /** List of the remaining default XMLTooling configuration files. */
+    private static String[] extensionConfigs = { 
+        "/soap11-config.xml", 
+        "/wsfed11-protocol-config.xml",
+        "/saml1-protocol-config.xml",
+        "/saml2-protocol-config.xml",
         "/saml1-metadata-config.xml", 
         "/saml2-metadata-config.xml",
         "/saml2-metadata-validation-config.xml", 
         "/saml2-metadata-idp-discovery-config.xml",
         "/saml2-protocol-thirdparty-config.xml",
         "/saml2-metadata-query-config.xml", 
-        "/saml2-assertion-delegation-restriction-config.xml",    
         "/saml2-ecp-config.xml",
         "/xacml10-saml2-profile-config.xml",
         "/xacml11-saml2-profile-config.xml",
@@ -59,25 +79,64 @@ public class OpenSAMLBootstrap extends DefaultBootstrap {
         "/xacml2-saml2-profile-config.xml",
         "/xacml3-saml2-profile-config.xml",    
         "/wsaddressing-config.xml",
-        "/wssecurity-config.xml",
     };
     
+    private static boolean coreInitialized = false;
+    private static boolean saml1Initialized = false;
+    private static boolean saml2Initialized = false;
+    private static boolean extensionsInitialized = false;
+    
     /**
-     * Initializes the OpenSAML library, loading default configurations.
+     * Initializes the OpenSAML library, loading all of the default configurations.
      * 
      * @throws ConfigurationException thrown if there is a problem initializing the OpenSAML library
      */
     public static synchronized void bootstrap() throws ConfigurationException {
+        bootstrap(null);
+        
+        if (!extensionsInitialized) {
+            initializeXMLTooling(extensionConfigs);
 
-        initializeXMLSecurity();
+            initializeArtifactBuilderFactories();
 
-        initializeXMLTooling(xmlToolingConfigs);
+            initializeParserPool();
+            
+            extensionsInitialized = true;
+        }
+    }
+    
+    /**
+     * Initializes the OpenSAML library, loading the configurations that are needed to 
+     * create and process SAML Assertions of the given version. Configurations that have
+     * been loaded by a previous call are not loaded again.
+     * 
+     * @param samlVersion the SAML version, or null to load the configurations of both
+     * SAML 1.1 and SAML 2.0
+     * @throws ConfigurationException thrown if there is a problem initializing the OpenSAML library
+     */
+    public static synchronized void bootstrap(
+        SAMLVersion samlVersion
+    ) throws ConfigurationException {
+        if (!coreInitialized) {
+            initializeXMLSecurity();
 
-        initializeArtifactBuilderFactories();
+            initializeXMLTooling(coreConfigs);
 
-        initializeGlobalSecurityConfiguration();
+            initializeGlobalSecurityConfiguration();
+            
+            coreInitialized = true;
+        }
+        
+        if (!saml1Initialized && !SAMLVersion.VERSION_20.equals(samlVersion)) {
+            initializeXMLTooling(saml1Configs);
+            saml1Initialized = true;
+        }
         
-        initializeParserPool();
+        if (!saml2Initialized 
+            && (samlVersion == null || SAMLVersion.VERSION_20.equals(samlVersion))) {
+            initializeXMLTooling(saml2Configs);
+            saml2Initialized = true;
+        }
     }
 
 }
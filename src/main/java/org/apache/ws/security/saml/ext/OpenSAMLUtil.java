@@ -22,6 +22,7 @@ package org.apache.ws.security.saml.ext;
 import javax.xml.namespace.QName;
 
 import org.apache.ws.security.WSSecurityException;
+import org.opensaml.common.SAMLVersion;
 import org.opensaml.xml.*;
 import org.opensaml.xml.io.*;
 import org.opensaml.xml.signature.Signature;
@@ -43,22 +44,39 @@ public class OpenSAMLUtil {
     private static XMLObjectBuilderFactory builderFactory;
     private static MarshallerFactory marshallerFactory;
     private static UnmarshallerFactory unmarshallerFactory;
-    private static boolean samlEngineInitialized = false;
+    private static volatile boolean saml1Initialized = false;
+    private static volatile boolean saml2Initialized = false;
 
     /**
-     * Initialise the SAML library
+     * Initialise the SAML library for both SAML 1.1 and SAML 2.0
      */
-    public synchronized static void initSamlEngine() {
-        if (!samlEngineInitialized) {
+    public static void initSamlEngine() {
+        initSamlEngine(null);
+    }
+
+    /**
+     * Initialise the SAML library for the given SAML version. Only the Opensaml
+     * configurations that are needed for SAML Assertions of this version are loaded.
+     * 
+     * @param samlVersion the SAML version, or null for both SAML 1.1 and SAML 2.0
+     */
+    public static void initSamlEngine(SAMLVersion samlVersion) {
+        boolean saml1Needed = !SAMLVersion.VERSION_20.equals(samlVersion);
+        boolean saml2Needed = samlVersion == null || SAMLVersion.VERSION_20.equals(samlVersion);
+        if ((!saml1Needed || saml1Initialized) && (!saml2Needed || saml2Initialized)) {
+            return;
+        }
+        synchronized (OpenSAMLUtil.class) {
             if (log.isDebugEnabled()) {
-                log.debug("Initilizing the opensaml2 library...");
+                log.debug("Initilizing the opensaml2 library for SAML version " + samlVersion);
             }
             try {
-                OpenSAMLBootstrap.bootstrap();
+                OpenSAMLBootstrap.bootstrap(samlVersion);
                 builderFactory = Configuration.getBuilderFactory();
                 marshallerFactory = Configuration.getMarshallerFactory();
                 unmarshallerFactory = Configuration.getUnmarshallerFactory();
-                samlEngineInitialized = true;
+                saml1Initialized |= saml1Needed;
+                saml2Initialized |= saml2Needed;
                 if (log.isDebugEnabled()) {
                     log.debug("opensaml2 library bootstrap complete");
                 }
@@ -79,6 +97,7 @@ public class OpenSAMLUtil {
      * @throws UnmarshallingException
      */
     public static XMLObject fromDom(Element root) throws WSSecurityException {
+        initSamlEngine(SAMLDOMUtil.getSamlVersion(root));
         Unmarshaller unmarshaller = unmarshallerFactory.getUnmarshaller(root);
         try {
             return unmarshaller.unmarshall(root);
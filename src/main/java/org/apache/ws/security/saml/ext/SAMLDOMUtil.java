@@ -0,0 +1,254 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ws.security.saml.ext;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.ws.security.WSConstants;
+import org.apache.ws.security.util.WSSecurityUtil;
+import org.joda.time.DateTime;
+import org.joda.time.chrono.ISOChronology;
+import org.opensaml.common.SAMLVersion;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Class SAMLDOMUtil provides static helper methods to read the data of a SAML v1.1 or
+ * SAML v2.0 Assertion that is needed to process it (Id, issuer, subject, confirmation methods,
+ * conditions, signature) directly from the DOM Element, without unmarshalling it into
+ * OpenSAML objects. The values are read the same way as the OpenSAML unmarshallers do, i.e.
+ * the text content of elements is trimmed.
+ */
+public final class SAMLDOMUtil {
+
+    private static final String[] SAML1_SUBJECT_STATEMENTS = {
+        "SubjectStatement", "AuthenticationStatement", 
+        "AttributeStatement", "AuthorizationDecisionStatement"
+    };
+
+    private SAMLDOMUtil() {
+        // complete
+    }
+
+    /**
+     * @param assertion the Assertion element
+     * @return the SAML version of the Assertion, or null if the element is not a
+     * SAML v1.1 or SAML v2.0 Assertion
+     */
+    public static SAMLVersion getSamlVersion(Element assertion) {
+        if (!"Assertion".equals(assertion.getLocalName())) {
+            return null;
+        }
+        if (WSConstants.SAML2_NS.equals(assertion.getNamespaceURI())) {
+            return SAMLVersion.VERSION_20;
+        } else if (WSConstants.SAML_NS.equals(assertion.getNamespaceURI())) {
+            return SAMLVersion.VERSION_11;
+        }
+        return null;
+    }
+
+    /**
+     * @param assertion the Assertion element
+     * @return the ID (SAML v2.0) or AssertionID (SAML v1.1) of the Assertion, or null
+     */
+    public static String getId(Element assertion) {
+        return getAttribute(assertion, isSaml2(assertion) ? "ID" : "AssertionID");
+    }
+
+    /**
+     * @param assertion the Assertion element
+     * @return the Issuer of the Assertion, or null
+     */
+    public static String getIssuer(Element assertion) {
+        if (isSaml2(assertion)) {
+            return getText(
+                WSSecurityUtil.getDirectChildElement(assertion, "Issuer", WSConstants.SAML2_NS)
+            );
+        }
+        return getAttribute(assertion, "Issuer");
+    }
+
+    /**
+     * @param assertion the Assertion element
+     * @return the NameID (SAML v2.0) of the Subject, or the NameIdentifier of the Subject of
+     * the first statement that has one (SAML v1.1), or null
+     */
+    public static String getSubjectName(Element assertion) {
+        if (isSaml2(assertion)) {
+            Element subject = 
+                WSSecurityUtil.getDirectChildElement(assertion, "Subject", WSConstants.SAML2_NS);
+            return getText(
+                WSSecurityUtil.getDirectChildElement(subject, "NameID", WSConstants.SAML2_NS)
+            );
+        }
+        for (Element statement : getStatements(assertion)) {
+            Element subject = 
+                WSSecurityUtil.getDirectChildElement(statement, "Subject", WSConstants.SAML_NS);
+            if (subject != null) {
+                return getText(
+                    WSSecurityUtil.getDirectChildElement(
+                        subject, "NameIdentifier", WSConstants.SAML_NS
+                    )
+                );
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param assertion the Assertion element
+     * @return the (subject) confirmation methods of the Assertion, in the same order as 
+     * {@link AssertionWrapper#getConfirmationMethods()} returns them
+     */
+    public static List<String> getConfirmationMethods(Element assertion) {
+        List<String> methods = new ArrayList<String>();
+        if (isSaml2(assertion)) {
+            Element subject = 
+                WSSecurityUtil.getDirectChildElement(assertion, "Subject", WSConstants.SAML2_NS);
+            if (subject != null) {
+                for (Element confirmation 
+                    : WSSecurityUtil.getDirectChildElements(
+                        subject, "SubjectConfirmation", WSConstants.SAML2_NS
+                    )) {
+                    methods.add(getAttribute(confirmation, "Method"));
+                }
+            }
+            return methods;
+        }
+        for (String statementName : SAML1_SUBJECT_STATEMENTS) {
+            for (Element statement 
+                : WSSecurityUtil.getDirectChildElements(
+                    assertion, statementName, WSConstants.SAML_NS
+                )) {
+                Element subject = 
+                    WSSecurityUtil.getDirectChildElement(
+                        statement, "Subject", WSConstants.SAML_NS
+                    );
+                Element confirmation = 
+                    WSSecurityUtil.getDirectChildElement(
+                        subject, "SubjectConfirmation", WSConstants.SAML_NS
+                    );
+                if (confirmation != null) {
+                    for (Element method 
+                        : WSSecurityUtil.getDirectChildElements(
+                            confirmation, "ConfirmationMethod", WSConstants.SAML_NS
+                        )) {
+                        methods.add(getText(method));
+                    }
+                }
+            }
+        }
+        return methods;
+    }
+
+    /**
+     * @param assertion the Assertion element
+     * @return the NotBefore time of the Conditions of the Assertion, or null
+     */
+    public static Date getNotBefore(Element assertion) {
+        return getConditionsTime(assertion, "NotBefore");
+    }
+
+    /**
+     * @param assertion the Assertion element
+     * @return the NotOnOrAfter time of the Conditions of the Assertion, or null
+     */
+    public static Date getNotOnOrAfter(Element assertion) {
+        return getConditionsTime(assertion, "NotOnOrAfter");
+    }
+
+    /**
+     * @param assertion the Assertion element
+     * @return the (enveloped) ds:Signature element of the Assertion, or null
+     */
+    public static Element getSignature(Element assertion) {
+        return WSSecurityUtil.getDirectChildElement(assertion, "Signature", WSConstants.SIG_NS);
+    }
+
+    /**
+     * @param assertion the Assertion element
+     * @return the (Base64 encoded) SignatureValue of the Signature of the Assertion, or null
+     * if the Assertion is not signed
+     */
+    public static String getSignatureValue(Element assertion) {
+        Element signature = getSignature(assertion);
+        if (signature == null) {
+            return null;
+        }
+        Element signatureValue = 
+            WSSecurityUtil.getDirectChildElement(signature, "SignatureValue", WSConstants.SIG_NS);
+        if (signatureValue == null) {
+            return null;
+        }
+        return getText(signatureValue);
+    }
+
+    /**
+     * @param assertion the (SAML v1.1) Assertion element
+     * @return the statement elements of the Assertion in document order
+     */
+    public static List<Element> getStatements(Element assertion) {
+        List<Element> statements = new ArrayList<Element>();
+        for (Node node = assertion.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (Node.ELEMENT_NODE == node.getNodeType()
+                && WSConstants.SAML_NS.equals(node.getNamespaceURI())
+                && node.getLocalName().endsWith("Statement")) {
+                statements.add((Element)node);
+            }
+        }
+        return statements;
+    }
+
+    private static Date getConditionsTime(Element assertion, String name) {
+        String ns = isSaml2(assertion) ? WSConstants.SAML2_NS : WSConstants.SAML_NS;
+        Element conditions = WSSecurityUtil.getDirectChildElement(assertion, "Conditions", ns);
+        String value = getAttribute(conditions, name);
+        if (value == null) {
+            return null;
+        }
+        return new DateTime(value, ISOChronology.getInstanceUTC()).toDate();
+    }
+
+    private static boolean isSaml2(Element assertion) {
+        return WSConstants.SAML2_NS.equals(assertion.getNamespaceURI());
+    }
+
+    private static String getAttribute(Element element, String name) {
+        if (element == null || !element.hasAttributeNS(null, name)) {
+            return null;
+        }
+        return element.getAttributeNS(null, name);
+    }
+
+    private static String getText(Element element) {
+        if (element == null) {
+            return null;
+        }
+        String text = element.getTextContent();
+        if (text == null) {
+            return null;
+        }
+        text = text.trim();
+        return text.length() == 0 ? null : text;
+    }
+
+}
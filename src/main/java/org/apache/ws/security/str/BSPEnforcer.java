@@ -27,6 +27,7 @@ import org.apache.ws.security.message.token.PKIPathSecurity;
 import org.apache.ws.security.message.token.SecurityTokenReference;
 import org.apache.ws.security.message.token.X509Security;
 import org.apache.ws.security.saml.ext.AssertionWrapper;
+import org.opensaml.common.SAMLVersion;
 
 /**
  * This class enforces processing rules for SecurityTokenReferences to various token elements,
@@ -132,7 +133,7 @@ public final class BSPEnforcer {
         // Check the KeyIdentifier ValueType attributes
         if (secRef.containsKeyIdentifier()) {
             String valueType = secRef.getKeyIdentifierValueType();
-            if (assertion.getSaml1() != null 
+            if (assertion.getSamlVersion() == SAMLVersion.VERSION_11 
                 && !WSConstants.WSS_SAML_KI_VALUE_TYPE.equals(valueType)) {
                 throw new WSSecurityException(
                     WSSecurityException.INVALID_SECURITY_TOKEN, 
@@ -140,7 +141,7 @@ public final class BSPEnforcer {
                     new Object[]{valueType}
                 );
             }
-            if (assertion.getSaml2() != null 
+            if (assertion.getSamlVersion() == SAMLVersion.VERSION_20 
                 && !WSConstants.WSS_SAML2_KI_VALUE_TYPE.equals(valueType)) {
                 throw new WSSecurityException(
                     WSSecurityException.INVALID_SECURITY_TOKEN, 
@@ -160,14 +161,14 @@ public final class BSPEnforcer {
         
         // Check the TokenType attribute
         String tokenType = secRef.getTokenType();
-        if (assertion.getSaml1() != null && !WSConstants.WSS_SAML_TOKEN_TYPE.equals(tokenType)) {
+        if (assertion.getSamlVersion() == SAMLVersion.VERSION_11 && !WSConstants.WSS_SAML_TOKEN_TYPE.equals(tokenType)) {
             throw new WSSecurityException(
                 WSSecurityException.INVALID_SECURITY_TOKEN, 
                 "invalidTokenType", 
                  new Object[]{tokenType}
             );
         }
-        if (assertion.getSaml2() != null && !WSConstants.WSS_SAML2_TOKEN_TYPE.equals(tokenType)) {
+        if (assertion.getSamlVersion() == SAMLVersion.VERSION_20 && !WSConstants.WSS_SAML2_TOKEN_TYPE.equals(tokenType)) {
             throw new WSSecurityException(
                 WSSecurityException.INVALID_SECURITY_TOKEN, 
                 "invalidTokenType", 
@@ -176,7 +177,7 @@ public final class BSPEnforcer {
         }
         
         // Check the ValueType attribute of the Reference for SAML2
-        if (assertion.getSaml2() != null && secRef.containsReference()) {
+        if (assertion.getSamlVersion() == SAMLVersion.VERSION_20 && secRef.containsReference()) {
             String valueType = secRef.getReference().getValueType();
             if (valueType != null && !"".equals(valueType)) {
                 throw new WSSecurityException(
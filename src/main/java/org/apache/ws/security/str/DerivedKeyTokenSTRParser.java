@@ -26,6 +26,8 @@ import org.apache.ws.security.WSSConfig;
 import org.apache.ws.security.WSSecurityEngineResult;
 import org.apache.ws.security.WSSecurityException;
 import org.apache.ws.security.components.crypto.Crypto;
+import org.apache.ws.security.conversation.SecurityContext;
+import org.apache.ws.security.conversation.SecurityContextStore;
 import org.apache.ws.security.handler.RequestData;
 import org.apache.ws.security.message.token.BinarySecurity;
 import org.apache.ws.security.message.token.SecurityTokenReference;
@@ -51,6 +53,9 @@ import javax.security.auth.callback.Callback;
  */
 public class DerivedKeyTokenSTRParser implements STRParser {
     
+    private static final org.apache.commons.logging.Log log = 
+        org.apache.commons.logging.LogFactory.getLog(DerivedKeyTokenSTRParser.class);
+    
     private byte[] secretKey;
     
     /**
@@ -92,13 +97,28 @@ public class DerivedKeyTokenSTRParser implements STRParser {
         if (result != null) {
             processPreviousResult(result, secRef, data, wsDocInfo, bspCompliant);
         } else if (secRef.containsReference()) { 
-            // Now use the callback and get it
-            secretKey = 
-                getSecretKeyFromToken(uri, null, WSPasswordCallback.SECURITY_CONTEXT_TOKEN, data);
-            if (secretKey == null) {
-                throw new WSSecurityException(
-                    WSSecurityException.FAILED_CHECK, "unsupportedKeyId", new Object[] {uri}
-                );
+            // Check the store of security contexts, and then use the callback and get it
+            SecurityContextStore store = config == null ? null : config.getSecurityContextStore();
+            SecurityContext context = store == null ? null : store.get(uri);
+            if (context != null) {
+                secretKey = context.getSecret();
+            } else {
+                secretKey = 
+                    getSecretKeyFromToken(
+                        uri, null, WSPasswordCallback.SECURITY_CONTEXT_TOKEN, data
+                    );
+                if (secretKey == null) {
+                    throw new WSSecurityException(
+                        WSSecurityException.FAILED_CHECK, "unsupportedKeyId", new Object[] {uri}
+                    );
+                }
+                if (store != null && secretKey.length > 0) {
+                    try {
+                        store.add(new SecurityContext(uri, null, secretKey, null, null));
+                    } catch (WSSecurityException ex) {
+                        log.warn("The security context can not be stored", ex);
+                    }
+                }
             }
         } else if (secRef.containsKeyIdentifier()) {
             String keyIdentifierValueType = secRef.getKeyIdentifierValueType();
@@ -253,7 +273,11 @@ public class DerivedKeyTokenSTRParser implements STRParser {
             UsernameToken usernameToken = 
                 (UsernameToken)result.get(WSSecurityEngineResult.TAG_USERNAME_TOKEN);
             usernameToken.setRawPassword(data);
-            secretKey = usernameToken.getDerivedKey();
+            WSSConfig config = data.getWssConfig();
+            secretKey = 
+                usernameToken.getDerivedKey(
+                    config == null ? null : config.getUsernameTokenKeyCache()
+                );
         } else if (WSConstants.ENCR == action) {
             if (bspCompliant) {
                 BSPEnforcer.checkEncryptedKeyBSPCompliance(secRef);
@@ -305,7 +305,11 @@ public class SecurityTokenRefSTRParser implements STRParser {
             byte[] secret = 
                 (byte[])result.get(WSSecurityEngineResult.TAG_SECRET);
             String algorithm = (String)parameters.get(SIGNATURE_METHOD);
-            secretKey = dkt.deriveKey(WSSecurityUtil.getKeyLength(algorithm), secret);
+            secretKey = 
+                dkt.deriveKey(
+                    WSSecurityUtil.getKeyLength(algorithm), secret,
+                    data.getWssConfig().getDerivedKeyCache()
+                );
         } else if (WSConstants.ST_UNSIGNED == action || WSConstants.ST_SIGNED == action) {
             AssertionWrapper assertion = 
                 (AssertionWrapper)result.get(WSSecurityEngineResult.TAG_SAML_ASSERTION);
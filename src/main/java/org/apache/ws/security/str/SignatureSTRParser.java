@@ -162,8 +162,11 @@ public class SignatureSTRParser implements STRParser {
                                 WSSecurityEngineResult.TAG_SAML_ASSERTION
                             );
                     } else {
-                        assertion = new AssertionWrapper(processedToken);
-                        assertion.parseHOKSubject(data, wsDocInfo);
+                        assertion = wsDocInfo.getAssertion(processedToken);
+                        if (assertion == null) {
+                            assertion = new AssertionWrapper(processedToken);
+                            assertion.parseHOKSubject(data, wsDocInfo);
+                        }
                     }
                     if (bspCompliant) {
                         BSPEnforcer.checkSamlTokenBSPCompliance(secRef, assertion);
@@ -397,7 +400,8 @@ public class SignatureSTRParser implements STRParser {
 
             usernameToken.setRawPassword(data);
             if (usernameToken.isDerivedKey()) {
-                secretKey = usernameToken.getDerivedKey();
+                secretKey = 
+                    usernameToken.getDerivedKey(data.getWssConfig().getUsernameTokenKeyCache());
             } else {
                 int keyLength = ((Integer)parameters.get(SECRET_KEY_LENGTH)).intValue();
                 secretKey = usernameToken.getSecretKey(keyLength);
@@ -442,7 +446,8 @@ public class SignatureSTRParser implements STRParser {
                 keyLength = WSSecurityUtil.getKeyLength(algorithm);
             }
             byte[] secret = (byte[])result.get(WSSecurityEngineResult.TAG_SECRET);
-            secretKey = dkt.deriveKey(keyLength, secret); 
+            secretKey = 
+                dkt.deriveKey(keyLength, secret, data.getWssConfig().getDerivedKeyCache());
             principal = dkt.createPrincipal();
             ((WSDerivedKeyTokenPrincipal)principal).setSecret(secret);
         } else if (WSConstants.ST_UNSIGNED == action || WSConstants.ST_SIGNED == action) {
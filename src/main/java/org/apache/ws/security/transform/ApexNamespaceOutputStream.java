@@ -0,0 +1,155 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ws.security.transform;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An OutputStream for the (UTF-8) canonical output of the STR Transform. According to the
+ * WSS spec the Apex node must contain a default namespace. If none is available in the first
+ * element of the c14n output, an empty default namespace is inserted after the first blank.
+ *
+ * Only the start tag of the Apex node is buffered, the rest of the output is passed directly
+ * to the underlying stream. Closing this stream does not close the underlying stream.
+ */
+class ApexNamespaceOutputStream extends FilterOutputStream {
+
+    private static final byte[] XMLNS = {'x', 'm', 'l', 'n', 's', '='};
+    private static final byte[] EMPTY_XMLNS =
+        {'x', 'm', 'l', 'n', 's', '=', '"', '"', ' '};
+
+    private ByteArrayOutputStream apex = new ByteArrayOutputStream(128);
+    private boolean bufferAll;
+
+    ApexNamespaceOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    public void write(int b) throws IOException {
+        if (apex == null) {
+            out.write(b);
+        } else {
+            apex.write(b);
+            if (b == '>' && !bufferAll) {
+                writeApex();
+            }
+        }
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (apex == null) {
+            out.write(b, off, len);
+            return;
+        }
+        if (!bufferAll) {
+            for (int i = off; i < off + len; i++) {
+                if (b[i] == '>') {
+                    apex.write(b, off, i - off + 1);
+                    writeApex();
+                    write(b, i + 1, off + len - i - 1);
+                    return;
+                }
+            }
+        }
+        apex.write(b, off, len);
+    }
+
+    /**
+     * Write the (completely buffered) output that was not passed through yet, and flush
+     * the underlying stream. The underlying stream is not closed.
+     */
+    public void close() throws IOException {
+        if (apex != null) {
+            out.write(insertDefaultNamespace(apex.toByteArray()));
+            apex = null;
+        }
+        out.flush();
+    }
+
+    /**
+     * The Apex start tag is complete. If it contains a default namespace or a blank then
+     * the fix-up can be done now, otherwise the rest of the output must be buffered, as
+     * the empty default namespace is inserted after the first blank of the output.
+     */
+    private void writeApex() throws IOException {
+        byte[] buf = apex.toByteArray();
+        if (indexOf(buf, XMLNS) >= 0 || indexOf(buf, ' ') >= 0) {
+            out.write(insertDefaultNamespace(buf));
+            apex = null;
+        } else {
+            bufferAll = true;
+        }
+    }
+
+    /**
+     * Insert an empty default namespace after the first blank of the given output, if the
+     * Apex element does not contain a default namespace.
+     */
+    static byte[] insertDefaultNamespace(byte[] buf) {
+        //
+        // Find the end of first element <....>, this is the Apex node
+        //
+        int gt = indexOf(buf, '>');
+        //
+        // Lookup the default namespace
+        //
+        int idx = indexOf(buf, XMLNS);
+        //
+        // If none found or if it is outside of this (Apex) element look for
+        // first blank in, insert default namespace there (this is the
+        // correct place according to c14n specification)
+        //
+        if (idx < 0 || idx > gt) {
+            idx = indexOf(buf, ' ') + 1;
+            byte[] result = new byte[buf.length + EMPTY_XMLNS.length];
+            System.arraycopy(buf, 0, result, 0, idx);
+            System.arraycopy(EMPTY_XMLNS, 0, result, idx, EMPTY_XMLNS.length);
+            System.arraycopy(buf, idx, result, idx + EMPTY_XMLNS.length, buf.length - idx);
+            return result;
+        }
+        return buf;
+    }
+
+    private static int indexOf(byte[] buf, int b) {
+        for (int i = 0; i < buf.length; i++) {
+            if (buf[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(byte[] buf, byte[] pattern) {
+        for (int i = 0; i <= buf.length - pattern.length; i++) {
+            int j = 0;
+            while (j < pattern.length && buf[i + j] == pattern[j]) {
+                j++;
+            }
+            if (j == pattern.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+}
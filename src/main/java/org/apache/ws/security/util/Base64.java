@@ -18,6 +18,8 @@
 package org.apache.ws.security.util;
 
 import org.apache.ws.security.WSSecurityException;
+import org.w3c.dom.Node;
+import org.w3c.dom.Text;
 
 /**
  * This class provides encode/decode for RFC 2045 Base64 as
@@ -29,7 +31,8 @@ import org.apache.ws.security.WSSecurityException;
  *
  * This implementation does not encode/decode streaming
  * data. You need the data that you will encode/decode
- * already on a byte arrray.
+ * already on a byte arrray, or in the Text children of
+ * a DOM node.
  *
  * @author Jeffrey Rodriguez
  * @author Sandy Gao
@@ -265,6 +268,86 @@ public final class  Base64 {
         return decodedData;
     }
 
+    /**
+     * Decodes the Base64 data contained in the Text children of the given node into octets.
+     * The characters are read straight from the Text nodes, and whitespace is skipped on the 
+     * fly, so that no intermediate String or char array is created for (large) tokens.
+     *
+     * @param parent the node whose Text children contain the Base64 data
+     * @return Array containing the decoded data.
+     */
+    public static byte[] decodeText(Node parent) throws WSSecurityException {
+        if (parent == null)
+            return null;
+
+        int length = 0;
+        for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (Node.TEXT_NODE == node.getNodeType()) {
+                length += ((Text)node).getLength();
+            }
+        }
+        byte[] decodedData = new byte[(length/FOURBYTE)*3];
+        int encodedIndex = 0;
+        int bits = 0;
+        int count = 0;
+        int pads = 0;
+        boolean finished = false;
+
+        for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (Node.TEXT_NODE != node.getNodeType()) {
+                continue;
+            }
+            String data = ((Text)node).getData();
+            int len = data.length();
+            for (int i = 0; i < len; i++) {
+                char c = data.charAt(i);
+                if (isWhiteSpace(c)) {
+                    continue;
+                }
+                if (finished) {
+                    throw new WSSecurityException("decoding.general");
+                }
+                if (isData(c) && pads == 0) {
+                    bits = (bits << 6) | base64Alphabet[c];
+                    if (++count == FOURBYTE) {
+                        decodedData[encodedIndex++] = (byte)(bits >> 16);
+                        decodedData[encodedIndex++] = (byte)(bits >> 8);
+                        decodedData[encodedIndex++] = (byte)bits;
+                        bits = 0;
+                        count = 0;
+                    }
+                } else if (isPad(c) && count + pads >= 2) {
+                    pads++;
+                    if (++count == FOURBYTE) {
+                        if (pads == 2) {                   //Two PAD e.g. 3c[Pad][Pad]
+                            if ((bits & 0xf) != 0)//last 4 bits should be zero
+                                throw new WSSecurityException("decoding.general");
+                            decodedData[encodedIndex++] = (byte)(bits >> 4);
+                        } else {                           //One PAD  e.g. 3cQ[Pad]
+                            if ((bits & 0x3) != 0)//last 2 bits should be zero
+                                throw new WSSecurityException("decoding.general");
+                            decodedData[encodedIndex++] = (byte)(bits >> 10);
+                            decodedData[encodedIndex++] = (byte)(bits >> 2);
+                        }
+                        count = 0;
+                        finished = true;
+                    }
+                } else {
+                    throw new WSSecurityException("decoding.general");
+                }
+            }
+        }
+        if (count != 0) {
+            throw new WSSecurityException("decoding.divisible.four");
+        }
+
+        if (encodedIndex == decodedData.length)
+            return decodedData;
+        byte[] tmp = new byte[encodedIndex];
+        System.arraycopy(decodedData, 0, tmp, 0, encodedIndex);
+        return tmp;
+    }
+
     /**
      * remove WhiteSpace from MIME containing encoded Base64 data.
      * 
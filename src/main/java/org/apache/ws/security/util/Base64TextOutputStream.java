@@ -0,0 +1,115 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ws.security.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.w3c.dom.Element;
+
+/**
+ * An OutputStream that Base64-encodes the octets written to it, and appends the encoded
+ * characters in chunks as Text nodes to a DOM element. Every chunk (apart from the last one)
+ * encodes a multiple of three octets, and so the concatenated Text nodes form valid Base64
+ * data. This avoids creating one huge String (and Text node) for large binary data.
+ * 
+ * The stream must be closed to write the last chunk.
+ */
+public class Base64TextOutputStream extends OutputStream {
+
+    /**
+     * The default number of octets that are encoded per Text node
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 48 * 1024;
+
+    private final Element parent;
+    private final byte[] buffer;
+    private int count;
+    private boolean closed;
+
+    /**
+     * @param parent the element to append the Text nodes to
+     */
+    public Base64TextOutputStream(Element parent) {
+        this(parent, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param parent the element to append the Text nodes to
+     * @param chunkSize the number of octets that are encoded per Text node. It is rounded
+     * up to a multiple of three.
+     */
+    public Base64TextOutputStream(Element parent, int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be at least 1");
+        }
+        this.parent = parent;
+        buffer = new byte[((chunkSize + 2) / 3) * 3];
+    }
+
+    public void write(int b) throws IOException {
+        ensureOpen();
+        buffer[count++] = (byte)b;
+        if (count == buffer.length) {
+            writeChunk();
+        }
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            int n = Math.min(len, buffer.length - count);
+            System.arraycopy(b, off, buffer, count, n);
+            count += n;
+            off += n;
+            len -= n;
+            if (count == buffer.length) {
+                writeChunk();
+            }
+        }
+    }
+
+    public void close() throws IOException {
+        if (!closed) {
+            if (count > 0) {
+                writeChunk();
+            }
+            closed = true;
+        }
+    }
+
+    private void writeChunk() {
+        byte[] chunk = buffer;
+        if (count < buffer.length) {
+            chunk = new byte[count];
+            System.arraycopy(buffer, 0, chunk, 0, count);
+        }
+        parent.appendChild(parent.getOwnerDocument().createTextNode(Base64.encode(chunk)));
+        count = 0;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+}
@@ -0,0 +1,116 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ws.security.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.security.auth.callback.Callback;
+import javax.security.auth.callback.CallbackHandler;
+import javax.security.auth.callback.UnsupportedCallbackException;
+
+import org.apache.ws.security.WSPasswordCallback;
+
+/**
+ * A CallbackHandler that answers WSPasswordCallbacks from a {@link PasswordCallbackCache}
+ * where possible, and delegates all other callbacks to the application CallbackHandler.
+ * The results of the delegated WSPasswordCallbacks are added to the cache.
+ */
+public class CachingCallbackHandler implements CallbackHandler {
+
+    private final CallbackHandler delegate;
+    private final PasswordCallbackCache cache;
+
+    /**
+     * @param delegate the application CallbackHandler
+     * @param cache the cache of callback results
+     */
+    public CachingCallbackHandler(CallbackHandler delegate, PasswordCallbackCache cache) {
+        if (delegate == null || cache == null) {
+            throw new IllegalArgumentException("A CallbackHandler and a cache are required");
+        }
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    /**
+     * Wrap the given CallbackHandler, unless it is null or already uses the given cache.
+     * @param callbackHandler the application CallbackHandler, or null
+     * @param cache the cache of callback results, or null
+     * @return a CachingCallbackHandler, or the given CallbackHandler if there is no cache
+     */
+    public static CallbackHandler wrap(
+        CallbackHandler callbackHandler, PasswordCallbackCache cache
+    ) {
+        if (callbackHandler == null || cache == null
+            || (callbackHandler instanceof CachingCallbackHandler
+                && ((CachingCallbackHandler)callbackHandler).cache == cache)) {
+            return callbackHandler;
+        }
+        return new CachingCallbackHandler(callbackHandler, cache);
+    }
+
+    /**
+     * @return the application CallbackHandler
+     */
+    public CallbackHandler getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * @return the cache of callback results
+     */
+    public PasswordCallbackCache getCache() {
+        return cache;
+    }
+
+    public void handle(Callback[] callbacks) throws IOException, UnsupportedCallbackException {
+        List<Callback> delegated = new ArrayList<Callback>(callbacks.length);
+        List<WSPasswordCallback> cacheable = null;
+        for (Callback callback : callbacks) {
+            if (callback instanceof WSPasswordCallback 
+                && cache.isCacheable((WSPasswordCallback)callback)) {
+                if (cache.lookup(delegate, (WSPasswordCallback)callback)) {
+                    continue;
+                }
+                if (cacheable == null) {
+                    cacheable = new ArrayList<WSPasswordCallback>(callbacks.length);
+                }
+                cacheable.add((WSPasswordCallback)callback);
+            }
+            delegated.add(callback);
+        }
+        if (delegated.isEmpty()) {
+            return;
+        }
+        if (delegated.size() == callbacks.length) {
+            delegate.handle(callbacks);
+        } else {
+            delegate.handle(delegated.toArray(new Callback[delegated.size()]));
+        }
+        if (cacheable != null) {
+            for (WSPasswordCallback callback : cacheable) {
+                cache.store(delegate, callback);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,297 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ws.security.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Vector;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.apache.ws.security.WSConstants;
+import org.apache.xml.security.encryption.XMLCipher;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.DocumentFragment;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.DefaultHandler2;
+
+/**
+ * This class decrypts an xenc:EncryptedData element and replaces it with the decrypted
+ * XML content.
+ *
+ * XMLCipher.doFinal() converts the decrypted octets to a String, wraps them in a dummy
+ * document String, parses this String with a new DocumentBuilder and then imports the
+ * resulting nodes into the target document. Instead, this class streams the decrypted
+ * octets (wrapped in a dummy element that declares the namespaces in scope at the
+ * EncryptedData element) into a SAX parser, which creates the nodes directly in the
+ * target document. The SAX parser is reused per thread.
+ */
+public final class DecryptedDataParser {
+
+    private static final org.apache.commons.logging.Log log = 
+        org.apache.commons.logging.LogFactory.getLog(DecryptedDataParser.class);
+
+    private static final SAXParserFactory FACTORY;
+
+    static {
+        FACTORY = SAXParserFactory.newInstance();
+        FACTORY.setNamespaceAware(true);
+        try {
+            FACTORY.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+        } catch (Exception ex) {
+            log.debug("Secure processing is not supported by the SAX parser", ex);
+        }
+    }
+
+    private static final ThreadLocal<SAXParser> PARSER =
+        new ThreadLocal<SAXParser>() {
+            protected SAXParser initialValue() {
+                try {
+                    return FACTORY.newSAXParser();
+                } catch (Exception ex) {
+                    throw new IllegalStateException(ex);
+                }
+            }
+        };
+
+    private static final String FRAGMENT = "fragment";
+
+    private DecryptedDataParser() {
+        // complete
+    }
+
+    /**
+     * Decrypt the given EncryptedData element, and replace it with the decrypted content.
+     * @param xmlCipher an XMLCipher instance that is initialized in DECRYPT_MODE
+     * @param encryptedData the xenc:EncryptedData element
+     * @throws Exception if the decryption or parsing of the decrypted content fails
+     */
+    public static void decryptElement(
+        XMLCipher xmlCipher, Element encryptedData
+    ) throws Exception {
+        byte[] octets = xmlCipher.decryptToByteArray(encryptedData);
+        Node parent = encryptedData.getParentNode();
+        DocumentFragment fragment =
+            parse(encryptedData.getOwnerDocument(), new ByteArrayInputStream(octets), parent);
+        parent.replaceChild(fragment, encryptedData);
+    }
+
+    /**
+     * Parse a (UTF-8 encoded) XML fragment into the given document.
+     * @param doc the document to create the nodes in
+     * @param octets the XML fragment
+     * @param context the node that is the context of the fragment, i.e. namespace
+     * declarations in scope at this node are in scope for the fragment as well
+     * @return a DocumentFragment (owned by the given document) holding the parsed nodes
+     * @throws Exception if the fragment can not be parsed
+     */
+    public static DocumentFragment parse(
+        Document doc, InputStream octets, Node context
+    ) throws Exception {
+        Vector<InputStream> streams = new Vector<InputStream>(3);
+        streams.add(new ByteArrayInputStream(createStartTag(context)));
+        streams.add(octets);
+        streams.add(new ByteArrayInputStream(
+            ("</" + FRAGMENT + ">").getBytes("UTF-8")
+        ));
+        InputSource source = new InputSource(new SequenceInputStream(streams.elements()));
+        source.setEncoding("UTF-8");
+
+        DocumentFragment fragment = doc.createDocumentFragment();
+        FragmentHandler handler = new FragmentHandler(doc, fragment);
+        SAXParser parser = PARSER.get();
+        parser.reset();
+        try {
+            parser.setProperty("http://xml.org/sax/properties/lexical-handler", handler);
+        } catch (SAXException ex) {
+            log.debug("Comments and CDATA sections of decrypted data are not preserved", ex);
+        }
+        try {
+            parser.parse(source, handler);
+        } finally {
+            parser.reset();
+        }
+        return fragment;
+    }
+
+    /**
+     * Create the start tag of the dummy element, that declares all namespaces in
+     * scope at the context node.
+     */
+    private static byte[] createStartTag(Node context) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?><").append(FRAGMENT);
+        Set<String> declared = new HashSet<String>();
+        Node node = context;
+        while (node != null && node.getNodeType() == Node.ELEMENT_NODE) {
+            NamedNodeMap attributes = node.getAttributes();
+            for (int i = 0; i < attributes.getLength(); i++) {
+                Attr attr = (Attr)attributes.item(i);
+                String name = attr.getNodeName();
+                if ((name.startsWith("xmlns:") || "xmlns".equals(name))
+                    && declared.add(name)) {
+                    sb.append(' ').append(name).append("=\"");
+                    escape(attr.getNodeValue(), sb);
+                    sb.append('"');
+                }
+            }
+            node = node.getParentNode();
+        }
+        sb.append('>');
+        return sb.toString().getBytes("UTF-8");
+    }
+
+    private static void escape(String value, StringBuilder sb) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+            case '&':
+                sb.append("&amp;");
+                break;
+            case '<':
+                sb.append("&lt;");
+                break;
+            case '"':
+                sb.append("&quot;");
+                break;
+            default:
+                sb.append(c);
+            }
+        }
+    }
+
+    /**
+     * A SAX handler that creates the parsed nodes (apart from the dummy element) in the
+     * target document.
+     */
+    private static final class FragmentHandler extends DefaultHandler2 {
+        private final Document doc;
+        private Node current;
+        private int depth;
+        private final List<String[]> prefixMappings = new ArrayList<String[]>();
+        private final StringBuilder text = new StringBuilder();
+        private boolean inCDATA;
+
+        FragmentHandler(Document doc, DocumentFragment fragment) {
+            this.doc = doc;
+            current = fragment;
+        }
+
+        public void startPrefixMapping(String prefix, String uri) {
+            if (depth > 0) {
+                prefixMappings.add(new String[]{prefix, uri});
+            }
+        }
+
+        public void startElement(
+            String uri, String localName, String qName, Attributes attributes
+        ) {
+            if (depth++ == 0) {
+                return;
+            }
+            flushText();
+            Element element =
+                doc.createElementNS(uri == null || uri.length() == 0 ? null : uri, qName);
+            for (String[] mapping : prefixMappings) {
+                if (mapping[0].length() == 0) {
+                    element.setAttributeNS(WSConstants.XMLNS_NS, "xmlns", mapping[1]);
+                } else {
+                    element.setAttributeNS(
+                        WSConstants.XMLNS_NS, "xmlns:" + mapping[0], mapping[1]
+                    );
+                }
+            }
+            prefixMappings.clear();
+            for (int i = 0; i < attributes.getLength(); i++) {
+                String attrUri = attributes.getURI(i);
+                element.setAttributeNS(
+                    attrUri == null || attrUri.length() == 0 ? null : attrUri,
+                    attributes.getQName(i),
+                    attributes.getValue(i)
+                );
+            }
+            current.appendChild(element);
+            current = element;
+        }
+
+        public void endElement(String uri, String localName, String qName) {
+            if (--depth == 0) {
+                flushText();
+                return;
+            }
+            flushText();
+            current = current.getParentNode();
+        }
+
+        public void characters(char[] ch, int start, int length) {
+            text.append(ch, start, length);
+        }
+
+        public void ignorableWhitespace(char[] ch, int start, int length) {
+            text.append(ch, start, length);
+        }
+
+        public void processingInstruction(String target, String data) {
+            flushText();
+            current.appendChild(doc.createProcessingInstruction(target, data));
+        }
+
+        public void comment(char[] ch, int start, int length) {
+            if (depth == 0) {
+                return;
+            }
+            flushText();
+            current.appendChild(doc.createComment(new String(ch, start, length)));
+        }
+
+        public void startCDATA() {
+            flushText();
+            inCDATA = true;
+        }
+
+        public void endCDATA() {
+            current.appendChild(doc.createCDATASection(text.toString()));
+            text.setLength(0);
+            inCDATA = false;
+        }
+
+        private void flushText() {
+            if (text.length() > 0 && !inCDATA) {
+                current.appendChild(doc.createTextNode(text.toString()));
+                text.setLength(0);
+            }
+        }
+    }
+
+}
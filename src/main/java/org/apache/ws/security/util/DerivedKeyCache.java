@@ -0,0 +1,207 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ws.security.util;
+
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class caches the keys that were derived from the secret of a security context (or
+ * another base token) via wsc:DerivedKeyToken elements, across messages. The derived keys
+ * are grouped per base token, which is identified by the URI (without a leading '#') or
+ * the KeyIdentifier value that the DerivedKeyToken refers to, e.g. the wsc:Identifier of a
+ * SecurityContextToken. Within a group, a derived key is identified by its derivation
+ * parameters (algorithm, nonce, label, offset, generation and length).
+ *
+ * A copy of the base secret is stored for each group, and a derived key is only returned
+ * if the secret of the caller is the same. A group is replaced if a different secret is
+ * presented for the same base token. All groups of keys expire after the time-to-live of
+ * the cache, and the group of a base token can be removed explicitly via
+ * {@link #invalidate(String)}, e.g. when the security context is cancelled. The secret and
+ * the derived keys are overwritten with zeros when they are removed from the cache.
+ *
+ * A DerivedKeyCache can be shared between threads. It is not used by default, see
+ * {@link org.apache.ws.security.WSSConfig#setDerivedKeyCache(DerivedKeyCache)}.
+ */
+public class DerivedKeyCache {
+
+    /**
+     * The default maximum number of base tokens
+     */
+    public static final int DEFAULT_MAX_SIZE = 100;
+
+    /**
+     * The default maximum number of derived keys per base token
+     */
+    public static final int DEFAULT_MAX_KEYS = 32;
+
+    /**
+     * The default time in seconds for which the derived keys of a base token are cached
+     */
+    public static final long DEFAULT_TTL = 300L;
+
+    private final ExpiringCache<String, DerivedKeys> cache;
+    private final int maxKeys;
+
+    /**
+     * Create a cache with the default sizes and time-to-live.
+     */
+    public DerivedKeyCache() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_MAX_KEYS, DEFAULT_TTL);
+    }
+
+    /**
+     * @param maxSize the maximum number of base tokens to cache derived keys for
+     * @param maxKeys the maximum number of derived keys per base token
+     * @param ttl the time in seconds for which the derived keys of a base token are cached
+     */
+    public DerivedKeyCache(int maxSize, int maxKeys, long ttl) {
+        if (maxKeys < 1) {
+            throw new IllegalArgumentException("maxKeys must be at least 1");
+        }
+        if (ttl <= 0) {
+            throw new IllegalArgumentException("ttl must be positive");
+        }
+        this.maxKeys = maxKeys;
+        cache = new ExpiringCache<String, DerivedKeys>(maxSize, ttl) {
+            protected void onEviction(String key, DerivedKeys value) {
+                value.destroy();
+            }
+        };
+    }
+
+    /**
+     * Get a derived key.
+     * @param baseTokenId the identifier of the base token
+     * @param secret the secret of the base token
+     * @param derivationKey the derivation parameters of the key
+     * @return a copy of the derived key, or null if no such key is cached for the given
+     * base token and secret
+     */
+    public byte[] get(String baseTokenId, byte[] secret, String derivationKey) {
+        if (baseTokenId == null || secret == null || derivationKey == null) {
+            return null;
+        }
+        DerivedKeys keys = cache.get(baseTokenId);
+        if (keys == null) {
+            return null;
+        }
+        return keys.get(secret, derivationKey);
+    }
+
+    /**
+     * Cache a derived key. A copy of the given secret and key is stored.
+     * @param baseTokenId the identifier of the base token
+     * @param secret the secret of the base token
+     * @param derivationKey the derivation parameters of the key
+     * @param derivedKey the derived key
+     */
+    public void put(String baseTokenId, byte[] secret, String derivationKey, byte[] derivedKey) {
+        if (baseTokenId == null || secret == null || derivationKey == null
+            || derivedKey == null) {
+            return;
+        }
+        DerivedKeys keys = cache.get(baseTokenId);
+        if (keys == null || !keys.put(secret, derivationKey, derivedKey)) {
+            keys = new DerivedKeys(secret.clone(), maxKeys);
+            keys.put(secret, derivationKey, derivedKey);
+            cache.put(baseTokenId, keys);
+        }
+    }
+
+    /**
+     * Remove (and erase) all keys derived from the given base token
+     * @param baseTokenId the identifier of the base token
+     */
+    public void invalidate(String baseTokenId) {
+        if (baseTokenId != null) {
+            cache.remove(baseTokenId);
+        }
+    }
+
+    /**
+     * Remove (and erase) all cached keys
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * @return the number of base tokens that keys are cached for
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * The secret of a base token, and the keys derived from it. They are erased when the
+     * entry is evicted, which might happen concurrently with a lookup.
+     */
+    private static final class DerivedKeys {
+        private byte[] secret;
+        private final Map<String, byte[]> keys;
+        private final int maxKeys;
+
+        DerivedKeys(byte[] secret, int maxKeys) {
+            this.secret = secret;
+            this.maxKeys = maxKeys;
+            keys = new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+        }
+
+        synchronized byte[] get(byte[] secret, String derivationKey) {
+            if (this.secret == null || !MessageDigest.isEqual(this.secret, secret)) {
+                return null;
+            }
+            byte[] key = keys.get(derivationKey);
+            return key == null ? null : key.clone();
+        }
+
+        synchronized boolean put(byte[] secret, String derivationKey, byte[] derivedKey) {
+            if (this.secret == null || !MessageDigest.isEqual(this.secret, secret)) {
+                return false;
+            }
+            byte[] previous = keys.put(derivationKey, derivedKey.clone());
+            if (previous != null) {
+                Arrays.fill(previous, (byte)0);
+            }
+            Iterator<byte[]> iterator = keys.values().iterator();
+            while (keys.size() > maxKeys && iterator.hasNext()) {
+                Arrays.fill(iterator.next(), (byte)0);
+                iterator.remove();
+            }
+            return true;
+        }
+
+        synchronized void destroy() {
+            if (secret != null) {
+                Arrays.fill(secret, (byte)0);
+                secret = null;
+            }
+            for (byte[] key : keys.values()) {
+                Arrays.fill(key, (byte)0);
+            }
+            keys.clear();
+        }
+    }
+
+}
@@ -0,0 +1,157 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ws.security.util;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+
+import org.apache.ws.security.WSSecurityException;
+
+/**
+ * This class caches the symmetric keys that were unwrapped from received xenc:EncryptedKey
+ * elements. Some senders reuse the same EncryptedKey (i.e. the same CipherValue) for a number
+ * of messages, and so the (expensive) private key operation to unwrap the key only has to be
+ * done once. An entry is keyed by a SHA-256 digest of the CipherValue octets, the key transport
+ * algorithm, and the encoded certificate of the recipient.
+ *
+ * The unwrapped keys are only held in memory, and are overwritten with zeros when they are
+ * evicted from the cache. A copy of the key is returned by {@link #get(String)}. Entries
+ * expire after a short time-to-live (one minute by default).
+ *
+ * An EncryptedKeyCache can be shared between threads. It is not used by default, see
+ * {@link org.apache.ws.security.WSSConfig#setEncryptedKeyCache(EncryptedKeyCache)}.
+ */
+public class EncryptedKeyCache {
+
+    /**
+     * The default maximum number of cached keys
+     */
+    public static final int DEFAULT_MAX_SIZE = 100;
+
+    /**
+     * The default time in seconds for which an unwrapped key is cached
+     */
+    public static final long DEFAULT_TTL = 60L;
+
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private final ExpiringCache<String, SecretBytes> cache;
+
+    /**
+     * Create a cache with the default maximum size and time-to-live.
+     */
+    public EncryptedKeyCache() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_TTL);
+    }
+
+    /**
+     * @param maxSize the maximum number of unwrapped keys to cache
+     * @param ttl the time in seconds for which an unwrapped key is cached
+     */
+    public EncryptedKeyCache(int maxSize, long ttl) {
+        if (ttl <= 0) {
+            throw new IllegalArgumentException("ttl must be positive");
+        }
+        cache = new ExpiringCache<String, SecretBytes>(maxSize, ttl) {
+            protected void onEviction(String key, SecretBytes value) {
+                value.destroy();
+            }
+        };
+    }
+
+    /**
+     * Create the cache key for an EncryptedKey.
+     * @param cipherValue the (decoded) CipherValue octets of the EncryptedKey
+     * @param keyTransportAlgorithm the key transport algorithm URI
+     * @param recipientCert the certificate of the recipient (i.e. the certificate that
+     * corresponds to the private key that unwraps the key)
+     * @return the cache key, or null if no key can be created for the given arguments
+     * @throws WSSecurityException
+     */
+    public String createKey(
+        byte[] cipherValue, String keyTransportAlgorithm, X509Certificate recipientCert
+    ) throws WSSecurityException {
+        if (cipherValue == null || keyTransportAlgorithm == null || recipientCert == null) {
+            return null;
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+            digest.update(cipherValue);
+            digest.update((byte)0);
+            digest.update(keyTransportAlgorithm.getBytes("UTF-8"));
+            digest.update((byte)0);
+            digest.update(recipientCert.getEncoded());
+            return Base64.encode(digest.digest());
+        } catch (NoSuchAlgorithmException ex) {
+            throw new WSSecurityException("Error in generating digest", ex);
+        } catch (CertificateEncodingException ex) {
+            throw new WSSecurityException(
+                WSSecurityException.SECURITY_TOKEN_UNAVAILABLE, "encodeError", null, ex
+            );
+        } catch (UnsupportedEncodingException ex) {
+            throw new WSSecurityException("Error in generating digest", ex);
+        }
+    }
+
+    /**
+     * @param key the cache key
+     * @return a copy of the unwrapped key corresponding to the cache key, or null if there
+     * is no such (unexpired) key
+     */
+    public byte[] get(String key) {
+        if (key == null) {
+            return null;
+        }
+        SecretBytes secret = cache.get(key);
+        if (secret == null) {
+            return null;
+        }
+        return secret.copy();
+    }
+
+    /**
+     * Cache an unwrapped key. A copy of the given key is stored.
+     * @param key the cache key
+     * @param unwrappedKey the unwrapped key
+     */
+    public void put(String key, byte[] unwrappedKey) {
+        if (key != null && unwrappedKey != null) {
+            cache.put(key, new SecretBytes(unwrappedKey.clone()));
+        }
+    }
+
+    /**
+     * Remove (and erase) all cached keys
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * @return the number of cached keys
+     */
+    public int size() {
+        return cache.size();
+    }
+
+}
@@ -0,0 +1,254 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ws.security.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A simple thread-safe in-memory cache with a maximum size and a per-entry expiry time.
+ * When the cache is full, the least recently used entry is evicted. Expired entries are
+ * removed when they are looked up, or when a new entry is added.
+ *
+ * Subclasses can override {@link #onEviction(Object, Object)} to clean up the values
+ * that are removed from the cache, e.g. to erase secret key material.
+ */
+public class ExpiringCache<K, V> {
+
+    /**
+     * The default maximum number of entries
+     */
+    public static final int DEFAULT_MAX_SIZE = 1000;
+
+    /**
+     * The default time in seconds for which an entry is valid (5 minutes)
+     */
+    public static final long DEFAULT_TTL = 300L;
+
+    private final int maxSize;
+    private final long ttl;
+    private final Map<K, Entry<V>> map;
+
+    /**
+     * Create a cache with the default maximum size and time-to-live.
+     */
+    public ExpiringCache() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_TTL);
+    }
+
+    /**
+     * @param maxSize the maximum number of entries in the cache
+     * @param ttl the maximum time in seconds for which an entry is valid. A value
+     * less than or equal to 0 means that entries only expire at the time they were
+     * added with (if any).
+     */
+    public ExpiringCache(int maxSize, long ttl) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be at least 1");
+        }
+        this.maxSize = maxSize;
+        this.ttl = ttl;
+        map = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true);
+    }
+
+    /**
+     * @return the maximum number of entries in the cache
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return the maximum time in seconds for which an entry is valid
+     */
+    public long getTTL() {
+        return ttl;
+    }
+
+    /**
+     * Get the (unexpired) value stored for the given key
+     * @param key the key
+     * @return the value stored for the given key, or null if there is no such value
+     * or if it has expired
+     */
+    public V get(K key) {
+        V expired = null;
+        synchronized (map) {
+            Entry<V> entry = map.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (!entry.isExpired(System.currentTimeMillis())) {
+                return entry.value;
+            }
+            map.remove(key);
+            expired = entry.value;
+        }
+        onEviction(key, expired);
+        return null;
+    }
+
+    /**
+     * Store a value for the given key, which expires after the time-to-live of this cache.
+     * @param key the key
+     * @param value the value
+     */
+    public void put(K key, V value) {
+        put(key, value, 0L);
+    }
+
+    /**
+     * Store a value for the given key. It expires at the given time, or after the
+     * time-to-live of this cache, whichever comes first.
+     * @param key the key
+     * @param value the value
+     * @param expires the expiry time in milliseconds since the epoch, or 0 if the
+     * value only expires after the time-to-live of this cache
+     */
+    public void put(K key, V value, long expires) {
+        if (key == null || value == null) {
+            throw new IllegalArgumentException("A cache key or value must not be null");
+        }
+        long now = System.currentTimeMillis();
+        if (ttl > 0 && (expires <= 0 || expires > now + ttl * 1000L)) {
+            expires = now + ttl * 1000L;
+        }
+        if (expires > 0 && expires <= now) {
+            return;
+        }
+        Map<K, V> evicted = new LinkedHashMap<K, V>();
+        synchronized (map) {
+            Entry<V> previous = map.put(key, new Entry<V>(value, expires));
+            if (previous != null && previous.value != value) {
+                evicted.put(key, previous.value);
+            }
+            if (map.size() > maxSize) {
+                removeExpired(now, evicted);
+            }
+            Iterator<Map.Entry<K, Entry<V>>> iterator = map.entrySet().iterator();
+            while (map.size() > maxSize && iterator.hasNext()) {
+                Map.Entry<K, Entry<V>> eldest = iterator.next();
+                iterator.remove();
+                evicted.put(eldest.getKey(), eldest.getValue().value);
+            }
+        }
+        for (Map.Entry<K, V> entry : evicted.entrySet()) {
+            onEviction(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Remove the value stored for the given key
+     * @param key the key
+     * @return the value that was stored for the given key (expired or not), or null
+     */
+    public V remove(K key) {
+        Entry<V> entry = null;
+        synchronized (map) {
+            entry = map.remove(key);
+        }
+        if (entry == null) {
+            return null;
+        }
+        onEviction(key, entry.value);
+        return entry.value;
+    }
+
+    /**
+     * Remove the value stored for the given key, only if it is (still) the given value
+     * @param key the key
+     * @param value the value that is expected to be stored for the given key
+     * @return whether the value was removed
+     */
+    public boolean remove(K key, V value) {
+        synchronized (map) {
+            Entry<V> entry = map.get(key);
+            if (entry == null || entry.value != value) {
+                return false;
+            }
+            map.remove(key);
+        }
+        onEviction(key, value);
+        return true;
+    }
+
+    /**
+     * Remove all entries from the cache
+     */
+    public void clear() {
+        Map<K, V> evicted = new LinkedHashMap<K, V>();
+        synchronized (map) {
+            for (Map.Entry<K, Entry<V>> entry : map.entrySet()) {
+                evicted.put(entry.getKey(), entry.getValue().value);
+            }
+            map.clear();
+        }
+        for (Map.Entry<K, V> entry : evicted.entrySet()) {
+            onEviction(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * @return the number of entries in the cache, including entries that have expired
+     * but have not been removed yet
+     */
+    public int size() {
+        synchronized (map) {
+            return map.size();
+        }
+    }
+
+    /**
+     * This method is called (outside of any lock) for every value that is removed from
+     * the cache, or replaced by another value. The default implementation does nothing.
+     * @param key the key
+     * @param value the value that was removed
+     */
+    protected void onEviction(K key, V value) {
+        // complete
+    }
+
+    private void removeExpired(long now, Map<K, V> evicted) {
+        Iterator<Map.Entry<K, Entry<V>>> iterator = map.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<K, Entry<V>> entry = iterator.next();
+            if (entry.getValue().isExpired(now)) {
+                iterator.remove();
+                evicted.put(entry.getKey(), entry.getValue().value);
+            }
+        }
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final long expires;
+
+        Entry(V value, long expires) {
+            this.value = value;
+            this.expires = expires;
+        }
+
+        boolean isExpired(long now) {
+            return expires > 0 && now >= expires;
+        }
+    }
+
+}
@@ -0,0 +1,227 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ws.security.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.security.auth.callback.CallbackHandler;
+
+import org.apache.ws.security.WSPasswordCallback;
+
+/**
+ * This class caches the passwords (and keys) that a CallbackHandler supplied for
+ * WSPasswordCallbacks, so that e.g. an LDAP or database backed CallbackHandler is not
+ * invoked for every message. A result is keyed by the CallbackHandler that supplied it, and
+ * by the identifier, the usage and the type of the WSPasswordCallback. A cache can therefore
+ * be shared between endpoints with different CallbackHandlers, as a result is only supplied
+ * to callbacks for the (identical) CallbackHandler that supplied it. Only the results for
+ * the configured usages are cached (by default {@link WSPasswordCallback#USERNAME_TOKEN},
+ * {@link WSPasswordCallback#DECRYPT} and {@link WSPasswordCallback#SIGNATURE}), and a
+ * callback for which no password or key was supplied is not cached.
+ *
+ * The results expire after a short time-to-live (one minute by default), and the results
+ * of an identifier can be removed explicitly via {@link #invalidate(String)}, e.g. when a
+ * password is changed. Cached keys are overwritten with zeros when they are evicted.
+ *
+ * A PasswordCallbackCache is used via a {@link CachingCallbackHandler}, and can be shared
+ * between threads. It is not used by default, see
+ * {@link org.apache.ws.security.WSSConfig#setPasswordCallbackCache(PasswordCallbackCache)}.
+ */
+public class PasswordCallbackCache {
+
+    /**
+     * The default maximum number of identifiers
+     */
+    public static final int DEFAULT_MAX_SIZE = 1000;
+
+    /**
+     * The default time in seconds for which a result is cached
+     */
+    public static final long DEFAULT_TTL = 60L;
+
+    private static final int[] DEFAULT_USAGES = {
+        WSPasswordCallback.USERNAME_TOKEN, 
+        WSPasswordCallback.DECRYPT, 
+        WSPasswordCallback.SIGNATURE
+    };
+
+    private final ExpiringCache<String, Results> cache;
+    private final Set<Integer> usages = new HashSet<Integer>();
+
+    /**
+     * Create a cache with the default maximum size, time-to-live and usages.
+     */
+    public PasswordCallbackCache() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_TTL, DEFAULT_USAGES);
+    }
+
+    /**
+     * @param maxSize the maximum number of identifiers to cache results for
+     * @param ttl the time in seconds for which a result is cached
+     * @param usages the WSPasswordCallback usages to cache the results of
+     */
+    public PasswordCallbackCache(int maxSize, long ttl, int[] usages) {
+        if (ttl <= 0) {
+            throw new IllegalArgumentException("ttl must be positive");
+        }
+        for (int usage : usages) {
+            this.usages.add(Integer.valueOf(usage));
+        }
+        cache = new ExpiringCache<String, Results>(maxSize, ttl) {
+            protected void onEviction(String key, Results value) {
+                value.destroy();
+            }
+        };
+    }
+
+    /**
+     * @param callback a WSPasswordCallback
+     * @return whether the result of the given callback can be cached
+     */
+    public boolean isCacheable(WSPasswordCallback callback) {
+        return callback.getIdentifier() != null 
+            && usages.contains(Integer.valueOf(callback.getUsage()));
+    }
+
+    /**
+     * Supply the password (and key) that the given CallbackHandler supplied before to the
+     * given callback
+     * @param callbackHandler the CallbackHandler the callback is destined for
+     * @param callback a WSPasswordCallback
+     * @return true if a cached result was supplied to the callback
+     */
+    public boolean lookup(CallbackHandler callbackHandler, WSPasswordCallback callback) {
+        if (callbackHandler == null || !isCacheable(callback)) {
+            return false;
+        }
+        Results results = cache.get(callback.getIdentifier());
+        return results != null && results.supply(callbackHandler, callback);
+    }
+
+    /**
+     * Cache the password (and key) that the given CallbackHandler supplied to the given
+     * callback
+     * @param callbackHandler the CallbackHandler that has handled the callback
+     * @param callback a WSPasswordCallback that has been handled by the CallbackHandler
+     */
+    public void store(CallbackHandler callbackHandler, WSPasswordCallback callback) {
+        if (callbackHandler == null || !isCacheable(callback) 
+            || (callback.getPassword() == null && callback.getKey() == null)) {
+            return;
+        }
+        String identifier = callback.getIdentifier();
+        Results results = cache.get(identifier);
+        if (results == null || !results.store(callbackHandler, callback)) {
+            results = new Results();
+            results.store(callbackHandler, callback);
+            cache.put(identifier, results);
+        }
+    }
+
+    /**
+     * Remove all cached results of the given identifier
+     * @param identifier the identifier
+     */
+    public void invalidate(String identifier) {
+        if (identifier != null) {
+            cache.remove(identifier);
+        }
+    }
+
+    /**
+     * Remove all cached results
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * @return the number of identifiers that results are cached for
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * The results of the callbacks for an identifier, keyed by the CallbackHandler that
+     * supplied them, and by usage and type. They are erased when the entry is evicted,
+     * which might happen concurrently with a lookup.
+     */
+    private static final class Results {
+        private Map<CallbackHandler, Map<String, Object[]>> results = 
+            new IdentityHashMap<CallbackHandler, Map<String, Object[]>>();
+
+        synchronized boolean supply(CallbackHandler callbackHandler, WSPasswordCallback callback) {
+            if (results == null) {
+                return false;
+            }
+            Map<String, Object[]> handlerResults = results.get(callbackHandler);
+            Object[] result = handlerResults == null ? null : handlerResults.get(getKey(callback));
+            if (result == null) {
+                return false;
+            }
+            callback.setPassword((String)result[0]);
+            if (result[1] != null) {
+                callback.setKey(((byte[])result[1]).clone());
+            }
+            return true;
+        }
+
+        synchronized boolean store(CallbackHandler callbackHandler, WSPasswordCallback callback) {
+            if (results == null) {
+                return false;
+            }
+            Map<String, Object[]> handlerResults = results.get(callbackHandler);
+            if (handlerResults == null) {
+                handlerResults = new HashMap<String, Object[]>();
+                results.put(callbackHandler, handlerResults);
+            }
+            byte[] key = callback.getKey();
+            handlerResults.put(
+                getKey(callback), 
+                new Object[]{callback.getPassword(), key == null ? null : key.clone()}
+            );
+            return true;
+        }
+
+        synchronized void destroy() {
+            if (results != null) {
+                for (Map<String, Object[]> handlerResults : results.values()) {
+                    for (Object[] result : handlerResults.values()) {
+                        if (result[1] != null) {
+                            Arrays.fill((byte[])result[1], (byte)0);
+                        }
+                    }
+                }
+                results = null;
+            }
+        }
+
+        private static String getKey(WSPasswordCallback callback) {
+            return callback.getUsage() + " " + callback.getType();
+        }
+    }
+
+}
@@ -0,0 +1,45 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ws.security.util;
+
+import java.util.Arrays;
+
+/**
+ * Secret octets held by a cache. They are erased when the entry is evicted, which might
+ * happen concurrently with a lookup, and so a copy is handed out to the callers.
+ */
+final class SecretBytes {
+    private byte[] bytes;
+
+    SecretBytes(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    synchronized byte[] copy() {
+        return bytes == null ? null : bytes.clone();
+    }
+
+    synchronized void destroy() {
+        if (bytes != null) {
+            Arrays.fill(bytes, (byte)0);
+            bytes = null;
+        }
+    }
+}
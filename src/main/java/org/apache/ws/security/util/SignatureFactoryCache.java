@@ -0,0 +1,95 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ws.security.util;
+
+import java.security.NoSuchProviderException;
+
+import javax.xml.crypto.dsig.XMLSignatureFactory;
+import javax.xml.crypto.dsig.keyinfo.KeyInfoFactory;
+
+/**
+ * This class caches the "DOM" XMLSignatureFactory and KeyInfoFactory instances, so that
+ * signature builders and processors do not have to perform a Provider lookup for every
+ * message. The JSR-105 API does not guarantee that the non-static methods of these
+ * factories are thread-safe, and so one instance of each is kept per thread.
+ */
+public final class SignatureFactoryCache {
+
+    private static final ThreadLocal<XMLSignatureFactory> SIGNATURE_FACTORY =
+        new ThreadLocal<XMLSignatureFactory>() {
+            protected XMLSignatureFactory initialValue() {
+                return newXMLSignatureFactory();
+            }
+        };
+
+    private static final ThreadLocal<KeyInfoFactory> KEY_INFO_FACTORY =
+        new ThreadLocal<KeyInfoFactory>() {
+            protected KeyInfoFactory initialValue() {
+                return newKeyInfoFactory();
+            }
+        };
+
+    private SignatureFactoryCache() {
+        // complete
+    }
+
+    /**
+     * Get the cached XMLSignatureFactory instance for the current thread
+     * @return the cached XMLSignatureFactory instance for the current thread
+     */
+    public static XMLSignatureFactory getXMLSignatureFactory() {
+        return SIGNATURE_FACTORY.get();
+    }
+
+    /**
+     * Get the cached KeyInfoFactory instance for the current thread
+     * @return the cached KeyInfoFactory instance for the current thread
+     */
+    public static KeyInfoFactory getKeyInfoFactory() {
+        return KEY_INFO_FACTORY.get();
+    }
+
+    /**
+     * Create a new XMLSignatureFactory instance. Try to use the Santuario Provider - fall
+     * back to the JDK provider if this does not work.
+     * @return a new XMLSignatureFactory instance
+     */
+    public static XMLSignatureFactory newXMLSignatureFactory() {
+        try {
+            return XMLSignatureFactory.getInstance("DOM", "XMLDSig");
+        } catch (NoSuchProviderException ex) {
+            return XMLSignatureFactory.getInstance("DOM");
+        }
+    }
+
+    /**
+     * Create a new KeyInfoFactory instance. Try to use the Santuario Provider - fall
+     * back to the JDK provider if this does not work.
+     * @return a new KeyInfoFactory instance
+     */
+    public static KeyInfoFactory newKeyInfoFactory() {
+        try {
+            return KeyInfoFactory.getInstance("DOM", "XMLDSig");
+        } catch (NoSuchProviderException ex) {
+            return KeyInfoFactory.getInstance("DOM");
+        }
+    }
+
+}
@@ -0,0 +1,143 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ws.security.util;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.ws.security.WSSecurityException;
+
+/**
+ * This class caches the keys that were derived from a password via a UsernameToken with
+ * a wsse11:Salt and a wsse11:Iteration element (see the UsernameToken Profile 1.1). The
+ * derivation applies the iteration count (1000 by default) of SHA-1 rounds, which is
+ * repeated for every message if a client keeps using the same salt.
+ *
+ * An entry is keyed by a SHA-256 digest of the salt, the iteration count and the password,
+ * and so no password is stored by the cache. The derived keys are only held in memory, are
+ * overwritten with zeros when they are evicted, and a copy of a key is returned by
+ * {@link #get(String)}.
+ *
+ * A UsernameTokenKeyCache can be shared between threads. It is not used by default, see
+ * {@link org.apache.ws.security.WSSConfig#setUsernameTokenKeyCache(UsernameTokenKeyCache)}.
+ */
+public class UsernameTokenKeyCache {
+
+    /**
+     * The default maximum number of cached keys
+     */
+    public static final int DEFAULT_MAX_SIZE = 1000;
+
+    /**
+     * The default time in seconds for which a derived key is cached
+     */
+    public static final long DEFAULT_TTL = 300L;
+
+    private final ExpiringCache<String, SecretBytes> cache;
+
+    /**
+     * Create a cache with the default maximum size and time-to-live.
+     */
+    public UsernameTokenKeyCache() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_TTL);
+    }
+
+    /**
+     * @param maxSize the maximum number of derived keys to cache
+     * @param ttl the time in seconds for which a derived key is cached
+     */
+    public UsernameTokenKeyCache(int maxSize, long ttl) {
+        if (ttl <= 0) {
+            throw new IllegalArgumentException("ttl must be positive");
+        }
+        cache = new ExpiringCache<String, SecretBytes>(maxSize, ttl) {
+            protected void onEviction(String key, SecretBytes value) {
+                value.destroy();
+            }
+        };
+    }
+
+    /**
+     * Create the cache key for a derived key.
+     * @param password the password (octets)
+     * @param salt the salt
+     * @param iteration the iteration count
+     * @return the cache key
+     * @throws WSSecurityException
+     */
+    public String createKey(
+        byte[] password, byte[] salt, int iteration
+    ) throws WSSecurityException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(salt);
+            digest.update((byte)(iteration >>> 24));
+            digest.update((byte)(iteration >>> 16));
+            digest.update((byte)(iteration >>> 8));
+            digest.update((byte)iteration);
+            digest.update(password);
+            return Base64.encode(digest.digest());
+        } catch (NoSuchAlgorithmException ex) {
+            throw new WSSecurityException("Error in generating digest", ex);
+        }
+    }
+
+    /**
+     * @param key the cache key
+     * @return a copy of the derived key corresponding to the cache key, or null if there
+     * is no such (unexpired) key
+     */
+    public byte[] get(String key) {
+        if (key == null) {
+            return null;
+        }
+        SecretBytes secret = cache.get(key);
+        if (secret == null) {
+            return null;
+        }
+        return secret.copy();
+    }
+
+    /**
+     * Cache a derived key. A copy of the given key is stored.
+     * @param key the cache key
+     * @param derivedKey the derived key
+     */
+    public void put(String key, byte[] derivedKey) {
+        if (key != null && derivedKey != null) {
+            cache.put(key, new SecretBytes(derivedKey.clone()));
+        }
+    }
+
+    /**
+     * Remove (and erase) all cached keys
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * @return the number of cached keys
+     */
+    public int size() {
+        return cache.size();
+    }
+
+}
@@ -63,17 +63,23 @@ public class WSSecurityUtil {
         org.apache.commons.logging.LogFactory.getLog(WSSecurityUtil.class);
 
     /**
-     * A cached pseudo-random number generator
+     * The number of bytes a cached pseudo-random number generator produces, before it is
+     * replaced by a freshly seeded one
+     */
+    private static final long RANDOM_RESEED_INTERVAL = 1024L * 1024L;
+    
+    /**
+     * A cached pseudo-random number generator per thread
      * NB. On some JVMs, caching this random number
      * generator is required to overcome punitive
      * overhead.
      */
-    private static SecureRandom random = null;
+    private static final ThreadLocal<CachedRandom> RANDOM = new ThreadLocal<CachedRandom>();
     
     /**
-     * A cached MessageDigest object
+     * A cached (SHA-1) MessageDigest object per thread
      */
-    private static MessageDigest digest = null;
+    private static final ThreadLocal<MessageDigest> DIGEST = new ThreadLocal<MessageDigest>();
     
     /**
      * Returns the first WS-Security header element for a given actor. Only one
@@ -1016,18 +1022,22 @@ public class WSSecurityUtil {
 
     /**
      * Generate a nonce of the given length using the SHA1PRNG algorithm. The SecureRandom
-     * instance that backs this method is cached for efficiency.
+     * instance that backs this method is cached per thread for efficiency, and is replaced
+     * by a freshly seeded instance after it has produced a certain amount of output.
      * 
      * @return a nonce of the given length
      * @throws WSSecurityException
      */
-    public static synchronized byte[] generateNonce(int length) throws WSSecurityException {
+    public static byte[] generateNonce(int length) throws WSSecurityException {
         try {
-            if (random == null) {
-                random = SecureRandom.getInstance("SHA1PRNG");
+            CachedRandom random = RANDOM.get();
+            if (random == null || random.generated >= RANDOM_RESEED_INTERVAL) {
+                random = new CachedRandom(SecureRandom.getInstance("SHA1PRNG"));
+                RANDOM.set(random);
             }
             byte[] temp = new byte[length];
-            random.nextBytes(temp);
+            random.random.nextBytes(temp);
+            random.generated += length;
             return temp;
         } catch (Exception ex) {
             throw new WSSecurityException(
@@ -1038,15 +1048,17 @@ public class WSSecurityUtil {
     
     /**
      * Generate a (SHA1) digest of the input bytes. The MessageDigest instance that backs this
-     * method is cached for efficiency.  
+     * method is cached per thread for efficiency.  
      * @param inputBytes the bytes to digest
      * @return the digest of the input bytes
      * @throws WSSecurityException
      */
-    public static synchronized byte[] generateDigest(byte[] inputBytes) throws WSSecurityException {
+    public static byte[] generateDigest(byte[] inputBytes) throws WSSecurityException {
         try {
+            MessageDigest digest = DIGEST.get();
             if (digest == null) {
                 digest = MessageDigest.getInstance("SHA-1");
+                DIGEST.set(digest);
             }
             return digest.digest(inputBytes);
         } catch (Exception e) {
@@ -1245,4 +1257,16 @@ public class WSSecurityUtil {
         }
     }
     
+    /**
+     * A cached SecureRandom instance, together with the number of bytes it has produced
+     */
+    private static final class CachedRandom {
+        private final SecureRandom random;
+        private long generated;
+        
+        CachedRandom(SecureRandom random) {
+            this.random = random;
+        }
+    }
+    
 }
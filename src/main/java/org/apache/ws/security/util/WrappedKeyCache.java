@@ -0,0 +1,206 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ws.security.util;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+
+import javax.crypto.SecretKey;
+
+import org.apache.ws.security.WSSecurityException;
+
+/**
+ * This class caches a generated symmetric (session) key together with its wrapped form (the
+ * CipherValue of the xenc:EncryptedKey) per recipient certificate, key transport algorithm and
+ * symmetric encryption algorithm. A sender can reuse the session key and the wrapped key for
+ * a number of messages to the same recipient, which saves one public key operation per message.
+ * Every message still has its own EncryptedKey element, and every EncryptedData still has its
+ * own IV.
+ *
+ * An entry is used for a maximum number of messages, and for a maximum time, whichever
+ * comes first. After that a new session key is generated and wrapped.
+ *
+ * A WrappedKeyCache can be shared between threads. It is not used by default, see
+ * {@link org.apache.ws.security.message.WSSecEncryptedKey#setWrappedKeyCache(WrappedKeyCache)}.
+ */
+public class WrappedKeyCache {
+
+    /**
+     * The default maximum number of messages for which a session key is used
+     */
+    public static final int DEFAULT_MAX_USES = 100;
+
+    /**
+     * The default maximum time in seconds for which a session key is used
+     */
+    public static final long DEFAULT_TTL = 300L;
+
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private final int maxUses;
+    private final ExpiringCache<String, WrappedKey> cache;
+
+    /**
+     * Create a cache with the default maximum number of uses and time-to-live.
+     */
+    public WrappedKeyCache() {
+        this(ExpiringCache.DEFAULT_MAX_SIZE, DEFAULT_MAX_USES, DEFAULT_TTL);
+    }
+
+    /**
+     * @param maxSize the maximum number of recipients for which a session key is cached
+     * @param maxUses the maximum number of messages for which a session key is used
+     * @param ttl the maximum time in seconds for which a session key is used
+     */
+    public WrappedKeyCache(int maxSize, int maxUses, long ttl) {
+        if (maxUses < 1) {
+            throw new IllegalArgumentException("maxUses must be at least 1");
+        }
+        if (ttl <= 0) {
+            throw new IllegalArgumentException("ttl must be positive");
+        }
+        this.maxUses = maxUses;
+        cache = new ExpiringCache<String, WrappedKey>(maxSize, ttl);
+    }
+
+    /**
+     * @return the maximum number of messages for which a session key is used
+     */
+    public int getMaxUses() {
+        return maxUses;
+    }
+
+    /**
+     * Get a cached session key for the given recipient and algorithms. Every call counts
+     * as a use of the session key.
+     * @param remoteCert the certificate of the recipient
+     * @param keyTransportAlgorithm the key transport algorithm URI
+     * @param symEncAlgorithm the symmetric encryption algorithm URI
+     * @return the cached session key, or null if there is no such (unexpired) key
+     * @throws WSSecurityException
+     */
+    public WrappedKey get(
+        X509Certificate remoteCert, String keyTransportAlgorithm, String symEncAlgorithm
+    ) throws WSSecurityException {
+        String key = createKey(remoteCert, keyTransportAlgorithm, symEncAlgorithm);
+        WrappedKey wrappedKey = cache.get(key);
+        if (wrappedKey != null && !wrappedKey.use(maxUses)) {
+            // Another thread might have cached a new session key in the meantime
+            cache.remove(key, wrappedKey);
+            return null;
+        }
+        return wrappedKey;
+    }
+
+    /**
+     * Cache a session key for the given recipient and algorithms. The call counts as the
+     * first use of the session key.
+     * @param remoteCert the certificate of the recipient
+     * @param keyTransportAlgorithm the key transport algorithm URI
+     * @param symEncAlgorithm the symmetric encryption algorithm URI
+     * @param secretKey the session key
+     * @param encryptedKey the session key wrapped with the public key of the recipient
+     * @throws WSSecurityException
+     */
+    public void put(
+        X509Certificate remoteCert, 
+        String keyTransportAlgorithm, 
+        String symEncAlgorithm,
+        SecretKey secretKey,
+        byte[] encryptedKey
+    ) throws WSSecurityException {
+        if (maxUses < 2) {
+            return;
+        }
+        String key = createKey(remoteCert, keyTransportAlgorithm, symEncAlgorithm);
+        cache.put(key, new WrappedKey(secretKey, encryptedKey.clone()));
+    }
+
+    /**
+     * Remove all cached session keys
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * @return the number of cached session keys
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    private static String createKey(
+        X509Certificate remoteCert, String keyTransportAlgorithm, String symEncAlgorithm
+    ) throws WSSecurityException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+            digest.update(remoteCert.getEncoded());
+            return keyTransportAlgorithm + " " + symEncAlgorithm + " " 
+                + Base64.encode(digest.digest());
+        } catch (NoSuchAlgorithmException ex) {
+            throw new WSSecurityException("Error in generating digest", ex);
+        } catch (CertificateEncodingException ex) {
+            throw new WSSecurityException(
+                WSSecurityException.SECURITY_TOKEN_UNAVAILABLE, "encodeError", null, ex
+            );
+        }
+    }
+
+    /**
+     * A session key together with its wrapped form.
+     */
+    public static final class WrappedKey {
+        private final SecretKey secretKey;
+        private final byte[] encryptedKey;
+        private int uses = 1;
+
+        WrappedKey(SecretKey secretKey, byte[] encryptedKey) {
+            this.secretKey = secretKey;
+            this.encryptedKey = encryptedKey;
+        }
+
+        /**
+         * @return the session key
+         */
+        public SecretKey getSecretKey() {
+            return secretKey;
+        }
+
+        /**
+         * @return a copy of the session key wrapped with the public key of the recipient
+         */
+        public byte[] getEncryptedKey() {
+            return encryptedKey.clone();
+        }
+
+        private synchronized boolean use(int maxUses) {
+            if (uses >= maxUses) {
+                return false;
+            }
+            uses++;
+            return true;
+        }
+    }
+
+}
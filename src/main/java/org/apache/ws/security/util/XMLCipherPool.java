@@ -0,0 +1,130 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ws.security.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.apache.xml.security.encryption.CipherData;
+import org.apache.xml.security.encryption.XMLCipher;
+import org.apache.xml.security.encryption.XMLEncryptionException;
+import org.w3c.dom.Document;
+
+/**
+ * This class pools XMLCipher instances used for decryption per (symmetric) encryption
+ * algorithm URI. Creating an XMLCipher instance involves a JCE Cipher lookup, as well as the
+ * creation of a serializer and a Canonicalizer, whereas XMLCipher.init() resets the key and
+ * the mode. XMLCipher is not thread-safe, and so the instances are confined to the thread
+ * that uses them. At most one instance per algorithm, and at most MAX_POOLED_INSTANCES
+ * instances in total, are kept per thread.
+ *
+ * An instance obtained via {@link #getInstance(String)} is owned by the caller until it is
+ * passed back via {@link #release(String, XMLCipher)}. The caller must (re-)initialize the
+ * instance via XMLCipher.init() before use, as is the case for a new instance. An instance
+ * that failed during an operation can simply be discarded instead of being released.
+ * 
+ * Only instances that have been used for decryption may be released. An XMLCipher that
+ * has been used for encryption keeps the serialized plaintext in its Canonicalizer, and
+ * so must not be pooled.
+ */
+public final class XMLCipherPool {
+    
+    /**
+     * The maximum number of idle instances kept per thread
+     */
+    public static final int MAX_POOLED_INSTANCES = 8;
+
+    private static final ThreadLocal<Map<String, XMLCipher>> CIPHERS =
+        new ThreadLocal<Map<String, XMLCipher>>() {
+            protected Map<String, XMLCipher> initialValue() {
+                return new HashMap<String, XMLCipher>();
+            }
+        };
+        
+    /**
+     * An empty Document per thread, that released instances are pointed at instead of
+     * the Document of the last message they processed.
+     */
+    private static final ThreadLocal<Document> PLACEHOLDER_DOCUMENTS =
+        new ThreadLocal<Document>() {
+            protected Document initialValue() {
+                try {
+                    return DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+                } catch (Exception ex) {
+                    return null;
+                }
+            }
+        };
+
+    private XMLCipherPool() {
+        // complete
+    }
+
+    /**
+     * Get an XMLCipher instance for the given algorithm. A pooled instance is returned
+     * if one is available for the current thread, otherwise a new instance is created.
+     * @param algorithm the encryption algorithm URI
+     * @return an XMLCipher instance for the given algorithm
+     * @throws XMLEncryptionException if the algorithm is not supported
+     */
+    public static XMLCipher getInstance(String algorithm) throws XMLEncryptionException {
+        XMLCipher cipher = CIPHERS.get().remove(algorithm);
+        if (cipher == null) {
+            cipher = XMLCipher.getInstance(algorithm);
+        }
+        return cipher;
+    }
+
+    /**
+     * Return an XMLCipher instance that has been used for decryption to the pool of the
+     * current thread. The key of the instance is cleared, and the instance no longer
+     * references the Document it has processed. The instance is discarded if the pool
+     * of the current thread is full. The instance must not be used by the caller afterwards.
+     * @param algorithm the encryption algorithm URI the instance was obtained for
+     * @param cipher the XMLCipher instance
+     */
+    public static void release(String algorithm, XMLCipher cipher) {
+        if (algorithm == null || cipher == null) {
+            return;
+        }
+        Map<String, XMLCipher> ciphers = CIPHERS.get();
+        if (ciphers.size() >= MAX_POOLED_INSTANCES && !ciphers.containsKey(algorithm)) {
+            return;
+        }
+        Document placeholder = PLACEHOLDER_DOCUMENTS.get();
+        if (placeholder == null) {
+            return;
+        }
+        try {
+            cipher.init(XMLCipher.DECRYPT_MODE, null);
+            //
+            // XMLCipher.init() does not reset the context Document, which would otherwise
+            // keep the whole DOM of the last message reachable from the pool
+            //
+            cipher.martial(placeholder, cipher.createEncryptedData(CipherData.VALUE_TYPE, ""));
+        } catch (Exception ex) {
+            return;
+        }
+        ciphers.put(algorithm, cipher);
+    }
+
+}
@@ -0,0 +1,311 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ws.security.util;
+
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * This class parses and formats the dateTime simpleType of the XML Schema specification,
+ * see {@link XmlSchemaDateFormat}. It accepts the same input as XmlSchemaDateFormat, and 
+ * produces the same output, but it does not synchronize on a shared SimpleDateFormat, 
+ * and only allocates the resulting Date or String. The methods can be called concurrently.
+ *
+ * Dates are converted via the proleptic Gregorian calendar. A SimpleDateFormat (which uses
+ * the Julian calendar before 15 October 1582) is only created for dates before the year 
+ * 1583 or after the year 9999, so that the results are the same for all dates.
+ */
+public final class XmlSchemaDateTime {
+
+    private static final long MILLIS_PER_DAY = 24L * 60L * 60L * 1000L;
+    
+    /**
+     * The start of the year 1583
+     */
+    private static final long MIN_FAST_MILLIS = -12212553600000L;
+    
+    /**
+     * The start of the year 10000
+     */
+    private static final long MAX_FAST_MILLIS = 253402300800000L;
+
+    private static final int[] DAYS_IN_MONTH = {31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+
+    private XmlSchemaDateTime() {
+        // complete
+    }
+
+    /**
+     * Parse an XML Schema dateTime string leniently, i.e. out of range fields (such as a 
+     * month of 13) are rolled over.
+     * @param src the dateTime string
+     * @return the parsed Date
+     * @throws ParseException if the string is not a valid dateTime string
+     */
+    public static Date parse(String src) throws ParseException {
+        return parse(src, true);
+    }
+
+    /**
+     * Parse an XML Schema dateTime string.
+     * @param src the dateTime string
+     * @param lenient whether out of range fields (such as a month of 13) are rolled over,
+     * or rejected
+     * @return the parsed Date
+     * @throws ParseException if the string is not a valid dateTime string
+     */
+    public static Date parse(String src, boolean lenient) throws ParseException {
+        int start = 0;
+        int length = src.length();
+        if (length > 0 && (src.charAt(0) == '+' || src.charAt(0) == '-')) {
+            start = 1;
+        }
+        if (length - start < 19) {
+            throw parseError("TOO_FEW_CHARS");
+        }
+        validateChar(src, start + 4, '-', "EXPECTED_DASH");
+        validateChar(src, start + 7, '-', "EXPECTED_DASH");
+        validateChar(src, start + 10, 'T', "EXPECTED_CAPITAL_T");
+        validateChar(src, start + 13, ':', "EXPECTED_COLON_IN_TIME");
+        validateChar(src, start + 16, ':', "EXPECTED_COLON_IN_TIME");
+        
+        int year = parseDigits(src, start, 4);
+        int month = parseDigits(src, start + 5, 2);
+        int day = parseDigits(src, start + 8, 2);
+        int hour = parseDigits(src, start + 11, 2);
+        int minute = parseDigits(src, start + 14, 2);
+        int second = parseDigits(src, start + 17, 2);
+        
+        long time = 0L;
+        int normalizedYear = year + floorDiv(month - 1, 12);
+        if (normalizedYear < 1583) {
+            time = parseSlow(src.substring(start, start + 19), lenient);
+        } else {
+            if (!lenient) {
+                validateFields(year, month, day, hour, minute, second);
+            }
+            int normalizedMonth = month - 1 - floorDiv(month - 1, 12) * 12 + 1;
+            long days = daysFromCivil(normalizedYear, normalizedMonth, 1) + day - 1;
+            time = 
+                days * MILLIS_PER_DAY + ((hour * 60L + minute) * 60L + second) * 1000L;
+        }
+        
+        int index = start + 19;
+
+        // parse optional milliseconds
+        if (index < length && src.charAt(index) == '.') {
+            int digitStart = ++index;
+            while (index < length && isDigit(src.charAt(index))) {
+                index++;
+            }
+            int digits = index - digitStart;
+            int milliseconds = 0;
+            for (int i = 0; i < 3; i++) {
+                milliseconds *= 10;
+                if (i < digits) {
+                    milliseconds += src.charAt(digitStart + i) - '0';
+                }
+            }
+            if (digits > 3 && src.charAt(digitStart + 3) >= '5') {
+                ++milliseconds;
+            }
+            time += milliseconds;
+        }
+
+        // parse optional timezone
+        if (index + 5 < length 
+            && (src.charAt(index) == '+' || src.charAt(index) == '-')) {
+            int hours = parseDigits(src, index + 1, 2);
+            validateChar(src, index + 3, ':', "EXPECTED_COLON_IN_TIMEZONE");
+            int mins = parseDigits(src, index + 4, 2);
+            long millisecs = ((hours * 60L) + mins) * 60L * 1000L;
+
+            // subtract millisecs from current date to obtain GMT
+            if (src.charAt(index) == '+') {
+                millisecs = -millisecs;
+            }
+            time += millisecs;
+            index += 6;
+        }
+
+        if (index < length && src.charAt(index) == 'Z') {
+            index++;
+        }
+
+        if (index < length) {
+            throw parseError("TOO_MANY_CHARS");
+        }
+        return new Date(time);
+    }
+
+    /**
+     * Format a Date as an XML Schema dateTime string in UTC, with milliseconds, 
+     * e.g. "2011-05-19T10:55:11.123Z".
+     * @param date the Date to format
+     * @return the dateTime string
+     */
+    public static String format(Date date) {
+        return format(date.getTime(), true);
+    }
+
+    /**
+     * Format a time as an XML Schema dateTime string in UTC.
+     * @param time the time in milliseconds since the epoch
+     * @param milliseconds whether the milliseconds are included, e.g. 
+     * "2011-05-19T10:55:11.123Z", or not, e.g. "2011-05-19T10:55:11Z"
+     * @return the dateTime string
+     */
+    public static String format(long time, boolean milliseconds) {
+        if (time < MIN_FAST_MILLIS || time >= MAX_FAST_MILLIS) {
+            return formatSlow(time, milliseconds);
+        }
+        long days = floorDiv(time, MILLIS_PER_DAY);
+        int millisOfDay = (int)(time - days * MILLIS_PER_DAY);
+        
+        // Convert the days since the epoch to year, month and day of month
+        long z = days + 719468L;
+        long era = floorDiv(z, 146097L);
+        int dayOfEra = (int)(z - era * 146097L);
+        int yearOfEra = 
+            (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int mp = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        int year = (int)(yearOfEra + era * 400L) + (month <= 2 ? 1 : 0);
+        
+        char[] buf = new char[milliseconds ? 24 : 20];
+        put(buf, 0, year, 4);
+        buf[4] = '-';
+        put(buf, 5, month, 2);
+        buf[7] = '-';
+        put(buf, 8, day, 2);
+        buf[10] = 'T';
+        put(buf, 11, millisOfDay / 3600000, 2);
+        buf[13] = ':';
+        put(buf, 14, (millisOfDay / 60000) % 60, 2);
+        buf[16] = ':';
+        put(buf, 17, (millisOfDay / 1000) % 60, 2);
+        if (milliseconds) {
+            buf[19] = '.';
+            put(buf, 20, millisOfDay % 1000, 3);
+        }
+        buf[buf.length - 1] = 'Z';
+        return new String(buf);
+    }
+
+    /**
+     * @return the number of days since the epoch of the given date in the proleptic 
+     * Gregorian calendar. The day of month may be out of range.
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        long era = floorDiv(y, 400L);
+        int yearOfEra = (int)(y - era * 400L);
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468L;
+    }
+
+    private static void validateFields(
+        int year, int month, int day, int hour, int minute, int second
+    ) throws ParseException {
+        if (month < 1 || month > 12) {
+            throw parseError("INVALID_MONTH");
+        }
+        int daysInMonth = DAYS_IN_MONTH[month - 1];
+        if (month == 2 && (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0))) {
+            daysInMonth = 29;
+        }
+        if (day < 1 || day > daysInMonth) {
+            throw parseError("INVALID_DAY");
+        }
+        if (hour > 23 || minute > 59 || second > 59) {
+            throw parseError("INVALID_TIME");
+        }
+    }
+
+    private static long parseSlow(String src, boolean lenient) throws ParseException {
+        DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        dateFormat.setLenient(lenient);
+        return dateFormat.parse(src + ".000Z").getTime();
+    }
+
+    private static String formatSlow(long time, boolean milliseconds) {
+        DateFormat dateFormat = 
+            new SimpleDateFormat(
+                milliseconds ? "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'" : "yyyy-MM-dd'T'HH:mm:ss'Z'"
+            );
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return dateFormat.format(new Date(time));
+    }
+
+    private static void put(char[] buf, int offset, int value, int digits) {
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            buf[i] = (char)('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    private static int parseDigits(String src, int offset, int digits) throws ParseException {
+        int value = 0;
+        for (int i = offset; i < offset + digits; i++) {
+            char c = src.charAt(i);
+            if (!isDigit(c)) {
+                throw parseError("EXPECTED_NUMERAL");
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static long floorDiv(long x, long y) {
+        long r = x / y;
+        if ((x % y != 0) && ((x ^ y) < 0)) {
+            r--;
+        }
+        return r;
+    }
+
+    private static int floorDiv(int x, int y) {
+        return (int)floorDiv((long)x, (long)y);
+    }
+
+    private static void validateChar(
+        String src, int index, char expected, String reason
+    ) throws ParseException {
+        if (src.charAt(index) != expected) {
+            throw parseError(reason);
+        }
+    }
+
+    private static ParseException parseError(String reason) {
+        return new ParseException("INVALID_XSD_DATETIME: " + reason, 0);
+    }
+
+}
@@ -0,0 +1,104 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ws.security.conversation.dkalgo;
+
+import java.util.Arrays;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.ws.security.conversation.ConversationConstants;
+
+/**
+ * Some tests for the P_hash based key derivation algorithms.
+ */
+public class DerivationAlgorithmTest extends org.junit.Assert {
+
+    private static final byte[] SECRET = "a shared secret".getBytes();
+    private static final byte[] SEED = "WS-SecureConversationWS-SecureConversation".getBytes();
+
+    /**
+     * The derived keys must be the same as those of a straightforward P_hash
+     * implementation, for various offsets and lengths.
+     */
+    @org.junit.Test
+    public void testParity() throws Exception {
+        int[] offsets = {0, 1, 19, 20, 21, 32, 40, 77};
+        int[] lengths = {0, 1, 16, 20, 24, 32, 33, 64, 100};
+        for (int offset : offsets) {
+            for (int length : lengths) {
+                assertArrayEquals(
+                    pHash("HmacSHA1", offset, length),
+                    new P_SHA1().createKey(SECRET, SEED, offset, length)
+                );
+                assertArrayEquals(
+                    pHash("HmacSHA256", offset, length),
+                    new P_SHA256().createKey(SECRET, SEED, offset, length)
+                );
+            }
+        }
+    }
+
+    /**
+     * A key is derived into the given region of the buffer of the caller.
+     */
+    @org.junit.Test
+    public void testDeriveIntoBuffer() throws Exception {
+        byte[] buffer = new byte[50];
+        Arrays.fill(buffer, (byte)7);
+        new P_SHA1().createKey(SECRET, SEED, 5, buffer, 10, 30);
+
+        byte[] expected = pHash("HmacSHA1", 5, 30);
+        for (int i = 0; i < buffer.length; i++) {
+            if (i < 10 || i >= 40) {
+                assertEquals(7, buffer[i]);
+            } else {
+                assertEquals(expected[i - 10], buffer[i]);
+            }
+        }
+    }
+
+    @org.junit.Test
+    public void testAlgoFactory() throws Exception {
+        DerivationAlgorithm algo =
+            AlgoFactory.getInstance(ConversationConstants.DerivationAlgorithm.P_SHA_1);
+        assertEquals("HmacSHA1", ((PHash)algo).getMacAlgorithm());
+        algo = AlgoFactory.getInstance(ConversationConstants.DerivationAlgorithm.P_SHA_256);
+        assertEquals("HmacSHA256", ((PHash)algo).getMacAlgorithm());
+        assertEquals(32, algo.createKey(SECRET, SEED, 0, 32).length);
+    }
+
+    private static byte[] pHash(String algorithm, int offset, int length) throws Exception {
+        Mac mac = Mac.getInstance(algorithm);
+        mac.init(new SecretKeySpec(SECRET, algorithm));
+        byte[] out = new byte[offset + length + mac.getMacLength()];
+        byte[] a = SEED;
+        int pos = 0;
+        while (pos < offset + length) {
+            a = mac.doFinal(a);
+            mac.update(a);
+            byte[] block = mac.doFinal(SEED);
+            System.arraycopy(block, 0, out, pos, block.length);
+            pos += block.length;
+        }
+        return Arrays.copyOfRange(out, offset, offset + length);
+    }
+
+}
@@ -0,0 +1,126 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ws.security.message;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.security.auth.callback.CallbackHandler;
+
+import org.apache.ws.security.WSConstants;
+import org.apache.ws.security.WSSConfig;
+import org.apache.ws.security.WSSecurityEngine;
+import org.apache.ws.security.WSSecurityEngineResult;
+import org.apache.ws.security.common.KeystoreCallbackHandler;
+import org.apache.ws.security.common.SOAPUtil;
+import org.apache.ws.security.components.crypto.Crypto;
+import org.apache.ws.security.components.crypto.CryptoFactory;
+import org.apache.ws.security.util.WSSecurityUtil;
+import org.apache.ws.security.util.WrappedKeyCache;
+import org.apache.ws.security.util.XMLUtils;
+import org.w3c.dom.Document;
+
+/**
+ * Test reusing a generated session key, and its EncryptedKey CipherValue, for several 
+ * messages to the same recipient.
+ */
+public class EncryptedKeyReuseTest extends org.junit.Assert {
+    private WSSecurityEngine secEngine = new WSSecurityEngine();
+    private CallbackHandler callbackHandler = new KeystoreCallbackHandler();
+    private Crypto crypto = null;
+    
+    public EncryptedKeyReuseTest() throws Exception {
+        WSSConfig.init();
+        crypto = CryptoFactory.getInstance();
+    }
+
+    /**
+     * A session key is used for two messages, and a new one is generated for the third.
+     */
+    @org.junit.Test
+    public void testReuseSessionKey() throws Exception {
+        WrappedKeyCache cache = new WrappedKeyCache(10, 2, 60L);
+        
+        WSSecEncrypt first = encrypt(cache, WSConstants.AES_128);
+        WSSecEncrypt second = encrypt(cache, WSConstants.AES_128);
+        WSSecEncrypt third = encrypt(cache, WSConstants.AES_128);
+        assertArrayEquals(first.getEphemeralKey(), second.getEphemeralKey());
+        assertArrayEquals(first.getEncryptedEphemeralKey(), second.getEncryptedEphemeralKey());
+        assertFalse(first.getId().equals(second.getId()));
+        assertFalse(
+            Arrays.equals(first.getEphemeralKey(), third.getEphemeralKey())
+        );
+        assertEquals(1, cache.size());
+        
+        // A different symmetric algorithm needs a different session key
+        WSSecEncrypt other = encrypt(cache, WSConstants.AES_256);
+        assertFalse(
+            Arrays.equals(third.getEphemeralKey(), other.getEphemeralKey())
+        );
+        assertEquals(2, cache.size());
+    }
+    
+    /**
+     * A session key that is set explicitly is not cached.
+     */
+    @org.junit.Test
+    public void testExplicitKey() throws Exception {
+        WrappedKeyCache cache = new WrappedKeyCache();
+        WSSecEncrypt builder = new WSSecEncrypt();
+        builder.setUserInfo("16c73ab6-b892-458f-abf5-2f875f74882e");
+        builder.setSymmetricKey(
+            WSSecurityUtil.prepareSecretKey(WSConstants.AES_128, new byte[16])
+        );
+        builder.setWrappedKeyCache(cache);
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader();
+        secHeader.insertSecurityHeader(doc);
+        builder.build(doc, crypto, secHeader);
+        assertEquals(0, cache.size());
+    }
+    
+    private WSSecEncrypt encrypt(WrappedKeyCache cache, String symEncAlgo) throws Exception {
+        WSSecEncrypt builder = new WSSecEncrypt();
+        builder.setUserInfo("16c73ab6-b892-458f-abf5-2f875f74882e");
+        builder.setKeyIdentifierType(WSConstants.ISSUER_SERIAL);
+        builder.setSymmetricEncAlgorithm(symEncAlgo);
+        builder.setWrappedKeyCache(cache);
+        assertSame(cache, builder.getWrappedKeyCache());
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader();
+        secHeader.insertSecurityHeader(doc);
+        Document encryptedDoc = builder.build(doc, crypto, secHeader);
+        assertFalse(XMLUtils.PrettyDocumentToString(encryptedDoc).contains("counter_port_type"));
+        
+        List<WSSecurityEngineResult> results = 
+            secEngine.processSecurityHeader(encryptedDoc, null, callbackHandler, crypto);
+        WSSecurityEngineResult actionResult = 
+            WSSecurityUtil.fetchActionResult(results, WSConstants.ENCR);
+        assertNotNull(actionResult);
+        assertArrayEquals(
+            builder.getEphemeralKey(), 
+            (byte[])actionResult.get(WSSecurityEngineResult.TAG_SECRET)
+        );
+        assertTrue(XMLUtils.PrettyDocumentToString(encryptedDoc).contains("counter_port_type"));
+        return builder;
+    }
+    
+}
@@ -0,0 +1,182 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ws.security.message;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.security.auth.callback.CallbackHandler;
+
+import org.apache.ws.security.WSConstants;
+import org.apache.ws.security.WSEncryptionPart;
+import org.apache.ws.security.WSSConfig;
+import org.apache.ws.security.WSSecurityEngine;
+import org.apache.ws.security.WSSecurityEngineResult;
+import org.apache.ws.security.WsuIdAllocator;
+import org.apache.ws.security.common.KeystoreCallbackHandler;
+import org.apache.ws.security.common.SOAPUtil;
+import org.apache.ws.security.components.crypto.Crypto;
+import org.apache.ws.security.components.crypto.CryptoFactory;
+import org.apache.ws.security.util.WSSecurityUtil;
+import org.apache.ws.security.util.XMLUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Test encrypting parts in chunks.
+ */
+public class EncryptionChunkedTest extends org.junit.Assert {
+    private static final String SOAPMSG = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+        "<soapenv:Envelope xmlns:foo=\"urn:foo.bar\" xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\" xmlns:xsd=\"http://www.w3.org/2001/XMLSchema\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\">" +
+        "   <soapenv:Header>" +
+        "       <foo:foobar soapenv:mustUnderstand=\"1\">baz<!-- c --></foo:foobar>" + 
+        "   </soapenv:Header>" +
+        "   <soapenv:Body>" +
+        "      <ns1:testMethod xmlns:ns1=\"http://axis/service/security/test6/LogTestService8\">" +
+        "         <ns1:value xsi:type=\"xsd:string\">asf1</ns1:value>" +
+        "      </ns1:testMethod>" +
+        "   </soapenv:Body>" +
+        "</soapenv:Envelope>";
+
+    private WSSecurityEngine secEngine = new WSSecurityEngine();
+    private CallbackHandler callbackHandler = new KeystoreCallbackHandler();
+    private Crypto crypto = null;
+    
+    public EncryptionChunkedTest() throws Exception {
+        WSSConfig.init();
+        crypto = CryptoFactory.getInstance();
+    }
+
+    /**
+     * Encrypting in chunks must produce the same message structure as the default mode.
+     */
+    @org.junit.Test
+    public void testChunkedEncryption() throws Exception {
+        for (String algorithm : new String[] {WSConstants.AES_128, WSConstants.TRIPLE_DES}) {
+            String chunked = encrypt(SOAPUtil.toSOAPPart(SOAPMSG), true, algorithm);
+            String notChunked = encrypt(SOAPUtil.toSOAPPart(SOAPMSG), false, algorithm);
+            assertEquals(stripCipherValues(notChunked), stripCipherValues(chunked));
+        }
+    }
+    
+    /**
+     * A large Body is written as several Text nodes of the CipherValue element
+     */
+    @org.junit.Test
+    public void testLargeBody() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPMSG);
+        Element value = 
+            (Element)doc.getElementsByTagNameNS(
+                "http://axis/service/security/test6/LogTestService8", "value"
+            ).item(0);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            sb.append("some large content ").append(i).append(' ');
+        }
+        value.setTextContent(sb.toString());
+        
+        WSSecEncrypt builder = createBuilder(true, WSConstants.AES_256);
+        WSSecHeader secHeader = new WSSecHeader();
+        secHeader.insertSecurityHeader(doc);
+        Document encryptedDoc = builder.build(doc, crypto, secHeader);
+        
+        Element body = WSSecurityUtil.findBodyElement(encryptedDoc);
+        Element cipherValue = 
+            (Element)body.getElementsByTagNameNS(WSConstants.ENC_NS, "CipherValue").item(0);
+        int textNodes = 0;
+        for (Node node = cipherValue.getFirstChild(); node != null; node = node.getNextSibling()) {
+            assertEquals(Node.TEXT_NODE, node.getNodeType());
+            textNodes++;
+        }
+        assertTrue(textNodes > 1);
+        
+        // Decrypt from the serialized message as well as from the DOM
+        Document parsedDoc = SOAPUtil.toSOAPPart(XMLUtils.PrettyDocumentToString(encryptedDoc));
+        for (Document d : new Document[] {parsedDoc, encryptedDoc}) {
+            secEngine.processSecurityHeader(d, null, callbackHandler, crypto);
+            assertEquals(
+                sb.toString(),
+                d.getElementsByTagNameNS(
+                    "http://axis/service/security/test6/LogTestService8", "value"
+                ).item(0).getTextContent()
+            );
+        }
+    }
+    
+    private WSSecEncrypt createBuilder(boolean chunked, String algorithm) {
+        WSSConfig config = WSSConfig.getNewInstance();
+        config.setIdAllocator(new CountingIdAllocator());
+        WSSecEncrypt builder = new WSSecEncrypt(config);
+        builder.setUserInfo("16c73ab6-b892-458f-abf5-2f875f74882e");
+        builder.setKeyIdentifierType(WSConstants.ISSUER_SERIAL);
+        builder.setSymmetricEncAlgorithm(algorithm);
+        builder.setChunkedEncryption(chunked);
+        assertEquals(chunked, builder.isChunkedEncryption());
+        return builder;
+    }
+    
+    private String encrypt(Document doc, boolean chunked, String algorithm) throws Exception {
+        WSSecEncrypt builder = createBuilder(chunked, algorithm);
+        WSSecHeader secHeader = new WSSecHeader();
+        secHeader.insertSecurityHeader(doc);
+        
+        List<WSEncryptionPart> parts = new ArrayList<WSEncryptionPart>();
+        parts.add(new WSEncryptionPart("foobar", "urn:foo.bar", "Element"));
+        parts.add(
+            new WSEncryptionPart(
+                WSConstants.ELEM_BODY, WSConstants.URI_SOAP11_ENV, "Content"
+            )
+        );
+        builder.setParts(parts);
+        Document encryptedDoc = builder.build(doc, crypto, secHeader);
+        String outputString = XMLUtils.PrettyDocumentToString(encryptedDoc);
+        assertFalse(outputString.contains("asf1"));
+        assertFalse(outputString.contains("baz"));
+        
+        List<WSSecurityEngineResult> results = 
+            secEngine.processSecurityHeader(encryptedDoc, null, callbackHandler, crypto);
+        assertNotNull(WSSecurityUtil.fetchActionResult(results, WSConstants.ENCR));
+        String decryptedString = XMLUtils.PrettyDocumentToString(encryptedDoc);
+        assertTrue(decryptedString.contains("asf1"));
+        assertTrue(decryptedString.contains("baz<!-- c -->"));
+        return outputString;
+    }
+    
+    private static String stripCipherValues(String message) {
+        return message.replaceAll(
+            "<xenc:CipherValue>[^<]*</xenc:CipherValue>", "<xenc:CipherValue/>"
+        ).replaceAll("EK-[0-9A-F]+", "EK-");
+    }
+    
+    private static class CountingIdAllocator implements WsuIdAllocator {
+        private int count;
+        
+        public String createId(String prefix, Object o) {
+            return prefix + (++count);
+        }
+        
+        public String createSecureId(String prefix, Object o) {
+            return prefix + (++count);
+        }
+    }
+    
+}
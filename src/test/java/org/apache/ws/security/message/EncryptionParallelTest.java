@@ -0,0 +1,189 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ws.security.message;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.security.auth.callback.CallbackHandler;
+
+import org.apache.ws.security.WSConstants;
+import org.apache.ws.security.WSEncryptionPart;
+import org.apache.ws.security.WSSConfig;
+import org.apache.ws.security.WSSecurityEngine;
+import org.apache.ws.security.WSSecurityEngineResult;
+import org.apache.ws.security.WsuIdAllocator;
+import org.apache.ws.security.common.KeystoreCallbackHandler;
+import org.apache.ws.security.common.SOAPUtil;
+import org.apache.ws.security.components.crypto.Crypto;
+import org.apache.ws.security.components.crypto.CryptoFactory;
+import org.apache.ws.security.util.WSSecurityUtil;
+import org.apache.ws.security.util.XMLUtils;
+import org.w3c.dom.Document;
+
+/**
+ * Test that encrypting several parts in parallel produces the same message structure
+ * as encrypting them sequentially, and that the message can be decrypted again.
+ */
+public class EncryptionParallelTest extends org.junit.Assert {
+    private static final org.apache.commons.logging.Log LOG = 
+        org.apache.commons.logging.LogFactory.getLog(EncryptionParallelTest.class);
+    private static final String SOAPMSG = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+        "<soapenv:Envelope xmlns:foo=\"urn:foo.bar\" xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\" xmlns:xsd=\"http://www.w3.org/2001/XMLSchema\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\">" +
+        "   <soapenv:Header>" +
+        "       <foo:foobar>baz</foo:foobar>" + 
+        "       <foo:foobar1 soapenv:mustUnderstand=\"1\" xmlns:bar=\"urn:bar\" bar:attr=\"1\"><bar:a>a</bar:a><!-- c --></foo:foobar1>" + 
+        "       <foobar2 xmlns=\"urn:foo.bar\">foo &amp; bar</foobar2>" + 
+        "   </soapenv:Header>" +
+        "   <soapenv:Body>" +
+        "      <ns1:testMethod xmlns:ns1=\"http://axis/service/security/test6/LogTestService8\">" +
+        "         <ns1:value xsi:type=\"xsd:string\">asf1</ns1:value>" +
+        "      </ns1:testMethod>" +
+        "   </soapenv:Body>" +
+        "</soapenv:Envelope>";
+
+    private WSSecurityEngine secEngine = new WSSecurityEngine();
+    private CallbackHandler callbackHandler = new KeystoreCallbackHandler();
+    private Crypto crypto = null;
+    
+    public EncryptionParallelTest() throws Exception {
+        WSSConfig.init();
+        crypto = CryptoFactory.getInstance();
+    }
+
+    /**
+     * Encrypt several parts sequentially and in parallel, and compare the results
+     */
+    @org.junit.Test
+    public void testParallelEncryption() throws Exception {
+        final ExecutorService executorService = Executors.newFixedThreadPool(4);
+        final AtomicInteger tasks = new AtomicInteger();
+        Executor executor = new Executor() {
+            public void execute(Runnable command) {
+                tasks.incrementAndGet();
+                executorService.execute(command);
+            }
+        };
+        try {
+            String sequential = encrypt(null, false);
+            assertEquals(0, tasks.get());
+            String parallel = encrypt(executor, false);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(parallel);
+            }
+            assertEquals(4, tasks.get());
+            // The cipher values and EncryptedKey Ids differ, as they are random
+            assertEquals(stripCipherValues(sequential), stripCipherValues(parallel));
+        } finally {
+            executorService.shutdown();
+        }
+    }
+    
+    /**
+     * Nested parts are encrypted sequentially, even if an Executor is set
+     */
+    @org.junit.Test
+    public void testNestedParts() throws Exception {
+        final AtomicInteger tasks = new AtomicInteger();
+        Executor executor = new Executor() {
+            public void execute(Runnable command) {
+                tasks.incrementAndGet();
+                command.run();
+            }
+        };
+        encrypt(executor, true);
+        assertEquals(0, tasks.get());
+    }
+    
+    private String encrypt(Executor executor, boolean nested) throws Exception {
+        WSSConfig config = WSSConfig.getNewInstance();
+        config.setIdAllocator(new CountingIdAllocator());
+        
+        WSSecEncrypt encrypt = new WSSecEncrypt(config);
+        encrypt.setUserInfo("16c73ab6-b892-458f-abf5-2f875f74882e", "security");
+        encrypt.setKeyIdentifierType(WSConstants.ISSUER_SERIAL);
+        encrypt.setEncryptionExecutor(executor);
+        assertSame(executor, encrypt.getEncryptionExecutor());
+
+        Document doc = SOAPUtil.toSOAPPart(SOAPMSG);
+        WSSecHeader secHeader = new WSSecHeader();
+        secHeader.insertSecurityHeader(doc);
+        
+        List<WSEncryptionPart> parts = new ArrayList<WSEncryptionPart>();
+        parts.add(new WSEncryptionPart("foobar", "urn:foo.bar", "Element"));
+        if (nested) {
+            parts.add(new WSEncryptionPart("a", "urn:bar", "Element"));
+        }
+        parts.add(new WSEncryptionPart("foobar1", "urn:foo.bar", "Header"));
+        parts.add(new WSEncryptionPart("foobar2", "urn:foo.bar", "Element"));
+        parts.add(
+            new WSEncryptionPart(
+                WSConstants.ELEM_BODY, WSConstants.URI_SOAP11_ENV, "Content"
+            )
+        );
+        encrypt.setParts(parts);
+        
+        Document encryptedDoc = encrypt.build(doc, crypto, secHeader);
+        String outputString = XMLUtils.PrettyDocumentToString(encryptedDoc);
+        assertFalse(outputString.contains("asf1"));
+        assertFalse(outputString.contains("baz"));
+        assertTrue(outputString.contains("wsse11:EncryptedHeader"));
+        
+        if (nested) {
+            // The inner EncryptedData is referenced before the outer one is decrypted
+            return outputString;
+        }
+        
+        secEngine.setWssConfig(config);
+        List<WSSecurityEngineResult> results = 
+            secEngine.processSecurityHeader(encryptedDoc, null, callbackHandler, crypto);
+        WSSecurityEngineResult actionResult = 
+            WSSecurityUtil.fetchActionResult(results, WSConstants.ENCR);
+        assertNotNull(actionResult);
+        String decryptedString = XMLUtils.PrettyDocumentToString(encryptedDoc);
+        assertTrue(decryptedString.contains("asf1"));
+        assertTrue(decryptedString.contains("baz"));
+        assertTrue(decryptedString.contains("foo &amp; bar"));
+        return outputString;
+    }
+    
+    private static String stripCipherValues(String message) {
+        return message.replaceAll(
+            "<xenc:CipherValue>[^<]*</xenc:CipherValue>", "<xenc:CipherValue/>"
+        ).replaceAll("EK-[0-9A-F]+", "EK-");
+    }
+    
+    private static class CountingIdAllocator implements WsuIdAllocator {
+        private int count;
+        
+        public String createId(String prefix, Object o) {
+            return prefix + (++count);
+        }
+        
+        public String createSecureId(String prefix, Object o) {
+            return prefix + (++count);
+        }
+    }
+    
+}
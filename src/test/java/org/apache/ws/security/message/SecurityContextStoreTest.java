@@ -0,0 +1,202 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ws.security.message;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+
+import javax.security.auth.callback.Callback;
+import javax.security.auth.callback.UnsupportedCallbackException;
+
+import org.apache.ws.security.WSConstants;
+import org.apache.ws.security.WSSConfig;
+import org.apache.ws.security.WSSecurityEngine;
+import org.apache.ws.security.common.SecretKeyCallbackHandler;
+import org.apache.ws.security.common.SOAPUtil;
+import org.apache.ws.security.components.crypto.Crypto;
+import org.apache.ws.security.components.crypto.CryptoFactory;
+import org.apache.ws.security.conversation.FileSecurityContextPersistence;
+import org.apache.ws.security.conversation.SecurityContext;
+import org.apache.ws.security.conversation.SecurityContextStore;
+import org.apache.ws.security.util.DerivedKeyCache;
+import org.apache.ws.security.util.WSSecurityUtil;
+import org.w3c.dom.Document;
+
+/**
+ * Some tests for the SecurityContextStore.
+ */
+public class SecurityContextStoreTest extends org.junit.Assert {
+
+    private Crypto crypto = null;
+
+    public SecurityContextStoreTest() throws Exception {
+        WSSConfig.init();
+        crypto = CryptoFactory.getInstance("wss40.properties");
+    }
+
+    @org.junit.Test
+    public void testStore() throws Exception {
+        SecurityContextStore store = new SecurityContextStore(10, 60L, null);
+        DerivedKeyCache derivedKeyCache = new DerivedKeyCache();
+        store.setDerivedKeyCache(derivedKeyCache);
+        byte[] secret = WSSecurityUtil.generateNonce(16);
+
+        store.add(new SecurityContext("urn:sct:1", null, secret, null, null));
+        store.add(new SecurityContext("urn:sct:1", "2", secret, null, null));
+        store.add(
+            new SecurityContext(
+                "urn:sct:expired", null, secret, null, new Date(System.currentTimeMillis() - 1)
+            )
+        );
+        assertEquals(2, store.size());
+        SecurityContext context = store.get("urn:sct:1");
+        assertNotNull(context);
+        assertArrayEquals(secret, context.getSecret());
+        assertNotNull(context.getExpires());
+        assertNotNull(store.get("urn:sct:1", "2"));
+        assertNull(store.get("urn:sct:1", "3"));
+        assertNull(store.get("urn:sct:expired"));
+
+        // Cancelling a context removes the keys derived from its secret
+        derivedKeyCache.put("urn:sct:1", secret, "key", secret);
+        store.cancel("urn:sct:1", null);
+        assertNull(store.get("urn:sct:1"));
+        assertEquals(0, derivedKeyCache.size());
+        assertNotNull(store.get("urn:sct:1", "2"));
+    }
+
+    @org.junit.Test
+    public void testExpiry() throws Exception {
+        SecurityContextStore store = new SecurityContextStore();
+        byte[] secret = WSSecurityUtil.generateNonce(16);
+        store.add(
+            new SecurityContext(
+                "urn:sct:1", null, secret, null, new Date(System.currentTimeMillis() + 100L)
+            )
+        );
+        assertNotNull(store.get("urn:sct:1"));
+        Thread.sleep(200L);
+        assertNull(store.get("urn:sct:1"));
+        assertEquals(0, store.size());
+    }
+
+    @org.junit.Test
+    public void testFilePersistence() throws Exception {
+        File directory = new File("target/sct-store-" + System.currentTimeMillis());
+        FileSecurityContextPersistence persistence = 
+            new FileSecurityContextPersistence(directory);
+        byte[] secret = WSSecurityUtil.generateNonce(16);
+        Date expires = new Date(System.currentTimeMillis() + 60000L);
+
+        SecurityContextStore store = new SecurityContextStore(10, 60L, persistence);
+        store.add(new SecurityContext("urn:sct:1", "1", secret, null, expires));
+        assertEquals(1, directory.listFiles().length);
+
+        // A new store (e.g. after a restart) loads the context from the directory
+        SecurityContextStore newStore = 
+            new SecurityContextStore(10, 60L, new FileSecurityContextPersistence(directory));
+        assertEquals(0, newStore.size());
+        SecurityContext context = newStore.get("urn:sct:1", "1");
+        assertNotNull(context);
+        assertArrayEquals(secret, context.getSecret());
+        assertEquals(expires, context.getExpires());
+        assertNull(newStore.get("urn:sct:1"));
+        assertEquals(1, newStore.size());
+
+        newStore.cancel("urn:sct:1", "1");
+        assertEquals(0, directory.listFiles().length);
+        assertNull(persistence.load("urn:sct:1", "1"));
+        assertTrue(directory.delete());
+    }
+
+    /**
+     * The file of a context must be removed when the context expires, whether it is evicted
+     * from memory or was only left in the directory.
+     */
+    @org.junit.Test
+    public void testExpiredFilesRemoved() throws Exception {
+        File directory = new File("target/sct-expiry-" + System.currentTimeMillis());
+        FileSecurityContextPersistence persistence = 
+            new FileSecurityContextPersistence(directory);
+        byte[] secret = WSSecurityUtil.generateNonce(16);
+        
+        // An expired context is removed from the directory when it is evicted from memory
+        SecurityContextStore store = new SecurityContextStore(1, 60L, persistence);
+        long now = System.currentTimeMillis();
+        store.add(new SecurityContext("urn:sct:1", null, secret, null, new Date(now + 200L)));
+        assertEquals(1, directory.listFiles().length);
+        Thread.sleep(300L);
+        now = System.currentTimeMillis();
+        store.add(new SecurityContext("urn:sct:2", null, secret, null, new Date(now + 200L)));
+        assertEquals(1, directory.listFiles().length);
+        assertNotNull(persistence.load("urn:sct:2", null));
+        assertNull(persistence.load("urn:sct:1", null));
+        
+        // An expired context that is not in memory is removed when the next store is created
+        Thread.sleep(300L);
+        new SecurityContextStore(10, 60L, new FileSecurityContextPersistence(directory));
+        assertEquals(0, directory.listFiles().length);
+        assertTrue(directory.delete());
+    }
+
+    /**
+     * The secret of a SecurityContextToken is only requested from the CallbackHandler once.
+     */
+    @org.junit.Test
+    public void testProcessing() throws Exception {
+        final int[] callbacks = new int[1];
+        SecretKeyCallbackHandler callbackHandler = new SecretKeyCallbackHandler() {
+            public void handle(Callback[] cbs) throws IOException, UnsupportedCallbackException {
+                callbacks[0]++;
+                super.handle(cbs);
+            }
+        };
+
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader();
+        secHeader.insertSecurityHeader(doc);
+        WSSecSecurityContextToken sctBuilder = new WSSecSecurityContextToken();
+        sctBuilder.prepare(doc, crypto);
+        byte[] tempSecret = WSSecurityUtil.generateNonce(16);
+        callbackHandler.addSecretKey(sctBuilder.getIdentifier(), tempSecret);
+
+        WSSecDKSign sigBuilder = new WSSecDKSign();
+        sigBuilder.setExternalKey(tempSecret, sctBuilder.getIdentifier());
+        sigBuilder.setTokenIdDirectId(true);
+        sigBuilder.setSignatureAlgorithm(WSConstants.HMAC_SHA1);
+        sigBuilder.build(doc, secHeader);
+        sctBuilder.prependSCTElementToHeader(doc, secHeader);
+
+        SecurityContextStore store = new SecurityContextStore();
+        WSSConfig config = WSSConfig.getNewInstance();
+        config.setSecurityContextStore(store);
+        WSSecurityEngine secEngine = new WSSecurityEngine();
+        secEngine.setWssConfig(config);
+
+        secEngine.processSecurityHeader(doc, null, callbackHandler, crypto);
+        assertEquals(1, callbacks[0]);
+        assertNotNull(store.get(sctBuilder.getIdentifier()));
+
+        secEngine.processSecurityHeader(doc, null, callbackHandler, crypto);
+        assertEquals(1, callbacks[0]);
+    }
+
+}
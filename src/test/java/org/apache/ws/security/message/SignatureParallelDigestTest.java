@@ -0,0 +1,150 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ws.security.message;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ws.security.WSConstants;
+import org.apache.ws.security.WSEncryptionPart;
+import org.apache.ws.security.WSSConfig;
+import org.apache.ws.security.WSSecurityEngine;
+import org.apache.ws.security.WSSecurityEngineResult;
+import org.apache.ws.security.WsuIdAllocator;
+import org.apache.ws.security.common.SOAPUtil;
+import org.apache.ws.security.components.crypto.Crypto;
+import org.apache.ws.security.components.crypto.CryptoFactory;
+import org.apache.ws.security.util.WSSecurityUtil;
+import org.apache.ws.security.util.XMLUtils;
+import org.w3c.dom.Document;
+
+/**
+ * Test that digesting the references to sign in parallel produces exactly the same
+ * Signature as digesting them sequentially.
+ */
+public class SignatureParallelDigestTest extends org.junit.Assert {
+    private static final org.apache.commons.logging.Log LOG = 
+        org.apache.commons.logging.LogFactory.getLog(SignatureParallelDigestTest.class);
+    private static final String SOAPMSG = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+        "<soapenv:Envelope xmlns:foo=\"urn:foo.bar\" xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\" xmlns:xsd=\"http://www.w3.org/2001/XMLSchema\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\">" +
+        "   <soapenv:Header>" +
+        "       <foo:foobar>baz</foo:foobar>" + 
+        "       <foo:foobar1 xmlns:bar=\"urn:bar\" bar:attr=\"1\"><bar:a>a</bar:a><!-- c --></foo:foobar1>" + 
+        "       <foobar2 xmlns=\"urn:foo.bar\">foo &amp; bar</foobar2>" + 
+        "       <foo:foobar3 xmlns:wsu=\"" + WSConstants.WSU_NS + "\" wsu:Id=\"foo-3\">baz</foo:foobar3>" + 
+        "   </soapenv:Header>" +
+        "   <soapenv:Body>" +
+        "      <ns1:testMethod xmlns:ns1=\"http://axis/service/security/test6/LogTestService8\">" +
+        "         <ns1:value xsi:type=\"xsd:string\">asf1</ns1:value>" +
+        "      </ns1:testMethod>" +
+        "   </soapenv:Body>" +
+        "</soapenv:Envelope>";
+
+    private Crypto crypto = null;
+    
+    public SignatureParallelDigestTest() throws Exception {
+        WSSConfig.init();
+        crypto = CryptoFactory.getInstance();
+    }
+
+    /**
+     * Sign several parts sequentially and in parallel, and compare the results
+     */
+    @org.junit.Test
+    public void testParallelDigest() throws Exception {
+        final ExecutorService executorService = Executors.newFixedThreadPool(4);
+        final AtomicInteger tasks = new AtomicInteger();
+        Executor executor = new Executor() {
+            public void execute(Runnable command) {
+                tasks.incrementAndGet();
+                executorService.execute(command);
+            }
+        };
+        try {
+            for (boolean bspCompliant : new boolean[] {true, false}) {
+                tasks.set(0);
+                String sequential = sign(null, bspCompliant);
+                String parallel = sign(executor, bspCompliant);
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug(parallel);
+                }
+                assertEquals(5, tasks.get());
+                assertEquals(sequential, parallel);
+            }
+        } finally {
+            executorService.shutdown();
+        }
+    }
+    
+    private String sign(Executor executor, boolean bspCompliant) throws Exception {
+        WSSConfig config = WSSConfig.getNewInstance();
+        config.setWsiBSPCompliant(bspCompliant);
+        config.setIdAllocator(new CountingIdAllocator());
+        
+        WSSecSignature sign = new WSSecSignature(config);
+        sign.setUserInfo("16c73ab6-b892-458f-abf5-2f875f74882e", "security");
+        sign.setKeyIdentifierType(WSConstants.ISSUER_SERIAL);
+        sign.setDigestExecutor(executor);
+
+        Document doc = SOAPUtil.toSOAPPart(SOAPMSG);
+        WSSecHeader secHeader = new WSSecHeader();
+        secHeader.insertSecurityHeader(doc);
+        
+        List<WSEncryptionPart> parts = new ArrayList<WSEncryptionPart>();
+        parts.add(new WSEncryptionPart("foobar", "urn:foo.bar", ""));
+        parts.add(new WSEncryptionPart("foobar1", "urn:foo.bar", ""));
+        parts.add(new WSEncryptionPart("foobar2", "urn:foo.bar", ""));
+        parts.add(new WSEncryptionPart("foo-3"));
+        parts.add(
+            new WSEncryptionPart(
+                WSConstants.ELEM_BODY, WSConstants.URI_SOAP11_ENV, ""
+            )
+        );
+        sign.setParts(parts);
+        
+        Document signedDoc = sign.build(doc, crypto, secHeader);
+        
+        WSSecurityEngine secEngine = new WSSecurityEngine();
+        secEngine.setWssConfig(config);
+        List<WSSecurityEngineResult> results = 
+            secEngine.processSecurityHeader(signedDoc, null, null, crypto);
+        WSSecurityEngineResult actionResult = 
+            WSSecurityUtil.fetchActionResult(results, WSConstants.SIGN);
+        assertNotNull(actionResult);
+        return XMLUtils.PrettyDocumentToString(signedDoc);
+    }
+    
+    private static class CountingIdAllocator implements WsuIdAllocator {
+        private int count;
+        
+        public String createId(String prefix, Object o) {
+            return prefix + (++count);
+        }
+        
+        public String createSecureId(String prefix, Object o) {
+            return prefix + (++count);
+        }
+    }
+    
+}
@@ -0,0 +1,148 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ws.security.message;
+
+import java.util.List;
+
+import org.apache.ws.security.WSConstants;
+import org.apache.ws.security.WSSConfig;
+import org.apache.ws.security.WSSecurityEngine;
+import org.apache.ws.security.WSSecurityEngineResult;
+import org.apache.ws.security.WSSecurityException;
+import org.apache.ws.security.common.SOAPUtil;
+import org.apache.ws.security.components.crypto.Crypto;
+import org.apache.ws.security.components.crypto.CryptoFactory;
+import org.apache.ws.security.message.token.SecurityTokenReference;
+import org.apache.ws.security.util.WSSecurityUtil;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * A set of test-cases for signing SOAP requests using a WSSecSignatureTemplate.
+ */
+public class SignatureTemplateTest extends org.junit.Assert {
+    private static final org.apache.commons.logging.Log LOG = 
+        org.apache.commons.logging.LogFactory.getLog(SignatureTemplateTest.class);
+    
+    private WSSecurityEngine secEngine = new WSSecurityEngine();
+    private Crypto crypto = null;
+    
+    public SignatureTemplateTest() throws Exception {
+        WSSConfig.init();
+        crypto = CryptoFactory.getInstance();
+        // The X509 KeyIdentifier is not BSP compliant
+        WSSConfig config = WSSConfig.getNewInstance();
+        config.setWsiBSPCompliant(false);
+        secEngine.setWssConfig(config);
+    }
+
+    /**
+     * Sign several messages with the same template for each X.509 key identifier type,
+     * and check that the result matches a Signature built without a template.
+     */
+    @org.junit.Test
+    public void testKeyIdentifierTypes() throws Exception {
+        int[] keyIdentifierTypes = new int[] {
+            WSConstants.ISSUER_SERIAL,
+            WSConstants.BST_DIRECT_REFERENCE,
+            WSConstants.X509_KEY_IDENTIFIER,
+            WSConstants.THUMBPRINT_IDENTIFIER,
+        };
+        for (int keyIdentifierType : keyIdentifierTypes) {
+            WSSecSignature builder = new WSSecSignature();
+            builder.setUserInfo("16c73ab6-b892-458f-abf5-2f875f74882e", "security");
+            builder.setKeyIdentifierType(keyIdentifierType);
+            WSSecSignatureTemplate template = builder.createTemplate(crypto);
+            assertEquals(WSConstants.RSA, template.getSignatureAlgorithm());
+            
+            String expectedSTR = getSTRContent(signWithoutTemplate(keyIdentifierType));
+            String previousId = null;
+            for (int i = 0; i < 3; i++) {
+                builder = new WSSecSignature();
+                Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+                WSSecHeader secHeader = new WSSecHeader();
+                secHeader.insertSecurityHeader(doc);
+                Document signedDoc = builder.buildFromTemplate(doc, template, secHeader);
+                
+                if (LOG.isDebugEnabled()) {
+                    String outputString = 
+                        org.apache.ws.security.util.XMLUtils.PrettyDocumentToString(signedDoc);
+                    LOG.debug(outputString);
+                }
+                assertEquals(expectedSTR, getSTRContent(signedDoc));
+                assertFalse(builder.getId().equals(previousId));
+                previousId = builder.getId();
+                
+                List<WSSecurityEngineResult> results = 
+                    secEngine.processSecurityHeader(signedDoc, null, null, crypto);
+                WSSecurityEngineResult actionResult =
+                    WSSecurityUtil.fetchActionResult(results, WSConstants.SIGN);
+                assertNotNull(actionResult);
+            }
+        }
+    }
+    
+    /**
+     * Test that a template can't be created for a symmetric key identifier type
+     */
+    @org.junit.Test
+    public void testUnsupportedKeyIdentifier() throws Exception {
+        WSSecSignature builder = new WSSecSignature();
+        builder.setUserInfo("16c73ab6-b892-458f-abf5-2f875f74882e", "security");
+        builder.setKeyIdentifierType(WSConstants.ENCRYPTED_KEY_SHA1_IDENTIFIER);
+        try {
+            builder.createTemplate(crypto);
+            fail("Failure expected on an unsupported key identifier type");
+        } catch (WSSecurityException ex) {
+            // expected
+        }
+    }
+    
+    private Document signWithoutTemplate(int keyIdentifierType) throws Exception {
+        WSSecSignature builder = new WSSecSignature();
+        builder.setUserInfo("16c73ab6-b892-458f-abf5-2f875f74882e", "security");
+        builder.setKeyIdentifierType(keyIdentifierType);
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader();
+        secHeader.insertSecurityHeader(doc);
+        return builder.build(doc, crypto, secHeader);
+    }
+    
+    /**
+     * Return the text content of the SecurityTokenReference of the Signature, as well 
+     * as the content of the BinarySecurityToken (if any)
+     */
+    private String getSTRContent(Document doc) {
+        Element str = 
+            (Element)doc.getElementsByTagNameNS(
+                WSConstants.WSSE_NS, SecurityTokenReference.SECURITY_TOKEN_REFERENCE
+            ).item(0);
+        Element bst = 
+            (Element)doc.getElementsByTagNameNS(
+                WSConstants.WSSE_NS, "BinarySecurityToken"
+            ).item(0);
+        String content = str.getTextContent();
+        if (bst != null) {
+            content += bst.getAttributeNS(null, "ValueType") + bst.getTextContent();
+        }
+        return content;
+    }
+    
+}
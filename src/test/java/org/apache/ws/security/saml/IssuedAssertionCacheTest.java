@@ -0,0 +1,266 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ws.security.saml;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.ws.security.WSConstants;
+import org.apache.ws.security.WSDocInfo;
+import org.apache.ws.security.WSSConfig;
+import org.apache.ws.security.WSSecurityException;
+import org.apache.ws.security.WSSecurityEngine;
+import org.apache.ws.security.WSSecurityEngineResult;
+import org.apache.ws.security.action.SAMLTokenSignedAction;
+import org.apache.ws.security.common.CustomHandler;
+import org.apache.ws.security.common.KeystoreCallbackHandler;
+import org.apache.ws.security.common.SAML2CallbackHandler;
+import org.apache.ws.security.common.SOAPUtil;
+import org.apache.ws.security.components.crypto.Crypto;
+import org.apache.ws.security.components.crypto.CryptoFactory;
+import org.apache.ws.security.handler.RequestData;
+import org.apache.ws.security.handler.WSHandler;
+import org.apache.ws.security.handler.WSHandlerConstants;
+import org.apache.ws.security.saml.ext.AssertionWrapper;
+import org.apache.ws.security.saml.ext.builder.SAML2Constants;
+import org.apache.ws.security.util.WSSecurityUtil;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Some tests for caching the SAML Assertions issued by the SAMLIssuerImpl.
+ */
+public class IssuedAssertionCacheTest extends org.junit.Assert {
+
+    private Crypto crypto = null;
+
+    public IssuedAssertionCacheTest() throws Exception {
+        WSSConfig.init();
+        crypto = CryptoFactory.getInstance();
+    }
+
+    /**
+     * The same signed sender-vouches Assertion is issued twice, and is re-issued by
+     * a refresh.
+     */
+    @org.junit.Test
+    public void testSenderVouches() throws Exception {
+        SAML2CallbackHandler callbackHandler = new SAML2CallbackHandler();
+        callbackHandler.setStatement(SAML2CallbackHandler.Statement.AUTHN);
+        callbackHandler.setConfirmationMethod(SAML2Constants.CONF_SENDER_VOUCHES);
+        callbackHandler.setIssuer("www.example.com");
+
+        IssuedAssertionCache cache = new IssuedAssertionCache(10, 400L);
+        try {
+            SAMLIssuerImpl issuer = createIssuer(callbackHandler, cache);
+            AssertionWrapper assertion = issuer.newAssertion();
+            String id = assertion.getId();
+            assertNotNull(id);
+            assertEquals(1, cache.size());
+
+            AssertionWrapper cachedAssertion = issuer.newAssertion();
+            assertEquals(id, cachedAssertion.getId());
+            assertTrue(cachedAssertion.isSigned());
+            verify(cachedAssertion);
+
+            cache.refresh();
+            assertEquals(1, cache.size());
+            AssertionWrapper refreshedAssertion = issuer.newAssertion();
+            assertFalse(id.equals(refreshedAssertion.getId()));
+            verify(refreshedAssertion);
+        } finally {
+            cache.close();
+        }
+    }
+
+    /**
+     * A holder-of-key Assertion must not be cached.
+     */
+    @org.junit.Test
+    public void testHolderOfKey() throws Exception {
+        SAML2CallbackHandler callbackHandler = new SAML2CallbackHandler();
+        callbackHandler.setStatement(SAML2CallbackHandler.Statement.AUTHN);
+        callbackHandler.setConfirmationMethod(SAML2Constants.CONF_HOLDER_KEY);
+        callbackHandler.setIssuer("www.example.com");
+
+        IssuedAssertionCache cache = new IssuedAssertionCache();
+        try {
+            SAMLIssuerImpl issuer = createIssuer(callbackHandler, cache);
+            String id = issuer.newAssertion().getId();
+            assertFalse(id.equals(issuer.newAssertion().getId()));
+            assertEquals(0, cache.size());
+        } finally {
+            cache.close();
+        }
+    }
+
+    /**
+     * An Assertion is not re-issued if it has not been used since it was issued.
+     */
+    @org.junit.Test
+    public void testUnusedEntry() throws Exception {
+        SAML2CallbackHandler callbackHandler = new SAML2CallbackHandler();
+        callbackHandler.setStatement(SAML2CallbackHandler.Statement.AUTHN);
+        callbackHandler.setConfirmationMethod(SAML2Constants.CONF_SENDER_VOUCHES);
+        callbackHandler.setIssuer("www.example.com");
+
+        IssuedAssertionCache cache = new IssuedAssertionCache(10, 400L);
+        try {
+            SAMLIssuerImpl issuer = createIssuer(callbackHandler, cache);
+            issuer.newAssertion();
+            String id = issuer.newAssertion().getId();
+            cache.refresh();
+            // The re-issued Assertion has not been used yet
+            cache.refresh();
+            assertEquals(1, cache.size());
+            assertFalse(id.equals(issuer.newAssertion().getId()));
+        } finally {
+            cache.close();
+        }
+    }
+
+    /**
+     * A freshly issued Assertion is not re-issued before it has been used.
+     */
+    @org.junit.Test
+    public void testFreshEntry() throws Exception {
+        SAML2CallbackHandler callbackHandler = new SAML2CallbackHandler();
+        callbackHandler.setStatement(SAML2CallbackHandler.Statement.AUTHN);
+        callbackHandler.setConfirmationMethod(SAML2Constants.CONF_SENDER_VOUCHES);
+        callbackHandler.setIssuer("www.example.com");
+
+        IssuedAssertionCache cache = new IssuedAssertionCache(10, 400L);
+        try {
+            SAMLIssuerImpl issuer = createIssuer(callbackHandler, cache);
+            String id = issuer.newAssertion().getId();
+            cache.refresh();
+            assertEquals(1, cache.size());
+            assertEquals(id, issuer.newAssertion().getId());
+        } finally {
+            cache.close();
+        }
+    }
+
+    /**
+     * The cached Assertion is signed and sent via the SAMLTokenSignedAction (and so
+     * WSSecSignatureSAML), without unmarshalling it.
+     */
+    @org.junit.Test
+    public void testSignedAction() throws Exception {
+        SAML2CallbackHandler callbackHandler = new SAML2CallbackHandler();
+        callbackHandler.setStatement(SAML2CallbackHandler.Statement.AUTHN);
+        callbackHandler.setConfirmationMethod(SAML2Constants.CONF_SENDER_VOUCHES);
+        callbackHandler.setIssuer("www.example.com");
+
+        IssuedAssertionCache cache = new IssuedAssertionCache();
+        try {
+            final List<AssertionWrapper> assertions = new ArrayList<AssertionWrapper>();
+            final SAMLIssuerImpl issuer = new SAMLIssuerImpl() {
+                public AssertionWrapper newAssertion() throws WSSecurityException {
+                    AssertionWrapper assertion = super.newAssertion();
+                    assertions.add(assertion);
+                    return assertion;
+                }
+            };
+            configureIssuer(issuer, callbackHandler, cache);
+            WSSConfig cfg = WSSConfig.getNewInstance();
+            cfg.setAction(WSConstants.ST_SIGNED, new SAMLTokenSignedAction() {
+                protected SAMLIssuer loadSamlIssuer(WSHandler handler, RequestData reqData) {
+                    return issuer;
+                }
+            });
+
+            for (int i = 0; i < 2; i++) {
+                Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+                sendSigned(cfg, doc);
+                AssertionWrapper assertion = assertions.get(i);
+                assertFalse(assertion.isUnmarshalled());
+
+                List<WSSecurityEngineResult> results = 
+                    new WSSecurityEngine().processSecurityHeader(
+                        doc, null, new KeystoreCallbackHandler(), crypto
+                    );
+                WSSecurityEngineResult actionResult =
+                    WSSecurityUtil.fetchActionResult(results, WSConstants.ST_SIGNED);
+                AssertionWrapper receivedAssertion = 
+                    (AssertionWrapper) actionResult.get(
+                        WSSecurityEngineResult.TAG_SAML_ASSERTION
+                    );
+                assertEquals(assertion.getId(), receivedAssertion.getId());
+                assertTrue(receivedAssertion.isSigned());
+                assertNotNull(WSSecurityUtil.fetchActionResult(results, WSConstants.SIGN));
+            }
+            assertEquals(assertions.get(0).getId(), assertions.get(1).getId());
+        } finally {
+            cache.close();
+        }
+    }
+
+    private void sendSigned(WSSConfig cfg, Document doc) throws Exception {
+        RequestData reqData = new RequestData();
+        reqData.setWssConfig(cfg);
+        reqData.setUsername("16c73ab6-b892-458f-abf5-2f875f74882e");
+        Map<String, Object> messageContext = new TreeMap<String, Object>();
+        messageContext.put(WSHandlerConstants.PW_CALLBACK_REF, new KeystoreCallbackHandler());
+        reqData.setMsgContext(messageContext);
+
+        List<Integer> actions = new ArrayList<Integer>();
+        actions.add(new Integer(WSConstants.ST_SIGNED));
+        new CustomHandler().send(WSConstants.ST_SIGNED, doc, reqData, actions, true);
+    }
+
+    private SAMLIssuerImpl createIssuer(
+        javax.security.auth.callback.CallbackHandler callbackHandler,
+        IssuedAssertionCache cache
+    ) {
+        return configureIssuer(new SAMLIssuerImpl(), callbackHandler, cache);
+    }
+
+    private SAMLIssuerImpl configureIssuer(
+        SAMLIssuerImpl issuer,
+        javax.security.auth.callback.CallbackHandler callbackHandler,
+        IssuedAssertionCache cache
+    ) {
+        issuer.setCallbackHandler(callbackHandler);
+        issuer.setIssuerName("www.example.com");
+        issuer.setIssuerCrypto(crypto);
+        issuer.setIssuerKeyName("16c73ab6-b892-458f-abf5-2f875f74882e");
+        issuer.setIssuerKeyPassword("security");
+        issuer.setSignAssertion(true);
+        issuer.setAssertionCache(cache);
+        return issuer;
+    }
+
+    private void verify(AssertionWrapper assertion) throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        Element assertionElement = assertion.toDOM(doc);
+        doc.getDocumentElement().appendChild(assertionElement);
+
+        RequestData data = new RequestData();
+        data.setWssConfig(WSSConfig.getNewInstance());
+        data.setSigCrypto(crypto);
+        AssertionWrapper receivedAssertion = new AssertionWrapper(assertionElement);
+        receivedAssertion.verifySignature(data, new WSDocInfo(doc));
+        assertNotNull(receivedAssertion.getSignatureKeyInfo());
+    }
+
+}
@@ -0,0 +1,157 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ws.security.saml;
+
+import java.security.cert.X509Certificate;
+import java.util.List;
+
+import org.apache.ws.security.WSDocInfo;
+import org.apache.ws.security.WSSConfig;
+import org.apache.ws.security.WSSecurityEngineResult;
+import org.apache.ws.security.common.SAML2CallbackHandler;
+import org.apache.ws.security.common.SOAPUtil;
+import org.apache.ws.security.components.crypto.Crypto;
+import org.apache.ws.security.components.crypto.CryptoFactory;
+import org.apache.ws.security.components.crypto.CryptoType;
+import org.apache.ws.security.handler.RequestData;
+import org.apache.ws.security.processor.SAMLTokenProcessor;
+import org.apache.ws.security.saml.ext.AssertionWrapper;
+import org.apache.ws.security.saml.ext.SAMLParms;
+import org.apache.ws.security.saml.ext.builder.SAML2Constants;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Some tests for caching the data of received SAML Assertions across messages.
+ */
+public class SamlAssertionCacheTest extends org.junit.Assert {
+
+    private Crypto crypto = null;
+
+    public SamlAssertionCacheTest() throws Exception {
+        WSSConfig.init();
+        crypto = CryptoFactory.getInstance();
+    }
+
+    /**
+     * A signed holder-of-key SAML 2 Assertion is processed, and then presented again in
+     * another message. The second time it is answered from the cache.
+     */
+    @org.junit.Test
+    public void testSAML2CachedAssertion() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        Element assertionElement = createSignedAssertion(doc);
+        SAMLAssertionCache cache = new SAMLAssertionCache();
+        RequestData data = createRequestData(cache);
+
+        AssertionWrapper assertion = processAssertion(assertionElement, data);
+        assertEquals(1, cache.size());
+        SAMLAssertionData assertionData = cache.get(cache.createKey(assertionElement));
+        assertNotNull(assertionData);
+        assertEquals(assertion.getId(), assertionData.getId());
+        assertEquals(assertion.getNotOnOrAfter(), assertionData.getNotOnOrAfter());
+        assertEquals("www.example.com", assertionData.getIssuer());
+        assertEquals(
+            SAML2Constants.CONF_HOLDER_KEY, assertionData.getConfirmationMethods().get(0)
+        );
+
+        AssertionWrapper cachedAssertion = processAssertion(assertionElement, data);
+        assertNotSame(assertion, cachedAssertion);
+        assertEquals(assertion.getId(), cachedAssertion.getId());
+        assertEquals(assertion.getIssuerString(), cachedAssertion.getIssuerString());
+        assertEquals(assertion.getSubjectName(), cachedAssertion.getSubjectName());
+        assertEquals(
+            assertion.getSignatureKeyInfo().getCerts()[0],
+            cachedAssertion.getSignatureKeyInfo().getCerts()[0]
+        );
+        X509Certificate cert = assertion.getSubjectKeyInfo().getCerts()[0];
+        assertEquals(cert, cachedAssertion.getSubjectKeyInfo().getCerts()[0]);
+        
+        // The OpenSAML objects are still available on request
+        assertNotNull(cachedAssertion.getSaml2());
+        assertEquals(assertion.getId(), cachedAssertion.getSaml2().getID());
+        assertEquals(1, cache.size());
+    }
+
+    /**
+     * A modified Assertion must not be answered from the cache.
+     */
+    @org.junit.Test
+    public void testModifiedAssertion() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        Element assertionElement = createSignedAssertion(doc);
+        SAMLAssertionCache cache = new SAMLAssertionCache();
+        RequestData data = createRequestData(cache);
+
+        processAssertion(assertionElement, data);
+        assertEquals(1, cache.size());
+
+        Element issuer = 
+            (Element)assertionElement.getElementsByTagNameNS("*", "Issuer").item(0);
+        issuer.setTextContent("www.example2.com");
+        assertNull(cache.get(cache.createKey(assertionElement)));
+        try {
+            processAssertion(assertionElement, data);
+            fail("Failure expected on a modified SAML Assertion");
+        } catch (Exception ex) {
+            // expected
+        }
+        assertEquals(1, cache.size());
+    }
+
+    private AssertionWrapper processAssertion(
+        Element assertionElement, RequestData data
+    ) throws Exception {
+        WSDocInfo wsDocInfo = new WSDocInfo(assertionElement.getOwnerDocument());
+        List<WSSecurityEngineResult> results = 
+            new SAMLTokenProcessor().handleToken(assertionElement, data, wsDocInfo);
+        return (AssertionWrapper)results.get(0).get(WSSecurityEngineResult.TAG_SAML_ASSERTION);
+    }
+
+    private Element createSignedAssertion(Document doc) throws Exception {
+        SAML2CallbackHandler callbackHandler = new SAML2CallbackHandler();
+        callbackHandler.setStatement(SAML2CallbackHandler.Statement.AUTHN);
+        callbackHandler.setConfirmationMethod(SAML2Constants.CONF_HOLDER_KEY);
+        callbackHandler.setIssuer("www.example.com");
+        CryptoType cryptoType = new CryptoType(CryptoType.TYPE.ALIAS);
+        cryptoType.setAlias("16c73ab6-b892-458f-abf5-2f875f74882e");
+        callbackHandler.setCerts(crypto.getX509Certificates(cryptoType));
+        
+        SAMLParms samlParms = new SAMLParms();
+        samlParms.setCallbackHandler(callbackHandler);
+        AssertionWrapper assertion = new AssertionWrapper(samlParms);
+        assertion.signAssertion(
+            "16c73ab6-b892-458f-abf5-2f875f74882e", "security", crypto, false
+        );
+        Element assertionElement = assertion.toDOM(doc);
+        doc.getDocumentElement().appendChild(assertionElement);
+        return assertionElement;
+    }
+
+    private RequestData createRequestData(SAMLAssertionCache cache) {
+        WSSConfig config = WSSConfig.getNewInstance();
+        config.setSamlAssertionCache(cache);
+        RequestData data = new RequestData();
+        data.setWssConfig(config);
+        data.setSigCrypto(crypto);
+        return data;
+    }
+
+}
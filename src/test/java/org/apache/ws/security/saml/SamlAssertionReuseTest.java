@@ -0,0 +1,162 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ws.security.saml;
+
+import java.util.HashMap;
+import java.util.List;
+
+import org.apache.ws.security.WSConstants;
+import org.apache.ws.security.WSDocInfo;
+import org.apache.ws.security.WSSConfig;
+import org.apache.ws.security.WSSecurityEngineResult;
+import org.apache.ws.security.WSSecurityException;
+import org.apache.ws.security.common.SAML2CallbackHandler;
+import org.apache.ws.security.common.SOAPUtil;
+import org.apache.ws.security.components.crypto.Crypto;
+import org.apache.ws.security.components.crypto.CryptoFactory;
+import org.apache.ws.security.SAMLTokenPrincipal;
+import org.apache.ws.security.handler.RequestData;
+import org.apache.ws.security.message.token.Reference;
+import org.apache.ws.security.message.token.SecurityTokenReference;
+import org.apache.ws.security.processor.SAMLTokenProcessor;
+import org.apache.ws.security.saml.ext.AssertionWrapper;
+import org.apache.ws.security.saml.ext.SAMLParms;
+import org.apache.ws.security.saml.ext.builder.SAML2Constants;
+import org.apache.ws.security.str.SignatureSTRParser;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Some tests for reusing parsed SAML Assertions within a message.
+ */
+public class SamlAssertionReuseTest extends org.junit.Assert {
+
+    private Crypto crypto = null;
+
+    public SamlAssertionReuseTest() throws Exception {
+        WSSConfig.init();
+        crypto = CryptoFactory.getInstance();
+    }
+
+    /**
+     * A SAML Assertion that is processed twice in the same message must only be parsed
+     * once, and the stored AssertionWrapper must be returned for the Assertion element.
+     */
+    @org.junit.Test
+    public void testReuseWithinMessage() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        Element assertionElement = createSignedAssertion(doc);
+        WSDocInfo wsDocInfo = new WSDocInfo(doc);
+        RequestData data = createRequestData();
+
+        SAMLTokenProcessor processor = new SAMLTokenProcessor();
+        List<WSSecurityEngineResult> results = 
+            processor.handleToken(assertionElement, data, wsDocInfo);
+        AssertionWrapper assertion = 
+            (AssertionWrapper)results.get(0).get(WSSecurityEngineResult.TAG_SAML_ASSERTION);
+        assertNotNull(assertion.getSignatureKeyInfo());
+        assertSame(assertion, wsDocInfo.getAssertion(assertionElement));
+        assertSame(assertion, wsDocInfo.getAssertion("#" + assertion.getId()));
+
+        results = processor.handleToken(assertionElement, data, wsDocInfo);
+        assertSame(
+            assertion, results.get(0).get(WSSecurityEngineResult.TAG_SAML_ASSERTION)
+        );
+        
+        // Another element with the same ID is not answered from the stored Assertion
+        Element copy = (Element)assertionElement.cloneNode(true);
+        doc.getDocumentElement().appendChild(copy);
+        assertNull(wsDocInfo.getAssertion(copy));
+        try {
+            processor.handleToken(copy, data, wsDocInfo);
+            fail("Failure expected on a duplicate SAML Assertion");
+        } catch (WSSecurityException ex) {
+            // expected
+        }
+        
+        wsDocInfo.clear();
+        assertNull(wsDocInfo.getAssertion(assertionElement));
+    }
+
+    /**
+     * A SAML Assertion that is referenced by a SecurityTokenReference before it is reached
+     * in the security header is processed via the STR, and the stored result must be reused
+     * when the SAMLTokenProcessor then reaches the Assertion element.
+     */
+    @org.junit.Test
+    public void testReuseAfterForwardReference() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        Element assertionElement = createSignedAssertion(doc, SAML2Constants.CONF_HOLDER_KEY);
+        WSDocInfo wsDocInfo = new WSDocInfo(doc);
+        RequestData data = createRequestData();
+        data.getWssConfig().setWsiBSPCompliant(false);
+        
+        SecurityTokenReference secRef = new SecurityTokenReference(doc);
+        Reference ref = new Reference(doc);
+        ref.setURI("#" + assertionElement.getAttributeNS(null, "ID"));
+        ref.setValueType(WSConstants.WSS_SAML2_KI_VALUE_TYPE);
+        secRef.setReference(ref);
+        
+        SignatureSTRParser strParser = new SignatureSTRParser();
+        strParser.parseSecurityTokenReference(
+            secRef.getElement(), data, wsDocInfo, new HashMap<String, Object>()
+        );
+        AssertionWrapper assertion = 
+            ((SAMLTokenPrincipal)strParser.getPrincipal()).getToken();
+        assertSame(assertion, wsDocInfo.getAssertion(assertionElement));
+        
+        List<WSSecurityEngineResult> results = 
+            new SAMLTokenProcessor().handleToken(assertionElement, data, wsDocInfo);
+        assertSame(
+            assertion, results.get(0).get(WSSecurityEngineResult.TAG_SAML_ASSERTION)
+        );
+    }
+
+    private Element createSignedAssertion(Document doc) throws Exception {
+        return createSignedAssertion(doc, SAML2Constants.CONF_SENDER_VOUCHES);
+    }
+    
+    private Element createSignedAssertion(
+        Document doc, String confirmationMethod
+    ) throws Exception {
+        SAML2CallbackHandler callbackHandler = new SAML2CallbackHandler();
+        callbackHandler.setStatement(SAML2CallbackHandler.Statement.AUTHN);
+        callbackHandler.setConfirmationMethod(confirmationMethod);
+        callbackHandler.setIssuer("www.example.com");
+        
+        SAMLParms samlParms = new SAMLParms();
+        samlParms.setCallbackHandler(callbackHandler);
+        AssertionWrapper assertion = new AssertionWrapper(samlParms);
+        assertion.signAssertion(
+            "16c73ab6-b892-458f-abf5-2f875f74882e", "security", crypto, false
+        );
+        Element assertionElement = assertion.toDOM(doc);
+        doc.getDocumentElement().appendChild(assertionElement);
+        return assertionElement;
+    }
+
+    private RequestData createRequestData() {
+        RequestData data = new RequestData();
+        data.setWssConfig(WSSConfig.getNewInstance());
+        data.setSigCrypto(crypto);
+        return data;
+    }
+
+}
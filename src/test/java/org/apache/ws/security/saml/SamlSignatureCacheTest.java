@@ -0,0 +1,161 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ws.security.saml;
+
+import org.apache.ws.security.WSDocInfo;
+import org.apache.ws.security.WSSConfig;
+import org.apache.ws.security.common.SAML1CallbackHandler;
+import org.apache.ws.security.common.SAML2CallbackHandler;
+import org.apache.ws.security.common.SOAPUtil;
+import org.apache.ws.security.components.crypto.Crypto;
+import org.apache.ws.security.components.crypto.CryptoFactory;
+import org.apache.ws.security.handler.RequestData;
+import org.apache.ws.security.saml.ext.AssertionWrapper;
+import org.apache.ws.security.saml.ext.SAMLParms;
+import org.apache.ws.security.saml.ext.builder.SAML1Constants;
+import org.apache.ws.security.saml.ext.builder.SAML2Constants;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Some tests for caching the signature verification of signed SAML Assertions.
+ */
+public class SamlSignatureCacheTest extends org.junit.Assert {
+
+    private Crypto crypto = null;
+
+    public SamlSignatureCacheTest() throws Exception {
+        WSSConfig.init();
+        crypto = CryptoFactory.getInstance();
+    }
+
+    /**
+     * A signed SAML 2 Assertion is verified, and then presented again. The second
+     * verification should be answered from the cache.
+     */
+    @org.junit.Test
+    public void testSAML2CachedSignature() throws Exception {
+        SAML2CallbackHandler callbackHandler = new SAML2CallbackHandler();
+        callbackHandler.setStatement(SAML2CallbackHandler.Statement.AUTHN);
+        callbackHandler.setConfirmationMethod(SAML2Constants.CONF_SENDER_VOUCHES);
+        callbackHandler.setIssuer("www.example.com");
+
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        Element assertionElement = createSignedAssertion(callbackHandler, doc);
+
+        SAMLSignatureCache cache = new SAMLSignatureCache();
+        RequestData data = createRequestData(cache);
+
+        AssertionWrapper assertion = new AssertionWrapper(assertionElement);
+        assertNotNull(assertion.getNotOnOrAfter());
+        assertion.verifySignature(data, new WSDocInfo(doc));
+        assertNotNull(assertion.getSignatureKeyInfo());
+        assertEquals(1, cache.size());
+        String key = cache.createKey(assertionElement, assertion.getSignatureKeyInfo());
+        assertTrue(cache.isVerified(key));
+
+        AssertionWrapper sameAssertion = new AssertionWrapper(assertionElement);
+        sameAssertion.verifySignature(data, new WSDocInfo(doc));
+        assertNotNull(sameAssertion.getSignatureKeyInfo());
+        assertEquals(
+            assertion.getSignatureKeyInfo().getCerts()[0],
+            sameAssertion.getSignatureKeyInfo().getCerts()[0]
+        );
+        assertEquals(1, cache.size());
+    }
+
+    /**
+     * A signed SAML 1.1 Assertion is verified and cached. The Assertion is then modified,
+     * which must not be answered from the cache, and so the signature validation fails.
+     */
+    @org.junit.Test
+    public void testSAML1ModifiedAssertion() throws Exception {
+        SAML1CallbackHandler callbackHandler = new SAML1CallbackHandler();
+        callbackHandler.setStatement(SAML1CallbackHandler.Statement.AUTHN);
+        callbackHandler.setConfirmationMethod(SAML1Constants.CONF_SENDER_VOUCHES);
+        callbackHandler.setIssuer("www.example.com");
+
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        Element assertionElement = createSignedAssertion(callbackHandler, doc);
+
+        SAMLSignatureCache cache = new SAMLSignatureCache();
+        RequestData data = createRequestData(cache);
+
+        AssertionWrapper assertion = new AssertionWrapper(assertionElement);
+        assertion.verifySignature(data, new WSDocInfo(doc));
+        assertEquals(1, cache.size());
+
+        assertionElement.setAttributeNS(null, "MinorVersion", "5");
+        AssertionWrapper modifiedAssertion = new AssertionWrapper(assertionElement);
+        try {
+            modifiedAssertion.verifySignature(data, new WSDocInfo(doc));
+            fail("Failure expected on a modified SAML Assertion");
+        } catch (Exception ex) {
+            // expected
+        }
+        assertNull(modifiedAssertion.getSignatureKeyInfo());
+        assertEquals(1, cache.size());
+    }
+
+    /**
+     * No cache is configured by default.
+     */
+    @org.junit.Test
+    public void testNoCache() throws Exception {
+        SAML2CallbackHandler callbackHandler = new SAML2CallbackHandler();
+        callbackHandler.setStatement(SAML2CallbackHandler.Statement.AUTHN);
+        callbackHandler.setConfirmationMethod(SAML2Constants.CONF_SENDER_VOUCHES);
+        callbackHandler.setIssuer("www.example.com");
+
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        Element assertionElement = createSignedAssertion(callbackHandler, doc);
+
+        RequestData data = createRequestData(null);
+        assertNull(data.getWssConfig().getSamlSignatureCache());
+
+        AssertionWrapper assertion = new AssertionWrapper(assertionElement);
+        assertion.verifySignature(data, new WSDocInfo(doc));
+        assertNotNull(assertion.getSignatureKeyInfo());
+    }
+
+    private Element createSignedAssertion(
+        javax.security.auth.callback.CallbackHandler callbackHandler, Document doc
+    ) throws Exception {
+        SAMLParms samlParms = new SAMLParms();
+        samlParms.setCallbackHandler(callbackHandler);
+        AssertionWrapper assertion = new AssertionWrapper(samlParms);
+        assertion.signAssertion(
+            "16c73ab6-b892-458f-abf5-2f875f74882e", "security", crypto, false
+        );
+        Element assertionElement = assertion.toDOM(doc);
+        doc.getDocumentElement().appendChild(assertionElement);
+        return assertionElement;
+    }
+
+    private RequestData createRequestData(SAMLSignatureCache cache) {
+        WSSConfig config = WSSConfig.getNewInstance();
+        config.setSamlSignatureCache(cache);
+        RequestData data = new RequestData();
+        data.setWssConfig(config);
+        data.setSigCrypto(crypto);
+        return data;
+    }
+
+}
@@ -0,0 +1,68 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ws.security.saml.ext;
+
+import org.opensaml.common.SAMLVersion;
+import org.opensaml.xml.Configuration;
+
+/**
+ * Some tests for the selective initialization of the Opensaml library.
+ */
+public class OpenSAMLBootstrapTest extends org.junit.Assert {
+
+    /**
+     * The SAML Assertion configurations are loaded for the given version, whereas the
+     * protocol configurations are only loaded by a full bootstrap.
+     */
+    @org.junit.Test
+    public void testSelectiveBootstrap() throws Exception {
+        OpenSAMLUtil.initSamlEngine(SAMLVersion.VERSION_20);
+        assertNotNull(
+            Configuration.getBuilderFactory().getBuilder(
+                org.opensaml.saml2.core.Assertion.DEFAULT_ELEMENT_NAME
+            )
+        );
+        assertNotNull(
+            Configuration.getUnmarshallerFactory().getUnmarshaller(
+                org.opensaml.xml.signature.Signature.DEFAULT_ELEMENT_NAME
+            )
+        );
+        assertNull(
+            Configuration.getBuilderFactory().getBuilder(
+                org.opensaml.saml2.core.Response.DEFAULT_ELEMENT_NAME
+            )
+        );
+
+        OpenSAMLUtil.initSamlEngine(SAMLVersion.VERSION_11);
+        assertNotNull(
+            Configuration.getBuilderFactory().getBuilder(
+                org.opensaml.saml1.core.Assertion.DEFAULT_ELEMENT_NAME
+            )
+        );
+
+        OpenSAMLBootstrap.bootstrap();
+        assertNotNull(
+            Configuration.getBuilderFactory().getBuilder(
+                org.opensaml.saml2.core.Response.DEFAULT_ELEMENT_NAME
+            )
+        );
+    }
+
+}
@@ -0,0 +1,242 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ws.security.saml.ext;
+
+import javax.security.auth.callback.CallbackHandler;
+
+import org.apache.ws.security.WSConstants;
+import org.apache.ws.security.WSDocInfo;
+import org.apache.ws.security.WSSConfig;
+import org.apache.ws.security.WSSecurityException;
+import org.apache.ws.security.common.AbstractSAMLCallbackHandler;
+import org.apache.ws.security.common.SAML1CallbackHandler;
+import org.apache.ws.security.common.SAML2CallbackHandler;
+import org.apache.ws.security.common.SOAPUtil;
+import org.apache.ws.security.components.crypto.Crypto;
+import org.apache.ws.security.components.crypto.CryptoFactory;
+import org.apache.ws.security.components.crypto.CryptoType;
+import org.apache.ws.security.handler.RequestData;
+import org.apache.ws.security.processor.SAMLTokenProcessor;
+import org.apache.ws.security.saml.SAMLSignatureCache;
+import org.apache.ws.security.saml.ext.builder.SAML1Constants;
+import org.apache.ws.security.saml.ext.builder.SAML2Constants;
+import org.apache.ws.security.util.WSSecurityUtil;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Some tests for reading the data of a SAML Assertion from the DOM, without unmarshalling
+ * it into OpenSAML objects. The results must be the same as via the OpenSAML objects.
+ */
+public class SAMLDOMUtilTest extends org.junit.Assert {
+
+    private Crypto crypto = null;
+
+    public SAMLDOMUtilTest() throws Exception {
+        WSSConfig.init();
+        crypto = CryptoFactory.getInstance();
+    }
+
+    @org.junit.Test
+    public void testSAML1Parity() throws Exception {
+        for (AbstractSAMLCallbackHandler.Statement statement 
+            : AbstractSAMLCallbackHandler.Statement.values()) {
+            for (boolean sign : new boolean[]{false, true}) {
+                SAML1CallbackHandler callbackHandler = new SAML1CallbackHandler();
+                callbackHandler.setStatement(statement);
+                if (statement == AbstractSAMLCallbackHandler.Statement.AUTHN) {
+                    callbackHandler.setConfirmationMethod(SAML1Constants.CONF_HOLDER_KEY);
+                    callbackHandler.setCerts(getCerts());
+                } else {
+                    callbackHandler.setConfirmationMethod(SAML1Constants.CONF_SENDER_VOUCHES);
+                }
+                callbackHandler.setIssuer("www.example.com");
+                checkParity(callbackHandler, sign);
+            }
+        }
+    }
+
+    @org.junit.Test
+    public void testSAML2Parity() throws Exception {
+        for (AbstractSAMLCallbackHandler.Statement statement 
+            : AbstractSAMLCallbackHandler.Statement.values()) {
+            for (boolean sign : new boolean[]{false, true}) {
+                SAML2CallbackHandler callbackHandler = new SAML2CallbackHandler();
+                callbackHandler.setStatement(statement);
+                if (statement == AbstractSAMLCallbackHandler.Statement.AUTHN) {
+                    callbackHandler.setConfirmationMethod(SAML2Constants.CONF_HOLDER_KEY);
+                    callbackHandler.setCerts(getCerts());
+                } else {
+                    callbackHandler.setConfirmationMethod(SAML2Constants.CONF_SENDER_VOUCHES);
+                }
+                callbackHandler.setIssuer("www.example.com");
+                checkParity(callbackHandler, sign);
+            }
+        }
+    }
+
+    /**
+     * A signed Assertion is only unmarshalled to verify the signature, and the result must
+     * be the same as for an Assertion that has been unmarshalled before.
+     */
+    @org.junit.Test
+    public void testSignatureVerification() throws Exception {
+        SAML2CallbackHandler callbackHandler = new SAML2CallbackHandler();
+        callbackHandler.setConfirmationMethod(SAML2Constants.CONF_SENDER_VOUCHES);
+        callbackHandler.setIssuer("www.example.com");
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        Element assertionElement = createAssertion(callbackHandler, doc, true);
+        
+        SAMLSignatureCache cache = new SAMLSignatureCache();
+        RequestData data = createRequestData(cache);
+        AssertionWrapper assertion = new AssertionWrapper(assertionElement, null);
+        assertion.verifySignature(data, new WSDocInfo(doc));
+        assertNotNull(assertion.getSignatureKeyInfo());
+        assertEquals(1, cache.size());
+        
+        // The second verification is answered by the signature cache
+        AssertionWrapper lazyAssertion = new AssertionWrapper(assertionElement, null);
+        lazyAssertion.verifySignature(data, new WSDocInfo(doc));
+        assertEquals(
+            assertion.getSignatureKeyInfo().getCerts()[0],
+            lazyAssertion.getSignatureKeyInfo().getCerts()[0]
+        );
+        assertNotNull(lazyAssertion.getSaml2());
+        assertNotNull(lazyAssertion.getSignatureValue());
+    }
+
+    /**
+     * An unsigned Assertion that OpenSAML can not unmarshal must be rejected by the
+     * SAMLTokenProcessor, even though its data could be read from the DOM.
+     */
+    @org.junit.Test
+    public void testMalformedUnsignedAssertion() throws Exception {
+        SAML2CallbackHandler callbackHandler = new SAML2CallbackHandler();
+        callbackHandler.setConfirmationMethod(SAML2Constants.CONF_SENDER_VOUCHES);
+        callbackHandler.setIssuer("www.example.com");
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        Element assertionElement = createAssertion(callbackHandler, doc, false);
+        assertionElement.setAttributeNS(null, "IssueInstant", "not-a-date");
+        
+        try {
+            new SAMLTokenProcessor().handleSAMLToken(
+                assertionElement, createRequestData(null), null, new WSDocInfo(doc)
+            );
+            fail("Failure expected on a malformed Assertion");
+        } catch (WSSecurityException ex) {
+            // expected
+        }
+    }
+    
+    /**
+     * A malformed Conditions time must be reported as a WSSecurityException.
+     */
+    @org.junit.Test
+    public void testMalformedConditions() throws Exception {
+        SAML2CallbackHandler callbackHandler = new SAML2CallbackHandler();
+        callbackHandler.setConfirmationMethod(SAML2Constants.CONF_SENDER_VOUCHES);
+        callbackHandler.setIssuer("www.example.com");
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        Element assertionElement = createAssertion(callbackHandler, doc, false);
+        Element conditions = 
+            WSSecurityUtil.getDirectChildElement(
+                assertionElement, "Conditions", WSConstants.SAML2_NS
+            );
+        conditions.setAttributeNS(null, "NotOnOrAfter", "not-a-date");
+        
+        try {
+            new SAMLTokenProcessor().handleSAMLToken(
+                assertionElement, createRequestData(null), null, new WSDocInfo(doc)
+            );
+            fail("Failure expected on a malformed Assertion");
+        } catch (WSSecurityException ex) {
+            // expected
+        }
+    }
+
+    private void checkParity(CallbackHandler callbackHandler, boolean sign) throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        Element assertionElement = createAssertion(callbackHandler, doc, sign);
+        RequestData data = createRequestData(null);
+
+        AssertionWrapper assertion = new AssertionWrapper(assertionElement);
+        AssertionWrapper lazyAssertion = new AssertionWrapper(assertionElement, null);
+        assertEquals(assertion.getSamlVersion(), lazyAssertion.getSamlVersion());
+        assertEquals(assertion.getId(), lazyAssertion.getId());
+        assertEquals(assertion.getIssuerString(), lazyAssertion.getIssuerString());
+        assertEquals(assertion.getSubjectName(), lazyAssertion.getSubjectName());
+        assertEquals(assertion.getConfirmationMethods(), lazyAssertion.getConfirmationMethods());
+        assertEquals(assertion.getNotBefore(), lazyAssertion.getNotBefore());
+        assertEquals(assertion.getNotOnOrAfter(), lazyAssertion.getNotOnOrAfter());
+        assertEquals(sign, lazyAssertion.isSigned());
+        assertEquals(assertion.isSigned(), lazyAssertion.isSigned());
+        
+        assertion.parseHOKSubject(data, new WSDocInfo(doc));
+        lazyAssertion.parseHOKSubject(data, new WSDocInfo(doc));
+        if (assertion.getSubjectKeyInfo() == null) {
+            assertNull(lazyAssertion.getSubjectKeyInfo());
+        } else {
+            assertEquals(
+                assertion.getSubjectKeyInfo().getCerts()[0],
+                lazyAssertion.getSubjectKeyInfo().getCerts()[0]
+            );
+        }
+        if (sign) {
+            lazyAssertion.verifySignature(data, new WSDocInfo(doc));
+            assertNotNull(lazyAssertion.getSignatureKeyInfo());
+        }
+        
+        // The OpenSAML objects are available on request
+        assertNotNull(lazyAssertion.getXmlObject());
+        assertEquals(assertion.getId(), lazyAssertion.getId());
+    }
+
+    private Element createAssertion(
+        CallbackHandler callbackHandler, Document doc, boolean sign
+    ) throws Exception {
+        SAMLParms samlParms = new SAMLParms();
+        samlParms.setCallbackHandler(callbackHandler);
+        AssertionWrapper assertion = new AssertionWrapper(samlParms);
+        if (sign) {
+            assertion.signAssertion(
+                "16c73ab6-b892-458f-abf5-2f875f74882e", "security", crypto, false
+            );
+        }
+        Element assertionElement = assertion.toDOM(doc);
+        doc.getDocumentElement().appendChild(assertionElement);
+        return assertionElement;
+    }
+
+    private java.security.cert.X509Certificate[] getCerts() throws Exception {
+        CryptoType cryptoType = new CryptoType(CryptoType.TYPE.ALIAS);
+        cryptoType.setAlias("16c73ab6-b892-458f-abf5-2f875f74882e");
+        return crypto.getX509Certificates(cryptoType);
+    }
+
+    private RequestData createRequestData(SAMLSignatureCache cache) {
+        WSSConfig config = WSSConfig.getNewInstance();
+        config.setSamlSignatureCache(cache);
+        RequestData data = new RequestData();
+        data.setWssConfig(config);
+        data.setSigCrypto(crypto);
+        return data;
+    }
+
+}
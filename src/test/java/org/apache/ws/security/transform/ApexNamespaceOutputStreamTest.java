@@ -0,0 +1,89 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ws.security.transform;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Test that the streaming Apex default namespace fix-up of the STR Transform produces the
+ * same output as the (previous) String based fix-up.
+ */
+public class ApexNamespaceOutputStreamTest extends org.junit.Assert {
+    
+    private static final String[] INPUTS = {
+        "<wsse:BinarySecurityToken xmlns:wsse=\"urn:wsse\" ValueType=\"x\">MIIC</wsse:BinarySecurityToken>",
+        "<Assertion xmlns=\"urn:oasis:names:tc:SAML:2.0:assertion\" ID=\"_1\"><Issuer>a b</Issuer></Assertion>",
+        "<saml:Assertion xmlns:saml=\"urn:saml\" xmlns:x=\"urn:x\"><x:a xmlns=\"urn:y\"></x:a></saml:Assertion>",
+        "<a><b xmlns=\"urn:b\"> text </b></a>",
+        "<a><b>äöü €</b></a>",
+        "<a>no-blank</a>",
+        "<p:a xmlns:p=\"urn:p\" attr=\"ä xmlns=\"><b></b></p:a>",
+    };
+
+    @org.junit.Test
+    public void testParity() throws Exception {
+        for (String input : INPUTS) {
+            byte[] bytes = input.getBytes("UTF-8");
+            String expected = fixUp(input);
+            
+            // write in one go
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            ApexNamespaceOutputStream os = new ApexNamespaceOutputStream(bos);
+            os.write(bytes, 0, bytes.length);
+            os.close();
+            assertEquals(expected, new String(bos.toByteArray(), "UTF-8"));
+            
+            // write byte by byte
+            bos = new ByteArrayOutputStream();
+            os = new ApexNamespaceOutputStream(bos);
+            for (int i = 0; i < bytes.length; i++) {
+                os.write(bytes[i]);
+            }
+            os.close();
+            assertEquals(expected, new String(bos.toByteArray(), "UTF-8"));
+            
+            // write in small chunks
+            bos = new ByteArrayOutputStream();
+            os = new ApexNamespaceOutputStream(bos);
+            for (int i = 0; i < bytes.length; i += 3) {
+                os.write(bytes, i, Math.min(3, bytes.length - i));
+            }
+            os.close();
+            assertEquals(expected, new String(bos.toByteArray(), "UTF-8"));
+        }
+    }
+    
+    /**
+     * The String based fix-up that was previously done by the STRTransform
+     */
+    private static String fixUp(String c14n) {
+        StringBuilder bf = new StringBuilder(c14n);
+        String bf1 = bf.toString();
+        int gt = bf1.indexOf(">");
+        int idx = bf1.indexOf("xmlns=");
+        if (idx < 0 || idx > gt) {
+            idx = bf1.indexOf(" ");
+            bf.insert(idx + 1, "xmlns=\"\" ");
+            bf1 = bf.toString();
+        }
+        return bf1;
+    }
+    
+}
@@ -0,0 +1,101 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ws.security.util;
+
+import java.util.Random;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.apache.ws.security.WSSecurityException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Some tests for decoding Base64 data straight from the Text children of a DOM node.
+ */
+public class Base64Test extends org.junit.Assert {
+
+    /**
+     * Decoding the Text children must give the same result as decoding the concatenated 
+     * String, for all lengths and any split of the data into (whitespace separated) Text nodes.
+     */
+    @org.junit.Test
+    public void testParity() throws Exception {
+        Document doc = createDocument();
+        Random random = new Random(12345L);
+        for (int length = 0; length < 100; length++) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+            String encoded = Base64.encode(data);
+            
+            Element element = doc.createElement("token");
+            int index = 0;
+            while (index < encoded.length()) {
+                int end = Math.min(encoded.length(), index + 1 + random.nextInt(10));
+                element.appendChild(doc.createTextNode(encoded.substring(index, end)));
+                if (random.nextBoolean()) {
+                    element.appendChild(doc.createTextNode("\n  "));
+                }
+                if (random.nextInt(4) == 0) {
+                    element.appendChild(doc.createComment("ignored"));
+                }
+                index = end;
+            }
+            
+            byte[] decoded = Base64.decodeText(element);
+            assertArrayEquals(data, decoded);
+            assertArrayEquals(Base64.decode(encoded), decoded);
+        }
+        assertNull(Base64.decodeText(null));
+    }
+    
+    @org.junit.Test
+    public void testInvalidData() throws Exception {
+        String[] invalid = {
+            "QUJD\nRA", "QUJDRA=", "QQ==QQ==", "Q===", "QUJ=RA==", "QR==", "QUF=", "QUJ$", 
+            "QUJDRA==QUJD", "=QUJ"
+        };
+        Document doc = createDocument();
+        for (String encoded : invalid) {
+            try {
+                Base64.decode(encoded);
+                fail("Failure expected on " + encoded);
+            } catch (WSSecurityException ex) {
+                // expected
+            }
+            Element element = doc.createElement("token");
+            element.appendChild(doc.createTextNode(encoded));
+            try {
+                Base64.decodeText(element);
+                fail("Failure expected on " + encoded);
+            } catch (WSSecurityException ex) {
+                // expected
+            }
+        }
+    }
+    
+    private static Document createDocument() throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        return factory.newDocumentBuilder().newDocument();
+    }
+
+}
@@ -0,0 +1,158 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ws.security.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.apache.ws.security.WSConstants;
+import org.apache.ws.security.WSSConfig;
+import org.apache.ws.security.common.SOAPUtil;
+import org.apache.xml.security.encryption.XMLCipher;
+import org.w3c.dom.Document;
+import org.w3c.dom.DocumentFragment;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+
+/**
+ * Some tests for the DecryptedDataParser.
+ */
+public class DecryptedDataParserTest extends org.junit.Assert {
+
+    private static final String FRAGMENT =
+        "<ns1:add xmlns:ns1=\"urn:ns1\" SOAP-ENV:mustUnderstand=\"1\" a=\"x &amp; y\">"
+        + "<!-- a comment -->"
+        + "<value xmlns=\"\">15</value>"
+        + "<ns2:value xmlns:ns2=\"urn:ns2\" xsi:type=\"xsd:int\">mixed <b>text</b> &lt;16&gt;</ns2:value>"
+        + "<?target some data?>"
+        + "<cdata><![CDATA[<not>parsed</not>]]></cdata>"
+        + "<default xmlns=\"urn:default\"><child/></default>"
+        + "</ns1:add>"
+        + "  <second/>";
+
+    public DecryptedDataParserTest() {
+        WSSConfig.init();
+    }
+
+    /**
+     * The result of parsing a fragment must be the same as that of the (XMLCipher) approach
+     * of parsing a dummy document String, and importing the resulting nodes.
+     */
+    @org.junit.Test
+    public void testParity() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        Element body = WSSecurityUtil.findBodyElement(doc);
+
+        DocumentFragment fragment =
+            DecryptedDataParser.parse(
+                doc, new ByteArrayInputStream(FRAGMENT.getBytes("UTF-8")), body
+            );
+        DocumentFragment expected = parseAndImport(doc, FRAGMENT);
+
+        assertEquals(serialize(expected), serialize(fragment));
+        assertEquals(expected.getChildNodes().getLength(), fragment.getChildNodes().getLength());
+        Element add = (Element)fragment.getFirstChild();
+        assertEquals("urn:ns1", add.getNamespaceURI());
+        assertEquals(WSConstants.URI_SOAP11_ENV, add.getAttributeNodeNS(
+            WSConstants.URI_SOAP11_ENV, "mustUnderstand").getNamespaceURI());
+        assertEquals("x & y", add.getAttributeNS(null, "a"));
+        assertEquals(Node.COMMENT_NODE, add.getFirstChild().getNodeType());
+        assertEquals(
+            Node.CDATA_SECTION_NODE,
+            add.getElementsByTagNameNS(null, "cdata").item(0).getFirstChild().getNodeType()
+        );
+        assertEquals(
+            "urn:default",
+            add.getElementsByTagNameNS("urn:default", "child").item(0).getNamespaceURI()
+        );
+    }
+
+    /**
+     * Encrypt the SOAP Body content and decrypt it again via the DecryptedDataParser.
+     */
+    @org.junit.Test
+    public void testDecryptElement() throws Exception {
+        KeyGenerator keyGen = KeyGenerator.getInstance("AES");
+        keyGen.init(128);
+        SecretKey key = keyGen.generateKey();
+
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        Element body = WSSecurityUtil.findBodyElement(doc);
+        XMLCipher cipher = XMLCipher.getInstance(WSConstants.AES_128);
+        cipher.init(XMLCipher.ENCRYPT_MODE, key);
+        cipher.doFinal(doc, body, true);
+
+        Element encData =
+            WSSecurityUtil.getDirectChildElement(body, "EncryptedData", WSConstants.ENC_NS);
+        assertNotNull(encData);
+        cipher = XMLCipher.getInstance(WSConstants.AES_128);
+        cipher.init(XMLCipher.DECRYPT_MODE, key);
+        DecryptedDataParser.decryptElement(cipher, encData);
+
+        assertNull(
+            WSSecurityUtil.getDirectChildElement(body, "EncryptedData", WSConstants.ENC_NS)
+        );
+        Element add = WSSecurityUtil.getDirectChildElement(
+            body, "add", "http://ws.apache.org/counter/counter_port_type"
+        );
+        assertNotNull(add);
+        assertEquals("15", add.getTextContent());
+    }
+
+    private static DocumentFragment parseAndImport(
+        Document doc, String fragment
+    ) throws Exception {
+        String dummy =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?><fragment"
+            + " xmlns:SOAP-ENV=\"" + WSConstants.URI_SOAP11_ENV + "\""
+            + " xmlns:xsd=\"http://www.w3.org/2001/XMLSchema\""
+            + " xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\">"
+            + fragment + "</fragment>";
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        DocumentBuilder db = factory.newDocumentBuilder();
+        Document d = db.parse(new InputSource(new StringReader(dummy)));
+        Element fragElt = (Element)doc.importNode(d.getDocumentElement(), true);
+        DocumentFragment result = doc.createDocumentFragment();
+        Node child = fragElt.getFirstChild();
+        while (child != null) {
+            fragElt.removeChild(child);
+            result.appendChild(child);
+            child = fragElt.getFirstChild();
+        }
+        return result;
+    }
+
+    private static String serialize(DocumentFragment fragment) {
+        StringBuilder sb = new StringBuilder();
+        for (Node child = fragment.getFirstChild(); child != null; child = child.getNextSibling()) {
+            sb.append(child.getNodeType()).append(':');
+            sb.append(DOM2Writer.nodeToString(child));
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,133 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ws.security.util;
+
+import org.apache.ws.security.WSConstants;
+import org.apache.ws.security.WSSConfig;
+import org.apache.ws.security.WSSecurityEngine;
+import org.apache.ws.security.common.SecretKeyCallbackHandler;
+import org.apache.ws.security.common.SOAPUtil;
+import org.apache.ws.security.components.crypto.Crypto;
+import org.apache.ws.security.components.crypto.CryptoFactory;
+import org.apache.ws.security.message.WSSecDKSign;
+import org.apache.ws.security.message.WSSecHeader;
+import org.apache.ws.security.message.WSSecSecurityContextToken;
+import org.w3c.dom.Document;
+
+/**
+ * Some tests for the DerivedKeyCache.
+ */
+public class DerivedKeyCacheTest extends org.junit.Assert {
+
+    private Crypto crypto = null;
+
+    public DerivedKeyCacheTest() throws Exception {
+        WSSConfig.init();
+        crypto = CryptoFactory.getInstance("wss40.properties");
+    }
+
+    @org.junit.Test
+    public void testCache() throws Exception {
+        DerivedKeyCache cache = new DerivedKeyCache(10, 2, 60L);
+        byte[] secret = WSSecurityUtil.generateNonce(16);
+        byte[] otherSecret = WSSecurityUtil.generateNonce(16);
+        byte[] key = WSSecurityUtil.generateNonce(16);
+
+        assertNull(cache.get("sct-1", secret, "a"));
+        cache.put("sct-1", secret, "a", key);
+        assertArrayEquals(key, cache.get("sct-1", secret.clone(), "a"));
+        assertNotSame(cache.get("sct-1", secret, "a"), cache.get("sct-1", secret, "a"));
+        assertNull(cache.get("sct-1", secret, "b"));
+        assertNull(cache.get("sct-2", secret, "a"));
+        // A different secret for the same base token must not see the derived keys
+        assertNull(cache.get("sct-1", otherSecret, "a"));
+
+        // At most two derived keys per base token
+        cache.put("sct-1", secret, "b", key);
+        cache.put("sct-1", secret, "c", key);
+        assertNull(cache.get("sct-1", secret, "a"));
+        assertNotNull(cache.get("sct-1", secret, "c"));
+
+        // A different secret replaces the keys of the base token
+        cache.put("sct-1", otherSecret, "a", key);
+        assertNull(cache.get("sct-1", secret, "c"));
+        assertNotNull(cache.get("sct-1", otherSecret, "a"));
+
+        cache.put("sct-2", secret, "a", key);
+        assertEquals(2, cache.size());
+        cache.invalidate("sct-1");
+        assertEquals(1, cache.size());
+        assertNull(cache.get("sct-1", otherSecret, "a"));
+    }
+
+    /**
+     * A message signed with a key derived from a SecurityContextToken secret is processed
+     * twice. The second time the derived key is taken from the cache.
+     */
+    @org.junit.Test
+    public void testDerivedKeyTokenProcessing() throws Exception {
+        SecretKeyCallbackHandler callbackHandler = new SecretKeyCallbackHandler();
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader();
+        secHeader.insertSecurityHeader(doc);
+
+        WSSecSecurityContextToken sctBuilder = new WSSecSecurityContextToken();
+        sctBuilder.prepare(doc, crypto);
+        byte[] tempSecret = WSSecurityUtil.generateNonce(16);
+        callbackHandler.addSecretKey(sctBuilder.getIdentifier(), tempSecret);
+
+        WSSecDKSign sigBuilder = new WSSecDKSign();
+        sigBuilder.setExternalKey(tempSecret, sctBuilder.getIdentifier());
+        sigBuilder.setTokenIdDirectId(true);
+        sigBuilder.setSignatureAlgorithm(WSConstants.HMAC_SHA1);
+        sigBuilder.build(doc, secHeader);
+        sctBuilder.prependSCTElementToHeader(doc, secHeader);
+
+        final int[] hits = new int[1];
+        DerivedKeyCache cache = new DerivedKeyCache() {
+            public byte[] get(String baseTokenId, byte[] secret, String derivationKey) {
+                byte[] key = super.get(baseTokenId, secret, derivationKey);
+                if (key != null) {
+                    hits[0]++;
+                }
+                return key;
+            }
+        };
+        WSSConfig config = WSSConfig.getNewInstance();
+        config.setDerivedKeyCache(cache);
+        WSSecurityEngine secEngine = new WSSecurityEngine();
+        secEngine.setWssConfig(config);
+
+        secEngine.processSecurityHeader(doc, null, callbackHandler, crypto);
+        assertEquals(1, cache.size());
+        assertEquals(0, hits[0]);
+
+        secEngine.processSecurityHeader(doc, null, callbackHandler, crypto);
+        assertEquals(1, cache.size());
+        assertTrue(hits[0] > 0);
+
+        // Cancelling the security context removes the derived keys
+        cache.invalidate(sctBuilder.getIdentifier());
+        assertEquals(0, cache.size());
+        secEngine.processSecurityHeader(doc, null, callbackHandler, crypto);
+        assertEquals(1, cache.size());
+    }
+
+}
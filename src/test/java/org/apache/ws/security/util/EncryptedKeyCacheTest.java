@@ -0,0 +1,142 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ws.security.util;
+
+import java.io.IOException;
+import java.security.cert.X509Certificate;
+import java.util.List;
+
+import javax.security.auth.callback.Callback;
+import javax.security.auth.callback.CallbackHandler;
+import javax.security.auth.callback.UnsupportedCallbackException;
+
+import org.apache.ws.security.WSConstants;
+import org.apache.ws.security.WSSConfig;
+import org.apache.ws.security.WSSecurityEngine;
+import org.apache.ws.security.WSSecurityEngineResult;
+import org.apache.ws.security.common.KeystoreCallbackHandler;
+import org.apache.ws.security.common.SOAPUtil;
+import org.apache.ws.security.components.crypto.Crypto;
+import org.apache.ws.security.components.crypto.CryptoFactory;
+import org.apache.ws.security.components.crypto.CryptoType;
+import org.apache.ws.security.message.WSSecEncrypt;
+import org.apache.ws.security.message.WSSecHeader;
+import org.w3c.dom.Document;
+
+/**
+ * Some tests for caching the symmetric keys unwrapped from received EncryptedKey elements.
+ */
+public class EncryptedKeyCacheTest extends org.junit.Assert {
+
+    private Crypto crypto = null;
+
+    public EncryptedKeyCacheTest() throws Exception {
+        WSSConfig.init();
+        crypto = CryptoFactory.getInstance();
+    }
+
+    /**
+     * The same EncryptedKey is received twice. The private key is only needed once.
+     */
+    @org.junit.Test
+    public void testCachedEncryptedKey() throws Exception {
+        WSSecEncrypt builder = new WSSecEncrypt();
+        builder.setUserInfo("16c73ab6-b892-458f-abf5-2f875f74882e");
+        builder.setKeyIdentifierType(WSConstants.ISSUER_SERIAL);
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader();
+        secHeader.insertSecurityHeader(doc);
+        Document encryptedDoc = builder.build(doc, crypto, secHeader);
+        String message = XMLUtils.PrettyDocumentToString(encryptedDoc);
+
+        EncryptedKeyCache cache = new EncryptedKeyCache();
+        CountingCallbackHandler callbackHandler = new CountingCallbackHandler();
+        byte[] firstKey = decrypt(message, cache, callbackHandler);
+        assertEquals(1, callbackHandler.count);
+        assertEquals(1, cache.size());
+
+        byte[] secondKey = decrypt(message, cache, callbackHandler);
+        assertEquals(1, callbackHandler.count);
+        assertArrayEquals(firstKey, secondKey);
+        assertNotSame(firstKey, secondKey);
+
+        decrypt(message, null, callbackHandler);
+        assertEquals(2, callbackHandler.count);
+    }
+
+    /**
+     * Cached keys are copied, and erased when they are evicted.
+     */
+    @org.junit.Test
+    public void testEviction() throws Exception {
+        EncryptedKeyCache cache = new EncryptedKeyCache(1, 60L);
+        CryptoType cryptoType = new CryptoType(CryptoType.TYPE.ALIAS);
+        cryptoType.setAlias("16c73ab6-b892-458f-abf5-2f875f74882e");
+        X509Certificate cert = crypto.getX509Certificates(cryptoType)[0];
+        byte[] cipherValue = new byte[] {1, 2, 3};
+        String key = cache.createKey(cipherValue, WSConstants.KEYTRANSPORT_RSA15, cert);
+        assertFalse(
+            key.equals(cache.createKey(cipherValue, WSConstants.KEYTRANSPORT_RSAOEP, cert))
+        );
+
+        byte[] secret = new byte[] {4, 5, 6};
+        cache.put(key, secret);
+        secret[0] = 0;
+        assertArrayEquals(new byte[] {4, 5, 6}, cache.get(key));
+        cache.get(key)[0] = 0;
+        assertArrayEquals(new byte[] {4, 5, 6}, cache.get(key));
+
+        String otherKey = cache.createKey(new byte[] {7}, WSConstants.KEYTRANSPORT_RSA15, cert);
+        cache.put(otherKey, secret);
+        assertNull(cache.get(key));
+        assertEquals(1, cache.size());
+        cache.clear();
+        assertNull(cache.get(otherKey));
+    }
+
+    private byte[] decrypt(
+        String message, EncryptedKeyCache cache, CallbackHandler callbackHandler
+    ) throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(message);
+        WSSConfig config = WSSConfig.getNewInstance();
+        config.setEncryptedKeyCache(cache);
+        WSSecurityEngine secEngine = new WSSecurityEngine();
+        secEngine.setWssConfig(config);
+        List<WSSecurityEngineResult> results = 
+            secEngine.processSecurityHeader(doc, null, callbackHandler, crypto);
+        WSSecurityEngineResult actionResult = 
+            WSSecurityUtil.fetchActionResult(results, WSConstants.ENCR);
+        assertNotNull(actionResult);
+        assertTrue(XMLUtils.PrettyDocumentToString(doc).contains("15"));
+        return (byte[])actionResult.get(WSSecurityEngineResult.TAG_SECRET);
+    }
+
+    private static class CountingCallbackHandler implements CallbackHandler {
+        private CallbackHandler delegate = new KeystoreCallbackHandler();
+        private int count;
+
+        public void handle(Callback[] callbacks) throws IOException, UnsupportedCallbackException {
+            count++;
+            delegate.handle(callbacks);
+        }
+    }
+
+}
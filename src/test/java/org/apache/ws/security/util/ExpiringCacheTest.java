@@ -0,0 +1,104 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ws.security.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Some tests for the ExpiringCache.
+ */
+public class ExpiringCacheTest extends org.junit.Assert {
+
+    @org.junit.Test
+    public void testLeastRecentlyUsedEviction() throws Exception {
+        final List<String> evicted = new ArrayList<String>();
+        ExpiringCache<String, String> cache = new ExpiringCache<String, String>(2, 60L) {
+            protected void onEviction(String key, String value) {
+                evicted.add(key);
+            }
+        };
+        cache.put("a", "1");
+        cache.put("b", "2");
+        assertEquals("1", cache.get("a"));
+        cache.put("c", "3");
+
+        assertEquals(2, cache.size());
+        assertEquals("1", cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals("3", cache.get("c"));
+        assertEquals(1, evicted.size());
+        assertEquals("b", evicted.get(0));
+
+        assertEquals("3", cache.remove("c"));
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(3, evicted.size());
+    }
+
+    @org.junit.Test
+    public void testExpiry() throws Exception {
+        final List<String> evicted = new ArrayList<String>();
+        ExpiringCache<String, String> cache = new ExpiringCache<String, String>(10, 60L) {
+            protected void onEviction(String key, String value) {
+                evicted.add(key);
+            }
+        };
+        long now = System.currentTimeMillis();
+
+        // Already expired entries are not stored
+        cache.put("a", "1", now - 1000L);
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+
+        cache.put("b", "2", now + 50L);
+        assertEquals("2", cache.get("b"));
+        Thread.sleep(100L);
+        assertNull(cache.get("b"));
+        assertEquals(0, cache.size());
+        assertEquals(1, evicted.size());
+
+        // The time-to-live of the cache is an upper bound for the expiry time
+        ExpiringCache<String, String> shortCache = new ExpiringCache<String, String>(10, 1L);
+        shortCache.put("c", "3", now + 3600000L);
+        assertEquals("3", shortCache.get("c"));
+        Thread.sleep(1100L);
+        assertNull(shortCache.get("c"));
+    }
+
+    /**
+     * A conditional remove must not remove a value that has replaced the expected one.
+     */
+    @org.junit.Test
+    public void testConditionalRemove() throws Exception {
+        ExpiringCache<String, String> cache = new ExpiringCache<String, String>(10, 60L);
+        String oldValue = new String("1");
+        String newValue = new String("1");
+        cache.put("a", oldValue);
+        cache.put("a", newValue);
+
+        assertFalse(cache.remove("a", oldValue));
+        assertSame(newValue, cache.get("a"));
+        assertTrue(cache.remove("a", newValue));
+        assertNull(cache.get("a"));
+        assertFalse(cache.remove("a", newValue));
+    }
+
+}
@@ -0,0 +1,84 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.ws.security.util;
+
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Generate nonces and digests via WSSecurityUtil from several threads, and check that the
+ * per-thread instances produce correct digests and unique nonces.
+ */
+public class NonceDigestConcurrencyTest extends org.junit.Assert {
+    
+    private static final int THREADS = 4;
+    private static final int ITERATIONS = 5000;
+
+    @org.junit.Test
+    public void testConcurrentNonceAndDigest() throws Exception {
+        run(1);
+        run(THREADS);
+    }
+    
+    private void run(int threadCount) throws Exception {
+        final Set<String> nonces = Collections.synchronizedSet(new HashSet<String>());
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            final byte[] input = ("input " + i).getBytes("UTF-8");
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        byte[] expected = MessageDigest.getInstance("SHA-1").digest(input);
+                        start.await();
+                        for (int j = 0; j < ITERATIONS; j++) {
+                            byte[] nonce = WSSecurityUtil.generateNonce(16);
+                            assertEquals(16, nonce.length);
+                            if (j % 10 == 0) {
+                                assertTrue(nonces.add(Base64.encode(nonce)));
+                            }
+                            byte[] digest = WSSecurityUtil.generateDigest(input);
+                            assertTrue(Arrays.equals(expected, digest));
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertEquals(threadCount * (ITERATIONS / 10), nonces.size());
+    }
+    
+}
@@ -0,0 +1,165 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ws.security.util;
+
+import java.io.IOException;
+
+import javax.security.auth.callback.Callback;
+import javax.security.auth.callback.CallbackHandler;
+import javax.security.auth.callback.UnsupportedCallbackException;
+
+import org.apache.ws.security.WSConstants;
+import org.apache.ws.security.WSPasswordCallback;
+import org.apache.ws.security.WSSConfig;
+import org.apache.ws.security.WSSecurityEngine;
+import org.apache.ws.security.common.SOAPUtil;
+import org.apache.ws.security.common.UsernamePasswordCallbackHandler;
+import org.apache.ws.security.handler.RequestData;
+import org.apache.ws.security.message.WSSecHeader;
+import org.apache.ws.security.message.WSSecUsernameToken;
+import org.w3c.dom.Document;
+
+/**
+ * Some tests for the PasswordCallbackCache and the CachingCallbackHandler.
+ */
+public class PasswordCallbackCacheTest extends org.junit.Assert {
+
+    public PasswordCallbackCacheTest() {
+        WSSConfig.init();
+    }
+
+    @org.junit.Test
+    public void testCachingCallbackHandler() throws Exception {
+        CountingCallbackHandler counter = new CountingCallbackHandler();
+        PasswordCallbackCache cache = new PasswordCallbackCache();
+        CallbackHandler handler = new CachingCallbackHandler(counter, cache);
+
+        assertEquals("security", getPassword(handler, "bob", WSPasswordCallback.USERNAME_TOKEN));
+        assertEquals("security", getPassword(handler, "bob", WSPasswordCallback.USERNAME_TOKEN));
+        assertEquals(1, counter.count);
+        assertEquals(1, cache.size());
+
+        // A different usage is looked up separately
+        assertNull(getPassword(handler, "bob", WSPasswordCallback.SIGNATURE));
+        assertNull(getPassword(handler, "bob", WSPasswordCallback.SIGNATURE));
+        assertEquals(3, counter.count);
+
+        // Results of other usages are not cached
+        getPassword(handler, "bob", WSPasswordCallback.SECRET_KEY);
+        getPassword(handler, "bob", WSPasswordCallback.SECRET_KEY);
+        assertEquals(5, counter.count);
+
+        cache.invalidate("bob");
+        assertEquals(0, cache.size());
+        assertEquals("security", getPassword(handler, "bob", WSPasswordCallback.USERNAME_TOKEN));
+        assertEquals(6, counter.count);
+
+        assertSame(handler, CachingCallbackHandler.wrap(handler, cache));
+        assertSame(counter, CachingCallbackHandler.wrap(counter, null));
+    }
+
+    /**
+     * A message with a UsernameToken (digest) is processed twice, and the CallbackHandler
+     * is only invoked once.
+     */
+    @org.junit.Test
+    public void testUsernameTokenProcessing() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader();
+        secHeader.insertSecurityHeader(doc);
+        WSSecUsernameToken builder = new WSSecUsernameToken();
+        builder.setPasswordType(WSConstants.PASSWORD_DIGEST);
+        builder.setUserInfo("wernerd", "verySecret");
+        builder.build(doc, secHeader);
+
+        WSSConfig config = WSSConfig.getNewInstance();
+        config.setPasswordCallbackCache(new PasswordCallbackCache());
+        WSSecurityEngine secEngine = new WSSecurityEngine();
+        secEngine.setWssConfig(config);
+        CountingCallbackHandler counter = new CountingCallbackHandler();
+
+        secEngine.processSecurityHeader(doc, null, counter, null);
+        secEngine.processSecurityHeader(doc, null, counter, null);
+        assertEquals(1, counter.count);
+
+        RequestData data = new RequestData();
+        data.setWssConfig(config);
+        data.setCallbackHandler(counter);
+        assertTrue(data.getCallbackHandler() instanceof CachingCallbackHandler);
+        assertSame(data.getCallbackHandler(), data.getCallbackHandler());
+        
+        // Changing the cache must not wrap the previous wrapper
+        PasswordCallbackCache otherCache = new PasswordCallbackCache();
+        config.setPasswordCallbackCache(otherCache);
+        CachingCallbackHandler handler = (CachingCallbackHandler)data.getCallbackHandler();
+        assertSame(counter, handler.getDelegate());
+        assertSame(otherCache, handler.getCache());
+        
+        config.setPasswordCallbackCache(null);
+        assertSame(counter, data.getCallbackHandler());
+    }
+
+    /**
+     * A cache that is shared between CallbackHandlers must only supply the results of a
+     * CallbackHandler to the callbacks for that CallbackHandler.
+     */
+    @org.junit.Test
+    public void testSharedCache() throws Exception {
+        PasswordCallbackCache cache = new PasswordCallbackCache();
+        CountingCallbackHandler counter = new CountingCallbackHandler();
+        CallbackHandler otherHandler = new CallbackHandler() {
+            public void handle(Callback[] callbacks) {
+                for (Callback callback : callbacks) {
+                    ((WSPasswordCallback)callback).setPassword("other");
+                }
+            }
+        };
+        CallbackHandler handler = new CachingCallbackHandler(counter, cache);
+        CallbackHandler other = new CachingCallbackHandler(otherHandler, cache);
+        
+        assertEquals("security", getPassword(handler, "bob", WSPasswordCallback.USERNAME_TOKEN));
+        assertEquals("other", getPassword(other, "bob", WSPasswordCallback.USERNAME_TOKEN));
+        assertEquals("security", getPassword(handler, "bob", WSPasswordCallback.USERNAME_TOKEN));
+        assertEquals(1, counter.count);
+        
+        // The results of both CallbackHandlers are removed together
+        cache.invalidate("bob");
+        assertEquals("security", getPassword(handler, "bob", WSPasswordCallback.USERNAME_TOKEN));
+        assertEquals(2, counter.count);
+    }
+
+    private static String getPassword(
+        CallbackHandler handler, String identifier, int usage
+    ) throws Exception {
+        WSPasswordCallback callback = new WSPasswordCallback(identifier, usage);
+        handler.handle(new Callback[]{callback});
+        return callback.getPassword();
+    }
+
+    private static class CountingCallbackHandler extends UsernamePasswordCallbackHandler {
+        private int count;
+
+        public void handle(Callback[] callbacks) throws IOException, UnsupportedCallbackException {
+            count++;
+            super.handle(callbacks);
+        }
+    }
+
+}
@@ -0,0 +1,109 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ws.security.util;
+
+import javax.xml.crypto.dsig.XMLSignatureFactory;
+import javax.xml.crypto.dsig.keyinfo.KeyInfoFactory;
+
+import org.apache.ws.security.WSSConfig;
+
+/**
+ * Some tests for the cached XMLSignatureFactory and KeyInfoFactory instances.
+ */
+public class SignatureFactoryCacheTest extends org.junit.Assert {
+    private static final org.apache.commons.logging.Log LOG = 
+        org.apache.commons.logging.LogFactory.getLog(SignatureFactoryCacheTest.class);
+    
+    private static final int ITERATIONS = 10000;
+    
+    public SignatureFactoryCacheTest() {
+        WSSConfig.init();
+    }
+
+    /**
+     * Test that the same factories are returned for the same thread, and that a different 
+     * thread gets its own instances.
+     */
+    @org.junit.Test
+    public void testFactoriesPerThread() throws Exception {
+        final XMLSignatureFactory signatureFactory = 
+            SignatureFactoryCache.getXMLSignatureFactory();
+        final KeyInfoFactory keyInfoFactory = SignatureFactoryCache.getKeyInfoFactory();
+        assertNotNull(signatureFactory);
+        assertNotNull(keyInfoFactory);
+        assertSame(signatureFactory, SignatureFactoryCache.getXMLSignatureFactory());
+        assertSame(keyInfoFactory, SignatureFactoryCache.getKeyInfoFactory());
+        
+        final Object[] otherFactories = new Object[2];
+        Thread thread = new Thread() {
+            public void run() {
+                otherFactories[0] = SignatureFactoryCache.getXMLSignatureFactory();
+                otherFactories[1] = SignatureFactoryCache.getKeyInfoFactory();
+            }
+        };
+        thread.start();
+        thread.join();
+        
+        assertNotNull(otherFactories[0]);
+        assertNotNull(otherFactories[1]);
+        assertNotSame(signatureFactory, otherFactories[0]);
+        assertNotSame(keyInfoFactory, otherFactories[1]);
+        assertEquals(
+            signatureFactory.getProvider().getName(), 
+            ((XMLSignatureFactory)otherFactories[0]).getProvider().getName()
+        );
+    }
+    
+    /**
+     * Compare the cost of a Provider lookup for each message with the cached factories.
+     */
+    @org.junit.Test
+    public void testCachedFactoryLookup() throws Exception {
+        // warm up
+        for (int i = 0; i < ITERATIONS; i++) {
+            SignatureFactoryCache.newXMLSignatureFactory();
+            SignatureFactoryCache.newKeyInfoFactory();
+            SignatureFactoryCache.getXMLSignatureFactory();
+            SignatureFactoryCache.getKeyInfoFactory();
+        }
+        
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            assertNotNull(SignatureFactoryCache.newXMLSignatureFactory());
+            assertNotNull(SignatureFactoryCache.newKeyInfoFactory());
+        }
+        long lookupTime = System.nanoTime() - start;
+        
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            assertNotNull(SignatureFactoryCache.getXMLSignatureFactory());
+            assertNotNull(SignatureFactoryCache.getKeyInfoFactory());
+        }
+        long cachedTime = System.nanoTime() - start;
+        
+        if (LOG.isInfoEnabled()) {
+            LOG.info(
+                "Factory lookup per message: " + (lookupTime / ITERATIONS) + " ns, cached: " 
+                + (cachedTime / ITERATIONS) + " ns"
+            );
+        }
+    }
+    
+}
@@ -0,0 +1,137 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ws.security.util;
+
+import java.security.MessageDigest;
+
+import org.apache.ws.security.WSConstants;
+import org.apache.ws.security.WSSConfig;
+import org.apache.ws.security.WSSecurityEngine;
+import org.apache.ws.security.common.SOAPUtil;
+import org.apache.ws.security.common.UsernamePasswordCallbackHandler;
+import org.apache.ws.security.components.crypto.Crypto;
+import org.apache.ws.security.components.crypto.CryptoFactory;
+import org.apache.ws.security.message.WSSecDKSign;
+import org.apache.ws.security.message.WSSecHeader;
+import org.apache.ws.security.message.WSSecUsernameToken;
+import org.apache.ws.security.message.token.UsernameToken;
+import org.w3c.dom.Document;
+
+/**
+ * Some tests for the UsernameTokenKeyCache.
+ */
+public class UsernameTokenKeyCacheTest extends org.junit.Assert {
+
+    private Crypto crypto = null;
+
+    public UsernameTokenKeyCacheTest() throws Exception {
+        WSSConfig.init();
+        crypto = CryptoFactory.getInstance();
+    }
+
+    /**
+     * The derived key must be the same as the one of a straightforward implementation.
+     */
+    @org.junit.Test
+    public void testKeyDerivation() throws Exception {
+        byte[] password = "security".getBytes("UTF-8");
+        byte[] salt = UsernameToken.generateSalt(true);
+        for (int iteration : new int[]{1, 2, 1000}) {
+            MessageDigest sha = MessageDigest.getInstance("SHA-1");
+            byte[] pwSalt = new byte[password.length + salt.length];
+            System.arraycopy(password, 0, pwSalt, 0, password.length);
+            System.arraycopy(salt, 0, pwSalt, password.length, salt.length);
+            byte[] expected = sha.digest(pwSalt);
+            for (int i = 1; i < iteration; i++) {
+                expected = sha.digest(expected);
+            }
+            assertArrayEquals(
+                expected, UsernameToken.generateDerivedKey(password, salt, iteration)
+            );
+        }
+    }
+
+    @org.junit.Test
+    public void testCache() throws Exception {
+        UsernameTokenKeyCache cache = new UsernameTokenKeyCache(10, 60L);
+        byte[] password = "security".getBytes("UTF-8");
+        byte[] salt = UsernameToken.generateSalt(true);
+        String key = cache.createKey(password, salt, 1000);
+        assertFalse(key.equals(cache.createKey(password, salt, 1001)));
+        assertFalse(key.equals(cache.createKey("other".getBytes("UTF-8"), salt, 1000)));
+        assertFalse(key.indexOf("security") >= 0);
+
+        byte[] derivedKey = UsernameToken.generateDerivedKey(password, salt, 1000);
+        assertNull(cache.get(key));
+        cache.put(key, derivedKey);
+        assertArrayEquals(derivedKey, cache.get(key));
+        assertNotSame(cache.get(key), cache.get(key));
+        cache.clear();
+        assertNull(cache.get(key));
+    }
+
+    /**
+     * A message signed with a key derived from a UsernameToken is processed twice. The
+     * second time the derived key is taken from the cache.
+     */
+    @org.junit.Test
+    public void testProcessing() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader();
+        secHeader.insertSecurityHeader(doc);
+
+        WSSecUsernameToken builder = new WSSecUsernameToken();
+        builder.setUserInfo("bob", "security");
+        builder.addDerivedKey(true, null, 1000);
+        builder.prepare(doc);
+
+        WSSecDKSign sigBuilder = new WSSecDKSign();
+        sigBuilder.setExternalKey(builder.getDerivedKey(), builder.getId());
+        sigBuilder.setSignatureAlgorithm(WSConstants.HMAC_SHA1);
+        sigBuilder.setCustomValueType(WSConstants.WSS_USERNAME_TOKEN_VALUE_TYPE);
+        sigBuilder.build(doc, secHeader);
+        builder.prependToHeader(secHeader);
+
+        final int[] hits = new int[1];
+        UsernameTokenKeyCache cache = new UsernameTokenKeyCache() {
+            public byte[] get(String key) {
+                byte[] derivedKey = super.get(key);
+                if (derivedKey != null) {
+                    hits[0]++;
+                }
+                return derivedKey;
+            }
+        };
+        WSSConfig config = WSSConfig.getNewInstance();
+        config.setUsernameTokenKeyCache(cache);
+        WSSecurityEngine secEngine = new WSSecurityEngine();
+        secEngine.setWssConfig(config);
+        UsernamePasswordCallbackHandler callbackHandler = new UsernamePasswordCallbackHandler();
+
+        secEngine.processSecurityHeader(doc, null, callbackHandler, crypto);
+        assertEquals(1, cache.size());
+        assertEquals(0, hits[0]);
+
+        secEngine.processSecurityHeader(doc, null, callbackHandler, crypto);
+        assertEquals(1, cache.size());
+        assertEquals(1, hits[0]);
+    }
+
+}
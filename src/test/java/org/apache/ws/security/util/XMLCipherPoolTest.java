@@ -0,0 +1,152 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ws.security.util;
+
+import java.lang.ref.WeakReference;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+import org.apache.ws.security.WSConstants;
+import org.apache.ws.security.WSSConfig;
+import org.apache.ws.security.common.SOAPUtil;
+import org.apache.xml.security.encryption.XMLCipher;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Some tests for the XMLCipherPool.
+ */
+public class XMLCipherPoolTest extends org.junit.Assert {
+
+    public XMLCipherPoolTest() {
+        WSSConfig.init();
+    }
+
+    @org.junit.Test
+    public void testPooledInstances() throws Exception {
+        XMLCipher cipher = XMLCipherPool.getInstance(WSConstants.AES_128);
+        // The instance is owned by the caller until it is released
+        XMLCipher nestedCipher = XMLCipherPool.getInstance(WSConstants.AES_128);
+        assertNotSame(cipher, nestedCipher);
+
+        XMLCipherPool.release(WSConstants.AES_128, cipher);
+        assertSame(cipher, XMLCipherPool.getInstance(WSConstants.AES_128));
+        assertNotSame(cipher, XMLCipherPool.getInstance(WSConstants.AES_256));
+
+        final XMLCipher[] otherCipher = new XMLCipher[1];
+        XMLCipherPool.release(WSConstants.AES_128, cipher);
+        Thread thread = new Thread() {
+            public void run() {
+                try {
+                    otherCipher[0] = XMLCipherPool.getInstance(WSConstants.AES_128);
+                } catch (Exception ex) {
+                    // the assertion below fails
+                }
+            }
+        };
+        thread.start();
+        thread.join();
+        assertNotNull(otherCipher[0]);
+        assertNotSame(cipher, otherCipher[0]);
+    }
+
+    /**
+     * A released instance must decrypt correctly with a different key.
+     */
+    @org.junit.Test
+    public void testReuse() throws Exception {
+        KeyGenerator keyGen = KeyGenerator.getInstance("AES");
+        keyGen.init(128);
+
+        for (int i = 0; i < 3; i++) {
+            SecretKey key = keyGen.generateKey();
+            Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+            Element body = WSSecurityUtil.findBodyElement(doc);
+            XMLCipher cipher = XMLCipher.getInstance(WSConstants.AES_128);
+            cipher.init(XMLCipher.ENCRYPT_MODE, key);
+            cipher.doFinal(doc, body, true);
+            assertFalse(DOM2Writer.nodeToString(body).contains("value"));
+
+            cipher = XMLCipherPool.getInstance(WSConstants.AES_128);
+            cipher.init(XMLCipher.DECRYPT_MODE, key);
+            cipher.doFinal(doc, body, true);
+            XMLCipherPool.release(WSConstants.AES_128, cipher);
+            Element add = WSSecurityUtil.getDirectChildElement(
+                body, "add", "http://ws.apache.org/counter/counter_port_type"
+            );
+            assertNotNull(add);
+            assertEquals("15", add.getTextContent());
+        }
+    }
+
+    /**
+     * A released instance must not keep the decrypted Document reachable.
+     */
+    @org.junit.Test
+    public void testDocumentNotRetained() throws Exception {
+        KeyGenerator keyGen = KeyGenerator.getInstance("AES");
+        keyGen.init(128);
+        SecretKey key = keyGen.generateKey();
+        
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        Element body = WSSecurityUtil.findBodyElement(doc);
+        XMLCipher cipher = XMLCipher.getInstance(WSConstants.AES_128);
+        cipher.init(XMLCipher.ENCRYPT_MODE, key);
+        cipher.doFinal(doc, body, true);
+        
+        cipher = XMLCipherPool.getInstance(WSConstants.AES_128);
+        cipher.init(XMLCipher.DECRYPT_MODE, key);
+        cipher.doFinal(doc, body, true);
+        XMLCipherPool.release(WSConstants.AES_128, cipher);
+        
+        WeakReference<Document> docRef = new WeakReference<Document>(doc);
+        doc = null;
+        body = null;
+        for (int i = 0; i < 10 && docRef.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(docRef.get());
+        assertSame(cipher, XMLCipherPool.getInstance(WSConstants.AES_128));
+    }
+    
+    /**
+     * The number of idle instances per thread is bounded.
+     */
+    @org.junit.Test
+    public void testPoolSize() throws Exception {
+        XMLCipher cipher = XMLCipherPool.getInstance(WSConstants.AES_128);
+        for (int i = 0; i < XMLCipherPool.MAX_POOLED_INSTANCES; i++) {
+            XMLCipherPool.release(
+                "urn:test:algorithm:" + i, XMLCipher.getInstance(WSConstants.AES_128)
+            );
+        }
+        XMLCipherPool.release(WSConstants.AES_128, cipher);
+        assertNotSame(cipher, XMLCipherPool.getInstance(WSConstants.AES_128));
+        
+        for (int i = 0; i < XMLCipherPool.MAX_POOLED_INSTANCES; i++) {
+            assertNotNull(XMLCipherPool.getInstance("urn:test:algorithm:" + i));
+        }
+        XMLCipherPool.release(WSConstants.AES_128, cipher);
+        assertSame(cipher, XMLCipherPool.getInstance(WSConstants.AES_128));
+    }
+
+}
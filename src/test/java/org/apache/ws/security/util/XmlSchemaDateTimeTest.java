@@ -0,0 +1,260 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ws.security.util;
+
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Some tests for XmlSchemaDateTime, checking that it produces the same results as a
+ * (synchronized) SimpleDateFormat, which was used by XmlSchemaDateFormat before.
+ */
+public class XmlSchemaDateTimeTest extends org.junit.Assert {
+    private static final int ITERATIONS = 20000;
+    private static final int THREADS = 4;
+    
+    private static final DateFormat REFERENCE = createReference("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+
+    @org.junit.Test
+    public void testFormatParity() throws Exception {
+        DateFormat noMillis = createReference("yyyy-MM-dd'T'HH:mm:ss'Z'");
+        Random random = new Random(12345L);
+        // The years 1000 to 12000, including the boundaries of the fast path
+        long min = REFERENCE.parse("1000-01-01T00:00:00.000Z").getTime();
+        long max = REFERENCE.parse("12000-01-01T00:00:00.000Z").getTime();
+        long[] times = new long[ITERATIONS + 6];
+        for (int i = 0; i < ITERATIONS; i++) {
+            times[i] = min + (long)(random.nextDouble() * (max - min));
+        }
+        times[ITERATIONS] = 0L;
+        times[ITERATIONS + 1] = REFERENCE.parse("1583-01-01T00:00:00.000Z").getTime();
+        times[ITERATIONS + 2] = times[ITERATIONS + 1] - 1;
+        times[ITERATIONS + 3] = REFERENCE.parse("9999-12-31T23:59:59.999Z").getTime();
+        times[ITERATIONS + 4] = times[ITERATIONS + 3] + 1;
+        times[ITERATIONS + 5] = REFERENCE.parse("2000-02-29T12:00:00.000Z").getTime();
+        
+        for (long time : times) {
+            String expected = REFERENCE.format(new Date(time));
+            assertEquals(expected, XmlSchemaDateTime.format(new Date(time)));
+            assertEquals(noMillis.format(new Date(time)), XmlSchemaDateTime.format(time, false));
+            if (expected.length() == 24) {
+                // Years after 9999 can not be parsed, as was the case before
+                assertEquals(REFERENCE.parse(expected), XmlSchemaDateTime.parse(expected));
+                assertEquals(
+                    REFERENCE.parse(expected), XmlSchemaDateTime.parse(expected, false)
+                );
+            }
+        }
+    }
+    
+    /**
+     * Out of range fields are rolled over in lenient mode, and rejected otherwise.
+     */
+    @org.junit.Test
+    public void testLenientParity() throws Exception {
+        DateFormat strict = createReference("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+        strict.setLenient(false);
+        Random random = new Random(54321L);
+        for (int i = 0; i < ITERATIONS; i++) {
+            String src = 
+                pad(1500 + random.nextInt(8500), 4) + "-" + pad(random.nextInt(15), 2) + "-"
+                + pad(random.nextInt(33), 2) + "T" + pad(random.nextInt(26), 2) + ":" 
+                + pad(random.nextInt(62), 2) + ":" + pad(random.nextInt(62), 2);
+            assertEquals(src, REFERENCE.parse(src + ".000Z"), XmlSchemaDateTime.parse(src));
+            
+            Date expected = null;
+            try {
+                expected = strict.parse(src + ".000Z");
+            } catch (ParseException ex) {
+                expected = null;
+            }
+            Date date = null;
+            try {
+                date = XmlSchemaDateTime.parse(src, false);
+            } catch (ParseException ex) {
+                date = null;
+            }
+            assertEquals(src, expected, date);
+        }
+    }
+
+    @org.junit.Test
+    public void testFractionAndTimezone() throws Exception {
+        long base = REFERENCE.parse("2011-05-19T10:55:11.000Z").getTime();
+        assertEquals(base, XmlSchemaDateTime.parse("2011-05-19T10:55:11").getTime());
+        assertEquals(base, XmlSchemaDateTime.parse("2011-05-19T10:55:11Z").getTime());
+        assertEquals(base, XmlSchemaDateTime.parse("+2011-05-19T10:55:11Z").getTime());
+        assertEquals(base, XmlSchemaDateTime.parse("2011-05-19T10:55:11.Z").getTime());
+        assertEquals(base + 100, XmlSchemaDateTime.parse("2011-05-19T10:55:11.1Z").getTime());
+        assertEquals(base + 123, XmlSchemaDateTime.parse("2011-05-19T10:55:11.123Z").getTime());
+        assertEquals(
+            base + 124, XmlSchemaDateTime.parse("2011-05-19T10:55:11.12351Z").getTime()
+        );
+        assertEquals(
+            base + 123, XmlSchemaDateTime.parse("2011-05-19T10:55:11.1234999Z").getTime()
+        );
+        assertEquals(
+            base - 3600000L - 30 * 60000L, 
+            XmlSchemaDateTime.parse("2011-05-19T10:55:11+01:30").getTime()
+        );
+        assertEquals(
+            base + 2 * 3600000L + 250, 
+            XmlSchemaDateTime.parse("2011-05-19T10:55:11.25-02:00").getTime()
+        );
+        
+        // The same results as via the XmlSchemaDateFormat
+        DateFormat dateFormat = new XmlSchemaDateFormat();
+        String src = "2011-05-19T10:55:11.25-02:00";
+        assertEquals(XmlSchemaDateTime.parse(src), dateFormat.parse(src));
+        assertEquals(
+            XmlSchemaDateTime.format(new Date(base)), dateFormat.format(new Date(base))
+        );
+    }
+
+    @org.junit.Test
+    public void testInvalid() throws Exception {
+        String[] invalid = {
+            "", 
+            "2011-05-19T10:55", 
+            "2011/05/19T10:55:11Z", 
+            "2011-05-19 10:55:11Z", 
+            "2011-05-19T10-55-11Z", 
+            "2011-0a-19T10:55:11Z", 
+            "2011-05-19T10:55:11ZZ", 
+            "2011-05-19T10:55:11+0100", 
+            "2011-05-19T10:55:11+01:0", 
+            "2011-05-19T10:55:11+0a:00", 
+        };
+        for (String src : invalid) {
+            try {
+                XmlSchemaDateTime.parse(src);
+                fail("Failure expected on " + src);
+            } catch (ParseException ex) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     * The lenient setting of an XmlSchemaDateFormat must not affect other instances.
+     */
+    @org.junit.Test
+    public void testLenientPerInstance() throws Exception {
+        DateFormat strict = new XmlSchemaDateFormat();
+        strict.setLenient(false);
+        DateFormat lenient = new XmlSchemaDateFormat();
+        assertTrue(lenient.isLenient());
+        assertNotNull(lenient.parse("2011-02-30T10:55:11Z"));
+        try {
+            strict.parse("2011-02-30T10:55:11Z");
+            fail("Failure expected on an invalid date");
+        } catch (ParseException ex) {
+            // expected
+        }
+    }
+
+    /**
+     * Parse and format from several threads. XmlSchemaDateTime must produce the correct
+     * results, and must not be slower than a shared synchronized SimpleDateFormat.
+     */
+    @org.junit.Test
+    public void testConcurrentParseAndFormat() throws Exception {
+        // Warm up both implementations first
+        run(THREADS, true);
+        run(THREADS, false);
+        
+        long synchronizedTime = run(THREADS, true);
+        long lockFreeTime = run(THREADS, false);
+        assertTrue(
+            "XmlSchemaDateTime took " + lockFreeTime + " ms, a synchronized SimpleDateFormat " 
+            + synchronizedTime + " ms",
+            lockFreeTime <= synchronizedTime
+        );
+    }
+    
+    /**
+     * @return the elapsed time in milliseconds
+     */
+    private long run(int threadCount, final boolean useReference) throws Exception {
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            final long offset = i * 86400000L;
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                        long now = System.currentTimeMillis() + offset;
+                        for (int j = 0; j < ITERATIONS; j++) {
+                            Date date = new Date(now + j * 1001L);
+                            if (useReference) {
+                                String str = null;
+                                synchronized (REFERENCE) {
+                                    str = REFERENCE.format(date);
+                                }
+                                synchronized (REFERENCE) {
+                                    assertEquals(date, REFERENCE.parse(str));
+                                }
+                            } else {
+                                String str = XmlSchemaDateTime.format(date);
+                                assertEquals(date, XmlSchemaDateTime.parse(str));
+                            }
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        long startTime = System.currentTimeMillis();
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsed = System.currentTimeMillis() - startTime;
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        return elapsed;
+    }
+    
+    private static DateFormat createReference(String pattern) {
+        DateFormat dateFormat = new SimpleDateFormat(pattern);
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return dateFormat;
+    }
+    
+    private static String pad(int value, int digits) {
+        String str = String.valueOf(value);
+        while (str.length() < digits) {
+            str = "0" + str;
+        }
+        return str;
+    }
+
+}